@@ -0,0 +1,252 @@
+package com.kb.trading.archive;
+import com.kb.trading.entity.Order;
+import com.kb.trading.entity.OrderStatus;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 归档段：一个只追加写一次、之后不可变的数据文件（.seg）加一个稀疏索引文件（.idx）。
+ * 数据文件由若干 gzip 压缩块顺序拼接；索引记录每个块的偏移、ID 和下单时间范围、
+ * 订单ID/买家/卖家/订单号的布隆过滤器，以及本段内每个用户各状态的订单数量。
+ * 先写临时文件并刷盘，再依次改名为 .seg、.idx；只有 .idx 存在的段才会被加载。
+ */
+final class ArchiveSegment {
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final String INDEX_SUFFIX = ".idx";
+    static final String TMP_SUFFIX = ".tmp";
+
+    private static final int MAGIC = 0x4B424F41;    // "KBOA"
+    private static final int VERSION = 1;
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+
+    final Path file;
+    final List<Block> blocks;
+    final Map<Long, long[]> buyerCounts;     // 买家ID -> 各状态订单数（按状态序号）
+    final Map<Long, long[]> sellerCounts;    // 卖家ID -> 各状态订单数
+
+    private ArchiveSegment(Path file, List<Block> blocks, Map<Long, long[]> buyerCounts,
+                           Map<Long, long[]> sellerCounts) {
+        this.file = file;
+        this.blocks = blocks;
+        this.buyerCounts = buyerCounts;
+        this.sellerCounts = sellerCounts;
+    }
+
+    // 写出一个新段，orders 需按订单ID升序
+    static ArchiveSegment write(Path file, List<ArchivedOrder> orders, int blockSize) throws IOException {
+        Path segmentTmp = file.resolveSibling(file.getFileName() + TMP_SUFFIX);
+        List<Block> blocks = new ArrayList<>();
+        Map<Long, long[]> buyerCounts = new HashMap<>();
+        Map<Long, long[]> sellerCounts = new HashMap<>();
+
+        try (FileChannel channel = FileChannel.open(segmentTmp, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE)) {
+            long offset = 0;
+            for (int from = 0; from < orders.size(); from += blockSize) {
+                List<ArchivedOrder> chunk = orders.subList(from, Math.min(from + blockSize, orders.size()));
+                byte[] data = OrderArchiveCodec.encodeBlock(chunk);
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                blocks.add(Block.of(file, offset, data.length, chunk));
+                offset += data.length;
+                for (ArchivedOrder archived : chunk) {
+                    Order order = archived.order();
+                    buyerCounts.computeIfAbsent(order.getBuyerId(), k -> new long[STATUSES.length])
+                            [order.getStatus().ordinal()]++;
+                    sellerCounts.computeIfAbsent(order.getSellerId(), k -> new long[STATUSES.length])
+                            [order.getStatus().ordinal()]++;
+                }
+            }
+            channel.force(true);
+        }
+
+        ArchiveSegment segment = new ArchiveSegment(file, blocks, buyerCounts, sellerCounts);
+        Path index = indexOf(file);
+        Path indexTmp = index.resolveSibling(index.getFileName() + TMP_SUFFIX);
+        try (FileOutputStream stream = new FileOutputStream(indexTmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            segment.writeIndex(out);
+            out.flush();
+            stream.getFD().sync();
+        }
+        Files.move(segmentTmp, file, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(indexTmp, index, StandardCopyOption.ATOMIC_MOVE);
+        return segment;
+    }
+
+    // 从索引文件加载段（不读取数据文件）
+    static ArchiveSegment read(Path index) throws IOException {
+        String name = index.getFileName().toString();
+        Path file = index.resolveSibling(name.substring(0, name.length() - INDEX_SUFFIX.length()) + SEGMENT_SUFFIX);
+        try (InputStream stream = Files.newInputStream(index);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("无法识别的归档索引文件: " + index);
+            }
+            int blockCount = in.readInt();
+            List<Block> blocks = new ArrayList<>(blockCount);
+            for (int i = 0; i < blockCount; i++) {
+                blocks.add(Block.readFrom(file, in));
+            }
+            Map<Long, long[]> buyerCounts = readCounts(in);
+            Map<Long, long[]> sellerCounts = readCounts(in);
+            return new ArchiveSegment(file, blocks, buyerCounts, sellerCounts);
+        }
+    }
+
+    // 读取并解压一个块
+    static List<ArchivedOrder> readBlock(Block block) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(block.length);
+        try (FileChannel channel = FileChannel.open(block.file, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, block.offset + buffer.position()) < 0) {
+                    throw new IOException("归档文件被截断: " + block.file);
+                }
+            }
+        }
+        return OrderArchiveCodec.decodeBlock(buffer.array());
+    }
+
+    static Path indexOf(Path file) {
+        String name = file.getFileName().toString();
+        return file.resolveSibling(name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    int orderCount() {
+        return blocks.stream().mapToInt(block -> block.count).sum();
+    }
+
+    private void writeIndex(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(blocks.size());
+        for (Block block : blocks) {
+            block.writeTo(out);
+        }
+        writeCounts(out, buyerCounts);
+        writeCounts(out, sellerCounts);
+    }
+
+    private static void writeCounts(DataOutputStream out, Map<Long, long[]> counts) throws IOException {
+        out.writeInt(counts.size());
+        for (Map.Entry<Long, long[]> entry : counts.entrySet()) {
+            out.writeLong(entry.getKey());
+            for (long count : entry.getValue()) {
+                out.writeInt((int) count);
+            }
+        }
+    }
+
+    private static Map<Long, long[]> readCounts(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<Long, long[]> counts = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            long userId = in.readLong();
+            long[] perStatus = new long[STATUSES.length];
+            for (int j = 0; j < perStatus.length; j++) {
+                perStatus[j] = in.readInt();
+            }
+            counts.put(userId, perStatus);
+        }
+        return counts;
+    }
+
+    /**
+     * 段内的一个压缩块及其稀疏索引信息
+     */
+    static final class Block {
+        final Path file;
+        final long offset;
+        final int length;
+        final int count;
+        final long minId;
+        final long maxId;
+        final long minCreateTime;
+        final long maxCreateTime;
+        final BloomFilter ids;
+        final BloomFilter buyers;
+        final BloomFilter sellers;
+        final BloomFilter orderNos;
+
+        private Block(Path file, long offset, int length, int count, long minId, long maxId,
+                      long minCreateTime, long maxCreateTime, BloomFilter ids, BloomFilter buyers,
+                      BloomFilter sellers, BloomFilter orderNos) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+            this.count = count;
+            this.minId = minId;
+            this.maxId = maxId;
+            this.minCreateTime = minCreateTime;
+            this.maxCreateTime = maxCreateTime;
+            this.ids = ids;
+            this.buyers = buyers;
+            this.sellers = sellers;
+            this.orderNos = orderNos;
+        }
+
+        private static Block of(Path file, long offset, int length, List<ArchivedOrder> chunk) {
+            BloomFilter ids = new BloomFilter(chunk.size());
+            BloomFilter buyers = new BloomFilter(chunk.size());
+            BloomFilter sellers = new BloomFilter(chunk.size());
+            BloomFilter orderNos = new BloomFilter(chunk.size());
+            long minId = Long.MAX_VALUE, maxId = Long.MIN_VALUE;
+            long minCreateTime = Long.MAX_VALUE, maxCreateTime = Long.MIN_VALUE;
+            for (ArchivedOrder archived : chunk) {
+                Order order = archived.order();
+                long createTime = order.getCreateTime().getTime();
+                minId = Math.min(minId, order.getId());
+                maxId = Math.max(maxId, order.getId());
+                minCreateTime = Math.min(minCreateTime, createTime);
+                maxCreateTime = Math.max(maxCreateTime, createTime);
+                ids.add(order.getId());
+                buyers.add(order.getBuyerId());
+                sellers.add(order.getSellerId());
+                orderNos.add(BloomFilter.hash(order.getOrderNo()));
+            }
+            return new Block(file, offset, length, chunk.size(), minId, maxId, minCreateTime, maxCreateTime,
+                    ids, buyers, sellers, orderNos);
+        }
+
+        boolean mightContainId(long id) {
+            return id >= minId && id <= maxId && ids.mightContain(id);
+        }
+
+        private void writeTo(DataOutputStream out) throws IOException {
+            out.writeLong(offset);
+            out.writeInt(length);
+            out.writeInt(count);
+            out.writeLong(minId);
+            out.writeLong(maxId);
+            out.writeLong(minCreateTime);
+            out.writeLong(maxCreateTime);
+            ids.writeTo(out);
+            buyers.writeTo(out);
+            sellers.writeTo(out);
+            orderNos.writeTo(out);
+        }
+
+        private static Block readFrom(Path file, DataInputStream in) throws IOException {
+            return new Block(file, in.readLong(), in.readInt(), in.readInt(), in.readLong(), in.readLong(),
+                    in.readLong(), in.readLong(), BloomFilter.readFrom(in), BloomFilter.readFrom(in),
+                    BloomFilter.readFrom(in), BloomFilter.readFrom(in));
+        }
+    }
+}
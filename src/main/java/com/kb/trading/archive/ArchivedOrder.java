@@ -0,0 +1,10 @@
+package com.kb.trading.archive;
+import com.kb.trading.entity.Order;
+import com.kb.trading.entity.OrderItem;
+import java.util.List;
+
+/**
+ * 归档中的一条订单及其订单项
+ */
+public record ArchivedOrder(Order order, List<OrderItem> items) {
+}
@@ -0,0 +1,78 @@
+package com.kb.trading.archive;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * 归档块使用的布隆过滤器：判断块内是否可能包含某个订单ID/用户ID/订单号，
+ * 不包含时不必解压该块（每个键约 10 位，误判率约 1%）
+ */
+final class BloomFilter {
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASHES = 4;
+
+    private final long[] words;
+
+    BloomFilter(int expectedKeys) {
+        this.words = new long[Math.max(1, (expectedKeys * BITS_PER_KEY + 63) / 64)];
+    }
+
+    private BloomFilter(long[] words) {
+        this.words = words;
+    }
+
+    void add(long key) {
+        long hash = mix(key);
+        long bits = words.length * 64L;
+        for (int i = 0; i < HASHES; i++) {
+            long index = Math.floorMod((int) hash + (long) i * (int) (hash >>> 32), bits);
+            words[(int) (index >>> 6)] |= 1L << index;
+        }
+    }
+
+    boolean mightContain(long key) {
+        long hash = mix(key);
+        long bits = words.length * 64L;
+        for (int i = 0; i < HASHES; i++) {
+            long index = Math.floorMod((int) hash + (long) i * (int) (hash >>> 32), bits);
+            if ((words[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    static BloomFilter readFrom(DataInputStream in) throws IOException {
+        long[] words = new long[in.readInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        return new BloomFilter(words);
+    }
+
+    // 字符串键（订单号）的 64 位哈希（FNV-1a）
+    static long hash(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
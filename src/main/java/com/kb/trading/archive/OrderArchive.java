@@ -0,0 +1,449 @@
+package com.kb.trading.archive;
+import com.kb.trading.entity.Order;
+import com.kb.trading.entity.OrderStatus;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * 冷订单归档存储
+ * 已归档的订单按下单日期分区写入不可变的压缩段文件（目录 yyyyMMdd/），
+ * 启动时只加载各段的稀疏索引：按ID查找时在按块内最小ID排序的块数组上二分定位候选块，再用布隆过滤器筛掉后解压；
+ * 按订单号查找时用布隆过滤器定位到块再解压；
+ * 买家/卖家列表按块内最大下单时间倒序扫描可能包含该用户的块，凑够一页即停止。
+ * 最近读取的块解压后缓存在内存中，返回给调用方的是订单的副本，调用方修改不会影响缓存。
+ * 注意：归档目录是本节点的本地文件，多节点部署时需要放在共享存储上并只在一个节点执行归档任务。
+ */
+@Component
+@Slf4j
+public class OrderArchive {
+    // 列表排序：下单时间倒序，相同时按ID倒序
+    public static final Comparator<Order> NEWEST_FIRST =
+            Comparator.comparingLong((Order order) -> order.getCreateTime().getTime())
+                    .thenComparingLong(Order::getId)
+                    .reversed();
+
+    private static final int BLOCK_SIZE = 128;
+    private static final int BLOCK_CACHE_SIZE = 256;
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+    private static final DateTimeFormatter PARTITION_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final Path directory;
+
+    // 所有块，按块内最大下单时间倒序（写入新段时整体替换）
+    private volatile List<ArchiveSegment.Block> blocks = List.of();
+    // 按ID查找用的块索引（写入新段时整体替换）
+    private volatile IdIndex idIndex = IdIndex.of(List.of());
+    private final Map<Long, AtomicLongArray> buyerCounts = new ConcurrentHashMap<>();
+    private final Map<Long, AtomicLongArray> sellerCounts = new ConcurrentHashMap<>();
+    private final Map<ArchiveSegment.Block, List<ArchivedOrder>> blockCache =
+            new LinkedHashMap<>(BLOCK_CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ArchiveSegment.Block, List<ArchivedOrder>> eldest) {
+                    return size() > BLOCK_CACHE_SIZE;
+                }
+            };
+
+    private final AtomicLong segmentCount = new AtomicLong();
+    private final AtomicLong orderCount = new AtomicLong();
+    private final AtomicLong segmentSequence = new AtomicLong();
+    private final AtomicLong blockReads = new AtomicLong();
+
+    public OrderArchive(@Value("${trading.order.archive.dir:./data/order-archive}") String directory) {
+        this.directory = Paths.get(directory);
+    }
+
+    // 启动时加载所有段的索引，清理上次中断留下的临时文件和没有索引的段
+    @PostConstruct
+    public void load() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            files = walk.filter(Files::isRegularFile).toList();
+        }
+        List<ArchiveSegment> segments = new ArrayList<>();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(ArchiveSegment.TMP_SUFFIX)) {
+                Files.deleteIfExists(file);
+            } else if (name.endsWith(ArchiveSegment.SEGMENT_SUFFIX) && !Files.exists(ArchiveSegment.indexOf(file))) {
+                log.warn("删除未完成的归档段: {}", file);
+                Files.deleteIfExists(file);
+            } else if (name.endsWith(ArchiveSegment.INDEX_SUFFIX)) {
+                segments.add(ArchiveSegment.read(file));
+            }
+        }
+        register(segments);
+        log.info("订单归档已加载: 段数={}, 订单数={}", segmentCount.get(), orderCount.get());
+    }
+
+    /**
+     * 写入一批订单，按下单日期分区各生成一个新段
+     * 调用方在写入成功后才能从数据库删除这些订单
+     */
+    public synchronized void append(List<ArchivedOrder> orders) {
+        if (orders.isEmpty()) {
+            return;
+        }
+        Map<String, List<ArchivedOrder>> partitions = new TreeMap<>();
+        for (ArchivedOrder archived : orders) {
+            partitions.computeIfAbsent(partitionOf(archived.order()), k -> new ArrayList<>()).add(archived);
+        }
+        List<ArchiveSegment> written = new ArrayList<>();
+        try {
+            for (Map.Entry<String, List<ArchivedOrder>> partition : partitions.entrySet()) {
+                List<ArchivedOrder> sorted = new ArrayList<>(partition.getValue());
+                sorted.sort(Comparator.comparingLong(archived -> archived.order().getId()));
+                Path partitionDirectory = directory.resolve(partition.getKey());
+                Files.createDirectories(partitionDirectory);
+                Path file = partitionDirectory.resolve(System.currentTimeMillis() + "-"
+                        + segmentSequence.incrementAndGet() + ArchiveSegment.SEGMENT_SUFFIX);
+                written.add(ArchiveSegment.write(file, sorted, BLOCK_SIZE));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("写入订单归档失败: " + e.getMessage(), e);
+        } finally {
+            // 已经写成功的段照常生效
+            register(written);
+        }
+    }
+
+    public Optional<ArchivedOrder> findById(Long orderId) {
+        if (orderId == null) {
+            return Optional.empty();
+        }
+        for (ArchiveSegment.Block block : idIndex.candidates(orderId)) {
+            List<ArchivedOrder> orders = read(block);
+            int index = indexOfId(orders, orderId);
+            if (index >= 0) {
+                return Optional.of(OrderArchiveCodec.copy(orders.get(index)));
+            }
+        }
+        return Optional.empty();
+    }
+
+    // 一批订单ID中已在归档中的ID，每个候选块只解压一次
+    public Set<Long> findArchivedIds(Collection<Long> orderIds) {
+        Map<ArchiveSegment.Block, List<Long>> byBlock = new HashMap<>();
+        IdIndex index = idIndex;
+        for (Long orderId : orderIds) {
+            for (ArchiveSegment.Block block : index.candidates(orderId)) {
+                byBlock.computeIfAbsent(block, k -> new ArrayList<>()).add(orderId);
+            }
+        }
+        Set<Long> archived = new HashSet<>();
+        for (Map.Entry<ArchiveSegment.Block, List<Long>> entry : byBlock.entrySet()) {
+            List<ArchivedOrder> orders = read(entry.getKey());
+            for (Long orderId : entry.getValue()) {
+                if (indexOfId(orders, orderId) >= 0) {
+                    archived.add(orderId);
+                }
+            }
+        }
+        return archived;
+    }
+
+    public Optional<ArchivedOrder> findByOrderNo(String orderNo) {
+        if (orderNo == null) {
+            return Optional.empty();
+        }
+        long hash = BloomFilter.hash(orderNo);
+        for (ArchiveSegment.Block block : blocks) {
+            if (block.orderNos.mightContain(hash)) {
+                for (ArchivedOrder archived : read(block)) {
+                    if (orderNo.equals(archived.order().getOrderNo())) {
+                        return Optional.of(OrderArchiveCodec.copy(archived));
+                    }
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * 依次处理 [start, end) 内下单的已归档订单（导出用）
+     * 逐块读取，不经过块缓存，内存占用与范围大小无关
+     */
+    public void forEachCreatedBetween(Date start, Date end, Consumer<ArchivedOrder> action) {
+        List<ArchiveSegment.Block> inRange = new ArrayList<>();
+        for (ArchiveSegment.Block block : blocks) {
+            if (block.maxCreateTime >= start.getTime() && block.minCreateTime < end.getTime()) {
+                inRange.add(block);
+            }
+        }
+        inRange.sort(Comparator.comparingLong(block -> block.minCreateTime));
+        for (ArchiveSegment.Block block : inRange) {
+            List<ArchivedOrder> orders;
+            try {
+                orders = ArchiveSegment.readBlock(block);
+            } catch (IOException e) {
+                throw new RuntimeException("读取订单归档失败: " + e.getMessage(), e);
+            }
+            blockReads.incrementAndGet();
+            for (ArchivedOrder archived : orders) {
+                long createTime = archived.order().getCreateTime().getTime();
+                if (createTime >= start.getTime() && createTime < end.getTime()) {
+                    action.accept(archived);
+                }
+            }
+        }
+    }
+
+    /**
+     * 买家的已归档订单，按下单时间倒序取排在 (beforeTime, beforeId) 之后的前 limit 条
+     * beforeTime 为 null 时从最新的开始
+     */
+    public List<Order> findByBuyer(Long buyerId, Date beforeTime, Long beforeId, int limit) {
+        return findNewest(buyerId, block -> block.buyers, Order::getBuyerId, beforeTime, beforeId, limit);
+    }
+
+    // 卖家的已归档订单，规则同 findByBuyer
+    public List<Order> findBySeller(Long sellerId, Date beforeTime, Long beforeId, int limit) {
+        return findNewest(sellerId, block -> block.sellers, Order::getSellerId, beforeTime, beforeId, limit);
+    }
+
+    public long countByBuyer(Long buyerId) {
+        return sum(buyerCounts.get(buyerId));
+    }
+
+    public long countBySeller(Long sellerId) {
+        return sum(sellerCounts.get(sellerId));
+    }
+
+    // 买家已归档订单按状态分组的数量，格式与 OrderRepository.countByBuyerIdGroupByStatus 相同
+    public List<Object[]> countByBuyerGroupByStatus(Long buyerId) {
+        return groupByStatus(buyerCounts.get(buyerId));
+    }
+
+    // 卖家已归档订单按状态分组的数量
+    public List<Object[]> countBySellerGroupByStatus(Long sellerId) {
+        return groupByStatus(sellerCounts.get(sellerId));
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("directory", directory.toAbsolutePath().toString());
+        metrics.put("segments", segmentCount.get());
+        metrics.put("blocks", blocks.size());
+        metrics.put("archivedOrders", orderCount.get());
+        metrics.put("blockReads", blockReads.get());
+        synchronized (blockCache) {
+            metrics.put("cachedBlocks", blockCache.size());
+        }
+        return metrics;
+    }
+
+    private List<Order> findNewest(Long userId, Function<ArchiveSegment.Block, BloomFilter> filter,
+                                   Function<Order, Long> owner, Date beforeTime, Long beforeId, int limit) {
+        if (userId == null || limit <= 0) {
+            return List.of();
+        }
+        // 小顶堆：堆顶是已选中订单里最旧的一条
+        PriorityQueue<Order> newest = new PriorityQueue<>(NEWEST_FIRST.reversed());
+        for (ArchiveSegment.Block block : blocks) {
+            if (newest.size() >= limit && block.maxCreateTime < newest.peek().getCreateTime().getTime()) {
+                break;
+            }
+            if (beforeTime != null && block.minCreateTime > beforeTime.getTime()) {
+                continue;
+            }
+            if (!filter.apply(block).mightContain(userId)) {
+                continue;
+            }
+            for (ArchivedOrder archived : read(block)) {
+                Order order = archived.order();
+                if (userId.equals(owner.apply(order)) && isBefore(order, beforeTime, beforeId)) {
+                    newest.add(order);
+                    if (newest.size() > limit) {
+                        newest.poll();
+                    }
+                }
+            }
+        }
+        List<Order> result = new ArrayList<>(newest.size());
+        for (Order order : newest) {
+            result.add(OrderArchiveCodec.copy(order));
+        }
+        result.sort(NEWEST_FIRST);
+        return result;
+    }
+
+    private static boolean isBefore(Order order, Date beforeTime, Long beforeId) {
+        if (beforeTime == null) {
+            return true;
+        }
+        int compare = order.getCreateTime().compareTo(beforeTime);
+        return compare < 0 || (compare == 0 && order.getId() < beforeId);
+    }
+
+    // 块内订单按ID升序，二分查找
+    private static int indexOfId(List<ArchivedOrder> orders, long orderId) {
+        int low = 0;
+        int high = orders.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long id = orders.get(mid).order().getId();
+            if (id < orderId) {
+                low = mid + 1;
+            } else if (id > orderId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private List<ArchivedOrder> read(ArchiveSegment.Block block) {
+        synchronized (blockCache) {
+            List<ArchivedOrder> cached = blockCache.get(block);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        List<ArchivedOrder> orders;
+        try {
+            orders = ArchiveSegment.readBlock(block);
+        } catch (IOException e) {
+            throw new RuntimeException("读取订单归档失败: " + e.getMessage(), e);
+        }
+        blockReads.incrementAndGet();
+        synchronized (blockCache) {
+            blockCache.put(block, orders);
+        }
+        return orders;
+    }
+
+    private synchronized void register(List<ArchiveSegment> segments) {
+        if (segments.isEmpty()) {
+            return;
+        }
+        List<ArchiveSegment.Block> merged = new ArrayList<>(blocks);
+        for (ArchiveSegment segment : segments) {
+            merged.addAll(segment.blocks);
+            addCounts(buyerCounts, segment.buyerCounts);
+            addCounts(sellerCounts, segment.sellerCounts);
+            segmentCount.incrementAndGet();
+            orderCount.addAndGet(segment.orderCount());
+        }
+        merged.sort(Comparator.comparingLong((ArchiveSegment.Block block) -> block.maxCreateTime).reversed());
+        blocks = List.copyOf(merged);
+        idIndex = IdIndex.of(merged);
+    }
+
+    private static void addCounts(Map<Long, AtomicLongArray> target, Map<Long, long[]> source) {
+        for (Map.Entry<Long, long[]> entry : source.entrySet()) {
+            AtomicLongArray counts = target.computeIfAbsent(entry.getKey(), k -> new AtomicLongArray(STATUSES.length));
+            long[] values = entry.getValue();
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != 0) {
+                    counts.addAndGet(i, values[i]);
+                }
+            }
+        }
+    }
+
+    private static long sum(AtomicLongArray counts) {
+        long total = 0;
+        if (counts != null) {
+            for (int i = 0; i < counts.length(); i++) {
+                total += counts.get(i);
+            }
+        }
+        return total;
+    }
+
+    private static List<Object[]> groupByStatus(AtomicLongArray counts) {
+        List<Object[]> rows = new ArrayList<>();
+        if (counts != null) {
+            for (OrderStatus status : STATUSES) {
+                long count = counts.get(status.ordinal());
+                if (count > 0) {
+                    rows.add(new Object[]{status, count});
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static String partitionOf(Order order) {
+        return order.getCreateTime().toInstant().atZone(ZoneId.systemDefault()).format(PARTITION_FORMAT);
+    }
+
+    /**
+     * 按块内最小ID升序排列的块，maxIdUpTo[i] 是前 i+1 个块中最大的ID
+     * 不同段的ID范围可能重叠：二分找到最后一个最小ID不超过目标的块后向前检查，
+     * 前面的块最大ID都小于目标时停止，ID范围不重叠时只检查一个块。
+     */
+    private static final class IdIndex {
+        private final ArchiveSegment.Block[] blocks;
+        private final long[] minIds;
+        private final long[] maxIdUpTo;
+
+        private IdIndex(ArchiveSegment.Block[] blocks) {
+            this.blocks = blocks;
+            this.minIds = new long[blocks.length];
+            this.maxIdUpTo = new long[blocks.length];
+            long maxId = Long.MIN_VALUE;
+            for (int i = 0; i < blocks.length; i++) {
+                minIds[i] = blocks[i].minId;
+                maxId = Math.max(maxId, blocks[i].maxId);
+                maxIdUpTo[i] = maxId;
+            }
+        }
+
+        static IdIndex of(List<ArchiveSegment.Block> blocks) {
+            ArchiveSegment.Block[] sorted = blocks.toArray(new ArchiveSegment.Block[0]);
+            Arrays.sort(sorted, Comparator.comparingLong(block -> block.minId));
+            return new IdIndex(sorted);
+        }
+
+        // 可能包含该ID的块（ID范围覆盖且布隆过滤器命中）
+        List<ArchiveSegment.Block> candidates(long orderId) {
+            int low = 0;
+            int high = minIds.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (minIds[mid] <= orderId) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            List<ArchiveSegment.Block> result = new ArrayList<>(1);
+            for (int i = high; i >= 0 && maxIdUpTo[i] >= orderId; i--) {
+                if (blocks[i].mightContainId(orderId)) {
+                    result.add(blocks[i]);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.kb.trading.archive;
+import com.kb.trading.entity.Order;
+import com.kb.trading.entity.OrderItem;
+import com.kb.trading.entity.OrderStatus;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 归档块的二进制编码：一个块是若干订单（含订单项）按字段顺序写出后整体 gzip 压缩。
+ * 可空字段前面写一个 boolean 标记；调整字段时需要升级 FORMAT_VERSION 并兼容旧版本。
+ */
+final class OrderArchiveCodec {
+    private static final int FORMAT_VERSION = 1;
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+
+    private OrderArchiveCodec() {
+    }
+
+    static byte[] encodeBlock(List<ArchivedOrder> orders) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(orders.size());
+            for (ArchivedOrder archived : orders) {
+                writeArchived(out, archived);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static List<ArchivedOrder> decodeBlock(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(data)))) {
+            int version = in.readByte();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("不支持的归档格式版本: " + version);
+            }
+            int count = in.readInt();
+            List<ArchivedOrder> orders = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                orders.add(readArchived(in));
+            }
+            return orders;
+        }
+    }
+
+    // 深拷贝一条订单及其订单项（按相同字段写出再读回，不压缩），用于返回缓存中的订单
+    static ArchivedOrder copy(ArchivedOrder archived) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                writeArchived(out, archived);
+            }
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                return readArchived(in);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("复制归档订单失败: " + e.getMessage(), e);
+        }
+    }
+
+    // 深拷贝一条订单（不含订单项）
+    static Order copy(Order order) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                writeOrder(out, order);
+            }
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                return readOrder(in);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("复制归档订单失败: " + e.getMessage(), e);
+        }
+    }
+
+    private static void writeArchived(DataOutputStream out, ArchivedOrder archived) throws IOException {
+        writeOrder(out, archived.order());
+        out.writeInt(archived.items().size());
+        for (OrderItem item : archived.items()) {
+            writeItem(out, item);
+        }
+    }
+
+    private static ArchivedOrder readArchived(DataInputStream in) throws IOException {
+        Order order = readOrder(in);
+        int itemCount = in.readInt();
+        List<OrderItem> items = new ArrayList<>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            items.add(readItem(in));
+        }
+        return new ArchivedOrder(order, items);
+    }
+
+    private static void writeOrder(DataOutputStream out, Order order) throws IOException {
+        writeLong(out, order.getId());
+        writeDate(out, order.getCreateTime());
+        writeDate(out, order.getUpdateTime());
+        writeString(out, order.getOrderNo());
+        writeLong(out, order.getBuyerId());
+        writeString(out, order.getBuyerName());
+        writeLong(out, order.getSellerId());
+        writeString(out, order.getSellerName());
+        writeDecimal(out, order.getTotalAmount());
+        writeDecimal(out, order.getDiscountAmount());
+        writeDecimal(out, order.getPayableAmount());
+        out.writeByte(order.getStatus().ordinal());
+        writeString(out, order.getBuyerAddress());
+        writeString(out, order.getBuyerPhone());
+        writeString(out, order.getBuyerNote());
+        writeString(out, order.getSellerNote());
+        writeDate(out, order.getPaymentTime());
+        writeDate(out, order.getShippingTime());
+        writeDate(out, order.getDeliveryTime());
+        writeDate(out, order.getCompletedTime());
+        writeString(out, order.getShippingCompany());
+        writeString(out, order.getTrackingNumber());
+        writeString(out, order.getCancelReason());
+        writeDecimal(out, order.getRefundAmount());
+        writeString(out, order.getRefundReason());
+    }
+
+    private static Order readOrder(DataInputStream in) throws IOException {
+        Order order = new Order();
+        order.setId(readLong(in));
+        order.setCreateTime(readDate(in));
+        order.setUpdateTime(readDate(in));
+        order.setOrderNo(readString(in));
+        order.setBuyerId(readLong(in));
+        order.setBuyerName(readString(in));
+        order.setSellerId(readLong(in));
+        order.setSellerName(readString(in));
+        order.setTotalAmount(readDecimal(in));
+        order.setDiscountAmount(readDecimal(in));
+        order.setPayableAmount(readDecimal(in));
+        order.setStatus(STATUSES[in.readByte()]);
+        order.setBuyerAddress(readString(in));
+        order.setBuyerPhone(readString(in));
+        order.setBuyerNote(readString(in));
+        order.setSellerNote(readString(in));
+        order.setPaymentTime(readDate(in));
+        order.setShippingTime(readDate(in));
+        order.setDeliveryTime(readDate(in));
+        order.setCompletedTime(readDate(in));
+        order.setShippingCompany(readString(in));
+        order.setTrackingNumber(readString(in));
+        order.setCancelReason(readString(in));
+        order.setRefundAmount(readDecimal(in));
+        order.setRefundReason(readString(in));
+        return order;
+    }
+
+    private static void writeItem(DataOutputStream out, OrderItem item) throws IOException {
+        writeLong(out, item.getId());
+        writeDate(out, item.getCreateTime());
+        writeDate(out, item.getUpdateTime());
+        writeLong(out, item.getOrderId());
+        writeLong(out, item.getProductId());
+        writeString(out, item.getProductTitle());
+        writeString(out, item.getProductImage());
+        writeDecimal(out, item.getUnitPrice());
+        out.writeBoolean(item.getQuantity() != null);
+        if (item.getQuantity() != null) {
+            out.writeInt(item.getQuantity());
+        }
+        writeDecimal(out, item.getSubtotal());
+        writeString(out, item.getProductSpec());
+    }
+
+    private static OrderItem readItem(DataInputStream in) throws IOException {
+        OrderItem item = new OrderItem();
+        item.setId(readLong(in));
+        item.setCreateTime(readDate(in));
+        item.setUpdateTime(readDate(in));
+        item.setOrderId(readLong(in));
+        item.setProductId(readLong(in));
+        item.setProductTitle(readString(in));
+        item.setProductImage(readString(in));
+        item.setUnitPrice(readDecimal(in));
+        item.setQuantity(in.readBoolean() ? in.readInt() : null);
+        item.setSubtotal(readDecimal(in));
+        item.setProductSpec(readString(in));
+        return item;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static Long readLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private static void writeDate(DataOutputStream out, Date value) throws IOException {
+        writeLong(out, value != null ? value.getTime() : null);
+    }
+
+    private static Date readDate(DataInputStream in) throws IOException {
+        Long time = readLong(in);
+        return time != null ? new Date(time) : null;
+    }
+
+    // 金额按 (scale, 非标度值) 写出，precision 10 的金额总能放进 long
+    private static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeByte(value.scale());
+            out.writeLong(value.unscaledValue().longValueExact());
+        }
+    }
+
+    private static BigDecimal readDecimal(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        int scale = in.readByte();
+        return new BigDecimal(BigInteger.valueOf(in.readLong()), scale);
+    }
+}
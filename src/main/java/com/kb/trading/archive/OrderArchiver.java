@@ -0,0 +1,133 @@
+package com.kb.trading.archive;
+import com.kb.trading.entity.Order;
+import com.kb.trading.entity.OrderItem;
+import com.kb.trading.entity.OrderStatus;
+import com.kb.trading.repository.OrderItemRepository;
+import com.kb.trading.repository.OrderRepository;
+import com.kb.trading.service.OrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 订单归档任务
+ * 定期把最后变更早于 archive-after 的终态订单（已完成/已取消/已退款）连同订单项写入归档，
+ * 写入成功后再从订单表删除，使订单表只保留活跃订单。
+ * 写归档与删除之间中断时，下次运行会发现订单已在归档中，直接删除即可，不会重复归档。
+ */
+@Component
+@Slf4j
+public class OrderArchiver {
+    public static final List<OrderStatus> ARCHIVABLE_STATUSES =
+            List.of(OrderStatus.COMPLETED, OrderStatus.CANCELLED, OrderStatus.REFUNDED);
+
+    private final OrderArchive orderArchive;
+    private final OrderRepository orderRepository;
+    private final OrderItemRepository orderItemRepository;
+    private final OrderService orderService;
+    private final boolean enabled;
+    private final Duration archiveAfter;
+    private final int batchSize;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong totalArchived = new AtomicLong();
+    private final AtomicLong lastRunAt = new AtomicLong();
+    private final AtomicLong lastRunArchived = new AtomicLong();
+    private final AtomicLong lastRunMs = new AtomicLong();
+
+    public OrderArchiver(OrderArchive orderArchive,
+                         OrderRepository orderRepository,
+                         OrderItemRepository orderItemRepository,
+                         OrderService orderService,
+                         @Value("${trading.order.archive.enabled:true}") boolean enabled,
+                         @Value("${trading.order.archive.archive-after:180d}") Duration archiveAfter,
+                         @Value("${trading.order.archive.batch-size:1000}") int batchSize) {
+        this.orderArchive = orderArchive;
+        this.orderRepository = orderRepository;
+        this.orderItemRepository = orderItemRepository;
+        this.orderService = orderService;
+        this.enabled = enabled;
+        this.archiveAfter = archiveAfter;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(cron = "${trading.order.archive.cron:0 30 3 * * *}")
+    public void scheduledArchive() {
+        if (enabled) {
+            archive();
+        }
+    }
+
+    // 执行一次归档，返回归档的订单数
+    public int archive() {
+        if (!running.compareAndSet(false, true)) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        Date updatedBefore = new Date(start - archiveAfter.toMillis());
+        int archived = 0;
+        try {
+            long afterId = 0;
+            List<Long> orderIds;
+            do {
+                orderIds = orderRepository.findArchivableIds(ARCHIVABLE_STATUSES, updatedBefore, afterId,
+                        Limit.of(batchSize));
+                if (orderIds.isEmpty()) {
+                    break;
+                }
+                afterId = orderIds.get(orderIds.size() - 1);
+                archived += archiveBatch(orderIds, updatedBefore);
+            } while (orderIds.size() == batchSize);
+        } catch (Exception e) {
+            log.warn("订单归档中断，下次继续: 已归档={}, 原因={}", archived, e.getMessage());
+        } finally {
+            running.set(false);
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        totalArchived.addAndGet(archived);
+        lastRunAt.set(start);
+        lastRunArchived.set(archived);
+        lastRunMs.set(elapsed);
+        log.info("订单归档完成: 归档={}, 耗时={}ms", archived, elapsed);
+        return archived;
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>(orderArchive.getMetrics());
+        metrics.put("enabled", enabled);
+        metrics.put("archiveAfter", archiveAfter.toString());
+        metrics.put("running", running.get());
+        metrics.put("totalArchived", totalArchived.get());
+        metrics.put("lastRunAt", lastRunAt.get() > 0 ? new Date(lastRunAt.get()) : null);
+        metrics.put("lastRunArchived", lastRunArchived.get());
+        metrics.put("lastRunMs", lastRunMs.get());
+        return metrics;
+    }
+
+    private int archiveBatch(List<Long> orderIds, Date updatedBefore) {
+        Map<Long, List<OrderItem>> itemsByOrder = orderItemRepository.findByOrderIds(orderIds).stream()
+                .collect(Collectors.groupingBy(OrderItem::getOrderId));
+        Set<Long> alreadyArchived = orderArchive.findArchivedIds(orderIds);
+        List<ArchivedOrder> fresh = new ArrayList<>();
+        for (Order order : orderRepository.findAllById(orderIds)) {
+            if (!alreadyArchived.contains(order.getId())) {
+                fresh.add(new ArchivedOrder(order, itemsByOrder.getOrDefault(order.getId(), List.of())));
+            }
+        }
+        orderArchive.append(fresh);
+        return orderService.purgeArchivedOrders(orderIds, ARCHIVABLE_STATUSES, updatedBefore);
+    }
+}
@@ -0,0 +1,416 @@
+package com.kb.trading.cache;
+import com.kb.trading.entity.CartItem;
+import com.kb.trading.event.ProductChangedEvent;
+import com.kb.trading.repository.CartItemRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 购物车内存存储（写回）
+ * 活跃用户的购物车按 userId 分片保存在内存中，读写都直接访问内存；
+ * 修改只标记为待写入，由定时任务把一个刷新周期内的所有修改合并后批量写入 cart_item
+ * （每个用户每个周期最多一次写入，多次修改同一行只写最后的结果），应用关闭时再刷新一次。
+ * 未在内存中的用户首次访问时从数据库加载，启动时预热最近有变动的购物车，
+ * 长时间未访问且已落库的购物车会被移出内存。
+ * 新行同样在刷新时按 (user_id, product_id) 批量插入，取回数据库生成的ID；修改和删除按主键和 user_id 落库，
+ * 不会覆盖其他用户的行。
+ * 每次修改都会更新该用户的购物车版本号（UserVersionStamps），供读取接口做条件请求。
+ * 商品价格、标题或主图变更时，一个同步周期内同一商品的多次变更合并为一次：
+ * 先按 product_id 批量更新 cart_item，再按商品到购物车的索引只更新内存中包含该商品的购物车
+ * （内存中的行不再标记为待写入），购物车中缓存的商品信息始终可信。
+ * 注意：
+ * 1. 进程异常退出（未执行关闭流程）时最多丢失一个刷新周期内的修改；
+ * 2. 购物车状态以本节点内存为准，多节点部署时需要按 userId 把请求路由到固定节点。
+ */
+@Component
+@Slf4j
+public class CartStore {
+    private static final int SHARD_COUNT = 16;
+    private static final int PRELOAD_BATCH_SIZE = 1000;
+
+    private final CartItemRepository cartItemRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final UserVersionStamps versionStamps;
+    private final Duration idleTimeout;
+    private final Duration preloadWindow;
+    private final int flushBatchSize;
+
+    private final Shard[] shards = new Shard[SHARD_COUNT];
+    private final Object flushLock = new Object();
+
+    // 监控指标
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong flushFailures = new AtomicLong();
+    private final AtomicLong lastFlushMs = new AtomicLong();
+    private final AtomicLong productSyncs = new AtomicLong();
+    private final AtomicLong productSyncedRows = new AtomicLong();
+
+    // 商品ID -> 内存中包含该商品的购物车；行删除后不立即移出，同步时发现已不包含该商品再移出
+    private final Map<Long, Set<UserCart>> cartsByProduct = new ConcurrentHashMap<>();
+
+    // 待同步到购物车的商品变更（同一商品只保留最后一次）
+    private final Map<Long, ProductChangedEvent> pendingProductChanges = new ConcurrentHashMap<>();
+
+    public CartStore(CartItemRepository cartItemRepository,
+                     TransactionTemplate transactionTemplate,
+                     UserVersionStamps versionStamps,
+                     @Value("${trading.cart.idle-timeout:30m}") Duration idleTimeout,
+                     @Value("${trading.cart.preload-window:1d}") Duration preloadWindow,
+                     @Value("${trading.cart.flush-batch-size:500}") int flushBatchSize) {
+        this.cartItemRepository = cartItemRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.versionStamps = versionStamps;
+        this.idleTimeout = idleTimeout;
+        this.preloadWindow = preloadWindow;
+        this.flushBatchSize = flushBatchSize;
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    // 启动时预热最近有变动的购物车
+    @PostConstruct
+    public void init() {
+        Date since = new Date(System.currentTimeMillis() - preloadWindow.toMillis());
+        List<Long> userIds = cartItemRepository.findUserIdsUpdatedSince(since);
+        for (int from = 0; from < userIds.size(); from += PRELOAD_BATCH_SIZE) {
+            List<Long> batch = userIds.subList(from, Math.min(from + PRELOAD_BATCH_SIZE, userIds.size()));
+            Map<Long, UserCart> carts = new HashMap<>();
+            for (CartItem item : cartItemRepository.findByUserIdIn(batch)) {
+                UserCart cart = carts.computeIfAbsent(item.getUserId(), this::newCart);
+                cart.load(item);
+                index(item.getProductId(), cart);
+            }
+            carts.forEach((userId, cart) -> shardOf(userId).carts.put(userId, cart));
+        }
+        log.info("购物车内存存储已启动: 预热用户数={}", userIds.size());
+    }
+
+    // 读取用户购物车（持有该用户的锁）
+    public <T> T read(Long userId, Function<UserCart, T> action) {
+        while (true) {
+            UserCart cart = getOrLoad(userId);
+            synchronized (cart) {
+                if (cart.evicted) {
+                    continue;
+                }
+                cart.lastAccess = System.currentTimeMillis();
+                return action.apply(cart);
+            }
+        }
+    }
+
+    // 修改用户购物车（持有该用户的锁），有待写入的修改时登记，有任何修改时更新版本号
+    public <T> T update(Long userId, Function<UserCart, T> action) {
+        while (true) {
+            UserCart cart = getOrLoad(userId);
+            synchronized (cart) {
+                if (cart.evicted) {
+                    continue;
+                }
+                cart.lastAccess = System.currentTimeMillis();
+                int modCount = cart.modCount();
+                try {
+                    return action.apply(cart);
+                } finally {
+                    if (cart.hasChanges()) {
+                        shardOf(userId).dirty.add(userId);
+                    }
+                    if (cart.modCount() != modCount) {
+                        versionStamps.bump(UserVersionStamps.Scope.CART, userId);
+                    }
+                }
+            }
+        }
+    }
+
+    // 用户购物车是否已在内存中
+    public boolean isLoaded(Long userId) {
+        return shardOf(userId).carts.containsKey(userId);
+    }
+
+    // 定时把修改合并写入数据库，并移出空闲的购物车
+    @Scheduled(fixedDelayString = "${trading.cart.flush-interval:1s}")
+    public void flush() {
+        synchronized (flushLock) {
+            long start = System.currentTimeMillis();
+            for (Shard shard : shards) {
+                flushShard(shard);
+            }
+            evictIdle(start);
+            lastFlushMs.set(System.currentTimeMillis() - start);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        pendingProductChanges.put(event.productId(), event);
+    }
+
+    // 定时把商品变更同步到购物车
+    // 持有 flushLock：先更新数据库再更新内存，期间不会有携带旧价格的写入覆盖数据库
+    @Scheduled(fixedDelayString = "${trading.cart.product-sync-interval:500ms}")
+    public void syncProductChanges() {
+        if (pendingProductChanges.isEmpty()) {
+            return;
+        }
+        Map<Long, ProductChangedEvent> changes = new HashMap<>();
+        for (Long productId : pendingProductChanges.keySet()) {
+            ProductChangedEvent change = pendingProductChanges.remove(productId);
+            if (change != null) {
+                changes.put(productId, change);
+            }
+        }
+        synchronized (flushLock) {
+            int rows;
+            try {
+                rows = transactionTemplate.execute(status ->
+                        cartItemRepository.batchUpdateProductInfo(new ArrayList<>(changes.values())));
+            } catch (Exception e) {
+                log.warn("商品变更同步到购物车失败，稍后重试: 商品数={}, 原因={}", changes.size(), e.getMessage());
+                changes.forEach(pendingProductChanges::putIfAbsent);
+                return;
+            }
+            for (ProductChangedEvent change : changes.values()) {
+                Set<UserCart> carts = cartsByProduct.get(change.productId());
+                if (carts == null) {
+                    continue;
+                }
+                for (UserCart cart : carts) {
+                    synchronized (cart) {
+                        int index = cart.evicted ? -1 : cart.indexOfProduct(change.productId());
+                        if (index < 0) {
+                            unindex(change.productId(), cart);
+                            continue;
+                        }
+                        cart.setProduct(index, change.price(), change.title(), change.mainImage());
+                        versionStamps.bump(UserVersionStamps.Scope.CART, cart.getUserId());
+                    }
+                }
+            }
+            productSyncs.addAndGet(changes.size());
+            productSyncedRows.addAndGet(rows);
+        }
+    }
+
+    // 应用关闭时写入所有未落库的修改
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        long pending = 0;
+        for (Shard shard : shards) {
+            pending += shard.dirty.size();
+        }
+        if (pending > 0) {
+            log.error("购物车关闭时仍有 {} 个用户的修改未能写入数据库", pending);
+        } else {
+            log.info("购物车修改已全部写入数据库");
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        long carts = 0;
+        long dirty = 0;
+        for (Shard shard : shards) {
+            carts += shard.carts.size();
+            dirty += shard.dirty.size();
+        }
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("cachedCarts", carts);
+        metrics.put("dirtyCarts", dirty);
+        metrics.put("loads", loads.get());
+        metrics.put("evictions", evictions.get());
+        metrics.put("flushes", flushes.get());
+        metrics.put("flushedRows", flushedRows.get());
+        metrics.put("flushFailures", flushFailures.get());
+        metrics.put("lastFlushMs", lastFlushMs.get());
+        metrics.put("pendingProductChanges", pendingProductChanges.size());
+        metrics.put("productSyncs", productSyncs.get());
+        metrics.put("productSyncedRows", productSyncedRows.get());
+        return metrics;
+    }
+
+    private UserCart getOrLoad(Long userId) {
+        Shard shard = shardOf(userId);
+        UserCart cart = shard.carts.get(userId);
+        if (cart != null) {
+            return cart;
+        }
+        UserCart loaded = newCart(userId);
+        for (CartItem item : cartItemRepository.findByUserId(userId)) {
+            loaded.load(item);
+            index(item.getProductId(), loaded);
+        }
+        loads.incrementAndGet();
+        UserCart existing = shard.carts.putIfAbsent(userId, loaded);
+        if (existing == null) {
+            return loaded;
+        }
+        // 其他线程已加载，丢弃本次加载的购物车
+        loaded.evicted = true;
+        for (int i = 0; i < loaded.size(); i++) {
+            unindex(loaded.productId(i), loaded);
+        }
+        return existing;
+    }
+
+    private void flushShard(Shard shard) {
+        if (shard.dirty.isEmpty()) {
+            return;
+        }
+        Map<UserCart, UserCart.Changes> pending = new LinkedHashMap<>();
+        Iterator<Long> iterator = shard.dirty.iterator();
+        while (iterator.hasNext()) {
+            Long userId = iterator.next();
+            iterator.remove();
+            UserCart cart = shard.carts.get(userId);
+            if (cart == null) {
+                continue;
+            }
+            synchronized (cart) {
+                UserCart.Changes changes = cart.drainChanges();
+                if (!changes.isEmpty()) {
+                    pending.put(cart, changes);
+                }
+            }
+            if (pending.size() >= flushBatchSize) {
+                write(shard, pending);
+                pending = new LinkedHashMap<>();
+            }
+        }
+        write(shard, pending);
+    }
+
+    // 一批用户的修改在一个事务中写入：先删除，再插入新行，最后更新
+    private void write(Shard shard, Map<UserCart, UserCart.Changes> pending) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<Long, List<Long>> deletes = new HashMap<>();
+        List<CartItem> inserts = new ArrayList<>();
+        List<CartItem> updates = new ArrayList<>();
+        int rows = 0;
+        for (Map.Entry<UserCart, UserCart.Changes> entry : pending.entrySet()) {
+            UserCart.Changes changes = entry.getValue();
+            if (!changes.deletes().isEmpty()) {
+                deletes.put(entry.getKey().getUserId(), changes.deletes());
+            }
+            inserts.addAll(changes.inserts());
+            updates.addAll(changes.updates());
+            rows += changes.deletes().size() + changes.inserts().size() + changes.updates().size();
+        }
+        long[] ids;
+        try {
+            ids = transactionTemplate.execute(status -> {
+                cartItemRepository.batchDeleteByIds(deletes);
+                long[] inserted = cartItemRepository.batchUpsertItems(inserts);
+                cartItemRepository.batchUpdateItems(updates);
+                return inserted;
+            });
+            flushes.incrementAndGet();
+            flushedRows.addAndGet(rows);
+        } catch (Exception e) {
+            flushFailures.incrementAndGet();
+            log.warn("购物车写入数据库失败，稍后重试: 用户数={}, 原因={}", pending.size(), e.getMessage());
+            for (Map.Entry<UserCart, UserCart.Changes> entry : pending.entrySet()) {
+                UserCart cart = entry.getKey();
+                synchronized (cart) {
+                    cart.restoreChanges(entry.getValue());
+                }
+                shard.dirty.add(cart.getUserId());
+            }
+            return;
+        }
+
+        // 临时ID换成数据库ID；插入期间被删除的行现在才能按ID删除
+        int offset = 0;
+        for (Map.Entry<UserCart, UserCart.Changes> entry : pending.entrySet()) {
+            List<CartItem> cartInserts = entry.getValue().inserts();
+            if (cartInserts.isEmpty()) {
+                continue;
+            }
+            UserCart cart = entry.getKey();
+            synchronized (cart) {
+                cart.assignIds(cartInserts, Arrays.copyOfRange(ids, offset, offset + cartInserts.size()));
+                if (cart.hasChanges()) {
+                    shard.dirty.add(cart.getUserId());
+                }
+            }
+            versionStamps.bump(UserVersionStamps.Scope.CART, cart.getUserId());
+            offset += cartInserts.size();
+        }
+    }
+
+    // 移出长时间未访问且没有待写入修改的购物车
+    private void evictIdle(long now) {
+        long idleBefore = now - idleTimeout.toMillis();
+        for (Shard shard : shards) {
+            for (UserCart cart : shard.carts.values()) {
+                if (cart.lastAccess >= idleBefore) {
+                    continue;
+                }
+                synchronized (cart) {
+                    if (cart.lastAccess < idleBefore && !cart.hasChanges() && !shard.dirty.contains(cart.getUserId())) {
+                        cart.evicted = true;
+                        shard.carts.remove(cart.getUserId(), cart);
+                        for (int i = 0; i < cart.size(); i++) {
+                            unindex(cart.productId(i), cart);
+                        }
+                        evictions.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    private UserCart newCart(Long userId) {
+        return new UserCart(userId, (cart, productId) -> index(productId, cart));
+    }
+
+    private void index(Long productId, UserCart cart) {
+        cartsByProduct.compute(productId, (k, carts) -> {
+            Set<UserCart> result = carts != null ? carts : ConcurrentHashMap.<UserCart>newKeySet();
+            result.add(cart);
+            return result;
+        });
+    }
+
+    private void unindex(Long productId, UserCart cart) {
+        cartsByProduct.computeIfPresent(productId, (k, carts) -> {
+            carts.remove(cart);
+            return carts.isEmpty() ? null : carts;
+        });
+    }
+
+    private Shard shardOf(Long userId) {
+        long hash = userId * 0x9E3779B97F4A7C15L;
+        return shards[(int) (hash >>> 60) & (SHARD_COUNT - 1)];
+    }
+
+    private static final class Shard {
+        private final Map<Long, UserCart> carts = new ConcurrentHashMap<>();
+        private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    }
+}
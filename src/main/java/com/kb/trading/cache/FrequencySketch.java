@@ -0,0 +1,79 @@
+package com.kb.trading.cache;
+
+/**
+ * 访问频率估计（Count-Min Sketch，4位计数器）
+ * 每个 long 存 16 个 4 位计数器，一个键在 4 个位置各有一个计数器，取最小值作为频率估计（最大15）。
+ * 累计增加次数达到表大小的 10 倍时所有计数器减半，让频率随时间衰减，过去的热点不会一直占着缓存。
+ * 非线程安全，由调用方加锁。
+ */
+final class FrequencySketch {
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int expectedEntries) {
+        int size = Integer.highestOneBit(Math.max(16, expectedEntries - 1)) << 1;
+        table = new long[size];
+        tableMask = size - 1;
+        sampleSize = size * 10;
+    }
+
+    int frequency(long key) {
+        int hash = spread(key);
+        int frequency = 15;
+        for (int i = 0; i < 4; i++) {
+            int shift = offsetOf(hash, i) << 2;
+            frequency = Math.min(frequency, (int) ((table[indexOf(hash, i)] >>> shift) & 0xfL));
+        }
+        return frequency;
+    }
+
+    void increment(long key) {
+        int hash = spread(key);
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), offsetOf(hash, i));
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int offset) {
+        int shift = offset << 2;
+        long mask = 0xfL << shift;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << shift;
+            return true;
+        }
+        return false;
+    }
+
+    // 所有计数器减半
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int) h & tableMask;
+    }
+
+    private static int offsetOf(int hash, int i) {
+        return (hash >>> (i << 3)) & 0xf;
+    }
+
+    private static int spread(long key) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
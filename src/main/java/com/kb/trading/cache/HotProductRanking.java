@@ -0,0 +1,221 @@
+package com.kb.trading.cache;
+import com.kb.trading.dto.HotProduct;
+import com.kb.trading.entity.OrderItem;
+import com.kb.trading.entity.OrderStatus;
+import com.kb.trading.entity.Product;
+import com.kb.trading.event.OrderChangedEvent;
+import com.kb.trading.event.ProductFavoritedEvent;
+import com.kb.trading.event.ProductSavedEvent;
+import com.kb.trading.repository.FavoriteRepository;
+import com.kb.trading.repository.OrderItemRepository;
+import com.kb.trading.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 热门商品排行（浏览、收藏、销量）
+ * 每个排行是一个有界 Top-K 计数器（见 TopKCounter），启动时从数据库加载各项计数最高的商品，
+ * 之后按增量维护：浏览次数在 ProductViewCounter 写库后累加，收藏在事务提交后累加；
+ * 销量只统计已付款的订单，订单付款后累加，已付款的订单取消、退款或删除后扣减，未付款就取消的订单不计入。
+ * 排行中的商品另外缓存一份展示用的卡片字段，查询热门商品只遍历前几名、拼装卡片，不访问数据库。
+ * 卡片由商品保存事件即时更新，并定时整体刷新一次（售出导致的状态变化不发事件，靠定时刷新更正）；
+ * 新进入排行、尚无卡片的商品在下次刷新后才会展示。只展示上架中的商品。
+ * 注意：排行在单个节点的内存中，多节点部署时每个节点只累加本节点的浏览、收藏和订单，重启时从数据库重新加载。
+ */
+@Component
+@Slf4j
+public class HotProductRanking {
+    public enum Metric {
+        VIEWS,
+        FAVORITES,
+        SALES
+    }
+
+    public static final int MAX_LIMIT = 100;
+
+    private static final int CARD_BATCH_SIZE = 1000;
+
+    // 计入销量的订单状态：已付款，且未取消、未退款
+    private static final Set<OrderStatus> SOLD_STATUSES = EnumSet.of(OrderStatus.PAID, OrderStatus.SHIPPED,
+            OrderStatus.DELIVERED, OrderStatus.COMPLETED, OrderStatus.REFUNDING);
+
+    // 卡片字段（不含描述和图片列表）
+    private record Card(String title, BigDecimal price, String mainImage, String location, Integer status) {
+
+        boolean isOnSale() {
+            return status != null && status == 1;
+        }
+    }
+
+    private final ProductRepository productRepository;
+    private final FavoriteRepository favoriteRepository;
+    private final OrderItemRepository orderItemRepository;
+    private final int capacity;
+
+    private final Map<Metric, TopKCounter> counters = new EnumMap<>(Metric.class);
+    private final Map<Long, Card> cards = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    // 监控指标
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong cardRefreshes = new AtomicLong();
+    private final AtomicLong lastRefreshMs = new AtomicLong();
+
+    public HotProductRanking(ProductRepository productRepository,
+                             FavoriteRepository favoriteRepository,
+                             OrderItemRepository orderItemRepository,
+                             @Value("${trading.product.hot.capacity:1000}") int capacity) {
+        this.productRepository = productRepository;
+        this.favoriteRepository = favoriteRepository;
+        this.orderItemRepository = orderItemRepository;
+        this.capacity = Math.max(capacity, MAX_LIMIT);
+        for (Metric metric : Metric.values()) {
+            counters.put(metric, new TopKCounter(this.capacity));
+        }
+    }
+
+    // 启动时从数据库加载各排行的初始计数和卡片
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long start = System.currentTimeMillis();
+        for (Object[] row : productRepository.findTopViewed(Limit.of(capacity))) {
+            counters.get(Metric.VIEWS).seed((Long) row[0], ((Number) row[1]).longValue());
+        }
+        for (Object[] row : favoriteRepository.findHotFavoriteProducts(PageRequest.of(0, capacity))) {
+            counters.get(Metric.FAVORITES).seed((Long) row[0], ((Number) row[1]).longValue());
+        }
+        for (Object[] row : orderItemRepository.findTopSoldProducts(SOLD_STATUSES, Limit.of(capacity))) {
+            counters.get(Metric.SALES).seed((Long) row[0], ((Number) row[1]).longValue());
+        }
+        refreshCards();
+        ready = true;
+        log.info("热门商品排行已加载: 浏览={}, 收藏={}, 销量={}, 耗时={}ms",
+                counters.get(Metric.VIEWS).size(), counters.get(Metric.FAVORITES).size(),
+                counters.get(Metric.SALES).size(), System.currentTimeMillis() - start);
+    }
+
+    // 加载完成前排行不完整，调用方应回退到数据库查询
+    public boolean isReady() {
+        return ready;
+    }
+
+    // 浏览次数写库后累加（由 ProductViewCounter 调用）
+    public void recordViews(List<Long> productIds, List<Long> deltas) {
+        TopKCounter counter = counters.get(Metric.VIEWS);
+        for (int i = 0; i < productIds.size(); i++) {
+            counter.add(productIds.get(i), deltas.get(i));
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductFavorited(ProductFavoritedEvent event) {
+        counters.get(Metric.FAVORITES).add(event.productId(), event.delta());
+    }
+
+    // 订单进入已付款状态时累加销量，已付款的订单取消、退款或删除时扣减
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderChanged(OrderChangedEvent event) {
+        boolean wasSold = event.previousStatus() != null && SOLD_STATUSES.contains(event.previousStatus());
+        boolean isSold = event.currentStatus() != null && SOLD_STATUSES.contains(event.currentStatus());
+        if (wasSold == isSold) {
+            return;
+        }
+        TopKCounter counter = counters.get(Metric.SALES);
+        for (OrderItem item : orderItemRepository.findByOrderId(event.order().getId())) {
+            counter.add(item.getProductId(), isSold ? item.getQuantity() : -item.getQuantity());
+        }
+    }
+
+    // 排行中的商品修改、上下架后更新卡片
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductSaved(ProductSavedEvent event) {
+        Product product = event.product();
+        if (cards.containsKey(product.getId())) {
+            cards.put(product.getId(), new Card(product.getTitle(), product.getPrice(),
+                    product.getMainImage(), product.getLocation(), product.getStatus()));
+        }
+    }
+
+    // 定时刷新排行中全部商品的卡片：补上新进入排行的商品，移除已离开排行的商品
+    @Scheduled(fixedDelayString = "${trading.product.hot.card-refresh-interval:10s}",
+            initialDelayString = "${trading.product.hot.card-refresh-interval:10s}")
+    public void refreshCards() {
+        long start = System.currentTimeMillis();
+        Set<Long> tracked = new HashSet<>();
+        for (TopKCounter counter : counters.values()) {
+            tracked.addAll(counter.ids());
+        }
+        List<Long> ids = new ArrayList<>(tracked);
+        for (int from = 0; from < ids.size(); from += CARD_BATCH_SIZE) {
+            List<Long> batch = ids.subList(from, Math.min(from + CARD_BATCH_SIZE, ids.size()));
+            Set<Long> found = new HashSet<>();
+            for (Object[] row : productRepository.findHotCardsByIds(batch)) {
+                Long id = (Long) row[0];
+                found.add(id);
+                cards.put(id, new Card((String) row[1], (BigDecimal) row[2], (String) row[3],
+                        (String) row[4], (Integer) row[5]));
+            }
+            // 数据库中已不存在的商品移出排行
+            for (Long id : batch) {
+                if (!found.contains(id)) {
+                    counters.values().forEach(counter -> counter.remove(id));
+                }
+            }
+        }
+        cards.keySet().retainAll(tracked);
+        cardRefreshes.incrementAndGet();
+        lastRefreshMs.set(System.currentTimeMillis() - start);
+    }
+
+    // 取前 limit 名上架中的商品卡片
+    public List<HotProduct> top(Metric metric, int limit) {
+        queries.incrementAndGet();
+        int size = Math.max(1, Math.min(limit, MAX_LIMIT));
+        List<HotProduct> result = new ArrayList<>(size);
+        for (TopKCounter.Entry entry : counters.get(metric).top(size, id -> {
+            Card card = cards.get(id);
+            return card != null && card.isOnSale();
+        })) {
+            Card card = cards.get(entry.id());
+            if (card != null) {
+                result.add(new HotProduct(entry.id(), card.title(), card.price(), card.mainImage(),
+                        card.location(), entry.score()));
+            }
+        }
+        return result;
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("ready", ready);
+        metrics.put("capacity", capacity);
+        for (Map.Entry<Metric, TopKCounter> entry : counters.entrySet()) {
+            String name = entry.getKey().name().toLowerCase();
+            metrics.put(name + "Size", entry.getValue().size());
+            metrics.put(name + "Evictions", entry.getValue().evictions());
+        }
+        metrics.put("cards", cards.size());
+        metrics.put("queries", queries.get());
+        metrics.put("cardRefreshes", cardRefreshes.get());
+        metrics.put("lastRefreshMs", lastRefreshMs.get());
+        return metrics;
+    }
+}
@@ -0,0 +1,136 @@
+package com.kb.trading.cache;
+import com.kb.trading.archive.OrderArchive;
+import com.kb.trading.entity.Order;
+import com.kb.trading.entity.OrderStatus;
+import com.kb.trading.event.OrderChangedEvent;
+import com.kb.trading.repository.OrderRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * 订单统计计数缓存
+ * 每个用户（买家/卖家分开）首次访问时用一条 GROUP BY status 查询加载各状态数量，
+ * 之后由订单变更事件增量维护，读取时直接返回内存中的计数。
+ * 已归档的订单不在订单表中，加载时加上归档中的数量。
+ * 加载与并发事件之间可能有极小的误差，条目超过有效期后重新加载自动修正。
+ */
+@Component
+public class OrderStatsCache {
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+
+    private final OrderRepository orderRepository;
+    private final OrderArchive orderArchive;
+    private final long ttlMs;
+    private final int maxEntries;
+
+    private final Map<Long, Counters> buyerCounters = new ConcurrentHashMap<>();
+    private final Map<Long, Counters> sellerCounters = new ConcurrentHashMap<>();
+
+    public OrderStatsCache(OrderRepository orderRepository,
+                           OrderArchive orderArchive,
+                           @Value("${trading.order.stats-cache.ttl:10m}") Duration ttl,
+                           @Value("${trading.order.stats-cache.max-entries:100000}") int maxEntries) {
+        this.orderRepository = orderRepository;
+        this.orderArchive = orderArchive;
+        this.ttlMs = ttl.toMillis();
+        this.maxEntries = maxEntries;
+    }
+
+    // 买家各状态订单数量
+    public Map<OrderStatus, Long> getBuyerCounts(Long buyerId) {
+        return get(buyerCounters, buyerId, id -> concat(orderRepository.countByBuyerIdGroupByStatus(id),
+                orderArchive.countByBuyerGroupByStatus(id))).snapshot();
+    }
+
+    // 卖家各状态订单数量
+    public Map<OrderStatus, Long> getSellerCounts(Long sellerId) {
+        return get(sellerCounters, sellerId, id -> concat(orderRepository.countBySellerIdGroupByStatus(id),
+                orderArchive.countBySellerGroupByStatus(id))).snapshot();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderChanged(OrderChangedEvent event) {
+        Order order = event.order();
+        apply(buyerCounters.get(order.getBuyerId()), event);
+        apply(sellerCounters.get(order.getSellerId()), event);
+    }
+
+    private Counters get(Map<Long, Counters> cache, Long userId,
+                         Function<Long, List<Object[]>> loader) {
+        Counters counters = cache.get(userId);
+        if (counters != null && System.currentTimeMillis() - counters.loadedAt < ttlMs) {
+            return counters;
+        }
+        counters = Counters.load(loader.apply(userId));
+        if (cache.size() >= maxEntries) {
+            evict(cache);
+        }
+        cache.put(userId, counters);
+        return counters;
+    }
+
+    // 只更新已缓存的用户，未缓存的用户下次访问时从数据库加载
+    private void apply(Counters counters, OrderChangedEvent event) {
+        if (counters == null) {
+            return;
+        }
+        if (event.previousStatus() != null) {
+            counters.counts.decrementAndGet(event.previousStatus().ordinal());
+        }
+        if (event.currentStatus() != null) {
+            counters.counts.incrementAndGet(event.currentStatus().ordinal());
+        }
+    }
+
+    private static List<Object[]> concat(List<Object[]> hot, List<Object[]> archived) {
+        if (archived.isEmpty()) {
+            return hot;
+        }
+        List<Object[]> rows = new ArrayList<>(hot);
+        rows.addAll(archived);
+        return rows;
+    }
+
+    // 容量已满时淘汰过期条目，仍然不够则随机淘汰十分之一
+    private void evict(Map<Long, Counters> cache) {
+        long now = System.currentTimeMillis();
+        cache.values().removeIf(counters -> now - counters.loadedAt >= ttlMs);
+        int toRemove = cache.size() - maxEntries + maxEntries / 10;
+        Iterator<Long> iterator = cache.keySet().iterator();
+        while (toRemove-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static final class Counters {
+        private final AtomicLongArray counts = new AtomicLongArray(STATUSES.length);
+        private final long loadedAt = System.currentTimeMillis();
+
+        private static Counters load(List<Object[]> rows) {
+            Counters counters = new Counters();
+            for (Object[] row : rows) {
+                counters.counts.addAndGet(((OrderStatus) row[0]).ordinal(), ((Number) row[1]).longValue());
+            }
+            return counters;
+        }
+
+        private Map<OrderStatus, Long> snapshot() {
+            Map<OrderStatus, Long> result = new EnumMap<>(OrderStatus.class);
+            for (OrderStatus status : STATUSES) {
+                result.put(status, Math.max(0, counts.get(status.ordinal())));
+            }
+            return result;
+        }
+    }
+}
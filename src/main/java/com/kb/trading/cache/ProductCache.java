@@ -0,0 +1,291 @@
+package com.kb.trading.cache;
+import com.kb.trading.entity.Product;
+import com.kb.trading.event.ProductFavoritedEvent;
+import com.kb.trading.event.ProductSavedEvent;
+import com.kb.trading.event.ProductStockChangedEvent;
+import com.kb.trading.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 商品读缓存（按ID读取，读穿透）
+ * 缓存的是加载时复制出的商品快照，每次命中再复制一份返回，调用方修改返回值不会影响缓存；
+ * 需要修改并保存商品的地方仍直接使用 ProductRepository。
+ * 容量有限，由 TinyLfuCache 按访问频率决定保留哪些商品；不存在的ID也缓存一段较短的时间（负缓存）。
+ * 同一商品同时未命中时只有一个线程查询数据库，其他线程等待它的结果（single-flight）。
+ * 商品保存、收藏数变化、库存变化都在事务提交后使缓存失效；失效时正在加载的结果不再写入缓存。
+ * 在有写操作的事务中未命中时直接查询，结果可能包含本事务未提交的修改，只返回给调用方，不写入缓存也不共享给其他线程。
+ * 浏览次数由 ProductViewCounter 批量写库，不触发失效，缓存中的浏览次数最多落后一个过期时间。
+ * 注意：缓存在单个节点的内存中，其他节点的修改只能等过期后才可见，多节点部署时过期时间应设短一些。
+ */
+@Component
+@Slf4j
+public class ProductCache {
+    // product 为 null 表示商品不存在
+    private record Entry(Product product, long expiresAt) {
+    }
+
+    private final ProductRepository productRepository;
+    private final TinyLfuCache<Entry> cache;
+    private final Map<Long, CompletableFuture<Product>> loading = new ConcurrentHashMap<>();
+    private final Object storeLock = new Object();
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+
+    // 监控指标
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadedRows = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+    private final AtomicLong maxLoadNanos = new AtomicLong();
+
+    public ProductCache(ProductRepository productRepository,
+                        @Value("${trading.product.cache.capacity:10000}") int capacity,
+                        @Value("${trading.product.cache.ttl:60s}") Duration ttl,
+                        @Value("${trading.product.cache.negative-ttl:30s}") Duration negativeTtl) {
+        this.productRepository = productRepository;
+        this.cache = new TinyLfuCache<>(capacity);
+        this.ttlMillis = ttl.toMillis();
+        this.negativeTtlMillis = negativeTtl.toMillis();
+    }
+
+    public Optional<Product> get(Long productId) {
+        if (productId == null) {
+            return Optional.empty();
+        }
+        Entry entry = cache.get(productId);
+        if (entry != null && entry.expiresAt() > System.currentTimeMillis()) {
+            if (entry.product() == null) {
+                negativeHits.increment();
+                return Optional.empty();
+            }
+            hits.increment();
+            return Optional.of(copyOf(entry.product()));
+        }
+        misses.increment();
+        return Optional.ofNullable(load(productId)).map(ProductCache::copyOf);
+    }
+
+    // 批量读取，未命中的商品合并为一次查询；不存在的ID不出现在结果中
+    public Map<Long, Product> getAll(Collection<Long> productIds) {
+        Map<Long, Product> result = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Long productId : new LinkedHashSet<>(productIds)) {
+            if (productId == null) {
+                continue;
+            }
+            Entry entry = cache.get(productId);
+            if (entry != null && entry.expiresAt() > now) {
+                if (entry.product() != null) {
+                    hits.increment();
+                    result.put(productId, copyOf(entry.product()));
+                } else {
+                    negativeHits.increment();
+                }
+            } else {
+                misses.increment();
+                missing.add(productId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+        if (inWriteTransaction()) {
+            long start = System.nanoTime();
+            List<Product> loaded = productRepository.findAllById(missing);
+            recordLoad(start, loaded.size());
+            for (Product product : loaded) {
+                result.put(product.getId(), copyOf(product));
+            }
+            return result;
+        }
+
+        // 其他线程正在加载的商品等待其结果，其余由本线程一次查询
+        Map<Long, CompletableFuture<Product>> owned = new LinkedHashMap<>();
+        Map<Long, CompletableFuture<Product>> waiting = new LinkedHashMap<>();
+        for (Long productId : missing) {
+            CompletableFuture<Product> future = new CompletableFuture<>();
+            CompletableFuture<Product> inFlight = loading.putIfAbsent(productId, future);
+            if (inFlight == null) {
+                owned.put(productId, future);
+            } else {
+                coalesced.increment();
+                waiting.put(productId, inFlight);
+            }
+        }
+        if (!owned.isEmpty()) {
+            try {
+                long start = System.nanoTime();
+                Map<Long, Product> loaded = new HashMap<>();
+                for (Product product : productRepository.findAllById(owned.keySet())) {
+                    loaded.put(product.getId(), copyOf(product));
+                }
+                recordLoad(start, loaded.size());
+                for (Map.Entry<Long, CompletableFuture<Product>> entry : owned.entrySet()) {
+                    Product product = loaded.get(entry.getKey());
+                    store(entry.getKey(), entry.getValue(), product);
+                    entry.getValue().complete(product);
+                    if (product != null) {
+                        result.put(entry.getKey(), copyOf(product));
+                    }
+                }
+            } catch (RuntimeException e) {
+                loadFailures.incrementAndGet();
+                owned.values().forEach(future -> future.completeExceptionally(e));
+                throw e;
+            } finally {
+                owned.forEach(loading::remove);
+            }
+        }
+        for (Map.Entry<Long, CompletableFuture<Product>> entry : waiting.entrySet()) {
+            Product product = join(entry.getValue());
+            if (product != null) {
+                result.put(entry.getKey(), copyOf(product));
+            }
+        }
+        return result;
+    }
+
+    public void invalidate(Long productId) {
+        if (productId == null) {
+            return;
+        }
+        synchronized (storeLock) {
+            loading.remove(productId);
+            cache.remove(productId);
+        }
+        invalidations.increment();
+    }
+
+    // 发布、修改、上下架、售出、删除后失效
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductSaved(ProductSavedEvent event) {
+        invalidate(event.product().getId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductFavorited(ProductFavoritedEvent event) {
+        invalidate(event.productId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStockChanged(ProductStockChangedEvent event) {
+        event.productIds().forEach(this::invalidate);
+    }
+
+    public Map<String, Object> getMetrics() {
+        long hitCount = hits.sum() + negativeHits.sum();
+        long requests = hitCount + misses.sum();
+        long loadCount = loads.get();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("size", cache.size());
+        metrics.put("capacity", cache.capacity());
+        metrics.put("hits", hits.sum());
+        metrics.put("negativeHits", negativeHits.sum());
+        metrics.put("misses", misses.sum());
+        metrics.put("hitRate", requests == 0 ? 0.0 : (double) hitCount / requests);
+        metrics.put("coalescedLoads", coalesced.sum());
+        metrics.put("loads", loadCount);
+        metrics.put("loadedRows", loadedRows.get());
+        metrics.put("loadFailures", loadFailures.get());
+        metrics.put("avgLoadMs", loadCount == 0 ? 0.0 : loadNanos.get() / 1_000_000.0 / loadCount);
+        metrics.put("maxLoadMs", maxLoadNanos.get() / 1_000_000.0);
+        metrics.put("evictions", cache.evictions());
+        metrics.put("admissionRejections", cache.rejections());
+        metrics.put("invalidations", invalidations.sum());
+        return metrics;
+    }
+
+    private Product load(Long productId) {
+        if (inWriteTransaction()) {
+            long start = System.nanoTime();
+            Product product = productRepository.findById(productId).map(ProductCache::copyOf).orElse(null);
+            recordLoad(start, product != null ? 1 : 0);
+            return product;
+        }
+        CompletableFuture<Product> future = new CompletableFuture<>();
+        CompletableFuture<Product> inFlight = loading.putIfAbsent(productId, future);
+        if (inFlight != null) {
+            coalesced.increment();
+            return join(inFlight);
+        }
+        try {
+            long start = System.nanoTime();
+            Product product = productRepository.findById(productId).map(ProductCache::copyOf).orElse(null);
+            recordLoad(start, product != null ? 1 : 0);
+            store(productId, future, product);
+            future.complete(product);
+            return product;
+        } catch (RuntimeException e) {
+            loadFailures.incrementAndGet();
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(productId, future);
+        }
+    }
+
+    // 加载期间没有被失效时才写入缓存
+    private void store(Long productId, CompletableFuture<Product> future, Product product) {
+        long expiresAt = System.currentTimeMillis() + (product != null ? ttlMillis : negativeTtlMillis);
+        synchronized (storeLock) {
+            if (loading.get(productId) == future) {
+                cache.put(productId, new Entry(product, expiresAt));
+            }
+        }
+    }
+
+    private static boolean inWriteTransaction() {
+        return TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    private void recordLoad(long startNanos, int rows) {
+        long elapsed = System.nanoTime() - startNanos;
+        loads.incrementAndGet();
+        loadedRows.addAndGet(rows);
+        loadNanos.addAndGet(elapsed);
+        maxLoadNanos.accumulateAndGet(elapsed, Math::max);
+    }
+
+    private static Product join(CompletableFuture<Product> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static Product copyOf(Product product) {
+        Product copy = new Product();
+        BeanUtils.copyProperties(product, copy);
+        return copy;
+    }
+}
@@ -0,0 +1,116 @@
+package com.kb.trading.cache;
+import com.kb.trading.repository.ProductRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 商品浏览次数累加器
+ * 浏览时只在内存中对该商品的 LongAdder 加一，不读也不写数据库；
+ * 定时把各商品累计的增量用一次JDBC批处理写入（view_count = view_count + ?），应用关闭时再写一次。
+ * 增量写入数据库，多节点各自累加也不会互相覆盖；写入成功的增量同时累加到热门商品排行。
+ * 注意：进程异常退出时最多丢失一个刷新周期内的浏览次数。
+ */
+@Component
+@Slf4j
+public class ProductViewCounter {
+    private final ProductRepository productRepository;
+    private final HotProductRanking hotProductRanking;
+
+    private final Map<Long, LongAdder> pending = new ConcurrentHashMap<>();
+    private final Object flushLock = new Object();
+
+    // 监控指标
+    private final AtomicLong views = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong flushFailures = new AtomicLong();
+    private final AtomicLong lastFlushMs = new AtomicLong();
+
+    public ProductViewCounter(ProductRepository productRepository, HotProductRanking hotProductRanking) {
+        this.productRepository = productRepository;
+        this.hotProductRanking = hotProductRanking;
+    }
+
+    // 在 compute 中累加：与 flush 移出空闲商品互斥，不会加到已移出的 LongAdder 上
+    public void increment(Long productId) {
+        pending.compute(productId, (k, adder) -> {
+            if (adder == null) {
+                adder = new LongAdder();
+            }
+            adder.increment();
+            return adder;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${trading.product.view-flush-interval:5s}")
+    public void flush() {
+        synchronized (flushLock) {
+            long start = System.currentTimeMillis();
+            List<Long> productIds = new ArrayList<>();
+            List<Long> deltas = new ArrayList<>();
+            for (Map.Entry<Long, LongAdder> entry : pending.entrySet()) {
+                long delta = entry.getValue().sumThenReset();
+                if (delta != 0) {
+                    productIds.add(entry.getKey());
+                    deltas.add(delta);
+                } else {
+                    // 一个周期内没有浏览的商品移出；判断和移出在 computeIfPresent 中完成，期间的累加会保留该项
+                    pending.computeIfPresent(entry.getKey(), (k, adder) -> adder.sum() == 0 ? null : adder);
+                }
+            }
+            if (productIds.isEmpty()) {
+                return;
+            }
+
+            try {
+                productRepository.batchIncrementViewCount(productIds, deltas);
+                flushes.incrementAndGet();
+                flushedRows.addAndGet(productIds.size());
+                views.addAndGet(deltas.stream().mapToLong(Long::longValue).sum());
+                hotProductRanking.recordViews(productIds, deltas);
+            } catch (Exception e) {
+                // 写入失败的增量放回，下一个周期重试
+                flushFailures.incrementAndGet();
+                log.warn("商品浏览次数写入失败，稍后重试: 商品数={}, 原因={}", productIds.size(), e.getMessage());
+                for (int i = 0; i < productIds.size(); i++) {
+                    pending.computeIfAbsent(productIds.get(i), k -> new LongAdder()).add(deltas.get(i));
+                }
+            }
+            lastFlushMs.set(System.currentTimeMillis() - start);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        long remaining = pending.values().stream().mapToLong(LongAdder::sum).sum();
+        if (remaining > 0) {
+            log.error("关闭时仍有 {} 次商品浏览未能写入数据库", remaining);
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        long pendingViews = 0;
+        for (LongAdder adder : pending.values()) {
+            pendingViews += adder.sum();
+        }
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("pendingProducts", pending.size());
+        metrics.put("pendingViews", pendingViews);
+        metrics.put("flushedViews", views.get());
+        metrics.put("flushes", flushes.get());
+        metrics.put("flushedRows", flushedRows.get());
+        metrics.put("flushFailures", flushFailures.get());
+        metrics.put("lastFlushMs", lastFlushMs.get());
+        return metrics;
+    }
+}
@@ -0,0 +1,90 @@
+package com.kb.trading.cache;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 有界缓存（W-TinyLFU）
+ * 新条目先进入约占容量 1% 的窗口区（LRU），被挤出窗口时与主区最久未访问的条目比较访问频率，
+ * 频率更高的留在主区，另一个淘汰。频率由 FrequencySketch 记录，包括未命中的访问，
+ * 因此一次性扫描大量冷门商品不会把主区中反复访问的热门商品挤掉。
+ * 所有操作在同一把锁内完成，适合条目数在十万级以内、单次操作很短的场景。
+ */
+public final class TinyLfuCache<V> {
+    private final int windowCapacity;
+    private final int mainCapacity;
+    private final LinkedHashMap<Long, V> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Long, V> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private long evictions;
+    private long rejections;
+
+    public TinyLfuCache(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("缓存容量至少为2: " + capacity);
+        }
+        this.windowCapacity = Math.max(1, capacity / 100);
+        this.mainCapacity = capacity - windowCapacity;
+        this.sketch = new FrequencySketch(capacity);
+    }
+
+    // 查询并记录一次访问
+    public synchronized V get(long key) {
+        sketch.increment(key);
+        V value = main.get(key);
+        return value != null ? value : window.get(key);
+    }
+
+    public synchronized void put(long key, V value) {
+        if (main.containsKey(key)) {
+            main.put(key, value);
+            return;
+        }
+        window.put(key, value);
+        if (window.size() > windowCapacity) {
+            Iterator<Map.Entry<Long, V>> iterator = window.entrySet().iterator();
+            Map.Entry<Long, V> candidate = iterator.next();
+            iterator.remove();
+            admit(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    public synchronized V remove(long key) {
+        V value = window.remove(key);
+        V mainValue = main.remove(key);
+        return value != null ? value : mainValue;
+    }
+
+    public synchronized int size() {
+        return window.size() + main.size();
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    // 被挤出窗口后因频率不够高而没有进入主区的次数
+    public synchronized long rejections() {
+        return rejections;
+    }
+
+    public int capacity() {
+        return windowCapacity + mainCapacity;
+    }
+
+    private void admit(long key, V value) {
+        if (main.size() < mainCapacity) {
+            main.put(key, value);
+            return;
+        }
+        Iterator<Map.Entry<Long, V>> iterator = main.entrySet().iterator();
+        Map.Entry<Long, V> victim = iterator.next();
+        evictions++;
+        if (sketch.frequency(key) > sketch.frequency(victim.getKey())) {
+            iterator.remove();
+            main.put(key, value);
+        } else {
+            rejections++;
+        }
+    }
+}
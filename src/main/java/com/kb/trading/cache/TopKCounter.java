@@ -0,0 +1,133 @@
+package com.kb.trading.cache;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.LongPredicate;
+
+/**
+ * 有界 Top-K 计数器（Space-Saving）
+ * 最多保留 capacity 个商品的计数：有序集合按计数从高到低排列，另有商品ID到条目的索引，
+ * 增减计数、取前 K 名都不需要遍历全部商品。
+ * 已在其中的商品计数精确；容量已满时新商品顶替计数最低的条目，计数记为被顶替者的计数加本次增量，
+ * 是真实值的上界，误差不超过被顶替者的计数。容量取需要展示名次的数倍，头部商品基本不受影响。
+ */
+public final class TopKCounter {
+    public record Entry(long id, long score) {
+    }
+
+    // 计数高的在前，计数相同时ID大的（较新的商品）在前
+    private static final Comparator<Entry> ORDER = Comparator.comparingLong(Entry::score).reversed()
+            .thenComparing(Comparator.comparingLong(Entry::id).reversed());
+
+    private final int capacity;
+    private final TreeSet<Entry> ranking = new TreeSet<>(ORDER);
+    private final Map<Long, Entry> index = new HashMap<>();
+    private long evictions;
+
+    public TopKCounter(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Top-K 容量必须大于0: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    // 写入已知的精确计数（启动时从数据库加载），容量已满时只有高于最低计数才会进入
+    public synchronized void seed(long id, long score) {
+        Entry old = index.remove(id);
+        if (old != null) {
+            ranking.remove(old);
+        }
+        if (score <= 0) {
+            return;
+        }
+        if (index.size() >= capacity) {
+            if (score <= ranking.last().score()) {
+                return;
+            }
+            evictLast();
+        }
+        put(id, score);
+    }
+
+    // 按增量更新计数，减到0时移出；不在其中的商品只接受正增量
+    public synchronized void add(long id, long delta) {
+        Entry old = index.get(id);
+        if (old != null) {
+            ranking.remove(old);
+            long score = old.score() + delta;
+            if (score > 0) {
+                put(id, score);
+            } else {
+                index.remove(id);
+            }
+            return;
+        }
+        if (delta <= 0) {
+            return;
+        }
+        long base = 0;
+        if (index.size() >= capacity) {
+            base = evictLast().score();
+        }
+        put(id, base + delta);
+    }
+
+    public synchronized void remove(long id) {
+        Entry old = index.remove(id);
+        if (old != null) {
+            ranking.remove(old);
+        }
+    }
+
+    // 当前计数，不在其中时返回0
+    public synchronized long score(long id) {
+        Entry entry = index.get(id);
+        return entry != null ? entry.score() : 0;
+    }
+
+    // 按计数从高到低取前 limit 个满足条件的条目
+    public synchronized List<Entry> top(int limit, LongPredicate filter) {
+        List<Entry> result = new ArrayList<>(Math.min(limit, index.size()));
+        for (Entry entry : ranking) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (filter.test(entry.id())) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    public synchronized List<Long> ids() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    private void put(long id, long score) {
+        Entry entry = new Entry(id, score);
+        index.put(id, entry);
+        ranking.add(entry);
+    }
+
+    private Entry evictLast() {
+        Entry last = ranking.pollLast();
+        index.remove(last.id());
+        evictions++;
+        return last;
+    }
+}
@@ -0,0 +1,424 @@
+package com.kb.trading.cache;
+import com.kb.trading.dto.CartSummary;
+import com.kb.trading.entity.CartItem;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * 单个用户的购物车（内存）
+ * 每一行的字段按列存放在基本类型数组里（金额以分为单位），购物车通常只有几行到几十行，
+ * 按商品或按ID查找直接线性扫描。
+ * 新增、修改和删除都只做标记，由 CartStore 合并落库。新增的行先使用负数临时ID，
+ * 写入数据库后换成数据库生成的ID，之前返回给客户端的临时ID仍可用来查找这一行。
+ * 只能在 CartStore.read/update 的回调中使用（回调期间持有该用户的锁）。
+ */
+public final class UserCart {
+    private static final int INITIAL_CAPACITY = 4;
+    private static final long NO_PRICE = Long.MIN_VALUE;
+
+    private final Long userId;
+    private final ObjLongConsumer<UserCart> productAdded;   // 新增一行时通知（参数为商品ID）
+
+    private int size;
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private long[] productIds = new long[INITIAL_CAPACITY];
+    private int[] quantities = new int[INITIAL_CAPACITY];
+    private long[] unitPrices = new long[INITIAL_CAPACITY];     // 单价（分）
+    private String[] titles = new String[INITIAL_CAPACITY];
+    private String[] images = new String[INITIAL_CAPACITY];
+    private String[] specs = new String[INITIAL_CAPACITY];
+    private long[] createTimes = new long[INITIAL_CAPACITY];
+    private long[] updateTimes = new long[INITIAL_CAPACITY];
+    private boolean[] dirty = new boolean[INITIAL_CAPACITY];   // 尚未写入数据库的行
+
+    // 已删除但尚未从数据库删除的行ID
+    private long[] removedIds = new long[0];
+    private int removedCount;
+
+    private long nextTempId = -1;             // 下一个临时ID
+    private Set<Long> insertingIds;           // 已取出、正在插入数据库的临时ID
+    private Map<Long, Long> assignedIds;      // 临时ID -> 数据库生成的ID
+
+    private boolean ownerVerified;    // 已确认用户存在
+    private int modCount;             // 修改次数（新增、修改、删除行），用于判断是否需要更新购物车版本号
+    private CartSummary summary;      // 汇总缓存，任何修改都会清空
+
+    boolean evicted;
+    long lastAccess = System.currentTimeMillis();
+
+    UserCart(Long userId, ObjLongConsumer<UserCart> productAdded) {
+        this.userId = userId;
+        this.productAdded = productAdded;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public boolean isOwnerVerified() {
+        return ownerVerified;
+    }
+
+    public void markOwnerVerified() {
+        ownerVerified = true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    int modCount() {
+        return modCount;
+    }
+
+    public int indexOfProduct(Long productId) {
+        for (int i = 0; i < size; i++) {
+            if (productIds[i] == productId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // 按ID查找行，也接受已换成数据库ID的临时ID
+    public int indexOfId(Long cartItemId) {
+        long id = cartItemId;
+        if (id < 0 && assignedIds != null) {
+            id = assignedIds.getOrDefault(id, id);
+        }
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public long id(int index) {
+        return ids[index];
+    }
+
+    public long productId(int index) {
+        return productIds[index];
+    }
+
+    public int quantity(int index) {
+        return quantities[index];
+    }
+
+    public BigDecimal unitPrice(int index) {
+        return unitPrices[index] == NO_PRICE ? null : BigDecimal.valueOf(unitPrices[index], 2);
+    }
+
+    public BigDecimal subtotal(int index) {
+        return unitPrices[index] == NO_PRICE ? null : BigDecimal.valueOf(unitPrices[index] * quantities[index], 2);
+    }
+
+    public String spec(int index) {
+        return specs[index];
+    }
+
+    // 汇总（一次遍历计算，之后直到购物车被修改前都直接返回缓存结果）
+    public CartSummary summary() {
+        if (summary == null) {
+            int totalQuantity = 0;
+            long totalCents = 0;
+            for (int i = 0; i < size; i++) {
+                totalQuantity += quantities[i];
+                if (unitPrices[i] != NO_PRICE) {
+                    totalCents += unitPrices[i] * quantities[i];
+                }
+            }
+            summary = new CartSummary(size, totalQuantity, BigDecimal.valueOf(totalCents, 2));
+        }
+        return summary;
+    }
+
+    // 新增一行（使用临时ID，由 CartStore 合并插入），返回行下标
+    public int add(Long productId, int quantity, BigDecimal unitPrice, String title, String image, String spec) {
+        ensureCapacity(size + 1);
+        long now = System.currentTimeMillis();
+        int index = size++;
+        ids[index] = nextTempId--;
+        productIds[index] = productId;
+        quantities[index] = quantity;
+        unitPrices[index] = toCents(unitPrice);
+        titles[index] = title;
+        images[index] = image;
+        specs[index] = spec;
+        createTimes[index] = now;
+        updateTimes[index] = now;
+        dirty[index] = true;
+        modCount++;
+        summary = null;
+        productAdded.accept(this, productId);
+        return index;
+    }
+
+    public void setQuantity(int index, int quantity) {
+        quantities[index] = quantity;
+        touch(index);
+    }
+
+    public void setSpec(int index, String spec) {
+        specs[index] = spec;
+        touch(index);
+    }
+
+    // 更新行中缓存的商品信息（数据库中已按 product_id 统一更新，不标记为待写入）
+    void setProduct(int index, BigDecimal unitPrice, String title, String image) {
+        unitPrices[index] = toCents(unitPrice);
+        titles[index] = title;
+        images[index] = image;
+        modCount++;
+        summary = null;
+    }
+
+    public void remove(int index) {
+        // 还没有插入的行直接丢弃；正在插入的行等换成数据库ID后再删除
+        if (ids[index] > 0 || insertingIds != null && insertingIds.contains(ids[index])) {
+            addRemoved(ids[index]);
+        }
+        modCount++;
+        summary = null;
+        int last = size - 1;
+        if (index != last) {
+            // 最后一行移到被删除的位置，行的顺序按加入时间在读取时恢复
+            ids[index] = ids[last];
+            productIds[index] = productIds[last];
+            quantities[index] = quantities[last];
+            unitPrices[index] = unitPrices[last];
+            titles[index] = titles[last];
+            images[index] = images[last];
+            specs[index] = specs[last];
+            createTimes[index] = createTimes[last];
+            updateTimes[index] = updateTimes[last];
+            dirty[index] = dirty[last];
+        }
+        titles[last] = null;
+        images[last] = null;
+        specs[last] = null;
+        size = last;
+    }
+
+    public void clear() {
+        for (int i = size - 1; i >= 0; i--) {
+            remove(i);
+        }
+    }
+
+    public CartItem toCartItem(int index) {
+        CartItem item = new CartItem();
+        item.setId(ids[index]);
+        item.setUserId(userId);
+        item.setProductId(productIds[index]);
+        item.setQuantity(quantities[index]);
+        item.setUnitPrice(unitPrice(index));
+        item.setProductTitle(titles[index]);
+        item.setProductImage(images[index]);
+        item.setProductSpec(specs[index]);
+        item.setSubtotal(subtotal(index));
+        item.setCreateTime(new Date(createTimes[index]));
+        item.setUpdateTime(new Date(updateTimes[index]));
+        return item;
+    }
+
+    // 全部行，按加入购物车的先后排序
+    public List<CartItem> toCartItems() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> createTimes[a] != createTimes[b]
+                ? Long.compare(createTimes[a], createTimes[b])
+                : Long.compare(sequence(ids[a]), sequence(ids[b])));
+        List<CartItem> items = new ArrayList<>(size);
+        for (Integer index : order) {
+            items.add(toCartItem(index));
+        }
+        return items;
+    }
+
+    // 从数据库加载的行（不标记为待写入）
+    void load(CartItem item) {
+        ensureCapacity(size + 1);
+        int index = size++;
+        ids[index] = item.getId();
+        productIds[index] = item.getProductId();
+        quantities[index] = item.getQuantity() != null ? item.getQuantity() : 0;
+        unitPrices[index] = toCents(item.getUnitPrice());
+        titles[index] = item.getProductTitle();
+        images[index] = item.getProductImage();
+        specs[index] = item.getProductSpec();
+        createTimes[index] = item.getCreateTime() != null ? item.getCreateTime().getTime() : 0;
+        updateTimes[index] = item.getUpdateTime() != null ? item.getUpdateTime().getTime() : 0;
+        dirty[index] = false;
+        summary = null;
+    }
+
+    boolean hasChanges() {
+        if (removedCount > 0) {
+            return true;
+        }
+        for (int i = 0; i < size; i++) {
+            if (dirty[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 取出待插入、待更新的行和待删除的ID，并清除标记（正在插入的行的删除留到换成数据库ID之后）
+    Changes drainChanges() {
+        List<CartItem> inserts = new ArrayList<>();
+        List<CartItem> updates = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (dirty[i]) {
+                if (ids[i] < 0) {
+                    inserts.add(toCartItem(i));
+                    if (insertingIds == null) {
+                        insertingIds = new HashSet<>();
+                    }
+                    insertingIds.add(ids[i]);
+                } else {
+                    updates.add(toCartItem(i));
+                }
+                dirty[i] = false;
+            }
+        }
+        List<Long> deletes = new ArrayList<>(removedCount);
+        int kept = 0;
+        for (int i = 0; i < removedCount; i++) {
+            if (removedIds[i] > 0) {
+                deletes.add(removedIds[i]);
+            } else {
+                removedIds[kept++] = removedIds[i];
+            }
+        }
+        removedCount = kept;
+        return new Changes(inserts, updates, deletes);
+    }
+
+    // 插入成功后把临时ID换成数据库生成的ID（ids 与 inserts 一一对应）
+    void assignIds(List<CartItem> inserts, long[] ids) {
+        if (assignedIds == null) {
+            assignedIds = new HashMap<>();
+        }
+        for (int k = 0; k < inserts.size(); k++) {
+            long tempId = inserts.get(k).getId();
+            long id = ids[k];
+            insertingIds.remove(tempId);
+            assignedIds.put(tempId, id);
+            for (int i = 0; i < size; i++) {
+                if (this.ids[i] == tempId) {
+                    this.ids[i] = id;
+                    break;
+                }
+            }
+            for (int i = 0; i < removedCount; i++) {
+                if (removedIds[i] == tempId) {
+                    removedIds[i] = id;
+                }
+            }
+        }
+        modCount++;
+    }
+
+    // 写入数据库失败时恢复标记，下次重试
+    void restoreChanges(Changes changes) {
+        for (CartItem item : changes.inserts()) {
+            insertingIds.remove(item.getId());
+            int index = indexOfId(item.getId());
+            if (index >= 0) {
+                dirty[index] = true;
+            } else {
+                // 插入期间被删除的行没有写入数据库，不需要再删除
+                dropRemoved(item.getId());
+            }
+        }
+        for (CartItem item : changes.updates()) {
+            int index = indexOfId(item.getId());
+            if (index >= 0) {
+                dirty[index] = true;
+            }
+        }
+        for (Long id : changes.deletes()) {
+            if (indexOfId(id) < 0) {
+                addRemoved(id);
+            }
+        }
+    }
+
+    private void touch(int index) {
+        updateTimes[index] = System.currentTimeMillis();
+        dirty[index] = true;
+        modCount++;
+        summary = null;
+    }
+
+    private void addRemoved(long id) {
+        for (int i = 0; i < removedCount; i++) {
+            if (removedIds[i] == id) {
+                return;
+            }
+        }
+        if (removedCount == removedIds.length) {
+            removedIds = Arrays.copyOf(removedIds, Math.max(INITIAL_CAPACITY, removedCount * 2));
+        }
+        removedIds[removedCount++] = id;
+    }
+
+    private void dropRemoved(long id) {
+        for (int i = 0; i < removedCount; i++) {
+            if (removedIds[i] == id) {
+                removedIds[i] = removedIds[--removedCount];
+                return;
+            }
+        }
+    }
+
+    // 同一时刻加入的行按ID排序：数据库ID在前，临时ID按分配顺序排在后面
+    private static long sequence(long id) {
+        return id > 0 ? id : Long.MAX_VALUE / 2 - id;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, newCapacity);
+        productIds = Arrays.copyOf(productIds, newCapacity);
+        quantities = Arrays.copyOf(quantities, newCapacity);
+        unitPrices = Arrays.copyOf(unitPrices, newCapacity);
+        titles = Arrays.copyOf(titles, newCapacity);
+        images = Arrays.copyOf(images, newCapacity);
+        specs = Arrays.copyOf(specs, newCapacity);
+        createTimes = Arrays.copyOf(createTimes, newCapacity);
+        updateTimes = Arrays.copyOf(updateTimes, newCapacity);
+        dirty = Arrays.copyOf(dirty, newCapacity);
+    }
+
+    private static long toCents(BigDecimal amount) {
+        return amount == null ? NO_PRICE : amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    record Changes(List<CartItem> inserts, List<CartItem> updates, List<Long> deletes) {
+        boolean isEmpty() {
+            return inserts.isEmpty() && updates.isEmpty() && deletes.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.kb.trading.cache;
+import com.kb.trading.entity.Order;
+import com.kb.trading.event.OrderChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 用户数据版本号（用于 ETag / 304）
+ * 每个用户的购物车和订单各有一个版本号，数据每次变更都换成一个新的版本号；
+ * 轮询接口先比较客户端带回的 If-None-Match，版本未变时直接返回 304，不查询数据也不序列化。
+ * 版本号取自进程内单调递增的全局序号，条目被淘汰后重新分配的版本号也不会与已发出的重复；
+ * ETag 中带有本次启动的纪元，重启后旧 ETag 全部失效。
+ * 注意：版本号保存在本节点内存中，多节点部署时同一用户的请求需要路由到固定节点（与购物车内存存储相同）。
+ */
+@Component
+public class UserVersionStamps {
+    public enum Scope {
+        CART("c"),
+        ORDERS("o");
+
+        private final String tag;
+
+        Scope(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Long, Long> cartVersions = new ConcurrentHashMap<>();
+    private final Map<Long, Long> orderVersions = new ConcurrentHashMap<>();
+    private final int maxEntries;
+
+    public UserVersionStamps(@Value("${trading.version-stamps.max-entries:200000}") int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    // 当前版本号（第一次访问时分配）
+    public long current(Scope scope, Long userId) {
+        Map<Long, Long> versions = versionsOf(scope);
+        Long version = versions.get(userId);
+        if (version != null) {
+            return version;
+        }
+        if (versions.size() >= maxEntries) {
+            evict(versions);
+        }
+        return versions.computeIfAbsent(userId, k -> sequence.incrementAndGet());
+    }
+
+    // 数据已变更，换成新的版本号
+    public void bump(Scope scope, Long userId) {
+        if (userId != null) {
+            versionsOf(scope).put(userId, sequence.incrementAndGet());
+        }
+    }
+
+    // 生成 ETag，variant 区分同一份数据的不同视图（如分页参数）
+    public String eTag(Scope scope, Long userId, String variant) {
+        return "\"" + scope.tag + "-" + epoch + "-" + Long.toString(current(scope, userId), 36)
+                + "-" + variant + "\"";
+    }
+
+    // 订单创建、状态变化或删除后，买家和卖家的订单版本都失效
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderChanged(OrderChangedEvent event) {
+        Order order = event.order();
+        bump(Scope.ORDERS, order.getBuyerId());
+        bump(Scope.ORDERS, order.getSellerId());
+    }
+
+    private Map<Long, Long> versionsOf(Scope scope) {
+        return scope == Scope.CART ? cartVersions : orderVersions;
+    }
+
+    // 容量已满时淘汰十分之一，被淘汰用户下次访问时分配新版本号（只会多一次完整响应）
+    private void evict(Map<Long, Long> versions) {
+        int toRemove = versions.size() - maxEntries + maxEntries / 10;
+        Iterator<Long> iterator = versions.keySet().iterator();
+        while (toRemove-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+}
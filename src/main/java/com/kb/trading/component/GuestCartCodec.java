@@ -0,0 +1,161 @@
+package com.kb.trading.component;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 游客购物车令牌
+ * 未登录用户的购物车不落库，整个购物车编码在服务端签发的令牌中，由客户端保存并随请求带回：
+ * 版本号(1字节) + 行数(varint) + 按商品ID升序的 [商品ID差值(varint), 数量(varint)] + HMAC-SHA256 前16字节，
+ * 整体用 base64url（无填充）编码。10 个商品的购物车通常不到 60 个字符。
+ * 签名密钥通过 trading.cart.guest-token.secret 配置，未配置时每次启动随机生成（重启后旧令牌失效）；
+ * 多节点部署时所有节点必须配置相同的密钥。
+ */
+@Component
+@Slf4j
+public class GuestCartCodec {
+    public static final int MAX_LINES = 100;
+    public static final int MAX_QUANTITY = 9999;
+
+    private static final byte VERSION = 1;
+    private static final int SIGNATURE_LENGTH = 16;
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+
+    public GuestCartCodec(@Value("${trading.cart.guest-token.secret:}") String secret) {
+        byte[] keyBytes;
+        if (secret == null || secret.isBlank()) {
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+            log.warn("未配置 trading.cart.guest-token.secret，游客购物车令牌使用随机密钥，重启后失效");
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    // 编码购物车（商品ID -> 数量），数量不大于0的行忽略
+    public String encode(Map<Long, Integer> items) {
+        TreeMap<Long, Integer> sorted = new TreeMap<>();
+        items.forEach((productId, quantity) -> {
+            if (productId != null && productId > 0 && quantity != null && quantity > 0) {
+                sorted.put(productId, Math.min(quantity, MAX_QUANTITY));
+            }
+        });
+        if (sorted.size() > MAX_LINES) {
+            throw new RuntimeException("购物车商品种类不能超过" + MAX_LINES + "种");
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(2 + sorted.size() * 4 + SIGNATURE_LENGTH);
+        out.write(VERSION);
+        writeVarint(out, sorted.size());
+        long previous = 0;
+        for (Map.Entry<Long, Integer> entry : sorted.entrySet()) {
+            writeVarint(out, entry.getKey() - previous);
+            writeVarint(out, entry.getValue());
+            previous = entry.getKey();
+        }
+        byte[] payload = out.toByteArray();
+        out.writeBytes(sign(payload, payload.length));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(out.toByteArray());
+    }
+
+    // 解码并校验签名，返回按商品ID排序的可修改Map；空令牌表示空购物车
+    public TreeMap<Long, Integer> decode(String token) {
+        TreeMap<Long, Integer> items = new TreeMap<>();
+        if (token == null || token.isBlank()) {
+            return items;
+        }
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            throw invalid();
+        }
+        int payloadLength = bytes.length - SIGNATURE_LENGTH;
+        if (payloadLength < 2 || bytes[0] != VERSION) {
+            throw invalid();
+        }
+        byte[] signature = Arrays.copyOfRange(bytes, payloadLength, bytes.length);
+        if (!MessageDigest.isEqual(signature, sign(bytes, payloadLength))) {
+            throw invalid();
+        }
+
+        int[] position = {1};
+        long count = readVarint(bytes, payloadLength, position);
+        if (count > MAX_LINES) {
+            throw invalid();
+        }
+        long productId = 0;
+        for (int i = 0; i < count; i++) {
+            long delta = readVarint(bytes, payloadLength, position);
+            long quantity = readVarint(bytes, payloadLength, position);
+            if (delta <= 0 || quantity <= 0 || quantity > MAX_QUANTITY) {
+                throw invalid();
+            }
+            productId += delta;
+            items.put(productId, (int) quantity);
+        }
+        if (position[0] != payloadLength) {
+            throw invalid();
+        }
+        return items;
+    }
+
+    private byte[] sign(byte[] data, int length) {
+        Mac mac = macs.get();
+        mac.update(data, 0, length);
+        return Arrays.copyOf(mac.doFinal(), SIGNATURE_LENGTH);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("无法初始化购物车令牌签名", e);
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] bytes, int limit, int[] position) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position[0] >= limit) {
+                throw invalid();
+            }
+            byte b = bytes[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw invalid();
+    }
+
+    private static RuntimeException invalid() {
+        return new RuntimeException("无效的购物车令牌");
+    }
+}
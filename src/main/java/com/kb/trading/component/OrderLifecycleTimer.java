@@ -0,0 +1,192 @@
+package com.kb.trading.component;
+import com.kb.trading.entity.OrderStatus;
+import com.kb.trading.event.OrderChangedEvent;
+import com.kb.trading.repository.OrderRepository;
+import com.kb.trading.service.OrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 订单生命周期定时器
+ * 待付款订单超时自动取消（归还库存），已送达订单超时自动完成。
+ * 截止时间保存在内存的分层时间轮中，启动时从 orders 表重建，之后由订单变更事件维护；
+ * 每个 tick 只取出到期的订单，按批次批量更新，开销与到期订单数成正比，不需要周期性全表扫描。
+ * 订单在到期前已经支付/取消时不从时间轮删除，到期处理时条件更新不会命中，直接忽略。
+ */
+@Component
+@Slf4j
+public class OrderLifecycleTimer {
+    private static final long TICK_MS = 1000;
+    private static final int WHEEL_SIZE = 64;
+
+    private final OrderService orderService;
+    private final OrderRepository orderRepository;
+    private final Duration paymentTimeout;
+    private final Duration autoCompleteAfter;
+    private final int batchSize;
+    private final int maxBatchesPerTick;
+
+    private final TimingWheel<Task> wheel = new TimingWheel<>(TICK_MS, WHEEL_SIZE, System.currentTimeMillis());
+    // 已到期但还未处理的任务（单个 tick 处理不完时留到下一个 tick）
+    private final ArrayDeque<TimingWheel.Entry<Task>> backlog = new ArrayDeque<>();
+
+    // 监控指标
+    private final AtomicLong scheduledCount = new AtomicLong();
+    private final AtomicLong cancelledCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong lastBatchSize = new AtomicLong();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+    private final AtomicLong lastLagMs = new AtomicLong();
+    private final AtomicLong maxLagMs = new AtomicLong();
+
+    public OrderLifecycleTimer(OrderService orderService,
+                               OrderRepository orderRepository,
+                               @Value("${trading.order.lifecycle.payment-timeout:30m}") Duration paymentTimeout,
+                               @Value("${trading.order.lifecycle.auto-complete-after:7d}") Duration autoCompleteAfter,
+                               @Value("${trading.order.lifecycle.batch-size:200}") int batchSize,
+                               @Value("${trading.order.lifecycle.max-batches-per-tick:10}") int maxBatchesPerTick) {
+        this.orderService = orderService;
+        this.orderRepository = orderRepository;
+        this.paymentTimeout = paymentTimeout;
+        this.autoCompleteAfter = autoCompleteAfter;
+        this.batchSize = batchSize;
+        this.maxBatchesPerTick = maxBatchesPerTick;
+    }
+
+    // 启动时从订单表重建时间轮
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        int pending = 0;
+        for (Object[] row : orderRepository.findIdAndCreateTimeByStatus(OrderStatus.PENDING_PAYMENT)) {
+            schedule(TaskType.CANCEL_UNPAID, (Long) row[0], (Date) row[1]);
+            pending++;
+        }
+        int delivered = 0;
+        for (Object[] row : orderRepository.findIdAndDeliveryTimeByStatus(OrderStatus.DELIVERED)) {
+            schedule(TaskType.COMPLETE_DELIVERED, (Long) row[0], (Date) row[1]);
+            delivered++;
+        }
+        log.info("订单定时器已重建: 待付款={}, 已送达={}", pending, delivered);
+    }
+
+    // 新订单登记超时取消，送达订单登记自动完成
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderChanged(OrderChangedEvent event) {
+        if (event.isCreated() && event.currentStatus() == OrderStatus.PENDING_PAYMENT) {
+            schedule(TaskType.CANCEL_UNPAID, event.order().getId(), event.order().getCreateTime());
+        } else if (event.currentStatus() == OrderStatus.DELIVERED) {
+            Date deliveryTime = event.order().getDeliveryTime() != null
+                    ? event.order().getDeliveryTime() : new Date();
+            schedule(TaskType.COMPLETE_DELIVERED, event.order().getId(), deliveryTime);
+        }
+    }
+
+    @Scheduled(fixedDelay = TICK_MS)
+    public void tick() {
+        long now = System.currentTimeMillis();
+        List<TimingWheel.Entry<Task>> expired = wheel.advance(now);
+        synchronized (backlog) {
+            backlog.addAll(expired);
+        }
+
+        for (int i = 0; i < maxBatchesPerTick; i++) {
+            List<TimingWheel.Entry<Task>> batch = nextBatch();
+            if (batch.isEmpty()) {
+                break;
+            }
+            process(batch, now);
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("scheduled", scheduledCount.get());
+        metrics.put("pendingTimers", wheel.size());
+        synchronized (backlog) {
+            metrics.put("backlog", backlog.size());
+        }
+        metrics.put("autoCancelled", cancelledCount.get());
+        metrics.put("autoCompleted", completedCount.get());
+        metrics.put("lastBatchSize", lastBatchSize.get());
+        metrics.put("maxBatchSize", maxBatchSize.get());
+        metrics.put("lastLagMs", lastLagMs.get());
+        metrics.put("maxLagMs", maxLagMs.get());
+        metrics.put("paymentTimeout", paymentTimeout.toString());
+        metrics.put("autoCompleteAfter", autoCompleteAfter.toString());
+        return metrics;
+    }
+
+    private void schedule(TaskType type, Long orderId, Date since) {
+        if (orderId == null) {
+            return;
+        }
+        long start = since != null ? since.getTime() : System.currentTimeMillis();
+        Duration ttl = type == TaskType.CANCEL_UNPAID ? paymentTimeout : autoCompleteAfter;
+        wheel.schedule(new Task(type, orderId), start + ttl.toMillis());
+        scheduledCount.incrementAndGet();
+    }
+
+    // 取出同一类型的一批任务
+    private List<TimingWheel.Entry<Task>> nextBatch() {
+        List<TimingWheel.Entry<Task>> batch = new ArrayList<>();
+        synchronized (backlog) {
+            TimingWheel.Entry<Task> first = backlog.peek();
+            if (first == null) {
+                return batch;
+            }
+            TaskType type = first.task().type();
+            while (!backlog.isEmpty() && batch.size() < batchSize && backlog.peek().task().type() == type) {
+                batch.add(backlog.poll());
+            }
+        }
+        return batch;
+    }
+
+    private void process(List<TimingWheel.Entry<Task>> batch, long now) {
+        TaskType type = batch.get(0).task().type();
+        List<Long> orderIds = batch.stream().map(entry -> entry.task().orderId()).toList();
+        try {
+            if (type == TaskType.CANCEL_UNPAID) {
+                Date createdBefore = new Date(now - paymentTimeout.toMillis());
+                cancelledCount.addAndGet(orderService.cancelExpiredOrders(orderIds, createdBefore));
+            } else {
+                Date deliveredBefore = new Date(now - autoCompleteAfter.toMillis());
+                completedCount.addAndGet(orderService.completeDeliveredOrders(orderIds, deliveredBefore));
+            }
+        } catch (Exception e) {
+            // 处理失败的批次放回队列，下一个 tick 重试
+            log.warn("订单定时任务处理失败，稍后重试: 类型={}, 数量={}, 原因={}", type, batch.size(), e.getMessage());
+            synchronized (backlog) {
+                batch.forEach(backlog::addLast);
+            }
+            return;
+        }
+
+        long lag = now - batch.stream().mapToLong(TimingWheel.Entry::deadline).min().orElse(now);
+        lastLagMs.set(lag);
+        maxLagMs.accumulateAndGet(lag, Math::max);
+        lastBatchSize.set(batch.size());
+        maxBatchSize.accumulateAndGet(batch.size(), Math::max);
+    }
+
+    private enum TaskType {
+        CANCEL_UNPAID,        // 超时未支付，自动取消
+        COMPLETE_DELIVERED    // 送达超时，自动完成
+    }
+
+    private record Task(TaskType type, Long orderId) {
+    }
+}
@@ -0,0 +1,141 @@
+package com.kb.trading.component;
+import com.kb.trading.repository.OrderRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 订单号生成器
+ * 格式：KB + yyyyMMddHHmmss + 2位节点号 + 5位秒内序号，例如 KB20251018132030010000042。
+ * 秒数和序号打包在一个 AtomicLong 中用 CAS 推进，无锁且单节点内不会重复；
+ * 同一秒内序号用完时借用下一秒，时钟回拨时沿用已发出的最大秒数，保证单调递增。
+ * 启动时从订单表读取本节点已发出的最大订单号，从它之后继续，重启后（包括同一秒内重启、
+ * 或之前借用了未来的秒数）不会重复发出已使用的订单号。
+ * 多实例部署（trading.order-no.multi-node=true）时必须通过 trading.order-no.node-id 为每个节点配置不同的节点号，
+ * 未配置时启动失败；单节点部署时节点号默认为0。
+ */
+@Component
+@Slf4j
+public class OrderNoGenerator {
+    private static final String PREFIX = "KB";
+    private static final int SEQUENCE_BITS = 17;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final long MAX_SEQUENCE = 99_999;
+    private static final int MAX_NODE_ID = 99;
+    private static final int NODE_ID_UNSET = -1;
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMddHHmmss")
+            .withZone(ZoneId.systemDefault());
+
+    private final String nodePart;
+    private final OrderRepository orderRepository;
+    private final AtomicLong state = new AtomicLong();
+
+    // 最近一次格式化的时间前缀，避免每次都格式化日期
+    private volatile TimePrefix cachedPrefix = new TimePrefix(-1, "");
+
+    @Autowired
+    public OrderNoGenerator(@Value("${trading.order-no.node-id:-1}") int nodeId,
+                            @Value("${trading.order-no.multi-node:false}") boolean multiNode,
+                            OrderRepository orderRepository) {
+        if (nodeId == NODE_ID_UNSET) {
+            if (multiNode) {
+                throw new IllegalStateException("多节点部署必须为每个节点配置不同的 trading.order-no.node-id");
+            }
+            nodeId = 0;
+        }
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("订单号节点号必须在0-" + MAX_NODE_ID + "之间: " + nodeId);
+        }
+        this.nodePart = nodeId < 10 ? "0" + nodeId : String.valueOf(nodeId);
+        this.orderRepository = orderRepository;
+    }
+
+    // 不读取已发出订单号的生成器（测试用）
+    OrderNoGenerator(int nodeId) {
+        this(nodeId, false, null);
+    }
+
+    // 启动时从本节点已发出的最大订单号之后继续
+    @PostConstruct
+    public void init() {
+        if (orderRepository == null) {
+            return;
+        }
+        String pattern = PREFIX + "_".repeat(14) + nodePart + "%";
+        List<String> latest = orderRepository.findLatestOrderNos(pattern, Limit.of(1));
+        if (!latest.isEmpty()) {
+            advancePast(latest.get(0));
+            log.info("订单号生成器从已发出的最大订单号之后继续: {}", latest.get(0));
+        }
+    }
+
+    // 之后生成的订单号都大于 issuedOrderNo（格式不符时忽略）
+    void advancePast(String issuedOrderNo) {
+        if (issuedOrderNo == null || issuedOrderNo.length() != PREFIX.length() + 14 + 2 + 5) {
+            return;
+        }
+        long second;
+        long sequence;
+        try {
+            second = TIME_FORMATTER.parse(issuedOrderNo.substring(2, 16), Instant::from).getEpochSecond();
+            sequence = Long.parseLong(issuedOrderNo.substring(18));
+        } catch (RuntimeException e) {
+            log.warn("无法解析已发出的订单号: {}", issuedOrderNo);
+            return;
+        }
+        state.accumulateAndGet((second << SEQUENCE_BITS) | sequence, Math::max);
+    }
+
+    public String nextOrderNo() {
+        long next;
+        while (true) {
+            long current = state.get();
+            long second = current >>> SEQUENCE_BITS;
+            long sequence = current & SEQUENCE_MASK;
+            long nowSecond = System.currentTimeMillis() / 1000;
+
+            if (nowSecond > second) {
+                next = nowSecond << SEQUENCE_BITS;
+            } else if (sequence < MAX_SEQUENCE) {
+                next = current + 1;
+            } else {
+                next = (second + 1) << SEQUENCE_BITS;
+            }
+
+            if (state.compareAndSet(current, next)) {
+                break;
+            }
+        }
+        return format(next >>> SEQUENCE_BITS, next & SEQUENCE_MASK);
+    }
+
+    private String format(long second, long sequence) {
+        StringBuilder sb = new StringBuilder(PREFIX.length() + 14 + 2 + 5);
+        sb.append(PREFIX).append(timePrefix(second)).append(nodePart);
+        String seq = Long.toString(sequence);
+        for (int i = seq.length(); i < 5; i++) {
+            sb.append('0');
+        }
+        return sb.append(seq).toString();
+    }
+
+    private String timePrefix(long second) {
+        TimePrefix prefix = cachedPrefix;
+        if (prefix.second() != second) {
+            prefix = new TimePrefix(second, TIME_FORMATTER.format(Instant.ofEpochSecond(second)));
+            cachedPrefix = prefix;
+        }
+        return prefix.text();
+    }
+
+    private record TimePrefix(long second, String text) {
+    }
+}
@@ -0,0 +1,230 @@
+package com.kb.trading.component;
+import com.kb.trading.entity.Order;
+import com.kb.trading.entity.OrderStatus;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.stereotype.Component;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+import static com.kb.trading.entity.OrderStatus.*;
+
+/**
+ * 订单状态机
+ * 所有状态流转都登记在下面的转换表中，每次流转执行一条
+ * UPDATE orders SET previous_status = status, ..., status = ? WHERE id = ? AND status IN (...) AND (守卫条件)，
+ * 由数据库做比较并交换：并发的两个流转（如支付和取消）只有一个能成功，
+ * 成功路径不需要先读取订单，也不会整行回写。
+ * 不同来源需要记录的时间字段不同时，用 CASE 按原状态决定是否写入；
+ * 原状态同时记入 previous_status，来源不唯一时成功后按主键读回。
+ * 更新失败时返回 null，由调用方按需读取订单给出具体原因。
+ * 注意：条件更新绕过了持久化上下文，调用方在流转前不要加载同一订单实体。
+ */
+@Component
+public class OrderStateMachine {
+    // 转换表：目标状态 -> (来源状态 -> 需要记录的时间字段，没有则为null)
+    private static final Map<OrderStatus, Map<OrderStatus, String>> TRANSITIONS = new EnumMap<>(OrderStatus.class);
+
+    static {
+        allow(PENDING_PAYMENT, PAID, "paymentTime");    // 付款
+        allow(REFUNDING, PAID, null);                   // 拒绝退款，恢复为已付款
+        allow(PAID, SHIPPED, "shippingTime");           // 发货
+        allow(SHIPPED, DELIVERED, "deliveryTime");      // 确认收货
+        allow(DELIVERED, COMPLETED, "completedTime");   // 完成
+        allow(PENDING_PAYMENT, CANCELLED, null);        // 取消未付款订单
+        allow(PAID, CANCELLED, null);                   // 取消已付款未发货订单
+        allow(PAID, REFUNDING, null);                   // 申请退款
+        allow(SHIPPED, REFUNDING, null);
+        allow(REFUNDING, REFUNDED, null);               // 同意退款
+    }
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private static void allow(OrderStatus from, OrderStatus to, String timestampField) {
+        TRANSITIONS.computeIfAbsent(to, k -> new LinkedHashMap<>()).put(from, timestampField);
+    }
+
+    // 是否允许从 from 流转到 to
+    public boolean canTransition(OrderStatus from, OrderStatus to) {
+        return TRANSITIONS.getOrDefault(to, Map.of()).containsKey(from);
+    }
+
+    // 能流转到 to 的所有来源状态
+    public Set<OrderStatus> sourcesOf(OrderStatus to) {
+        return TRANSITIONS.getOrDefault(to, Map.of()).keySet();
+    }
+
+    // 进入 to 状态时需要记录的时间字段
+    public String timestampFieldOf(OrderStatus from, OrderStatus to) {
+        return TRANSITIONS.getOrDefault(to, Map.of()).get(from);
+    }
+
+    // 开始一次流转
+    public Change change(Long orderId, OrderStatus target) {
+        if (sourcesOf(target).isEmpty()) {
+            throw new IllegalArgumentException("不支持流转到状态: " + target);
+        }
+        return new Change(orderId, target);
+    }
+
+    /**
+     * 一次状态流转：限定来源状态、附加字段赋值和守卫条件后调用 apply()
+     */
+    public final class Change {
+        private final Long orderId;
+        private final OrderStatus target;
+        private final Set<OrderStatus> sources;
+        private final Map<String, Object> assignments = new LinkedHashMap<>();
+        private final List<BiFunction<CriteriaBuilder, Root<Order>, Predicate>> guards = new ArrayList<>();
+        private final List<BiFunction<CriteriaBuilder, CriteriaUpdate<Order>, CriteriaUpdate<Order>>> expressions =
+                new ArrayList<>();
+
+        private Change(Long orderId, OrderStatus target) {
+            this.orderId = orderId;
+            this.target = target;
+            this.sources = new LinkedHashSet<>(sourcesOf(target));
+        }
+
+        // 只允许从指定状态流转（必须是转换表中登记的来源）
+        public Change from(OrderStatus... statuses) {
+            Set<OrderStatus> restricted = new LinkedHashSet<>();
+            for (OrderStatus status : statuses) {
+                if (!canTransition(status, target)) {
+                    throw new IllegalArgumentException("不允许的状态流转: " + status + " -> " + target);
+                }
+                restricted.add(status);
+            }
+            sources.retainAll(restricted);
+            return this;
+        }
+
+        // 同一条语句中一并更新的字段
+        public Change set(String attribute, Object value) {
+            assignments.put(attribute, value);
+            return this;
+        }
+
+        // 守卫：字段等于给定值（如 buyerId = 当前用户）
+        public Change where(String attribute, Object value) {
+            guards.add((cb, root) -> cb.equal(root.get(attribute), value));
+            return this;
+        }
+
+        // 守卫：操作人是订单的买家或卖家
+        public Change whereParty(Long userId) {
+            guards.add((cb, root) -> cb.or(
+                    cb.equal(root.get("buyerId"), userId),
+                    cb.equal(root.get("sellerId"), userId)));
+            return this;
+        }
+
+        // 守卫：字段不大于给定金额（如 payableAmount <= 支付金额）
+        public Change whereAtMost(String attribute, BigDecimal value) {
+            guards.add((cb, root) -> cb.le(root.get(attribute), value));
+            return this;
+        }
+
+        // 守卫：字段不小于给定金额（如 payableAmount >= 退款金额）
+        public Change whereAtLeast(String attribute, BigDecimal value) {
+            guards.add((cb, root) -> cb.ge(root.get(attribute), value));
+            return this;
+        }
+
+        // 备注写入操作人对应的字段：买家写 buyerNote，否则写 sellerNote
+        public Change partyNote(Long operatorId, String note) {
+            expressions.add((cb, update) -> {
+                Root<Order> root = update.getRoot();
+                Path<String> buyerNote = root.get("buyerNote");
+                Path<String> sellerNote = root.get("sellerNote");
+                Predicate isBuyer = cb.equal(root.get("buyerId"), operatorId);
+                Expression<String> value = note != null ? cb.literal(note) : cb.nullLiteral(String.class);
+                return update
+                        .set(buyerNote, cb.<String>selectCase().when(isBuyer, value).otherwise(buyerNote))
+                        .set(sellerNote, cb.<String>selectCase().when(isBuyer, sellerNote).otherwise(value));
+            });
+            return this;
+        }
+
+        /**
+         * 执行流转，需在事务中调用
+         * @return 流转前的状态；没有满足条件的行（状态已变化、无权限或订单不存在）时返回 null
+         */
+        public OrderStatus apply() {
+            if (sources.isEmpty()) {
+                return null;
+            }
+            Date now = new Date();
+            CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+            CriteriaUpdate<Order> update = cb.createCriteriaUpdate(Order.class);
+            Root<Order> root = update.from(Order.class);
+            Path<OrderStatus> status = root.get("status");
+
+            // MySQL 按从左到右的顺序计算赋值，读取原状态的赋值必须写在 status 之前
+            update.set(root.<OrderStatus>get("previousStatus"), status);
+            for (Map.Entry<String, Set<OrderStatus>> entry : timestampSources().entrySet()) {
+                Path<Date> timestamp = root.get(entry.getKey());
+                if (entry.getValue().containsAll(sources)) {
+                    update.set(timestamp, now);
+                } else {
+                    update.set(timestamp, cb.<Date>selectCase()
+                            .when(status.in(entry.getValue()), now)
+                            .otherwise(timestamp));
+                }
+            }
+            update.set(root.<Date>get("updateTime"), now);
+            for (Map.Entry<String, Object> assignment : assignments.entrySet()) {
+                Path<Object> path = root.get(assignment.getKey());
+                update.set(path, assignment.getValue());
+            }
+            for (BiFunction<CriteriaBuilder, CriteriaUpdate<Order>, CriteriaUpdate<Order>> expression : expressions) {
+                expression.apply(cb, update);
+            }
+            update.set(status, target);
+
+            List<Predicate> predicates = new ArrayList<>();
+            predicates.add(cb.equal(root.get("id"), orderId));
+            predicates.add(status.in(sources));
+            for (BiFunction<CriteriaBuilder, Root<Order>, Predicate> guard : guards) {
+                predicates.add(guard.apply(cb, root));
+            }
+            update.where(predicates.toArray(new Predicate[0]));
+
+            if (entityManager.createQuery(update).executeUpdate() != 1) {
+                return null;
+            }
+            if (sources.size() == 1) {
+                return sources.iterator().next();
+            }
+            return entityManager.createQuery("SELECT o.previousStatus FROM Order o WHERE o.id = :id", OrderStatus.class)
+                    .setParameter("id", orderId)
+                    .getSingleResult();
+        }
+
+        // 需要记录的时间字段 -> 需要记录它的来源状态
+        Map<String, Set<OrderStatus>> timestampSources() {
+            Map<String, Set<OrderStatus>> result = new LinkedHashMap<>();
+            for (OrderStatus source : sources) {
+                String timestampField = timestampFieldOf(source, target);
+                if (timestampField != null) {
+                    result.computeIfAbsent(timestampField, k -> new LinkedHashSet<>()).add(source);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.kb.trading.component;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分层时间轮
+ * 第0层每格 tickMs，每层 wheelSize 格；超出当前层范围的任务放到上一层（每格跨度为下层一整圈），
+ * 时间推进到上层某格的起点时把该格任务降级重新放入下层。
+ * 添加任务 O(1)，推进时只处理到期格子里的任务，与任务总数无关。
+ * 非线程安全的部分由 synchronized 保护，调用方只需定期调用 advance。
+ */
+public class TimingWheel<T> {
+    private final long tickMs;
+    private final int wheelSize;
+    private final List<List<Entry<T>>[]> levels = new ArrayList<>();
+    private final List<Entry<T>> due = new ArrayList<>();
+    // 下一个待处理的第0层格子的起始时间（按 tickMs 对齐）
+    private long currentTime;
+    private int size;
+
+    public TimingWheel(long tickMs, int wheelSize, long startMs) {
+        if (tickMs <= 0 || wheelSize <= 1) {
+            throw new IllegalArgumentException("tickMs必须大于0，wheelSize必须大于1");
+        }
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.currentTime = startMs - (startMs % tickMs);
+        levels.add(newLevel());
+    }
+
+    // 添加任务，到期时间早于当前时间的任务在下一次 advance 时立即返回
+    public synchronized void schedule(T task, long deadlineMs) {
+        insert(new Entry<>(task, deadlineMs));
+        size++;
+    }
+
+    // 推进到 nowMs，返回所有已到期的任务
+    public synchronized List<Entry<T>> advance(long nowMs) {
+        List<Entry<T>> expired = new ArrayList<>(due);
+        due.clear();
+
+        while (currentTime + tickMs <= nowMs) {
+            drain(0, currentTime, expired);
+            currentTime += tickMs;
+
+            // 时间走到上层格子的起点时，把该格任务降级到下层
+            List<Entry<T>> cascade = new ArrayList<>();
+            for (int level = 1; level < levels.size(); level++) {
+                if (currentTime % levelTick(level) != 0) {
+                    break;
+                }
+                drain(level, currentTime, cascade);
+            }
+            for (Entry<T> entry : cascade) {
+                insert(entry);
+            }
+        }
+
+        expired.addAll(due);
+        due.clear();
+        size -= expired.size();
+        return expired;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private void insert(Entry<T> entry) {
+        if (entry.deadline() < currentTime) {
+            due.add(entry);
+            return;
+        }
+        for (int level = 0; ; level++) {
+            if (level == levels.size()) {
+                levels.add(newLevel());
+            }
+            long tick = levelTick(level);
+            long base = currentTime - (currentTime % tick);
+            if (entry.deadline() < base + tick * wheelSize) {
+                List<Entry<T>>[] buckets = levels.get(level);
+                int index = (int) ((entry.deadline() / tick) % wheelSize);
+                if (buckets[index] == null) {
+                    buckets[index] = new ArrayList<>();
+                }
+                buckets[index].add(entry);
+                return;
+            }
+        }
+    }
+
+    private void drain(int level, long time, List<Entry<T>> sink) {
+        List<Entry<T>>[] buckets = levels.get(level);
+        int index = (int) ((time / levelTick(level)) % wheelSize);
+        if (buckets[index] != null) {
+            sink.addAll(buckets[index]);
+            buckets[index] = null;
+        }
+    }
+
+    private long levelTick(int level) {
+        long tick = tickMs;
+        for (int i = 0; i < level; i++) {
+            tick *= wheelSize;
+        }
+        return tick;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Entry<T>>[] newLevel() {
+        return (List<Entry<T>>[]) new List[wheelSize];
+    }
+
+    public record Entry<T>(T task, long deadline) {
+    }
+}
@@ -1,8 +1,13 @@
 package com.kb.trading.controller;
+import com.kb.trading.cache.UserVersionStamps;
+import com.kb.trading.dto.CheckoutResult;
 import com.kb.trading.entity.CartItem;
 import com.kb.trading.service.CartService;
+import com.kb.trading.service.CheckoutService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.bind.annotation.*;
 import java.math.BigDecimal;
 import java.util.HashMap;
@@ -14,6 +19,8 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class CartController {
     private final CartService cartService;
+    private final CheckoutService checkoutService;
+    private final UserVersionStamps versionStamps;
 
     // 添加商品到购物车
     @PostMapping("/add")
@@ -113,10 +120,11 @@ public class CartController {
             @RequestBody List<Long> cartItemIds) {
 
         try {
-            cartService.batchRemoveFromCart(userId, cartItemIds);
+            int removedCount = cartService.batchRemoveFromCart(userId, cartItemIds);
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("message", "批量移除成功");
+            response.put("removedCount", removedCount);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
@@ -145,14 +153,18 @@ public class CartController {
 
     // 获取购物车列表
     @GetMapping("/list")
-    public ResponseEntity<Map<String, Object>> getCartItems(@RequestParam Long userId) {
+    public ResponseEntity<Map<String, Object>> getCartItems(@RequestParam Long userId, WebRequest webRequest) {
+        String eTag = versionStamps.eTag(UserVersionStamps.Scope.CART, userId, "list");
+        if (webRequest.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
         try {
             List<CartItem> cartItems = cartService.getCartItems(userId);
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("cartItems", cartItems);
             response.put("count", cartItems.size());
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok().eTag(eTag).body(response);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
@@ -163,13 +175,17 @@ public class CartController {
 
     // 获取购物车统计信息
     @GetMapping("/summary")
-    public ResponseEntity<Map<String, Object>> getCartSummary(@RequestParam Long userId) {
+    public ResponseEntity<Map<String, Object>> getCartSummary(@RequestParam Long userId, WebRequest webRequest) {
+        String eTag = versionStamps.eTag(UserVersionStamps.Scope.CART, userId, "summary");
+        if (webRequest.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
         try {
             Map<String, Object> summary = cartService.getCartSummary(userId);
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("summary", summary);
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok().eTag(eTag).body(response);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
@@ -239,10 +255,80 @@ public class CartController {
             @RequestBody List<CartItem> tempCartItems) {
 
         try {
-            cartService.mergeCart(userId, tempCartItems);
+            int mergedCount = cartService.mergeCart(userId, tempCartItems);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", "购物车合并成功");
+            response.put("mergedCount", mergedCount);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    // 游客购物车：购物车内容保存在令牌中，不访问数据库
+    @GetMapping("/guest/list")
+    public ResponseEntity<Map<String, Object>> getGuestCart(@RequestParam(required = false) String token) {
+        try {
+            return ResponseEntity.ok(guestCartResponse(token));
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    // 游客购物车加入商品，返回新的令牌
+    @PostMapping("/guest/add")
+    public ResponseEntity<Map<String, Object>> addToGuestCart(
+            @RequestParam(required = false) String token,
+            @RequestParam Long productId,
+            @RequestParam(defaultValue = "1") Integer quantity) {
+
+        try {
+            return ResponseEntity.ok(guestCartResponse(cartService.addToGuestCart(token, productId, quantity)));
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    // 游客购物车修改数量（数量为0时移除），返回新的令牌
+    @PutMapping("/guest/update")
+    public ResponseEntity<Map<String, Object>> updateGuestCart(
+            @RequestParam(required = false) String token,
+            @RequestParam Long productId,
+            @RequestParam Integer quantity) {
+
+        try {
+            return ResponseEntity.ok(guestCartResponse(
+                    cartService.updateGuestCartQuantity(token, productId, quantity)));
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    // 登录后把游客购物车令牌合并到用户购物车
+    @PostMapping("/guest/merge")
+    public ResponseEntity<Map<String, Object>> mergeGuestCart(
+            @RequestParam Long userId,
+            @RequestParam String token) {
+
+        try {
+            int mergedCount = cartService.mergeGuestCart(userId, token);
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("message", "购物车合并成功");
+            response.put("mergedCount", mergedCount);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
@@ -252,6 +338,16 @@ public class CartController {
         }
     }
 
+    private Map<String, Object> guestCartResponse(String token) {
+        Map<Long, Integer> items = cartService.getGuestCartItems(token);
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("token", token);
+        response.put("items", items);
+        response.put("count", items.size());
+        return response;
+    }
+
     // 验证购物车商品库存
     @GetMapping("/validate-stock")
     public ResponseEntity<Map<String, Object>> validateCartStock(@RequestParam Long userId) {
@@ -302,40 +398,21 @@ public class CartController {
             @RequestParam(required = false) String note) {
 
         try {
-            // 1. 验证库存
-            Map<Long, Integer> validationResult = cartService.validateCartStock(userId);
-            boolean hasStockIssue = validationResult.values().stream()
-                    .anyMatch(result -> result != 0);
-
-            if (hasStockIssue) {
+            CheckoutResult result = checkoutService.checkout(userId, address, phone, note);
+            if (!result.isSuccess()) {
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", false);
                 response.put("message", "部分商品库存不足，请调整购物车");
-                response.put("validationResult", validationResult);
+                response.put("validationResult", result.stockIssues());
                 return ResponseEntity.badRequest().body(response);
             }
 
-            // 2. 从购物车生成订单项
-            List<com.kb.trading.entity.OrderItem> orderItems = cartService.convertToOrderItems(userId);
-
-            if (orderItems.isEmpty()) {
-                throw new RuntimeException("购物车为空");
-            }
-
-            // 3. 调用订单服务创建订单
-            // 这里需要调用OrderService，暂时返回模拟数据
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("message", "订单创建成功（模拟）");
-            response.put("orderItems", orderItems);
-            response.put("itemCount", orderItems.size());
-            response.put("totalAmount", orderItems.stream()
-                    .map(item -> item.getSubtotal())
-                    .reduce(BigDecimal.ZERO, BigDecimal::add));
-
-            // 4. 清空购物车（可选）
-            // cartService.clearCart(userId);
-
+            response.put("message", "订单创建成功");
+            response.put("orders", result.orders());
+            response.put("orderCount", result.orders().size());
+            response.put("totalAmount", result.totalAmount());
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
@@ -0,0 +1,101 @@
+package com.kb.trading.controller;
+import com.kb.trading.archive.OrderArchiver;
+import com.kb.trading.cache.CartStore;
+import com.kb.trading.cache.HotProductRanking;
+import com.kb.trading.cache.ProductCache;
+import com.kb.trading.cache.ProductViewCounter;
+import com.kb.trading.component.OrderLifecycleTimer;
+import com.kb.trading.service.CheckoutService;
+import com.kb.trading.service.OrderExportService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import java.util.HashMap;
+import java.util.Map;
+@RestController
+@RequestMapping("/monitor")
+@RequiredArgsConstructor
+public class MonitorController {
+    private final OrderLifecycleTimer orderLifecycleTimer;
+    private final OrderArchiver orderArchiver;
+    private final OrderExportService orderExportService;
+    private final CartStore cartStore;
+    private final CheckoutService checkoutService;
+    private final ProductViewCounter productViewCounter;
+    private final HotProductRanking hotProductRanking;
+    private final ProductCache productCache;
+
+    // 订单超时定时器指标（延迟、批次大小等）
+    @GetMapping("/order-lifecycle")
+    public ResponseEntity<Map<String, Object>> getOrderLifecycleMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("metrics", orderLifecycleTimer.getMetrics());
+        return ResponseEntity.ok(response);
+    }
+
+    // 订单归档指标（段数、归档订单数、最近一次运行情况）
+    @GetMapping("/order-archive")
+    public ResponseEntity<Map<String, Object>> getOrderArchiveMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("metrics", orderArchiver.getMetrics());
+        return ResponseEntity.ok(response);
+    }
+
+    // 订单导出指标（最近一次导出的行数、耗时、每秒行数）
+    @GetMapping("/order-export")
+    public ResponseEntity<Map<String, Object>> getOrderExportMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("metrics", orderExportService.getExportMetrics());
+        return ResponseEntity.ok(response);
+    }
+
+    // 购物车内存存储指标（内存中的购物车数、待写入数、落库次数等）
+    @GetMapping("/cart-store")
+    public ResponseEntity<Map<String, Object>> getCartStoreMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("metrics", cartStore.getMetrics());
+        return ResponseEntity.ok(response);
+    }
+
+    // 购物车结算指标（耗时、超出延迟预算的次数等）
+    @GetMapping("/cart-checkout")
+    public ResponseEntity<Map<String, Object>> getCartCheckoutMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("metrics", checkoutService.getCheckoutMetrics());
+        return ResponseEntity.ok(response);
+    }
+
+    // 商品浏览次数累加器指标（待写入的增量、写入次数等）
+    @GetMapping("/product-views")
+    public ResponseEntity<Map<String, Object>> getProductViewMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("metrics", productViewCounter.getMetrics());
+        return ResponseEntity.ok(response);
+    }
+
+    // 热门商品排行指标（各排行的条目数、淘汰次数、卡片刷新耗时等）
+    @GetMapping("/hot-products")
+    public ResponseEntity<Map<String, Object>> getHotProductMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("metrics", hotProductRanking.getMetrics());
+        return ResponseEntity.ok(response);
+    }
+
+    // 商品缓存指标（命中率、合并加载次数、加载耗时、淘汰次数等）
+    @GetMapping("/product-cache")
+    public ResponseEntity<Map<String, Object>> getProductCacheMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("metrics", productCache.getMetrics());
+        return ResponseEntity.ok(response);
+    }
+}
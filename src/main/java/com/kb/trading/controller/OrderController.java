@@ -1,13 +1,24 @@
 package com.kb.trading.controller;
+import com.kb.trading.cache.UserVersionStamps;
+import com.kb.trading.dto.CursorPage;
 import com.kb.trading.entity.Order;
 import com.kb.trading.entity.OrderItem;
 import com.kb.trading.entity.OrderStatus;
+import com.kb.trading.service.OrderExportService;
 import com.kb.trading.service.OrderService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import java.math.BigDecimal;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -16,6 +27,8 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class OrderController {
     private final OrderService orderService;
+    private final OrderExportService orderExportService;
+    private final UserVersionStamps versionStamps;
 
     // 创建订单
     @PostMapping("/create")
@@ -75,16 +88,16 @@ public class OrderController {
         }
     }
 
-    // 获取买家订单列表
+    // 获取买家订单列表（游标分页，nextCursor 传回即可获取下一页）
     @GetMapping("/buyer/{buyerId}")
-    public ResponseEntity<Map<String, Object>> getBuyerOrders(@PathVariable Long buyerId) {
+    public ResponseEntity<Map<String, Object>> getBuyerOrders(
+            @PathVariable Long buyerId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "false") boolean withTotal) {
         try {
-            List<Order> orders = orderService.getOrdersByBuyer(buyerId);
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("orders", orders);
-            response.put("count", orders.size());
-            return ResponseEntity.ok(response);
+            CursorPage<Order> orderPage = orderService.getBuyerOrdersByCursor(buyerId, cursor, size, withTotal);
+            return ResponseEntity.ok(cursorPageResponse(orderPage));
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
@@ -93,16 +106,16 @@ public class OrderController {
         }
     }
 
-    // 获取卖家订单列表
+    // 获取卖家订单列表（游标分页，nextCursor 传回即可获取下一页）
     @GetMapping("/seller/{sellerId}")
-    public ResponseEntity<Map<String, Object>> getSellerOrders(@PathVariable Long sellerId) {
+    public ResponseEntity<Map<String, Object>> getSellerOrders(
+            @PathVariable Long sellerId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "false") boolean withTotal) {
         try {
-            List<Order> orders = orderService.getOrdersBySeller(sellerId);
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("orders", orders);
-            response.put("count", orders.size());
-            return ResponseEntity.ok(response);
+            CursorPage<Order> orderPage = orderService.getSellerOrdersByCursor(sellerId, cursor, size, withTotal);
+            return ResponseEntity.ok(cursorPageResponse(orderPage));
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
@@ -116,8 +129,13 @@ public class OrderController {
     public ResponseEntity<Map<String, Object>> getBuyerOrdersPage(
             @PathVariable Long buyerId,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size) {
+            @RequestParam(defaultValue = "10") int size,
+            WebRequest webRequest) {
 
+        String eTag = versionStamps.eTag(UserVersionStamps.Scope.ORDERS, buyerId, "b" + page + "x" + size);
+        if (webRequest.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
         try {
             Page<Order> orderPage = orderService.getBuyerOrdersPage(buyerId, page, size);
             Map<String, Object> response = new HashMap<>();
@@ -126,6 +144,30 @@ public class OrderController {
             response.put("totalPages", orderPage.getTotalPages());
             response.put("totalElements", orderPage.getTotalElements());
             response.put("currentPage", page);
+            return ResponseEntity.ok().eTag(eTag).body(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    // 搜索订单（订单号前缀或买家/卖家名称）
+    @GetMapping("/search")
+    public ResponseEntity<Map<String, Object>> searchOrders(
+            @RequestParam String keyword,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size) {
+
+        try {
+            Page<Order> orderPage = orderService.searchOrders(keyword, page, size);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("orders", orderPage.getContent());
+            response.put("totalPages", orderPage.getTotalPages());
+            response.put("totalElements", orderPage.getTotalElements());
+            response.put("currentPage", page);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
@@ -135,6 +177,36 @@ public class OrderController {
         }
     }
 
+    // 导出时间范围 [start, end) 内的订单（CSV 或 NDJSON，边查边写）
+    @GetMapping("/export")
+    public ResponseEntity<?> exportOrders(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") Date start,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") Date end,
+            @RequestParam(defaultValue = "csv") String format) {
+
+        OrderExportService.Format exportFormat;
+        try {
+            exportFormat = OrderExportService.Format.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            exportFormat = null;
+        }
+        if (exportFormat == null || !start.before(end)) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", exportFormat == null ? "不支持的导出格式: " + format : "开始时间必须早于结束时间");
+            return ResponseEntity.badRequest().body(response);
+        }
+
+        OrderExportService.Format selected = exportFormat;
+        StreamingResponseBody body = output -> orderExportService.exportOrders(start, end, selected, output);
+        String filename = "orders-" + new SimpleDateFormat("yyyyMMddHHmmss").format(start) + "."
+                + selected.getExtension();
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(selected.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .body(body);
+    }
+
     // 支付订单
     @PutMapping("/{orderId}/pay")
     public ResponseEntity<Map<String, Object>> payOrder(
@@ -294,14 +366,19 @@ public class OrderController {
     @GetMapping("/stats/{userId}")
     public ResponseEntity<Map<String, Object>> getOrderStats(
             @PathVariable Long userId,
-            @RequestParam boolean isSeller) {
+            @RequestParam boolean isSeller,
+            WebRequest webRequest) {
 
+        String eTag = versionStamps.eTag(UserVersionStamps.Scope.ORDERS, userId, isSeller ? "ss" : "sb");
+        if (webRequest.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
         try {
             Map<String, Object> stats = orderService.getOrderStats(userId, isSeller);
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("stats", stats);
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok().eTag(eTag).body(response);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
@@ -340,4 +417,17 @@ public class OrderController {
         response.put("statusList", statusList);
         return ResponseEntity.ok(response);
     }
+
+    private Map<String, Object> cursorPageResponse(CursorPage<Order> orderPage) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("orders", orderPage.content());
+        response.put("count", orderPage.content().size());
+        response.put("nextCursor", orderPage.nextCursor());
+        response.put("hasMore", orderPage.hasMore());
+        if (orderPage.totalElements() != null) {
+            response.put("totalElements", orderPage.totalElements());
+        }
+        return response;
+    }
 }
@@ -1,4 +1,8 @@
 package com.kb.trading.controller;
+import com.kb.trading.dto.FacetedPage;
+import com.kb.trading.dto.HotProduct;
+import com.kb.trading.dto.NearbyProduct;
+import com.kb.trading.dto.ProductCard;
 import com.kb.trading.entity.Product;
 import com.kb.trading.service.ProductService;
 import lombok.RequiredArgsConstructor;
@@ -32,13 +36,13 @@ public class ProductController {
 
     // 获取卖家商品列表
     @GetMapping("/seller/{sellerId}")
-    public List<Product> getProductsBySellerId(@PathVariable Long sellerId) {
+    public List<ProductCard> getProductsBySellerId(@PathVariable Long sellerId) {
         return productService.getProductsBySellerId(sellerId);
     }
 
     // 获取所有上架商品（分页）
     @GetMapping("/list")
-    public Page<Product> getActiveProducts(
+    public Page<ProductCard> getActiveProducts(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size) {
         return productService.getActiveProducts(page, size);
@@ -46,30 +50,58 @@ public class ProductController {
 
     // 搜索商品
     @GetMapping("/search")
-    public List<Product> searchProducts(@RequestParam String keyword) {
-        return productService.searchProducts(keyword);
+    public Page<ProductCard> searchProducts(
+            @RequestParam String keyword,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size) {
+        return productService.searchProducts(keyword, page, size);
     }
 
     // 按分类查询
     @GetMapping("/category/{category}")
-    public List<Product> getProductsByCategory(@PathVariable String category) {
+    public List<ProductCard> getProductsByCategory(@PathVariable String category) {
         return productService.getProductsByCategory(category);
     }
 
     // 按地点查询
     @GetMapping("/location/{location}")
-    public List<Product> getProductsByLocation(@PathVariable String location) {
+    public List<ProductCard> getProductsByLocation(@PathVariable String location) {
         return productService.getProductsByLocation(location);
     }
 
     // 价格区间查询
     @GetMapping("/price-range")
-    public List<Product> getProductsByPriceRange(
+    public List<ProductCard> getProductsByPriceRange(
             @RequestParam(required = false) BigDecimal minPrice,
             @RequestParam(required = false) BigDecimal maxPrice) {
         return productService.getProductsByPriceRange(minPrice, maxPrice);
     }
 
+    // 组合筛选：分类、所在地、价格区间、状态任意组合，sort 为 newest、price_asc 或 price_desc
+    @GetMapping("/filter")
+    public FacetedPage<ProductCard> filterProducts(
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) String location,
+            @RequestParam(required = false) BigDecimal minPrice,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(defaultValue = "1") Integer status,
+            @RequestParam(defaultValue = "newest") String sort,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size) {
+        return productService.filterProducts(category, location, minPrice, maxPrice, status, sort, page, size);
+    }
+
+    // 附近商品：按距离由近到远返回半径（公里）内的上架商品
+    @GetMapping("/nearby")
+    public Page<NearbyProduct> getNearbyProducts(
+            @RequestParam double latitude,
+            @RequestParam double longitude,
+            @RequestParam(defaultValue = "3") double radius,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size) {
+        return productService.getNearbyProducts(latitude, longitude, radius, page, size);
+    }
+
     // 下架商品
     @PutMapping("/deactivate/{productId}")
     public Product deactivateProduct(
@@ -94,11 +126,12 @@ public class ProductController {
         return productService.markAsSold(productId, sellerId);
     }
 
-    // 获取热门商品
+    // 获取热门商品（by=views 按浏览量，by=sales 按销量）
     @GetMapping("/hot")
-    public List<Product> getHotProducts(
-            @RequestParam(defaultValue = "10") int limit) {
-        return productService.getHotProducts(limit);
+    public List<HotProduct> getHotProducts(
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(defaultValue = "views") String by) {
+        return productService.getHotProducts(by, limit);
     }
 
     // 删除商品（逻辑删除）
@@ -0,0 +1,8 @@
+package com.kb.trading.dto;
+import java.math.BigDecimal;
+
+/**
+ * 购物车汇总：商品种类数、商品总件数、总金额
+ */
+public record CartSummary(int itemCount, int totalQuantity, BigDecimal totalAmount) {
+}
@@ -0,0 +1,24 @@
+package com.kb.trading.dto;
+import com.kb.trading.entity.Order;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 购物车结算结果
+ * 校验未通过时 orders 为空，stockIssues 记录每个商品的校验结果（同 CartService#validateCartStock）
+ */
+public record CheckoutResult(List<Order> orders, Map<Long, Integer> stockIssues) {
+
+    public static CheckoutResult rejected(Map<Long, Integer> stockIssues) {
+        return new CheckoutResult(List.of(), stockIssues);
+    }
+
+    public boolean isSuccess() {
+        return !orders.isEmpty();
+    }
+
+    public BigDecimal totalAmount() {
+        return orders.stream().map(Order::getPayableAmount).reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+}
@@ -0,0 +1,10 @@
+package com.kb.trading.dto;
+import java.util.List;
+
+/**
+ * 游标分页结果
+ * nextCursor 为下一页的不透明游标，没有更多数据时为 null；
+ * totalElements 只有调用方要求时才统计，否则为 null。
+ */
+public record CursorPage<T>(List<T> content, String nextCursor, boolean hasMore, Long totalElements) {
+}
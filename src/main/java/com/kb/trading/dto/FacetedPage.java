@@ -0,0 +1,10 @@
+package com.kb.trading.dto;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分面筛选结果：一页数据、命中总数，以及各分面（如 category、location）每个取值的命中数
+ */
+public record FacetedPage<T>(List<T> content, int page, int size, long totalElements,
+                             Map<String, Map<String, Integer>> facets) {
+}
@@ -0,0 +1,8 @@
+package com.kb.trading.dto;
+import java.math.BigDecimal;
+
+/**
+ * 热门商品卡片：排行榜展示需要的商品字段和排行计数（浏览次数、收藏数或销量）
+ */
+public record HotProduct(Long id, String title, BigDecimal price, String mainImage, String location, long score) {
+}
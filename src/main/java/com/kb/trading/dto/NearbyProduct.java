@@ -0,0 +1,7 @@
+package com.kb.trading.dto;
+
+/**
+ * 附近商品：商品卡片和它到查询位置的距离（米）
+ */
+public record NearbyProduct(ProductCard product, long distance) {
+}
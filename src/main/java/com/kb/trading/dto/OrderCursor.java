@@ -0,0 +1,31 @@
+package com.kb.trading.dto;
+import com.kb.trading.entity.Order;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * 订单列表游标：最后一条记录的 (createTime, id)，编码为 base64url 字符串交给客户端
+ */
+public record OrderCursor(Date createTime, Long id) {
+
+    public static OrderCursor of(Order order) {
+        return new OrderCursor(order.getCreateTime(), order.getId());
+    }
+
+    public String encode() {
+        String raw = createTime.getTime() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static OrderCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            return new OrderCursor(new Date(Long.parseLong(raw.substring(0, separator))),
+                    Long.parseLong(raw.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new RuntimeException("无效的分页游标");
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.kb.trading.dto;
+import com.kb.trading.entity.Product;
+import java.math.BigDecimal;
+
+/**
+ * 商品卡片：列表页只需要的字段，不含描述（TEXT）和图片列表；
+ * 带上状态，卖家和分类列表中可以区分在售、已售出和已下架
+ */
+public record ProductCard(Long id, String title, BigDecimal price, String mainImage, String location,
+                          Integer likeCount, Integer status) {
+
+    public static ProductCard of(Product product) {
+        return new ProductCard(product.getId(), product.getTitle(), product.getPrice(), product.getMainImage(),
+                product.getLocation(), product.getLikeCount(), product.getStatus());
+    }
+}
@@ -0,0 +1,13 @@
+package com.kb.trading.dto;
+import java.math.BigDecimal;
+
+/**
+ * 商品快照：购物车校验和下单只需要的字段（ID、状态、库存、价格，以及按卖家拆单用的卖家信息）
+ */
+public record ProductSnapshot(Long id, Integer status, Integer stock, BigDecimal price,
+                              Long sellerId, String sellerName) {
+
+    public boolean isOnSale() {
+        return status != null && status == 1;
+    }
+}
@@ -6,18 +6,22 @@ import java.math.BigDecimal;
 import java.util.Date;
 @Data
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        // 买家/卖家订单列表按 (create_time, id) 游标分页
+        @Index(name = "idx_orders_buyer_create_time", columnList = "buyer_id, create_time, id"),
+        @Index(name = "idx_orders_seller_create_time", columnList = "seller_id, create_time, id")
+})
 @EqualsAndHashCode(callSuper = true)
 public class Order extends BaseEntity {
     @Column(nullable = false, unique = true)
     private String orderNo;           // 订单号（唯一）
 
-    @Column(nullable = false)
+    @Column(name = "buyer_id", nullable = false)
     private Long buyerId;             // 买家ID
 
     private String buyerName;         // 买家姓名（冗余字段）
 
-    @Column(nullable = false)
+    @Column(name = "seller_id", nullable = false)
     private Long sellerId;            // 卖家ID
 
     private String sellerName;        // 卖家姓名（冗余字段）
@@ -35,6 +39,9 @@ public class Order extends BaseEntity {
     @Column(nullable = false)
     private OrderStatus status = OrderStatus.PENDING_PAYMENT; // 订单状态
 
+    @Enumerated(EnumType.STRING)
+    private OrderStatus previousStatus; // 上一个状态（由状态机流转时记录）
+
     @Column(length = 500)
     private String buyerAddress;      // 收货地址
 
@@ -34,6 +34,10 @@ public class Product extends BaseEntity{
 
     private String location;        // 商品所在地（同城交易重要字段）
 
+    private Double latitude;        // 纬度（可选，用于附近商品查询）
+
+    private Double longitude;       // 经度（可选，用于附近商品查询）
+
     @Column(nullable = false)
     private Integer status = 1;     // 状态：0-下架 1-上架 2-已售出 3-已删除
 
@@ -46,7 +50,8 @@ public class Product extends BaseEntity{
 
     private String contactPhone;    // 联系电话
 
-    private Integer viewCount = 0;  // 浏览次数
+    @Column(name = "view_count", updatable = false)
+    private Integer viewCount = 0;  // 浏览次数（只由 ProductViewCounter 按增量更新，保存实体时不回写）
 
     private Integer likeCount = 0;  // 收藏/点赞数
     // 添加获取点赞状态的方法（需要传入用户ID）
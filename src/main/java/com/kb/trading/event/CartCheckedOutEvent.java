@@ -0,0 +1,9 @@
+package com.kb.trading.event;
+import java.util.List;
+
+/**
+ * 购物车结算事件：这些商品已经下单，对应的购物车项已从数据库删除
+ * 事务提交后再从购物车内存存储中移除，回滚时购物车保持不变。
+ */
+public record CartCheckedOutEvent(Long userId, List<Long> productIds) {
+}
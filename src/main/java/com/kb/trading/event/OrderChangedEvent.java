@@ -0,0 +1,31 @@
+package com.kb.trading.event;
+import com.kb.trading.entity.Order;
+import com.kb.trading.entity.OrderStatus;
+
+/**
+ * 订单变更事件
+ * 创建时 previousStatus 为 null，删除时 currentStatus 为 null。
+ * 在事务内发布，监听方一般使用 @TransactionalEventListener 在提交后处理。
+ */
+public record OrderChangedEvent(Order order, OrderStatus previousStatus, OrderStatus currentStatus) {
+
+    public static OrderChangedEvent created(Order order) {
+        return new OrderChangedEvent(order, null, order.getStatus());
+    }
+
+    public static OrderChangedEvent statusChanged(Order order, OrderStatus previousStatus) {
+        return new OrderChangedEvent(order, previousStatus, order.getStatus());
+    }
+
+    public static OrderChangedEvent deleted(Order order) {
+        return new OrderChangedEvent(order, order.getStatus(), null);
+    }
+
+    public boolean isCreated() {
+        return previousStatus == null && currentStatus != null;
+    }
+
+    public boolean isDeleted() {
+        return currentStatus == null;
+    }
+}
@@ -0,0 +1,9 @@
+package com.kb.trading.event;
+import java.util.List;
+
+/**
+ * 订单已归档事件：这些订单已写入归档并从订单表删除
+ * 订单数量和状态都没有变化，只是不再位于订单表中。
+ */
+public record OrdersArchivedEvent(List<Long> orderIds) {
+}
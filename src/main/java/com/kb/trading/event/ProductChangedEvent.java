@@ -0,0 +1,9 @@
+package com.kb.trading.event;
+import java.math.BigDecimal;
+
+/**
+ * 商品信息变更事件：购物车中缓存的价格、标题或主图需要同步
+ * 只携带变更后的值，同一商品短时间内的多次变更只需处理最后一次。
+ */
+public record ProductChangedEvent(Long productId, BigDecimal price, String title, String mainImage) {
+}
@@ -0,0 +1,8 @@
+package com.kb.trading.event;
+
+/**
+ * 商品收藏数变化事件：收藏时 delta 为 1，取消收藏时为 -1
+ * 热门商品排行在事务提交后按增量更新。
+ */
+public record ProductFavoritedEvent(Long productId, int delta) {
+}
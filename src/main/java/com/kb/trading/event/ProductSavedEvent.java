@@ -0,0 +1,9 @@
+package com.kb.trading.event;
+import com.kb.trading.entity.Product;
+
+/**
+ * 商品已保存事件：发布、修改、上下架、售出或删除后发布，携带保存后的商品
+ * 搜索索引等按商品当前状态决定索引还是移出。
+ */
+public record ProductSavedEvent(Product product) {
+}
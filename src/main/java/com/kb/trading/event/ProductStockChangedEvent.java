@@ -0,0 +1,9 @@
+package com.kb.trading.event;
+import java.util.List;
+
+/**
+ * 商品库存变化事件：预占或归还库存后发布（售罄、恢复上架也随库存一起变化）
+ * 商品缓存在事务提交后使这些商品失效。
+ */
+public record ProductStockChangedEvent(List<Long> productIds) {
+}
@@ -8,13 +8,22 @@ import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 @Repository
-public interface CartItemRepository extends JpaRepository<CartItem, Long> {
+public interface CartItemRepository extends JpaRepository<CartItem, Long>, CartItemRepositoryCustom {
     // 根据用户ID查找购物车项
     List<CartItem> findByUserId(Long userId);
 
+    // 最近购物车有变动的用户（启动时预热购物车内存存储）
+    @Query("SELECT DISTINCT ci.userId FROM CartItem ci WHERE ci.updateTime >= :since")
+    List<Long> findUserIdsUpdatedSince(@Param("since") Date since);
+
+    // 批量查找多个用户的购物车项
+    List<CartItem> findByUserIdIn(Collection<Long> userIds);
+
     // 根据用户ID和商品ID查找
     Optional<CartItem> findByUserIdAndProductId(Long userId, Long productId);
 
@@ -0,0 +1,18 @@
+package com.kb.trading.repository;
+import com.kb.trading.entity.CartItem;
+import com.kb.trading.event.ProductChangedEvent;
+import java.util.List;
+import java.util.Map;
+public interface CartItemRepositoryCustom {
+    // 按 (user_id, product_id) 批量插入或覆盖购物车项，返回与 items 一一对应的数据库ID（需在事务中调用）
+    long[] batchUpsertItems(List<CartItem> items);
+
+    // 按主键批量更新购物车项的数量、规格和商品信息（一次JDBC批处理）
+    void batchUpdateItems(List<CartItem> items);
+
+    // 按主键批量删除购物车项（用户ID -> 该用户的购物车项ID，每个用户一条语句，只删除属于该用户的行）
+    void batchDeleteByIds(Map<Long, List<Long>> idsByUserId);
+
+    // 同步商品的价格、标题和主图到所有包含该商品的购物车项（每个商品一条UPDATE，一次JDBC批处理），返回更新的行数
+    int batchUpdateProductInfo(List<ProductChangedEvent> changes);
+}
@@ -0,0 +1,157 @@
+package com.kb.trading.repository;
+import com.kb.trading.entity.CartItem;
+import com.kb.trading.event.ProductChangedEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 购物车项批量写入（购物车内存存储落库时使用）
+ * 新行按 (user_id, product_id) 唯一键批量插入或覆盖，再用一次查询取回数据库中的ID；
+ * 已有行的修改按主键和 user_id 批量执行，删除时每个用户一条 DELETE ... WHERE user_id = ? AND id IN (...)，
+ * 不会写到其他用户的行。
+ * 商品信息变更时按 product_id 整体更新，小计在数据库中按数量重新计算。
+ */
+@RequiredArgsConstructor
+public class CartItemRepositoryCustomImpl implements CartItemRepositoryCustom {
+    // 同一用户同一商品已有行（如内存中已删除、尚未落库的旧行）时直接覆盖，不违反唯一约束
+    private static final String UPSERT_SQL = "INSERT INTO cart_item " +
+            "(create_time, update_time, user_id, product_id, quantity, unit_price, " +
+            "product_title, product_image, product_spec, subtotal) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE create_time = VALUES(create_time), update_time = VALUES(update_time), " +
+            "quantity = VALUES(quantity), unit_price = VALUES(unit_price), product_title = VALUES(product_title), " +
+            "product_image = VALUES(product_image), product_spec = VALUES(product_spec), subtotal = VALUES(subtotal)";
+    private static final String SELECT_IDS_SQL = "SELECT id, user_id, product_id FROM cart_item " +
+            "WHERE (user_id, product_id) IN (";
+    private static final int SELECT_IDS_BATCH_SIZE = 500;
+    private static final String UPDATE_SQL = "UPDATE cart_item " +
+            "SET update_time = ?, quantity = ?, unit_price = ?, product_title = ?, product_image = ?, " +
+            "product_spec = ?, subtotal = ? WHERE id = ? AND user_id = ?";
+    private static final String DELETE_SQL = "DELETE FROM cart_item WHERE user_id = ? AND id IN (";
+    private static final String UPDATE_PRODUCT_SQL = "UPDATE cart_item " +
+            "SET unit_price = ?, product_title = ?, product_image = ?, subtotal = ? * quantity, update_time = ? " +
+            "WHERE product_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public long[] batchUpsertItems(List<CartItem> items) {
+        if (items.isEmpty()) {
+            return new long[0];
+        }
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        jdbcTemplate.batchUpdate(UPSERT_SQL, items, items.size(), (ps, item) -> {
+            ps.setTimestamp(1, toTimestamp(item.getCreateTime(), now));
+            ps.setTimestamp(2, toTimestamp(item.getUpdateTime(), now));
+            ps.setLong(3, item.getUserId());
+            ps.setLong(4, item.getProductId());
+            ps.setInt(5, item.getQuantity());
+            ps.setObject(6, item.getUnitPrice(), Types.DECIMAL);
+            ps.setString(7, item.getProductTitle());
+            ps.setString(8, item.getProductImage());
+            ps.setString(9, item.getProductSpec());
+            ps.setObject(10, item.getSubtotal(), Types.DECIMAL);
+        });
+
+        // 覆盖已有行时驱动返回的自增键不可靠，按唯一键查询取回ID
+        Map<Key, Long> idsByKey = new HashMap<>();
+        for (int from = 0; from < items.size(); from += SELECT_IDS_BATCH_SIZE) {
+            List<CartItem> batch = items.subList(from, Math.min(from + SELECT_IDS_BATCH_SIZE, items.size()));
+            StringBuilder sql = new StringBuilder(SELECT_IDS_SQL);
+            List<Object> args = new ArrayList<>(batch.size() * 2);
+            for (CartItem item : batch) {
+                sql.append(args.isEmpty() ? "(?, ?)" : ", (?, ?)");
+                args.add(item.getUserId());
+                args.add(item.getProductId());
+            }
+            sql.append(')');
+            jdbcTemplate.query(sql.toString(), rs -> {
+                idsByKey.put(new Key(rs.getLong(2), rs.getLong(3)), rs.getLong(1));
+            }, args.toArray());
+        }
+        long[] ids = new long[items.size()];
+        for (int i = 0; i < ids.length; i++) {
+            CartItem item = items.get(i);
+            Long id = idsByKey.get(new Key(item.getUserId(), item.getProductId()));
+            if (id == null) {
+                throw new IllegalStateException("购物车项写入后未找到: 用户=" + item.getUserId()
+                        + ", 商品=" + item.getProductId());
+            }
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    @Override
+    public void batchUpdateItems(List<CartItem> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        jdbcTemplate.batchUpdate(UPDATE_SQL, items, items.size(), (ps, item) -> {
+            ps.setTimestamp(1, toTimestamp(item.getUpdateTime(), now));
+            ps.setInt(2, item.getQuantity());
+            ps.setObject(3, item.getUnitPrice(), Types.DECIMAL);
+            ps.setString(4, item.getProductTitle());
+            ps.setString(5, item.getProductImage());
+            ps.setString(6, item.getProductSpec());
+            ps.setObject(7, item.getSubtotal(), Types.DECIMAL);
+            ps.setLong(8, item.getId());
+            ps.setLong(9, item.getUserId());
+        });
+    }
+
+    @Override
+    public void batchDeleteByIds(Map<Long, List<Long>> idsByUserId) {
+        idsByUserId.forEach((userId, ids) -> {
+            if (ids.isEmpty()) {
+                return;
+            }
+            StringBuilder sql = new StringBuilder(DELETE_SQL);
+            Object[] args = new Object[ids.size() + 1];
+            args[0] = userId;
+            for (int i = 0; i < ids.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+                args[i + 1] = ids.get(i);
+            }
+            sql.append(')');
+            jdbcTemplate.update(sql.toString(), args);
+        });
+    }
+
+    @Override
+    public int batchUpdateProductInfo(List<ProductChangedEvent> changes) {
+        if (changes.isEmpty()) {
+            return 0;
+        }
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        int[][] counts = jdbcTemplate.batchUpdate(UPDATE_PRODUCT_SQL, changes, changes.size(), (ps, change) -> {
+            ps.setObject(1, change.price(), Types.DECIMAL);
+            ps.setString(2, change.title());
+            ps.setString(3, change.mainImage());
+            ps.setObject(4, change.price(), Types.DECIMAL);
+            ps.setTimestamp(5, now);
+            ps.setLong(6, change.productId());
+        });
+        int updated = 0;
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                updated += Math.max(count, 0);
+            }
+        }
+        return updated;
+    }
+
+    private static Timestamp toTimestamp(Date date, Timestamp fallback) {
+        return date != null ? new Timestamp(date.getTime()) : fallback;
+    }
+
+    private record Key(long userId, long productId) {
+    }
+}
@@ -1,13 +1,18 @@
 package com.kb.trading.repository;
 import com.kb.trading.entity.OrderItem;
+import com.kb.trading.entity.OrderStatus;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 @Repository
-public interface OrderItemRepository extends JpaRepository<OrderItem, Long>{
+public interface OrderItemRepository extends JpaRepository<OrderItem, Long>, OrderItemRepositoryCustom {
     // 根据订单ID查找所有订单项
     List<OrderItem> findByOrderId(Long orderId);
 
@@ -22,7 +27,20 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, Long>{
     @Query("SELECT SUM(oi.subtotal) FROM OrderItem oi WHERE oi.productId = :productId")
     BigDecimal sumSalesByProductId(@Param("productId") Long productId);
 
+    // 销量最多的商品，只统计指定状态（已付款且未取消、未退款）的订单（用于初始化热门商品排行）
+    @Query("SELECT oi.productId, SUM(oi.quantity) AS sold FROM OrderItem oi, Order o " +
+            "WHERE o.id = oi.orderId AND o.status IN :statuses " +
+            "GROUP BY oi.productId ORDER BY sold DESC")
+    List<Object[]> findTopSoldProducts(@Param("statuses") Collection<OrderStatus> statuses, Limit limit);
+
     // 根据多个订单ID批量查找
     @Query("SELECT oi FROM OrderItem oi WHERE oi.orderId IN :orderIds")
     List<OrderItem> findByOrderIds(@Param("orderIds") List<Long> orderIds);
+
+    // 删除所属订单已不存在的订单项（订单归档后清理）
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("DELETE FROM OrderItem oi WHERE oi.orderId IN :orderIds AND " +
+            "NOT EXISTS (SELECT o.id FROM Order o WHERE o.id = oi.orderId)")
+    int deleteOrphansByOrderIds(@Param("orderIds") List<Long> orderIds);
 }
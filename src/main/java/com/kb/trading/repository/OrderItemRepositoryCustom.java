@@ -0,0 +1,7 @@
+package com.kb.trading.repository;
+import com.kb.trading.entity.OrderItem;
+import java.util.List;
+public interface OrderItemRepositoryCustom {
+    // 批量插入订单项（一次JDBC批处理）
+    void batchInsert(List<OrderItem> items);
+}
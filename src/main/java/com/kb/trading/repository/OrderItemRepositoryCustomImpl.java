@@ -0,0 +1,45 @@
+package com.kb.trading.repository;
+import com.kb.trading.entity.OrderItem;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 订单项批量写入
+ * 主键使用 IDENTITY 策略时 Hibernate 无法批量插入，这里直接走 JDBC 批处理，
+ * 配合连接参数 rewriteBatchedStatements=true 合并为一条多值 INSERT。
+ */
+@RequiredArgsConstructor
+public class OrderItemRepositoryCustomImpl implements OrderItemRepositoryCustom {
+    private static final String INSERT_SQL = "INSERT INTO order_item " +
+            "(create_time, update_time, order_id, product_id, product_title, product_image, " +
+            "unit_price, quantity, subtotal, product_spec) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void batchInsert(List<OrderItem> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        jdbcTemplate.batchUpdate(INSERT_SQL, items, items.size(), (ps, item) -> {
+            ps.setTimestamp(1, toTimestamp(item.getCreateTime(), now));
+            ps.setTimestamp(2, toTimestamp(item.getUpdateTime(), now));
+            ps.setLong(3, item.getOrderId());
+            ps.setLong(4, item.getProductId());
+            ps.setString(5, item.getProductTitle());
+            ps.setString(6, item.getProductImage());
+            ps.setBigDecimal(7, item.getUnitPrice());
+            ps.setInt(8, item.getQuantity());
+            ps.setBigDecimal(9, item.getSubtotal());
+            ps.setString(10, item.getProductSpec());
+        });
+    }
+
+    private static Timestamp toTimestamp(Date date, Timestamp fallback) {
+        return date != null ? new Timestamp(date.getTime()) : fallback;
+    }
+}
@@ -1,19 +1,32 @@
 package com.kb.trading.repository;
 import com.kb.trading.entity.Order;
 import com.kb.trading.entity.OrderStatus;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.Date;
 import java.util.List;
+import java.util.stream.Stream;
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Long>{
     // 根据订单号查找
     Order findByOrderNo(String orderNo);
 
+    // 按订单号倒序查找匹配的订单号（订单号生成器启动时恢复本节点已发出的最大订单号）
+    @Query("SELECT o.orderNo FROM Order o WHERE o.orderNo LIKE :pattern ORDER BY o.orderNo DESC")
+    List<String> findLatestOrderNos(@Param("pattern") String pattern, Limit limit);
+
     // 根据买家ID查找
     List<Order> findByBuyerId(Long buyerId);
 
@@ -29,8 +42,14 @@ public interface OrderRepository extends JpaRepository<Order, Long>{
     // 卖家按状态查找
     List<Order> findBySellerIdAndStatus(Long sellerId, OrderStatus status);
 
-    // 按时间范围查找
-    List<Order> findByCreateTimeBetween(Date startDate, Date endDate);
+    // 按时间范围 [start, end) 流式读取订单（导出用，需在事务中消费并关闭）
+    // fetch size 为 Integer.MIN_VALUE 时 MySQL 驱动逐行读取，不需要 useCursorFetch；读取期间该连接不能执行其他查询
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT o FROM Order o WHERE o.createTime >= :start AND o.createTime < :end ORDER BY o.createTime, o.id")
+    Stream<Order> streamByCreateTimeRange(@Param("start") Date start, @Param("end") Date end);
 
     // 分页查询买家订单
     Page<Order> findByBuyerId(Long buyerId, Pageable pageable);
@@ -38,6 +57,32 @@ public interface OrderRepository extends JpaRepository<Order, Long>{
     // 分页查询卖家订单
     Page<Order> findBySellerId(Long sellerId, Pageable pageable);
 
+    // 游标分页：买家订单第一页（按下单时间、ID倒序）
+    @Query("SELECT o FROM Order o WHERE o.buyerId = :buyerId ORDER BY o.createTime DESC, o.id DESC")
+    List<Order> findBuyerOrdersFirst(@Param("buyerId") Long buyerId, Limit limit);
+
+    // 游标分页：买家订单中排在 (createTime, id) 之后的记录
+    @Query("SELECT o FROM Order o WHERE o.buyerId = :buyerId AND " +
+            "(o.createTime < :createTime OR (o.createTime = :createTime AND o.id < :id)) " +
+            "ORDER BY o.createTime DESC, o.id DESC")
+    List<Order> findBuyerOrdersBefore(@Param("buyerId") Long buyerId,
+                                      @Param("createTime") Date createTime,
+                                      @Param("id") Long id,
+                                      Limit limit);
+
+    // 游标分页：卖家订单第一页（按下单时间、ID倒序）
+    @Query("SELECT o FROM Order o WHERE o.sellerId = :sellerId ORDER BY o.createTime DESC, o.id DESC")
+    List<Order> findSellerOrdersFirst(@Param("sellerId") Long sellerId, Limit limit);
+
+    // 游标分页：卖家订单中排在 (createTime, id) 之后的记录
+    @Query("SELECT o FROM Order o WHERE o.sellerId = :sellerId AND " +
+            "(o.createTime < :createTime OR (o.createTime = :createTime AND o.id < :id)) " +
+            "ORDER BY o.createTime DESC, o.id DESC")
+    List<Order> findSellerOrdersBefore(@Param("sellerId") Long sellerId,
+                                       @Param("createTime") Date createTime,
+                                       @Param("id") Long id,
+                                       Limit limit);
+
     // 统计买家订单数量
     Long countByBuyerId(Long buyerId);
 
@@ -49,8 +94,80 @@ public interface OrderRepository extends JpaRepository<Order, Long>{
     Long countBySellerIdAndStatus(@Param("sellerId") Long sellerId,
                                   @Param("status") OrderStatus status);
 
-    // 搜索订单（按订单号或商品名称）
+    // 按状态分组统计买家订单数量
+    @Query("SELECT o.status, COUNT(o) FROM Order o WHERE o.buyerId = :buyerId GROUP BY o.status")
+    List<Object[]> countByBuyerIdGroupByStatus(@Param("buyerId") Long buyerId);
+
+    // 按状态分组统计卖家订单数量
+    @Query("SELECT o.status, COUNT(o) FROM Order o WHERE o.sellerId = :sellerId GROUP BY o.status")
+    List<Object[]> countBySellerIdGroupByStatus(@Param("sellerId") Long sellerId);
+
+    // 搜索订单（按订单号或买家/卖家名称），仅在搜索索引未就绪时使用
     @Query("SELECT o FROM Order o WHERE o.orderNo LIKE %:keyword% OR " +
             "o.buyerName LIKE %:keyword% OR o.sellerName LIKE %:keyword%")
-    List<Order> searchOrders(@Param("keyword") String keyword);
+    Page<Order> searchOrders(@Param("keyword") String keyword, Pageable pageable);
+
+    // 按ID分批读取搜索索引需要的字段（用于重建订单搜索索引）
+    @Query("SELECT o.id, o.orderNo, o.buyerName, o.sellerName FROM Order o WHERE o.id > :afterId ORDER BY o.id")
+    List<Object[]> findSearchFieldsAfter(@Param("afterId") Long afterId, Limit limit);
+
+    // 查询可归档订单的ID：终态且最后变更早于给定时间（按ID分批）
+    @Query("SELECT o.id FROM Order o WHERE o.status IN :statuses AND o.updateTime < :updatedBefore " +
+            "AND o.id > :afterId ORDER BY o.id")
+    List<Long> findArchivableIds(@Param("statuses") List<OrderStatus> statuses,
+                                 @Param("updatedBefore") Date updatedBefore,
+                                 @Param("afterId") Long afterId,
+                                 Limit limit);
+
+    // 删除已写入归档的订单（仍需满足归档条件）
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Order o WHERE o.id IN :ids AND o.status IN :statuses AND o.updateTime < :updatedBefore")
+    int deleteArchived(@Param("ids") List<Long> ids,
+                       @Param("statuses") List<OrderStatus> statuses,
+                       @Param("updatedBefore") Date updatedBefore);
+
+    // 查询待付款订单的ID和下单时间（用于重建订单超时定时器）
+    @Query("SELECT o.id, o.createTime FROM Order o WHERE o.status = :status")
+    List<Object[]> findIdAndCreateTimeByStatus(@Param("status") OrderStatus status);
+
+    // 查询已送达订单的ID和送达时间（用于重建自动完成定时器）
+    @Query("SELECT o.id, COALESCE(o.deliveryTime, o.updateTime) FROM Order o WHERE o.status = :status")
+    List<Object[]> findIdAndDeliveryTimeByStatus(@Param("status") OrderStatus status);
+
+    // 锁定超时未支付的订单
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT o FROM Order o WHERE o.id IN :ids AND o.status = :status AND o.createTime <= :createdBefore")
+    List<Order> lockExpiredByCreateTime(@Param("ids") List<Long> ids,
+                                        @Param("status") OrderStatus status,
+                                        @Param("createdBefore") Date createdBefore);
+
+    // 锁定送达超时的订单
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT o FROM Order o WHERE o.id IN :ids AND o.status = :status " +
+            "AND COALESCE(o.deliveryTime, o.updateTime) <= :deliveredBefore")
+    List<Order> lockExpiredByDeliveryTime(@Param("ids") List<Long> ids,
+                                          @Param("status") OrderStatus status,
+                                          @Param("deliveredBefore") Date deliveredBefore);
+
+    // 批量取消订单
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Order o SET o.status = :to, o.cancelReason = :reason, o.updateTime = :now " +
+            "WHERE o.id IN :ids AND o.status = :from")
+    int batchCancel(@Param("ids") List<Long> ids,
+                    @Param("from") OrderStatus from,
+                    @Param("to") OrderStatus to,
+                    @Param("reason") String reason,
+                    @Param("now") Date now);
+
+    // 批量完成订单
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Order o SET o.status = :to, o.completedTime = :now, o.updateTime = :now " +
+            "WHERE o.id IN :ids AND o.status = :from")
+    int batchComplete(@Param("ids") List<Long> ids,
+                      @Param("from") OrderStatus from,
+                      @Param("to") OrderStatus to,
+                      @Param("now") Date now);
 }
@@ -1,35 +1,104 @@
 package com.kb.trading.repository;
+import com.kb.trading.dto.ProductCard;
+import com.kb.trading.dto.ProductSnapshot;
 import com.kb.trading.entity.Product;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 @Repository
-public interface ProductRepository extends JpaRepository<Product, Long> {
-    // 根据卖家ID查询商品
-    List<Product> findBySellerId(Long sellerId);
+public interface ProductRepository extends JpaRepository<Product, Long>, ProductRepositoryCustom {
+    // 批量查询商品快照（只取ID、状态、库存、价格和卖家）
+    @Query("SELECT new com.kb.trading.dto.ProductSnapshot(p.id, p.status, p.stock, p.price, p.sellerId, p.sellerName) " +
+            "FROM Product p WHERE p.id IN :ids")
+    List<ProductSnapshot> findSnapshotsByIds(@Param("ids") Collection<Long> ids);
 
-    // 根据状态查询商品
-    List<Product> findByStatus(Integer status);
+    // 以下列表查询只取商品卡片字段（见 ProductCard），不读取描述和图片列表
 
-    // 根据分类查询商品
-    List<Product> findByCategory(String category);
+    // 根据卖家ID查询商品卡片
+    @Query("SELECT new com.kb.trading.dto.ProductCard(p.id, p.title, p.price, p.mainImage, p.location, " +
+            "p.likeCount, p.status) FROM Product p WHERE p.sellerId = :sellerId")
+    List<ProductCard> findCardsBySellerId(@Param("sellerId") Long sellerId);
 
-    // 根据地点查询商品
-    List<Product> findByLocationContaining(String location);
+    // 根据分类查询商品卡片
+    @Query("SELECT new com.kb.trading.dto.ProductCard(p.id, p.title, p.price, p.mainImage, p.location, " +
+            "p.likeCount, p.status) FROM Product p WHERE p.category = :category")
+    List<ProductCard> findCardsByCategory(@Param("category") String category);
 
-    // 价格区间查询
-    List<Product> findByPriceBetween(BigDecimal minPrice, BigDecimal maxPrice);
+    // 根据地点查询商品卡片
+    @Query("SELECT new com.kb.trading.dto.ProductCard(p.id, p.title, p.price, p.mainImage, p.location, " +
+            "p.likeCount, p.status) FROM Product p WHERE p.location LIKE CONCAT('%', :location, '%')")
+    List<ProductCard> findCardsByLocationContaining(@Param("location") String location);
 
-    // 搜索商品（标题或描述中包含关键词）
-    @Query(value = "SELECT p FROM Product p WHERE p.status = 1 AND " +
+    // 价格区间查询商品卡片
+    @Query("SELECT new com.kb.trading.dto.ProductCard(p.id, p.title, p.price, p.mainImage, p.location, " +
+            "p.likeCount, p.status) FROM Product p WHERE p.price BETWEEN :minPrice AND :maxPrice")
+    List<ProductCard> findCardsByPriceBetween(@Param("minPrice") BigDecimal minPrice,
+                                              @Param("maxPrice") BigDecimal maxPrice);
+
+    // 分页查询指定状态的商品卡片
+    @Query(value = "SELECT new com.kb.trading.dto.ProductCard(p.id, p.title, p.price, p.mainImage, p.location, " +
+            "p.likeCount, p.status) FROM Product p WHERE p.status = :status",
+            countQuery = "SELECT COUNT(p) FROM Product p WHERE p.status = :status")
+    Page<ProductCard> findCardsByStatus(@Param("status") Integer status, Pageable pageable);
+
+    // 搜索商品卡片（标题或描述中包含关键词，搜索索引重建完成前使用）
+    @Query(value = "SELECT new com.kb.trading.dto.ProductCard(p.id, p.title, p.price, p.mainImage, p.location, " +
+            "p.likeCount, p.status) FROM Product p WHERE p.status = 1 AND " +
             "(LOWER(p.title) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
-            "LOWER(p.description) LIKE CONCAT('%', :keyword, '%'))")
-    List<Product> searchProducts(@Param("keyword") String keyword);
+            "LOWER(p.description) LIKE LOWER(CONCAT('%', :keyword, '%')))",
+            countQuery = "SELECT COUNT(p) FROM Product p WHERE p.status = 1 AND " +
+                    "(LOWER(p.title) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
+                    "LOWER(p.description) LIKE LOWER(CONCAT('%', :keyword, '%')))")
+    Page<ProductCard> searchCards(@Param("keyword") String keyword, Pageable pageable);
+
+    // 按ID分批读取上架商品的搜索字段（用于重建商品搜索索引）
+    @Query("SELECT p.id, p.title, p.description, p.category, p.location FROM Product p " +
+            "WHERE p.id > :afterId AND p.status = 1 ORDER BY p.id")
+    List<Object[]> findSearchFieldsAfter(@Param("afterId") Long afterId, Limit limit);
+
+    // 按ID批量读取商品状态（库存变化后判断商品是否需要加入或移出商品搜索索引）
+    @Query("SELECT p.id, p.status FROM Product p WHERE p.id IN :ids")
+    List<Object[]> findStatusesByIds(@Param("ids") Collection<Long> ids);
+
+    // 按ID批量读取商品的搜索字段和状态（重新上架的商品加入商品搜索索引）
+    @Query("SELECT p.id, p.title, p.description, p.category, p.location, p.status FROM Product p WHERE p.id IN :ids")
+    List<Object[]> findSearchFieldsByIds(@Param("ids") Collection<Long> ids);
+
+    // 浏览次数最多的上架商品（用于初始化热门商品排行）
+    @Query("SELECT p.id, p.viewCount FROM Product p WHERE p.status = 1 AND p.viewCount > 0 " +
+            "ORDER BY p.viewCount DESC")
+    List<Object[]> findTopViewed(Limit limit);
+
+    // 批量查询热门商品卡片字段（ID、标题、价格、主图、所在地、状态），不读取描述和图片列表
+    @Query("SELECT p.id, p.title, p.price, p.mainImage, p.location, p.status FROM Product p WHERE p.id IN :ids")
+    List<Object[]> findHotCardsByIds(@Param("ids") Collection<Long> ids);
+
+    // 按ID分批读取未删除商品的筛选字段（用于重建商品筛选索引）
+    @Query("SELECT p.id, p.category, p.location, p.status, p.price FROM Product p " +
+            "WHERE p.id > :afterId AND p.status IN (0, 1, 2) ORDER BY p.id")
+    List<Object[]> findFacetFieldsAfter(@Param("afterId") Long afterId, Limit limit);
+
+    // 批量读取商品的筛选字段（库存变化后更新商品筛选索引）
+    @Query("SELECT p.id, p.category, p.location, p.status, p.price FROM Product p WHERE p.id IN :ids")
+    List<Object[]> findFacetFieldsByIds(@Param("ids") Collection<Long> ids);
+
+    // 按ID分批读取填写了经纬度的上架商品（用于重建附近商品索引）
+    @Query("SELECT p.id, p.latitude, p.longitude FROM Product p WHERE p.id > :afterId AND p.status = 1 " +
+            "AND p.latitude IS NOT NULL AND p.longitude IS NOT NULL ORDER BY p.id")
+    List<Object[]> findGeoFieldsAfter(@Param("afterId") Long afterId, Limit limit);
+
+    // 批量读取商品的经纬度和状态（库存变化后更新附近商品索引）
+    @Query("SELECT p.id, p.latitude, p.longitude, p.status FROM Product p WHERE p.id IN :ids")
+    List<Object[]> findGeoFieldsByIds(@Param("ids") Collection<Long> ids);
 
     // 分页查询上架商品
     Page<Product> findByStatus(Integer status, Pageable pageable);
@@ -41,4 +110,22 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
 
     // 统计卖家商品数量
     Long countBySellerId(Long sellerId);
+
+    // 预占库存：仅在上架且库存充足时扣减，扣到0时同一条语句内标记为售罄
+    // 注意 status 必须写在 stock 之前，MySQL 按从左到右的顺序计算赋值
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Product p SET p.status = CASE WHEN p.stock <= :quantity THEN 2 ELSE p.status END, " +
+            "p.stock = p.stock - :quantity " +
+            "WHERE p.id = :id AND p.status = 1 AND p.stock >= :quantity")
+    int reserveStock(@Param("id") Long id, @Param("quantity") Integer quantity);
+
+    // 归还库存：因预占扣到0而售罄的商品恢复为上架；卖家手动标记已售出的商品（库存未扣完）保持已售出
+    // 注意 status 必须写在 stock 之前，判断的是归还前的库存
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Product p SET p.status = CASE WHEN p.status = 2 AND p.stock = 0 THEN 1 ELSE p.status END, " +
+            "p.stock = p.stock + :quantity " +
+            "WHERE p.id = :id")
+    int releaseStock(@Param("id") Long id, @Param("quantity") Integer quantity);
 }
@@ -0,0 +1,12 @@
+package com.kb.trading.repository;
+import java.util.List;
+public interface ProductRepositoryCustom {
+    // 批量预占库存，返回每一行的影响行数（1-成功 0-库存不足或已下架）
+    int[] batchReserveStock(List<Long> productIds, List<Integer> quantities);
+
+    // 批量归还库存
+    int[] batchReleaseStock(List<Long> productIds, List<Integer> quantities);
+
+    // 批量累加浏览次数
+    int[] batchIncrementViewCount(List<Long> productIds, List<Long> deltas);
+}
@@ -0,0 +1,56 @@
+package com.kb.trading.repository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 库存批量更新
+ * 与 ProductRepository#reserveStock / releaseStock 使用相同的条件更新语义，
+ * 多个订单项通过一次JDBC批处理发送，返回逐行结果。
+ * 浏览次数同样按增量批量累加，不读取也不回写整行。
+ */
+@RequiredArgsConstructor
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+    // status 必须写在 stock 之前，MySQL 按从左到右的顺序计算赋值
+    private static final String RESERVE_SQL = "UPDATE product " +
+            "SET status = CASE WHEN stock <= ? THEN 2 ELSE status END, stock = stock - ? " +
+            "WHERE id = ? AND status = 1 AND stock >= ?";
+
+    // 只有因预占扣到0而售罄的商品才恢复上架，判断的是归还前的库存
+    private static final String RELEASE_SQL = "UPDATE product " +
+            "SET status = CASE WHEN status = 2 AND stock = 0 THEN 1 ELSE status END, stock = stock + ? " +
+            "WHERE id = ?";
+
+    private static final String INCREMENT_VIEW_SQL = "UPDATE product SET view_count = view_count + ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public int[] batchReserveStock(List<Long> productIds, List<Integer> quantities) {
+        List<Object[]> args = new ArrayList<>(productIds.size());
+        for (int i = 0; i < productIds.size(); i++) {
+            Integer quantity = quantities.get(i);
+            args.add(new Object[]{quantity, quantity, productIds.get(i), quantity});
+        }
+        return jdbcTemplate.batchUpdate(RESERVE_SQL, args);
+    }
+
+    @Override
+    public int[] batchReleaseStock(List<Long> productIds, List<Integer> quantities) {
+        List<Object[]> args = new ArrayList<>(productIds.size());
+        for (int i = 0; i < productIds.size(); i++) {
+            args.add(new Object[]{quantities.get(i), productIds.get(i)});
+        }
+        return jdbcTemplate.batchUpdate(RELEASE_SQL, args);
+    }
+
+    @Override
+    public int[] batchIncrementViewCount(List<Long> productIds, List<Long> deltas) {
+        List<Object[]> args = new ArrayList<>(productIds.size());
+        for (int i = 0; i < productIds.size(); i++) {
+            args.add(new Object[]{deltas.get(i), productIds.get(i)});
+        }
+        return jdbcTemplate.batchUpdate(INCREMENT_VIEW_SQL, args);
+    }
+}
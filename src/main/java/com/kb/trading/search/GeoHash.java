@@ -0,0 +1,102 @@
+package com.kb.trading.search;
+
+/**
+ * 地理哈希（geohash）
+ * 把经度、纬度各自二分成 15 位整数格子编号，再按 经、纬、经、纬... 交错成 30 位的格子编码，
+ * 相当于 6 位 base32 geohash，每个格子约 1.2km（经向，赤道处）× 0.6km（纬向）。
+ * 交错后相邻的格子编码也相近，便于按格子分组存放附近的点。
+ */
+public final class GeoHash {
+    public static final int BITS_PER_AXIS = 15;
+    private static final int CELLS_PER_AXIS = 1 << BITS_PER_AXIS;
+    private static final double CELL_LATITUDE = 180.0 / CELLS_PER_AXIS;
+    private static final double CELL_LONGITUDE = 360.0 / CELLS_PER_AXIS;
+    private static final double EARTH_RADIUS_METERS = 6_371_000;
+    private static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS_METERS / 180;
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private GeoHash() {
+    }
+
+    public static boolean isValid(Double latitude, Double longitude) {
+        return latitude != null && longitude != null
+                && latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180;
+    }
+
+    // 点所在的格子编码
+    public static long encode(double latitude, double longitude) {
+        return interleave(latitudeIndex(latitude), longitudeIndex(longitude));
+    }
+
+    // 覆盖以 (latitude, longitude) 为圆心、radiusMeters 为半径的圆的所有格子（外接矩形内的格子），
+    // 超过 maxCells 个时返回 null
+    public static long[] covering(double latitude, double longitude, double radiusMeters, int maxCells) {
+        double deltaLatitude = radiusMeters / METERS_PER_DEGREE;
+        int minRow = latitudeIndex(Math.max(-90, latitude - deltaLatitude));
+        int maxRow = latitudeIndex(Math.min(90, latitude + deltaLatitude));
+
+        // 外接矩形在离赤道最远的纬度上经度跨度最大；接近极点时覆盖全部经度
+        double farthest = Math.min(90, Math.abs(latitude) + deltaLatitude);
+        double cos = Math.cos(Math.toRadians(farthest));
+        double deltaLongitude = cos > 0 ? radiusMeters / (METERS_PER_DEGREE * cos) : 180;
+        int columns = deltaLongitude >= 180 ? CELLS_PER_AXIS
+                : Math.min(CELLS_PER_AXIS, (int) Math.ceil(2 * deltaLongitude / CELL_LONGITUDE) + 1);
+        int firstColumn = columns == CELLS_PER_AXIS ? 0 : longitudeIndex(wrapLongitude(longitude - deltaLongitude));
+
+        long count = (long) (maxRow - minRow + 1) * columns;
+        if (count > maxCells) {
+            return null;
+        }
+        long[] cells = new long[(int) count];
+        int n = 0;
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int i = 0; i < columns; i++) {
+                // 跨过 180 度经线时回绕
+                cells[n++] = interleave(row, (firstColumn + i) % CELLS_PER_AXIS);
+            }
+        }
+        return cells;
+    }
+
+    // 两点间的球面距离（米，haversine 公式）
+    public static double distanceMeters(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double dLatitude = Math.toRadians(latitude2 - latitude1);
+        double dLongitude = Math.toRadians(longitude2 - longitude1);
+        double a = Math.sin(dLatitude / 2) * Math.sin(dLatitude / 2)
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2))
+                * Math.sin(dLongitude / 2) * Math.sin(dLongitude / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    // 格子编码的 base32 形式（6 个字符）
+    public static String toBase32(long cell) {
+        char[] chars = new char[2 * BITS_PER_AXIS / 5];
+        for (int i = chars.length - 1; i >= 0; i--) {
+            chars[i] = BASE32[(int) (cell & 31)];
+            cell >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    private static int latitudeIndex(double latitude) {
+        return Math.min(CELLS_PER_AXIS - 1, (int) ((latitude + 90) / CELL_LATITUDE));
+    }
+
+    private static int longitudeIndex(double longitude) {
+        return Math.min(CELLS_PER_AXIS - 1, (int) ((longitude + 180) / CELL_LONGITUDE));
+    }
+
+    private static double wrapLongitude(double longitude) {
+        return longitude < -180 ? longitude + 360 : longitude >= 180 ? longitude - 360 : longitude;
+    }
+
+    // 经度位在前（高位）、纬度位在后，逐位交错
+    private static long interleave(int row, int column) {
+        long cell = 0;
+        for (int bit = BITS_PER_AXIS - 1; bit >= 0; bit--) {
+            cell = (cell << 1) | ((column >>> bit) & 1);
+            cell = (cell << 1) | ((row >>> bit) & 1);
+        }
+        return cell;
+    }
+}
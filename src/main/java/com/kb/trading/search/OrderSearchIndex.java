@@ -0,0 +1,264 @@
+package com.kb.trading.search;
+import com.kb.trading.entity.Order;
+import com.kb.trading.event.OrderChangedEvent;
+import com.kb.trading.event.OrdersArchivedEvent;
+import com.kb.trading.repository.OrderRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * 订单搜索索引（内存）
+ * 买家/卖家名称按字符切成单字和双字 n-gram 建倒排表（适合中文昵称），
+ * 查询时对关键词的双字 gram 求交集，再用原文校验连续匹配；订单号走跳表做前缀查找。
+ * 启动时从 orders 表分批重建，之后由订单变更事件增量维护。
+ * 注意：索引在单个节点的内存中，多节点部署时每个节点各自重建、各自监听本节点事件。
+ */
+@Component
+@Slf4j
+public class OrderSearchIndex {
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    private final OrderRepository orderRepository;
+
+    // gram -> 按订单ID升序的倒排表
+    private final Map<String, Postings> postings = new ConcurrentHashMap<>();
+    // 订单ID -> 已索引的字段（用于校验和删除）
+    private final Map<Long, Document> documents = new ConcurrentHashMap<>();
+    // 订单号 -> 订单ID（前缀查找）
+    private final ConcurrentSkipListMap<String, Long> orderNos = new ConcurrentSkipListMap<>();
+
+    private volatile boolean ready;
+
+    public OrderSearchIndex(OrderRepository orderRepository) {
+        this.orderRepository = orderRepository;
+    }
+
+    // 启动时从订单表分批重建索引
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        long afterId = 0;
+        List<Object[]> rows;
+        do {
+            rows = orderRepository.findSearchFieldsAfter(afterId, Limit.of(REBUILD_BATCH_SIZE));
+            for (Object[] row : rows) {
+                afterId = (Long) row[0];
+                add(afterId, (String) row[1], (String) row[2], (String) row[3]);
+            }
+        } while (rows.size() == REBUILD_BATCH_SIZE);
+        ready = true;
+        log.info("订单搜索索引已重建: 订单数={}, gram数={}, 耗时={}ms",
+                documents.size(), postings.size(), System.currentTimeMillis() - start);
+    }
+
+    // 新订单加入索引，删除的订单移出索引（订单号和双方名称创建后不再变化）
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderChanged(OrderChangedEvent event) {
+        Order order = event.order();
+        if (event.isCreated()) {
+            add(order.getId(), order.getOrderNo(), order.getBuyerName(), order.getSellerName());
+        } else if (event.isDeleted()) {
+            remove(order.getId());
+        }
+    }
+
+    // 归档后的订单不再参与搜索
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrdersArchived(OrdersArchivedEvent event) {
+        event.orderIds().forEach(this::remove);
+    }
+
+    // 重建完成前查询结果不完整，调用方应回退到数据库查询
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    public void add(Long orderId, String orderNo, String buyerName, String sellerName) {
+        if (orderId == null) {
+            return;
+        }
+        Document document = new Document(orderNo, normalize(buyerName), normalize(sellerName));
+        Document previous = documents.put(orderId, document);
+        if (previous != null) {
+            unindex(orderId, previous);
+        }
+        if (orderNo != null) {
+            orderNos.put(orderNo.toUpperCase(Locale.ROOT), orderId);
+        }
+        for (String gram : gramsOf(document)) {
+            postings.computeIfAbsent(gram, k -> new Postings()).add(orderId);
+        }
+    }
+
+    public void remove(Long orderId) {
+        if (orderId == null) {
+            return;
+        }
+        Document previous = documents.remove(orderId);
+        if (previous != null) {
+            unindex(orderId, previous);
+        }
+    }
+
+    /**
+     * 搜索订单：订单号前缀匹配，或买家/卖家名称包含关键词
+     * @return 按订单ID倒序（新订单在前）的一页ID和命中总数
+     */
+    public Result search(String keyword, int offset, int limit) {
+        String normalized = normalize(keyword);
+        if (normalized.isEmpty()) {
+            return new Result(List.of(), 0);
+        }
+
+        Set<Long> matched = new HashSet<>();
+        for (long id : nameCandidates(normalized)) {
+            Document document = documents.get(id);
+            if (document != null && document.matchesName(normalized)) {
+                matched.add(id);
+            }
+        }
+        String prefix = keyword.trim().toUpperCase(Locale.ROOT);
+        NavigableMap<String, Long> byPrefix = orderNos.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        matched.addAll(byPrefix.values());
+
+        long[] ids = matched.stream().mapToLong(Long::longValue).sorted().toArray();
+        List<Long> page = new ArrayList<>(Math.max(0, Math.min(limit, ids.length - offset)));
+        for (int i = ids.length - 1 - offset; i >= 0 && page.size() < limit; i--) {
+            page.add(ids[i]);
+        }
+        return new Result(page, ids.length);
+    }
+
+    // 单字关键词直接取单字倒排表，否则对所有双字 gram 求交集（从最短的表开始）
+    private long[] nameCandidates(String keyword) {
+        if (keyword.length() == 1) {
+            Postings list = postings.get(keyword);
+            return list != null ? list.snapshot() : new long[0];
+        }
+        List<long[]> lists = new ArrayList<>();
+        for (int i = 0; i + 2 <= keyword.length(); i++) {
+            Postings list = postings.get(keyword.substring(i, i + 2));
+            if (list == null) {
+                return new long[0];
+            }
+            lists.add(list.snapshot());
+        }
+        lists.sort((a, b) -> Integer.compare(a.length, b.length));
+        long[] result = lists.get(0);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = intersect(result, lists.get(i));
+        }
+        return result;
+    }
+
+    private void unindex(Long orderId, Document document) {
+        if (document.orderNo() != null) {
+            orderNos.remove(document.orderNo().toUpperCase(Locale.ROOT), orderId);
+        }
+        for (String gram : gramsOf(document)) {
+            Postings list = postings.get(gram);
+            if (list != null) {
+                list.remove(orderId);
+            }
+        }
+    }
+
+    private static Set<String> gramsOf(Document document) {
+        Set<String> grams = new HashSet<>();
+        addGrams(grams, document.buyerName());
+        addGrams(grams, document.sellerName());
+        return grams;
+    }
+
+    private static void addGrams(Set<String> grams, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            grams.add(text.substring(i, i + 1));
+            if (i + 2 <= text.length()) {
+                grams.add(text.substring(i, i + 2));
+            }
+        }
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static long[] intersect(long[] a, long[] b) {
+        long[] result = new long[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    public record Result(List<Long> orderIds, long total) {
+    }
+
+    private record Document(String orderNo, String buyerName, String sellerName) {
+        boolean matchesName(String keyword) {
+            return buyerName.contains(keyword) || sellerName.contains(keyword);
+        }
+    }
+
+    /**
+     * 有序ID数组实现的倒排表，订单ID基本递增，新增多为追加
+     */
+    private static final class Postings {
+        private long[] ids = new long[4];
+        private int size;
+
+        synchronized void add(long id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                return;
+            }
+            index = -index - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            ids[index] = id;
+            size++;
+        }
+
+        synchronized void remove(long id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index < 0) {
+                return;
+            }
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+        }
+
+        synchronized long[] snapshot() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
@@ -0,0 +1,504 @@
+package com.kb.trading.search;
+import com.kb.trading.entity.Product;
+import com.kb.trading.event.ProductSavedEvent;
+import com.kb.trading.event.ProductStockChangedEvent;
+import com.kb.trading.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 商品分面筛选索引（内存）
+ * 按分类、所在地（去空白、转小写后精确匹配）、状态各建一组压缩位图（见 CompressedBitmap），位图中存商品ID；
+ * 价格以分为单位存三份：按商品ID下标的价格数组用于逐个判断，按价格排序的价格列（价格 -> 商品位图）用于窄区间和排序，
+ * 按档位范围编码的位图（价格低于某档下界的商品）用于宽区间。
+ * 查询时先对状态、分类、所在地位图求交集，再按价格区间过滤：区间完整覆盖的档位用两次位运算取出，
+ * 两端不完整的档位沿价格列逐个查看（区间内商品较多时改为取出候选集在该档的商品逐个判断），
+ * 结果按最新发布（商品ID降序）或价格排序分页，同时给出分类和所在地的分面计数
+ * （每个分面的计数不受该分面自身条件的限制，便于切换选项）。
+ * 启动时从 product 表分批重建（不含已删除商品），之后由商品保存事件和库存变化事件增量维护。
+ * 注意：商品ID作为位图中的值，必须小于 2^31；索引在单个节点的内存中，多节点部署时每个节点各自重建。
+ */
+@Component
+@Slf4j
+public class ProductFacetIndex {
+    public enum Sort {
+        NEWEST,
+        PRICE_ASC,
+        PRICE_DESC
+    }
+
+    public record Query(String category, String location, int status, BigDecimal minPrice, BigDecimal maxPrice,
+                        Sort sort, int offset, int limit) {
+    }
+
+    public record Result(List<Long> productIds, long total, Map<String, Integer> categoryCounts,
+                         Map<String, Integer> locationCounts) {
+    }
+
+    private static final int REBUILD_BATCH_SIZE = 5000;
+    private static final int MAX_LOCATION_FACETS = 20;
+    // 结果不超过该数量时取出后按价格排序，否则沿价格列顺序查找
+    private static final int SORT_IN_MEMORY_LIMIT = 20_000;
+    private static final int STATUS_COUNT = 3;
+    private static final long NO_PRICE = -1;
+    // 价格过滤时不超过该数量的商品逐个判断
+    private static final int PRICE_CHECK_LIMIT = 8192;
+    // 价格档位的下界（分）：0 元一档，1 元以上每个数量级分10档
+    private static final long[] BAND_BOUNDS = bandBounds();
+
+    private final ProductRepository productRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final FacetField byCategory = new FacetField();
+    private final FacetField byLocation = new FacetField();
+    private final CompressedBitmap[] byStatus = new CompressedBitmap[STATUS_COUNT];
+    private final TreeMap<Long, CompressedBitmap> byPrice = new TreeMap<>();
+    // belowBound[i]：价格低于 BAND_BOUNDS[i] 的商品，belowBound[0] 始终为空
+    private final CompressedBitmap[] belowBound = new CompressedBitmap[BAND_BOUNDS.length];
+
+    // 按商品ID下标，删除或修改时据此从原来的位图中移除；分类和所在地存编号（0 表示没有）
+    private long[] priceOf = new long[0];
+    private int[] categoryOf = new int[0];
+    private int[] locationOf = new int[0];
+    private byte[] statusOf = new byte[0];
+    private int size;
+
+    private volatile boolean ready;
+
+    public ProductFacetIndex(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+        for (int status = 0; status < STATUS_COUNT; status++) {
+            byStatus[status] = new CompressedBitmap();
+        }
+        for (int i = 0; i < belowBound.length; i++) {
+            belowBound[i] = new CompressedBitmap();
+        }
+    }
+
+    // 启动时从商品表分批重建索引
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        long afterId = 0;
+        List<Object[]> rows;
+        do {
+            rows = productRepository.findFacetFieldsAfter(afterId, Limit.of(REBUILD_BATCH_SIZE));
+            lock.writeLock().lock();
+            try {
+                for (Object[] row : rows) {
+                    afterId = (Long) row[0];
+                    putLocked(afterId, (String) row[1], (String) row[2], (Integer) row[3], (BigDecimal) row[4]);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } while (rows.size() == REBUILD_BATCH_SIZE);
+        ready = true;
+        log.info("商品筛选索引已重建: 商品数={}, 分类数={}, 所在地数={}, 价格档数={}, 耗时={}ms",
+                size(), byCategory.names.size(), byLocation.names.size(), byPrice.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductSaved(ProductSavedEvent event) {
+        Product product = event.product();
+        put(product.getId(), product.getCategory(), product.getLocation(), product.getStatus(), product.getPrice());
+    }
+
+    // 预占、归还库存可能使商品售罄或恢复上架，重新读取这些商品的状态
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStockChanged(ProductStockChangedEvent event) {
+        Set<Long> missing = new HashSet<>(event.productIds());
+        List<Object[]> rows = productRepository.findFacetFieldsByIds(missing);
+        lock.writeLock().lock();
+        try {
+            for (Object[] row : rows) {
+                Long productId = (Long) row[0];
+                missing.remove(productId);
+                putLocked(productId, (String) row[1], (String) row[2], (Integer) row[3], (BigDecimal) row[4]);
+            }
+            for (Long productId : missing) {
+                removeLocked(productId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 重建完成前查询结果不完整
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 写入或更新一个商品，状态为已删除（3）或未知时移出
+    public void put(Long productId, String category, String location, Integer status, BigDecimal price) {
+        if (productId == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            putLocked(productId, category, location, status, price);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Result query(Query query) {
+        if (query.status() < 0 || query.status() >= STATUS_COUNT) {
+            return new Result(List.of(), 0, Map.of(), Map.of());
+        }
+        String category = normalizeCategory(query.category());
+        String location = normalizeLocation(query.location());
+        long minCents = query.minPrice() != null ? toCents(query.minPrice()) : 0;
+        long maxCents = query.maxPrice() != null ? toCents(query.maxPrice()) : Long.MAX_VALUE;
+        boolean priceFiltered = query.minPrice() != null || query.maxPrice() != null;
+
+        lock.readLock().lock();
+        try {
+            CompressedBitmap statusSet = byStatus[query.status()];
+            CompressedBitmap categorySet = category != null ? byCategory.bitmapOf(category) : null;
+            CompressedBitmap locationSet = location != null ? byLocation.bitmapOf(location) : null;
+
+            // 每个分面的计数不包含该分面自身的条件
+            CompressedBitmap withoutCategory = locationSet != null ? CompressedBitmap.and(statusSet, locationSet)
+                    : location != null ? new CompressedBitmap() : statusSet;
+            CompressedBitmap withoutLocation = categorySet != null ? CompressedBitmap.and(statusSet, categorySet)
+                    : category != null ? new CompressedBitmap() : statusSet;
+            if (priceFiltered) {
+                CompressedBitmap filtered = filterByPrice(withoutCategory, minCents, maxCents);
+                withoutLocation = withoutLocation == withoutCategory
+                        ? filtered : filterByPrice(withoutLocation, minCents, maxCents);
+                withoutCategory = filtered;
+            }
+            CompressedBitmap result = category == null ? withoutCategory
+                    : categorySet != null ? CompressedBitmap.and(withoutCategory, categorySet)
+                    : new CompressedBitmap();
+
+            int total = result.cardinality();
+            List<Long> page = page(result, total, query.sort(), minCents, maxCents,
+                    Math.max(0, query.offset()), Math.max(0, query.limit()));
+            // 只按状态筛选时直接用维护的计数
+            Map<String, Integer> categoryCounts = withoutCategory == statusSet
+                    ? byCategory.counts(query.status(), Integer.MAX_VALUE)
+                    : byCategory.counts(withoutCategory, categoryOf, Integer.MAX_VALUE);
+            Map<String, Integer> locationCounts = withoutLocation == statusSet
+                    ? byLocation.counts(query.status(), MAX_LOCATION_FACETS)
+                    : byLocation.counts(withoutLocation, locationOf, MAX_LOCATION_FACETS);
+            return new Result(page, total, categoryCounts, locationCounts);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public static String normalizeCategory(String category) {
+        if (category == null || category.isBlank()) {
+            return null;
+        }
+        return category.strip();
+    }
+
+    public static String normalizeLocation(String location) {
+        if (location == null || location.isBlank()) {
+            return null;
+        }
+        return location.replaceAll("\\s+", "").toLowerCase(Locale.ROOT);
+    }
+
+    private List<Long> page(CompressedBitmap result, int total, Sort sort, long minCents, long maxCents,
+                            int offset, int limit) {
+        if (offset >= total || limit == 0) {
+            return List.of();
+        }
+        if (sort == null || sort == Sort.NEWEST) {
+            return toLongs(result.descending(offset, limit));
+        }
+        boolean ascending = sort == Sort.PRICE_ASC;
+        if (total <= SORT_IN_MEMORY_LIMIT) {
+            // 价格（分）放在高位、商品ID放在低31位，排序一个 long 数组即可
+            long[] keys = new long[total];
+            int[] index = {0};
+            result.forEach(id -> keys[index[0]++] = (priceOf[id] << 31) | id);
+            Arrays.sort(keys);
+            int count = Math.min(limit, total - offset);
+            List<Long> page = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long key = ascending ? keys[offset + i] : keys[total - 1 - offset - i];
+                page.add(key & Integer.MAX_VALUE);
+            }
+            return page;
+        }
+
+        // 结果很多时沿价格列顺序查找，前几页很快就能凑满
+        List<Long> page = new ArrayList<>(limit);
+        int[] skipped = {0};
+        NavigableMap<Long, CompressedBitmap> column = byPrice.subMap(minCents, true, maxCents, true);
+        if (!ascending) {
+            column = column.descendingMap();
+        }
+        for (CompressedBitmap ids : column.values()) {
+            int[] bucket = ids.descending(0, ids.cardinality());
+            for (int i = 0; i < bucket.length && page.size() < limit; i++) {
+                int id = ascending ? bucket[bucket.length - 1 - i] : bucket[i];
+                if (result.contains(id) && skipped[0]++ >= offset) {
+                    page.add((long) id);
+                }
+            }
+            if (page.size() >= limit) {
+                break;
+            }
+        }
+        return page;
+    }
+
+    // 完整覆盖的档位用范围编码位图取出，两端不完整的档位逐个判断
+    private CompressedBitmap filterByPrice(CompressedBitmap candidates, long minCents, long maxCents) {
+        if (minCents > maxCents) {
+            return new CompressedBitmap();
+        }
+        if (candidates.cardinality() <= PRICE_CHECK_LIMIT) {
+            return candidates.filter(id -> priceOf[id] >= minCents && priceOf[id] <= maxCents);
+        }
+        long end = maxCents == Long.MAX_VALUE ? Long.MAX_VALUE : maxCents + 1;
+        int from = ceilingBand(minCents);
+        int to = floorBand(end);
+        if (from > to) {
+            // 区间落在同一档内
+            return partialBand(candidates, to, minCents, maxCents);
+        }
+        // 价格在 [BAND_BOUNDS[from], BAND_BOUNDS[to]) 内的商品
+        CompressedBitmap result = CompressedBitmap.andNot(CompressedBitmap.and(candidates, belowBound[to]),
+                belowBound[from]);
+        if (BAND_BOUNDS[from] > minCents) {
+            result = CompressedBitmap.or(result,
+                    partialBand(candidates, from - 1, minCents, BAND_BOUNDS[from] - 1));
+        }
+        if (BAND_BOUNDS[to] < end) {
+            result = CompressedBitmap.or(result, partialBand(candidates, to, BAND_BOUNDS[to], maxCents));
+        }
+        return result;
+    }
+
+    // 档内的部分区间：价格列上该区间的商品不多时逐个查看，否则取出候选集在该档的商品逐个判断价格
+    private CompressedBitmap partialBand(CompressedBitmap candidates, int band, long minCents, long maxCents) {
+        CompressedBitmap result = new CompressedBitmap();
+        int visited = 0;
+        for (CompressedBitmap ids : byPrice.subMap(minCents, true, maxCents, true).values()) {
+            visited += ids.cardinality();
+            if (visited > PRICE_CHECK_LIMIT) {
+                CompressedBitmap below = band + 1 < BAND_BOUNDS.length
+                        ? CompressedBitmap.and(candidates, belowBound[band + 1]) : candidates;
+                return CompressedBitmap.andNot(below, belowBound[band])
+                        .filter(id -> priceOf[id] >= minCents && priceOf[id] <= maxCents);
+            }
+            ids.forEach(id -> {
+                if (candidates.contains(id)) {
+                    result.add(id);
+                }
+            });
+        }
+        return result;
+    }
+
+    private void putLocked(Long productId, String category, String location, Integer status, BigDecimal price) {
+        if (productId > Integer.MAX_VALUE) {
+            log.warn("商品ID超出筛选索引范围，未加入索引: {}", productId);
+            return;
+        }
+        removeLocked(productId);
+        if (status == null || status < 0 || status >= STATUS_COUNT) {
+            return;
+        }
+        int id = productId.intValue();
+        ensureCapacity(id);
+        long cents = price != null ? toCents(price) : 0;
+
+        byStatus[status].add(id);
+        byPrice.computeIfAbsent(cents, k -> new CompressedBitmap()).add(id);
+        for (int i = floorBand(cents) + 1; i < belowBound.length; i++) {
+            belowBound[i].add(id);
+        }
+        priceOf[id] = cents;
+        categoryOf[id] = byCategory.add(normalizeCategory(category), id, status);
+        locationOf[id] = byLocation.add(normalizeLocation(location), id, status);
+        statusOf[id] = status.byteValue();
+        size++;
+    }
+
+    private void removeLocked(Long productId) {
+        if (productId == null || productId >= priceOf.length || priceOf[productId.intValue()] == NO_PRICE) {
+            return;
+        }
+        int id = productId.intValue();
+        byStatus[statusOf[id]].remove(id);
+        CompressedBitmap ids = byPrice.get(priceOf[id]);
+        ids.remove(id);
+        if (ids.isEmpty()) {
+            byPrice.remove(priceOf[id]);
+        }
+        for (int i = floorBand(priceOf[id]) + 1; i < belowBound.length; i++) {
+            belowBound[i].remove(id);
+        }
+        byCategory.remove(categoryOf[id], id, statusOf[id]);
+        byLocation.remove(locationOf[id], id, statusOf[id]);
+        priceOf[id] = NO_PRICE;
+        size--;
+    }
+
+    private void ensureCapacity(int id) {
+        if (id < priceOf.length) {
+            return;
+        }
+        int capacity = Math.max(1024, Math.max(id + 1, (int) Math.min(Integer.MAX_VALUE - 8, priceOf.length * 2L)));
+        int oldLength = priceOf.length;
+        priceOf = Arrays.copyOf(priceOf, capacity);
+        Arrays.fill(priceOf, oldLength, capacity, NO_PRICE);
+        categoryOf = Arrays.copyOf(categoryOf, capacity);
+        locationOf = Arrays.copyOf(locationOf, capacity);
+        statusOf = Arrays.copyOf(statusOf, capacity);
+    }
+
+    // 下界不超过 cents 的最后一档
+    private static int floorBand(long cents) {
+        int i = Arrays.binarySearch(BAND_BOUNDS, cents);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    // 下界不低于 cents 的第一档，没有时返回档数
+    private static int ceilingBand(long cents) {
+        int i = Arrays.binarySearch(BAND_BOUNDS, cents);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    private static long[] bandBounds() {
+        int[] steps = {10, 12, 15, 20, 25, 30, 40, 50, 60, 80};
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        // 1 元（100 分）到 1 亿元
+        for (long scale = 10; scale <= 1_000_000_000L; scale *= 10) {
+            for (int step : steps) {
+                bounds.add(step * scale);
+            }
+        }
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static long toCents(BigDecimal price) {
+        return Math.max(0, price.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue());
+    }
+
+    private static List<Long> toLongs(int[] ids) {
+        List<Long> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            result.add((long) id);
+        }
+        return result;
+    }
+
+    // 一个分面字段：每个取值一个编号、一个位图和各状态的商品数，编号从1开始
+    private static final class FacetField {
+        // 基础集合不超过 取值数 * 该值 时逐个商品按编号计数，否则逐个取值求交集计数
+        private static final int TALLY_PER_VALUE = 4096;
+
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+        private final List<CompressedBitmap> bitmaps = new ArrayList<>();
+        private final List<int[]> statusCounts = new ArrayList<>();
+
+        // 加入商品并返回取值的编号，取值为空时返回0
+        int add(String name, int id, int status) {
+            if (name == null) {
+                return 0;
+            }
+            Integer code = codes.get(name);
+            if (code == null) {
+                names.add(name);
+                bitmaps.add(new CompressedBitmap());
+                statusCounts.add(new int[STATUS_COUNT]);
+                code = names.size();
+                codes.put(name, code);
+            }
+            bitmaps.get(code - 1).add(id);
+            statusCounts.get(code - 1)[status]++;
+            return code;
+        }
+
+        void remove(int code, int id, int status) {
+            if (code > 0) {
+                bitmaps.get(code - 1).remove(id);
+                statusCounts.get(code - 1)[status]--;
+            }
+        }
+
+        // 某状态下各取值的商品数
+        Map<String, Integer> counts(int status, int limit) {
+            int[] counts = new int[names.size() + 1];
+            for (int i = 0; i < names.size(); i++) {
+                counts[i + 1] = statusCounts.get(i)[status];
+            }
+            return top(counts, limit);
+        }
+
+        // 各取值在 base 中的商品数，codeOf 为按商品ID下标的取值编号
+        Map<String, Integer> counts(CompressedBitmap base, int[] codeOf, int limit) {
+            int[] counts = new int[names.size() + 1];
+            if (base.cardinality() <= (long) names.size() * TALLY_PER_VALUE) {
+                base.forEach(id -> counts[codeOf[id]]++);
+            } else {
+                for (int i = 0; i < bitmaps.size(); i++) {
+                    counts[i + 1] = CompressedBitmap.andCardinality(base, bitmaps.get(i));
+                }
+            }
+            return top(counts, limit);
+        }
+
+        CompressedBitmap bitmapOf(String name) {
+            Integer code = codes.get(name);
+            return code != null ? bitmaps.get(code - 1) : null;
+        }
+
+        // 按数量降序取前 limit 个，counts 按编号下标（下标0为没有取值，不计入）
+        private Map<String, Integer> top(int[] byCode, int limit) {
+            List<Map.Entry<String, Integer>> counts = new ArrayList<>();
+            for (int code = 1; code < byCode.length; code++) {
+                if (byCode[code] > 0) {
+                    counts.add(Map.entry(names.get(code - 1), byCode[code]));
+                }
+            }
+            counts.sort(Map.Entry.<String, Integer>comparingByValue().reversed()
+                    .thenComparing(Map.Entry.comparingByKey()));
+            Map<String, Integer> top = new LinkedHashMap<>();
+            for (int i = 0; i < Math.min(limit, counts.size()); i++) {
+                top.put(counts.get(i).getKey(), counts.get(i).getValue());
+            }
+            return top;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.kb.trading.search;
+import com.kb.trading.entity.Product;
+import com.kb.trading.event.ProductSavedEvent;
+import com.kb.trading.event.ProductStockChangedEvent;
+import com.kb.trading.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 附近商品索引（内存）
+ * 只收录填写了经纬度的上架商品，按 geohash 格子（见 GeoHash，约 1.2km × 0.6km）分组，每个格子一个商品ID位图。
+ * 查询时只取出覆盖搜索圆的格子，逐个计算距离，保留半径内的商品按距离排序分页，
+ * 耗时只与附近的商品数有关，与商品总数无关。
+ * 启动时从 product 表分批重建，之后由商品保存事件和库存变化事件增量维护（下架、售出、删除即移出）。
+ * 注意：商品ID作为位图中的值，必须小于 2^31；索引在单个节点的内存中，多节点部署时每个节点各自重建。
+ */
+@Component
+@Slf4j
+public class ProductGeoIndex {
+    public record Hit(long productId, double distanceMeters) {
+    }
+
+    public record Result(List<Hit> hits, int total, int scanned) {
+    }
+
+    private static final int REBUILD_BATCH_SIZE = 5000;
+    private static final int ACTIVE = 1;
+    // 覆盖的格子少于该数量时逐个查找；更多且超过有商品的格子数时直接遍历有商品的格子
+    private static final int MIN_COVERING_CELLS = 4096;
+
+    private final ProductRepository productRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<Long, CompressedBitmap> cells = new HashMap<>();
+    // 按商品ID下标，不在索引中时为 NaN
+    private double[] latitudeOf = new double[0];
+    private double[] longitudeOf = new double[0];
+    private int size;
+
+    private volatile boolean ready;
+
+    public ProductGeoIndex(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+    }
+
+    // 启动时从商品表分批重建索引
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        long afterId = 0;
+        List<Object[]> rows;
+        do {
+            rows = productRepository.findGeoFieldsAfter(afterId, Limit.of(REBUILD_BATCH_SIZE));
+            lock.writeLock().lock();
+            try {
+                for (Object[] row : rows) {
+                    afterId = (Long) row[0];
+                    putLocked(afterId, ACTIVE, (Double) row[1], (Double) row[2]);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } while (rows.size() == REBUILD_BATCH_SIZE);
+        ready = true;
+        log.info("附近商品索引已重建: 商品数={}, 格子数={}, 耗时={}ms",
+                size(), cellCount(), System.currentTimeMillis() - start);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductSaved(ProductSavedEvent event) {
+        Product product = event.product();
+        put(product.getId(), product.getStatus(), product.getLatitude(), product.getLongitude());
+    }
+
+    // 预占、归还库存可能使商品售罄或恢复上架，重新读取这些商品的状态
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStockChanged(ProductStockChangedEvent event) {
+        Set<Long> missing = new HashSet<>(event.productIds());
+        List<Object[]> rows = productRepository.findGeoFieldsByIds(missing);
+        lock.writeLock().lock();
+        try {
+            for (Object[] row : rows) {
+                Long productId = (Long) row[0];
+                missing.remove(productId);
+                putLocked(productId, (Integer) row[3], (Double) row[1], (Double) row[2]);
+            }
+            for (Long productId : missing) {
+                removeLocked(productId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 重建完成前查询结果不完整
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int cellCount() {
+        lock.readLock().lock();
+        try {
+            return cells.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 写入或更新一个商品，未上架或没有有效经纬度时移出
+    public void put(Long productId, Integer status, Double latitude, Double longitude) {
+        if (productId == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            putLocked(productId, status, latitude, longitude);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 距离 (latitude, longitude) 不超过 radiusMeters 的商品，按距离由近到远（同距离按ID降序）分页
+    public Result query(double latitude, double longitude, double radiusMeters, int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            long[] covering = GeoHash.covering(latitude, longitude, radiusMeters,
+                    Math.max(MIN_COVERING_CELLS, cells.size()));
+            List<CompressedBitmap> buckets = new ArrayList<>();
+            if (covering == null) {
+                buckets.addAll(cells.values());
+            } else {
+                for (long cell : covering) {
+                    CompressedBitmap ids = cells.get(cell);
+                    if (ids != null) {
+                        buckets.add(ids);
+                    }
+                }
+            }
+
+            // 距离（分米）放在高位、商品ID放在低31位，排序一个 long 数组即可
+            long[][] keys = {new long[64]};
+            int[] counts = new int[2];
+            for (CompressedBitmap ids : buckets) {
+                ids.forEach(id -> {
+                    counts[1]++;
+                    double distance = GeoHash.distanceMeters(latitude, longitude, latitudeOf[id], longitudeOf[id]);
+                    if (distance <= radiusMeters) {
+                        if (counts[0] == keys[0].length) {
+                            keys[0] = Arrays.copyOf(keys[0], counts[0] * 2);
+                        }
+                        keys[0][counts[0]++] = (Math.round(distance * 10) << 31) | (Integer.MAX_VALUE - id);
+                    }
+                });
+            }
+            int total = counts[0];
+            Arrays.sort(keys[0], 0, total);
+
+            List<Hit> hits = new ArrayList<>();
+            for (int i = Math.max(0, offset); i < total && hits.size() < limit; i++) {
+                long key = keys[0][i];
+                hits.add(new Hit(Integer.MAX_VALUE - (key & Integer.MAX_VALUE), (key >>> 31) / 10.0));
+            }
+            return new Result(hits, total, counts[1]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void putLocked(Long productId, Integer status, Double latitude, Double longitude) {
+        if (productId > Integer.MAX_VALUE) {
+            log.warn("商品ID超出附近商品索引范围，未加入索引: {}", productId);
+            return;
+        }
+        removeLocked(productId);
+        if (status == null || status != ACTIVE || !GeoHash.isValid(latitude, longitude)) {
+            return;
+        }
+        int id = productId.intValue();
+        ensureCapacity(id);
+        cells.computeIfAbsent(GeoHash.encode(latitude, longitude), k -> new CompressedBitmap()).add(id);
+        latitudeOf[id] = latitude;
+        longitudeOf[id] = longitude;
+        size++;
+    }
+
+    private void removeLocked(Long productId) {
+        if (productId == null || productId >= latitudeOf.length || Double.isNaN(latitudeOf[productId.intValue()])) {
+            return;
+        }
+        int id = productId.intValue();
+        long cell = GeoHash.encode(latitudeOf[id], longitudeOf[id]);
+        CompressedBitmap ids = cells.get(cell);
+        ids.remove(id);
+        if (ids.isEmpty()) {
+            cells.remove(cell);
+        }
+        latitudeOf[id] = Double.NaN;
+        longitudeOf[id] = Double.NaN;
+        size--;
+    }
+
+    private void ensureCapacity(int id) {
+        if (id < latitudeOf.length) {
+            return;
+        }
+        int capacity = Math.max(1024, Math.max(id + 1, (int) Math.min(Integer.MAX_VALUE - 8, latitudeOf.length * 2L)));
+        int oldLength = latitudeOf.length;
+        latitudeOf = Arrays.copyOf(latitudeOf, capacity);
+        longitudeOf = Arrays.copyOf(longitudeOf, capacity);
+        Arrays.fill(latitudeOf, oldLength, capacity, Double.NaN);
+        Arrays.fill(longitudeOf, oldLength, capacity, Double.NaN);
+    }
+}
@@ -0,0 +1,443 @@
+package com.kb.trading.search;
+import com.kb.trading.entity.Product;
+import com.kb.trading.event.ProductSavedEvent;
+import com.kb.trading.event.ProductStockChangedEvent;
+import com.kb.trading.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 商品全文搜索索引（内存）
+ * 标题、描述、分类、所在地分词后（见 TextTokenizer）建倒排表，只索引上架商品。
+ * 倒排表按内部文档号递增存放，每项是 [文档号差值, 加权词频] 两个 varint，压缩在一个字节数组中；
+ * 各字段权重不同（标题 > 分类 > 所在地 > 描述），词频和文档长度按权重累加后用 BM25 打分。
+ * 查询要求包含所有查询词：从最短的倒排表开始逐个归并求交集，不需要按文档数分配数组。
+ * 商品修改时分配新的文档号，旧文档只标记删除；加入或移出商品后删除的文档超过一半时整理倒排表。
+ * 与 Lucene 相同，IDF 中的文档数包含尚未整理掉的已删除文档。
+ * 启动时从 product 表分批重建，之后由商品保存事件和库存变化事件增量维护
+ * （预占库存售罄即移出，取消订单归还库存恢复上架后重新加入，上下架状态不变的库存变化不重新索引）。
+ * 注意：索引在单个节点的内存中，多节点部署时每个节点各自重建、各自监听本节点事件。
+ */
+@Component
+@Slf4j
+public class ProductSearchIndex {
+    private static final int REBUILD_BATCH_SIZE = 1000;
+    private static final int MIN_COMPACT_DELETED = 1000;
+
+    // 字段权重（以 0.5 为单位，保证加权词频是整数）
+    private static final int TITLE_WEIGHT = 6;
+    private static final int CATEGORY_WEIGHT = 4;
+    private static final int LOCATION_WEIGHT = 3;
+    private static final int DESCRIPTION_WEIGHT = 2;
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    private final ProductRepository productRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private final Map<Long, Integer> docOf = new HashMap<>();
+    private long[] productIds = new long[1024];
+    private int[] lengths = new int[1024];
+    private final BitSet deleted = new BitSet();
+    private int docCount;
+    private int deletedCount;
+    private long liveLength;
+
+    private volatile boolean ready;
+
+    public ProductSearchIndex(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+    }
+
+    // 启动时从商品表分批重建索引
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        long afterId = 0;
+        List<Object[]> rows;
+        do {
+            rows = productRepository.findSearchFieldsAfter(afterId, Limit.of(REBUILD_BATCH_SIZE));
+            for (Object[] row : rows) {
+                afterId = (Long) row[0];
+                add(afterId, (String) row[1], (String) row[2], (String) row[3], (String) row[4]);
+            }
+        } while (rows.size() == REBUILD_BATCH_SIZE);
+        ready = true;
+        log.info("商品搜索索引已重建: 商品数={}, 词数={}, 耗时={}ms",
+                size(), termCount(), System.currentTimeMillis() - start);
+    }
+
+    // 发布、修改、上下架后更新索引：上架商品重新索引，其他状态移出
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductSaved(ProductSavedEvent event) {
+        Product product = event.product();
+        if (product.getStatus() != null && product.getStatus() == 1) {
+            add(product.getId(), product.getTitle(), product.getDescription(),
+                    product.getCategory(), product.getLocation());
+        } else {
+            remove(product.getId());
+        }
+    }
+
+    // 预占、归还库存可能使商品售罄或恢复上架：先只读取状态，
+    // 上下架状态没有变化的商品不重新索引，只有需要重新加入的商品才读取搜索字段
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStockChanged(ProductStockChangedEvent event) {
+        Set<Long> missing = new HashSet<>(event.productIds());
+        Set<Long> relisted = new HashSet<>();
+        for (Object[] row : productRepository.findStatusesByIds(missing)) {
+            Long productId = (Long) row[0];
+            missing.remove(productId);
+            Integer status = (Integer) row[1];
+            boolean onSale = status != null && status == 1;
+            if (onSale != contains(productId)) {
+                if (onSale) {
+                    relisted.add(productId);
+                } else {
+                    remove(productId);
+                }
+            }
+        }
+        for (Long productId : missing) {
+            remove(productId);
+        }
+        if (relisted.isEmpty()) {
+            return;
+        }
+        for (Object[] row : productRepository.findSearchFieldsByIds(relisted)) {
+            Integer status = (Integer) row[5];
+            if (status != null && status == 1) {
+                add((Long) row[0], (String) row[1], (String) row[2], (String) row[3], (String) row[4]);
+            }
+        }
+    }
+
+    // 重建完成前查询结果不完整，调用方应回退到数据库查询
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docOf.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(Long productId) {
+        lock.readLock().lock();
+        try {
+            return docOf.containsKey(productId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int termCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void add(Long productId, String title, String description, String category, String location) {
+        if (productId == null) {
+            return;
+        }
+        Map<String, Integer> frequencies = new HashMap<>();
+        int length = 0;
+        length += count(frequencies, TextTokenizer.tokenize(title, true), TITLE_WEIGHT);
+        length += count(frequencies, TextTokenizer.tokenize(category, true), CATEGORY_WEIGHT);
+        length += count(frequencies, TextTokenizer.tokenize(location), LOCATION_WEIGHT);
+        length += count(frequencies, TextTokenizer.tokenize(description), DESCRIPTION_WEIGHT);
+
+        lock.writeLock().lock();
+        try {
+            removeLocked(productId);
+            int doc = docCount++;
+            if (doc == productIds.length) {
+                productIds = Arrays.copyOf(productIds, doc * 2);
+                lengths = Arrays.copyOf(lengths, doc * 2);
+            }
+            productIds[doc] = productId;
+            lengths[doc] = length;
+            docOf.put(productId, doc);
+            liveLength += length;
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), k -> new PostingList()).append(doc, entry.getValue());
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long productId) {
+        if (productId == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            removeLocked(productId);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 搜索商品，结果包含所有查询词
+     * @return 按相关度（BM25）降序的一页商品ID和命中总数
+     */
+    public Result search(String keyword, int offset, int limit) {
+        Set<String> terms = new LinkedHashSet<>(TextTokenizer.tokenize(keyword));
+        if (terms.isEmpty() || limit <= 0) {
+            return new Result(List.of(), 0);
+        }
+
+        lock.readLock().lock();
+        try {
+            List<PostingList> lists = new ArrayList<>(terms.size());
+            for (String term : terms) {
+                PostingList list = postings.get(term);
+                if (list == null) {
+                    return new Result(List.of(), 0);
+                }
+                lists.add(list);
+            }
+            lists.sort((a, b) -> Integer.compare(a.docFrequency, b.docFrequency));
+
+            float avgLength = docOf.isEmpty() ? 1 : Math.max(1f, (float) liveLength / docOf.size());
+            Matches matches = null;
+            for (PostingList list : lists) {
+                matches = list.score(matches, idf(list.docFrequency), avgLength);
+                if (matches.size == 0) {
+                    return new Result(List.of(), 0);
+                }
+            }
+            return topK(matches, offset, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Result topK(Matches matches, int offset, int limit) {
+        int k = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+        // 小顶堆保留得分最高的 k 个，得分相同时新商品（ID大）在前
+        PriorityQueue<Integer> heap = new PriorityQueue<>(Math.min(k, matches.size) + 1,
+                (a, b) -> compareHit(matches, a, b));
+        for (int i = 0; i < matches.size; i++) {
+            if (heap.size() < k) {
+                heap.add(i);
+            } else if (compareHit(matches, i, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(i);
+            }
+        }
+        List<Integer> ranked = new ArrayList<>(heap);
+        ranked.sort((a, b) -> compareHit(matches, b, a));
+        List<Long> page = new ArrayList<>(Math.max(0, Math.min(limit, ranked.size() - offset)));
+        for (int i = offset; i < ranked.size(); i++) {
+            page.add(productIds[matches.docs[ranked.get(i)]]);
+        }
+        return new Result(page, matches.size);
+    }
+
+    private int compareHit(Matches matches, int a, int b) {
+        int byScore = Float.compare(matches.scores[a], matches.scores[b]);
+        return byScore != 0 ? byScore : Long.compare(productIds[matches.docs[a]], productIds[matches.docs[b]]);
+    }
+
+    private float idf(int docFrequency) {
+        return (float) Math.log(1 + (docCount - docFrequency + 0.5) / (docFrequency + 0.5));
+    }
+
+    private void removeLocked(Long productId) {
+        Integer doc = docOf.remove(productId);
+        if (doc != null) {
+            deleted.set(doc);
+            deletedCount++;
+            liveLength -= lengths[doc];
+        }
+    }
+
+    // 修改和删除都会留下已删除文档，超过一半时整理
+    private void compactIfNeeded() {
+        if (deletedCount >= MIN_COMPACT_DELETED && deletedCount * 2 > docCount) {
+            compact();
+        }
+    }
+
+    // 去掉已删除文档并重新编号（保持原有顺序，倒排表仍按文档号递增）
+    private void compact() {
+        long start = System.currentTimeMillis();
+        int[] remap = new int[docCount];
+        int live = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            if (deleted.get(doc)) {
+                remap[doc] = -1;
+            } else {
+                remap[doc] = live;
+                productIds[live] = productIds[doc];
+                lengths[live] = lengths[doc];
+                live++;
+            }
+        }
+        postings.values().removeIf(list -> list.compact(remap) == 0);
+        for (Map.Entry<Long, Integer> entry : docOf.entrySet()) {
+            entry.setValue(remap[entry.getValue()]);
+        }
+        log.info("商品搜索索引已整理: 删除文档={}, 剩余文档={}, 耗时={}ms",
+                deletedCount, live, System.currentTimeMillis() - start);
+        docCount = live;
+        deletedCount = 0;
+        deleted.clear();
+    }
+
+    private static int count(Map<String, Integer> frequencies, List<String> tokens, int weight) {
+        for (String token : tokens) {
+            frequencies.merge(token, weight, Integer::sum);
+        }
+        return tokens.size() * weight;
+    }
+
+    public record Result(List<Long> productIds, long total) {
+    }
+
+    // 命中的文档号（递增）及累计得分
+    private static final class Matches {
+        private int[] docs;
+        private float[] scores;
+        private int size;
+
+        Matches(int capacity) {
+            docs = new int[Math.max(capacity, 4)];
+            scores = new float[docs.length];
+        }
+
+        void add(int doc, float score) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            docs[size] = doc;
+            scores[size] = score;
+            size++;
+        }
+    }
+
+    /**
+     * 压缩倒排表：[文档号差值, 加权词频] 依次以 varint 追加
+     */
+    private final class PostingList {
+        private byte[] data = new byte[8];
+        private int length;
+        private int lastDoc = -1;
+        private int docFrequency;
+
+        void append(int doc, int frequency) {
+            writeVarint(doc - lastDoc);
+            writeVarint(frequency);
+            lastDoc = doc;
+            docFrequency++;
+        }
+
+        // previous 为 null 时收集所有未删除的文档，否则与 previous 求交集并累加得分
+        Matches score(Matches previous, float idf, float avgLength) {
+            Matches result = new Matches(previous == null ? docFrequency : previous.size);
+            int[] position = {0};
+            int doc = -1;
+            int cursor = 0;
+            while (position[0] < length) {
+                doc += readVarint(position);
+                int frequency = readVarint(position);
+                if (previous != null) {
+                    while (cursor < previous.size && previous.docs[cursor] < doc) {
+                        cursor++;
+                    }
+                    if (cursor == previous.size) {
+                        break;
+                    }
+                    if (previous.docs[cursor] != doc) {
+                        continue;
+                    }
+                } else if (deleted.get(doc)) {
+                    continue;
+                }
+                float tf = frequency / 2f;
+                float norm = K1 * (1 - B + B * lengths[doc] / avgLength);
+                float score = idf * tf * (K1 + 1) / (tf + norm);
+                result.add(doc, previous == null ? score : previous.scores[cursor] + score);
+            }
+            return result;
+        }
+
+        // 按新文档号重写，返回剩余的文档数
+        int compact(int[] remap) {
+            byte[] old = data;
+            int oldLength = length;
+            data = new byte[Math.max(8, oldLength)];
+            length = 0;
+            lastDoc = -1;
+            docFrequency = 0;
+            int[] position = {0};
+            int doc = -1;
+            while (position[0] < oldLength) {
+                doc += readVarint(old, position);
+                int frequency = readVarint(old, position);
+                if (remap[doc] >= 0) {
+                    append(remap[doc], frequency);
+                }
+            }
+            return docFrequency;
+        }
+
+        private void writeVarint(int value) {
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + 5));
+            }
+            while ((value & ~0x7F) != 0) {
+                data[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+
+        private int readVarint(int[] position) {
+            return readVarint(data, position);
+        }
+
+        private static int readVarint(byte[] bytes, int[] position) {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[position[0]++];
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+    }
+}
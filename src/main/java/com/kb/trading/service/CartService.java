@@ -1,4 +1,5 @@
 package com.kb.trading.service;
+import com.kb.trading.dto.ProductSnapshot;
 import com.kb.trading.entity.CartItem;
 import java.math.BigDecimal;
 import java.util.List;
@@ -16,8 +17,8 @@ public interface CartService {
     // 从购物车移除商品
     void removeFromCart(Long userId, Long cartItemId);
 
-    // 批量移除商品
-    void batchRemoveFromCart(Long userId, List<Long> cartItemIds);
+    // 批量移除商品，返回实际移除的数量
+    int batchRemoveFromCart(Long userId, List<Long> cartItemIds);
 
     // 清空购物车
     void clearCart(Long userId);
@@ -37,12 +38,34 @@ public interface CartService {
     // 检查商品是否在购物车中
     boolean isInCart(Long userId, Long productId);
 
-    // 合并购物车（用户登录时调用）
-    void mergeCart(Long userId, List<CartItem> tempCartItems);
+    // 合并购物车（用户登录时调用），返回合并成功的商品数
+    int mergeCart(Long userId, List<CartItem> tempCartItems);
+
+    // 游客购物车（令牌中的商品ID -> 数量，不访问数据库）
+    Map<Long, Integer> getGuestCartItems(String guestToken);
+
+    // 游客购物车加入商品，返回新的令牌
+    String addToGuestCart(String guestToken, Long productId, Integer quantity);
+
+    // 游客购物车修改数量（不大于0时移除），返回新的令牌
+    String updateGuestCartQuantity(String guestToken, Long productId, Integer quantity);
+
+    // 把游客购物车令牌合并到用户购物车（用户登录时调用），返回合并成功的商品数
+    int mergeGuestCart(Long userId, String guestToken);
+
+    // 批量加载购物车中商品的快照（一次查询），供校验库存和生成订单项共用
+    Map<Long, ProductSnapshot> loadProductSnapshots(List<CartItem> cartItems);
 
     // 验证购物车商品库存
     Map<Long, Integer> validateCartStock(Long userId);
 
+    // 按已加载的商品快照验证库存
+    Map<Long, Integer> validateCartStock(List<CartItem> cartItems, Map<Long, ProductSnapshot> products);
+
     // 从购物车生成订单项
     List<com.kb.trading.entity.OrderItem> convertToOrderItems(Long userId);
+
+    // 按已加载的商品快照生成订单项（跳过不可购买的商品）
+    List<com.kb.trading.entity.OrderItem> convertToOrderItems(List<CartItem> cartItems,
+                                                               Map<Long, ProductSnapshot> products);
 }
@@ -0,0 +1,10 @@
+package com.kb.trading.service;
+import com.kb.trading.dto.CheckoutResult;
+import java.util.Map;
+public interface CheckoutService {
+    // 购物车结算：校验库存、预占库存、按卖家拆分订单并删除已购买的购物车项（同一事务）
+    CheckoutResult checkout(Long userId, String address, String phone, String note);
+
+    // 结算耗时指标（次数、最近/最大耗时、超出延迟预算的次数）
+    Map<String, Object> getCheckoutMetrics();
+}
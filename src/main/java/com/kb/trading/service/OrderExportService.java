@@ -0,0 +1,36 @@
+package com.kb.trading.service;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.Map;
+
+public interface OrderExportService {
+
+    // 导出格式
+    enum Format {
+        CSV("text/csv;charset=UTF-8", "csv"),
+        NDJSON("application/x-ndjson;charset=UTF-8", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    // 把 [start, end) 内下单的订单（含订单项和已归档订单）流式写出，返回导出的订单数
+    long exportOrders(Date start, Date end, Format format, OutputStream output) throws IOException;
+
+    // 导出指标（行数、耗时、每秒行数）
+    Map<String, Object> getExportMetrics();
+}
@@ -1,9 +1,11 @@
 package com.kb.trading.service;
+import com.kb.trading.dto.CursorPage;
 import com.kb.trading.entity.Order;
 import com.kb.trading.entity.OrderItem;
 import com.kb.trading.entity.OrderStatus;
 import org.springframework.data.domain.Page;
 import java.math.BigDecimal;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 public interface OrderService {
@@ -20,11 +22,11 @@ public interface OrderService {
     // 获取订单详情（包含订单项）
     Map<String, Object> getOrderDetail(Long orderId);
 
-    // 获取买家订单列表
-    List<Order> getOrdersByBuyer(Long buyerId);
+    // 游标分页获取买家订单（按下单时间倒序，cursor为空表示第一页）
+    CursorPage<Order> getBuyerOrdersByCursor(Long buyerId, String cursor, int size, boolean withTotal);
 
-    // 获取卖家订单列表
-    List<Order> getOrdersBySeller(Long sellerId);
+    // 游标分页获取卖家订单（按下单时间倒序，cursor为空表示第一页）
+    CursorPage<Order> getSellerOrdersByCursor(Long sellerId, String cursor, int size, boolean withTotal);
 
     // 分页获取买家订单
     Page<Order> getBuyerOrdersPage(Long buyerId, int page, int size);
@@ -32,6 +34,9 @@ public interface OrderService {
     // 分页获取卖家订单
     Page<Order> getSellerOrdersPage(Long sellerId, int page, int size);
 
+    // 搜索订单（订单号前缀或买家/卖家名称），按下单先后倒序分页
+    Page<Order> searchOrders(String keyword, int page, int size);
+
     // 更新订单状态
     Order updateOrderStatus(Long orderId, OrderStatus newStatus,
                             Long operatorId, String note);
@@ -63,6 +68,15 @@ public interface OrderService {
     // 获取订单统计信息
     Map<String, Object> getOrderStats(Long userId, boolean isSeller);
 
+    // 批量取消超时未支付的订单并归还库存（定时任务调用），返回实际取消的数量
+    int cancelExpiredOrders(List<Long> orderIds, Date createdBefore);
+
+    // 批量完成送达超时的订单（定时任务调用），返回实际完成的数量
+    int completeDeliveredOrders(List<Long> orderIds, Date deliveredBefore);
+
+    // 从订单表删除已写入归档的订单及其订单项（归档任务调用），返回删除的订单数
+    int purgeArchivedOrders(List<Long> orderIds, List<OrderStatus> statuses, Date updatedBefore);
+
     // 生成订单号（工具方法）
     String generateOrderNo();
 }
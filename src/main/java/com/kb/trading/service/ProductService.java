@@ -1,4 +1,8 @@
 package com.kb.trading.service;
+import com.kb.trading.dto.FacetedPage;
+import com.kb.trading.dto.HotProduct;
+import com.kb.trading.dto.NearbyProduct;
+import com.kb.trading.dto.ProductCard;
 import com.kb.trading.entity.Product;
 import org.springframework.data.domain.Page;
 import java.math.BigDecimal;
@@ -14,22 +18,29 @@ public interface ProductService {
     Product getProductById(Long id);
 
     // 根据卖家ID获取商品列表
-    List<Product> getProductsBySellerId(Long sellerId);
+    List<ProductCard> getProductsBySellerId(Long sellerId);
 
     // 获取所有上架商品（分页）
-    Page<Product> getActiveProducts(int page, int size);
+    Page<ProductCard> getActiveProducts(int page, int size);
 
-    // 搜索商品
-    List<Product> searchProducts(String keyword);
+    // 搜索商品（按相关度排序，分页）
+    Page<ProductCard> searchProducts(String keyword, int page, int size);
 
     // 按分类获取商品
-    List<Product> getProductsByCategory(String category);
+    List<ProductCard> getProductsByCategory(String category);
 
     // 按地点获取商品
-    List<Product> getProductsByLocation(String location);
+    List<ProductCard> getProductsByLocation(String location);
 
     // 价格区间查询
-    List<Product> getProductsByPriceRange(BigDecimal minPrice, BigDecimal maxPrice);
+    List<ProductCard> getProductsByPriceRange(BigDecimal minPrice, BigDecimal maxPrice);
+
+    // 组合筛选（分类、所在地、价格区间、状态），sort 为 newest、price_asc 或 price_desc，返回一页商品和分面计数
+    FacetedPage<ProductCard> filterProducts(String category, String location, BigDecimal minPrice, BigDecimal maxPrice,
+                                        Integer status, String sort, int page, int size);
+
+    // 附近的上架商品（半径单位公里），按距离由近到远分页
+    Page<NearbyProduct> getNearbyProducts(double latitude, double longitude, double radiusKm, int page, int size);
 
     // 下架商品
     Product deactivateProduct(Long productId, Long sellerId);
@@ -43,8 +54,8 @@ public interface ProductService {
     // 增加商品浏览次数
     void increaseViewCount(Long productId);
 
-    // 获取热门商品（按浏览量）
-    List<Product> getHotProducts(int limit);
+    // 获取热门商品卡片（by 为 views 按浏览量，sales 按销量）
+    List<HotProduct> getHotProducts(String by, int limit);
 
     // 删除商品（逻辑删除）
     void deleteProduct(Long productId, Long sellerId);
@@ -0,0 +1,16 @@
+package com.kb.trading.service;
+import com.kb.trading.entity.OrderItem;
+import java.util.List;
+public interface StockService {
+    // 预占单个商品库存（带条件的原子扣减，成功返回true）
+    boolean reserve(Long productId, Integer quantity);
+
+    // 批量预占订单项库存，返回与订单项一一对应的预占结果
+    List<Boolean> reserveAll(List<OrderItem> items);
+
+    // 归还单个商品库存
+    void release(Long productId, Integer quantity);
+
+    // 批量归还订单项库存（取消订单时调用）
+    void releaseAll(List<OrderItem> items);
+}
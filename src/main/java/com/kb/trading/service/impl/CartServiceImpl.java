@@ -1,39 +1,47 @@
 package com.kb.trading.service.impl;
+import com.kb.trading.cache.CartStore;
+import com.kb.trading.cache.ProductCache;
+import com.kb.trading.cache.UserCart;
+import com.kb.trading.component.GuestCartCodec;
+import com.kb.trading.dto.CartSummary;
+import com.kb.trading.dto.ProductSnapshot;
 import com.kb.trading.entity.CartItem;
 import com.kb.trading.entity.OrderItem;
 import com.kb.trading.entity.Product;
-import com.kb.trading.entity.User;
-import com.kb.trading.repository.CartItemRepository;
+import com.kb.trading.event.CartCheckedOutEvent;
 import com.kb.trading.repository.ProductRepository;
 import com.kb.trading.repository.UserRepository;
 import com.kb.trading.service.CartService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class CartServiceImpl implements CartService {
-    private final CartItemRepository cartItemRepository;
+    private final CartStore cartStore;
     private final ProductRepository productRepository;
+    private final ProductCache productCache;
     private final UserRepository userRepository;
+    private final GuestCartCodec guestCartCodec;
 
     @Override
-    @Transactional
     public CartItem addToCart(Long userId, Long productId, Integer quantity, String spec) {
-        // 验证用户
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("用户不存在"));
+        // 验证用户（同一用户只在购物车首次使用时查询一次）
+        if (!cartStore.read(userId, UserCart::isOwnerVerified) && !userRepository.existsById(userId)) {
+            throw new RuntimeException("用户不存在");
+        }
 
         // 验证商品
-        Product product = productRepository.findById(productId)
+        Product product = productCache.get(productId)
                 .orElseThrow(() -> new RuntimeException("商品不存在"));
 
         // 验证商品状态
@@ -46,39 +54,30 @@ public class CartServiceImpl implements CartService {
             throw new RuntimeException("商品库存不足，当前库存: " + product.getStock());
         }
 
-        // 检查是否已在购物车中
-        Optional<CartItem> existingCartItem = cartItemRepository.findByUserIdAndProductId(userId, productId);
-
-        CartItem cartItem;
-        if (existingCartItem.isPresent()) {
-            // 更新已有购物车项的数量
-            cartItem = existingCartItem.get();
-            int newQuantity = cartItem.getQuantity() + quantity;
-
-            // 再次验证库存
-            if (newQuantity > product.getStock()) {
-                throw new RuntimeException("商品库存不足，最多可购买: " + product.getStock());
+        CartItem savedCartItem = cartStore.update(userId, cart -> {
+            cart.markOwnerVerified();
+            // 检查是否已在购物车中
+            int index = cart.indexOfProduct(productId);
+            if (index >= 0) {
+                // 更新已有购物车项的数量
+                int newQuantity = cart.quantity(index) + quantity;
+
+                // 再次验证库存
+                if (newQuantity > product.getStock()) {
+                    throw new RuntimeException("商品库存不足，最多可购买: " + product.getStock());
+                }
+
+                cart.setQuantity(index, newQuantity);
+                if (spec != null) {
+                    cart.setSpec(index, spec);
+                }
+            } else {
+                // 创建新的购物车项
+                index = cart.add(productId, quantity, product.getPrice(), product.getTitle(),
+                        product.getMainImage(), spec);
             }
-
-            cartItem.setQuantity(newQuantity);
-            cartItem.setProductSpec(spec != null ? spec : cartItem.getProductSpec());
-        } else {
-            // 创建新的购物车项
-            cartItem = new CartItem();
-            cartItem.setUserId(userId);
-            cartItem.setProductId(productId);
-            cartItem.setQuantity(quantity);
-            cartItem.setProductSpec(spec);
-            cartItem.setUnitPrice(product.getPrice());
-            cartItem.setProductTitle(product.getTitle());
-            cartItem.setProductImage(product.getMainImage());
-        }
-
-        // 计算小计金额
-        cartItem.calculateSubtotal();
-
-        // 保存购物车项
-        CartItem savedCartItem = cartItemRepository.save(cartItem);
+            return cart.toCartItem(index);
+        });
 
         log.info("用户 {} 添加商品 {} 到购物车，数量: {}", userId, productId, quantity);
 
@@ -86,36 +85,31 @@ public class CartServiceImpl implements CartService {
     }
 
     @Override
-    @Transactional
     public CartItem updateQuantity(Long userId, Long cartItemId, Integer quantity) {
-        // 验证购物车项是否存在且属于该用户
-        CartItem cartItem = cartItemRepository.findById(cartItemId)
-                .orElseThrow(() -> new RuntimeException("购物车项不存在"));
-
-        if (!cartItem.getUserId().equals(userId)) {
-            throw new RuntimeException("无权修改此购物车项");
+        if (quantity <= 0) {
+            // 数量为0或负数，删除该购物车项
+            removeFromCart(userId, cartItemId);
+            log.info("用户 {} 删除购物车项 {}", userId, cartItemId);
+            return null;
         }
 
+        // 验证购物车项是否存在且属于该用户
+        Long productId = cartStore.read(userId, cart -> cart.productId(requireIndex(cart, cartItemId)));
+
         // 验证商品库存
-        Product product = productRepository.findById(cartItem.getProductId())
+        Product product = productCache.get(productId)
                 .orElseThrow(() -> new RuntimeException("商品不存在"));
 
         if (quantity > product.getStock()) {
             throw new RuntimeException("商品库存不足，最多可购买: " + product.getStock());
         }
 
-        if (quantity <= 0) {
-            // 数量为0或负数，删除该购物车项
-            cartItemRepository.delete(cartItem);
-            log.info("用户 {} 删除购物车项 {}", userId, cartItemId);
-            return null;
-        }
-
         // 更新数量
-        cartItem.setQuantity(quantity);
-        cartItem.calculateSubtotal();
-
-        CartItem updatedCartItem = cartItemRepository.save(cartItem);
+        CartItem updatedCartItem = cartStore.update(userId, cart -> {
+            int index = requireIndex(cart, cartItemId);
+            cart.setQuantity(index, quantity);
+            return cart.toCartItem(index);
+        });
 
         log.info("用户 {} 更新购物车项 {} 数量为 {}", userId, cartItemId, quantity);
 
@@ -123,124 +117,231 @@ public class CartServiceImpl implements CartService {
     }
 
     @Override
-    @Transactional
     public CartItem updateQuantityByProduct(Long userId, Long productId, Integer quantity) {
-        CartItem cartItem = cartItemRepository.findByUserIdAndProductId(userId, productId)
-                .orElseThrow(() -> new RuntimeException("购物车中未找到该商品"));
+        Long cartItemId = cartStore.read(userId, cart -> {
+            int index = cart.indexOfProduct(productId);
+            if (index < 0) {
+                throw new RuntimeException("购物车中未找到该商品");
+            }
+            return cart.id(index);
+        });
 
-        return updateQuantity(userId, cartItem.getId(), quantity);
+        return updateQuantity(userId, cartItemId, quantity);
     }
 
     @Override
-    @Transactional
     public void removeFromCart(Long userId, Long cartItemId) {
-        CartItem cartItem = cartItemRepository.findById(cartItemId)
-                .orElseThrow(() -> new RuntimeException("购物车项不存在"));
-
-        if (!cartItem.getUserId().equals(userId)) {
-            throw new RuntimeException("无权删除此购物车项");
-        }
-
-        cartItemRepository.delete(cartItem);
-
-        log.info("用户 {} 从购物车移除商品 {}", userId, cartItem.getProductId());
+        Long productId = cartStore.update(userId, cart -> {
+            int index = requireIndex(cart, cartItemId);
+            long removed = cart.productId(index);
+            cart.remove(index);
+            return removed;
+        });
+
+        log.info("用户 {} 从购物车移除商品 {}", userId, productId);
     }
 
     @Override
-    @Transactional
-    public void batchRemoveFromCart(Long userId, List<Long> cartItemIds) {
-        int deletedCount = 0;
-        for (Long cartItemId : cartItemIds) {
-            try {
-                removeFromCart(userId, cartItemId);
-                deletedCount++;
-            } catch (Exception e) {
-                log.warn("删除购物车项失败: {}", e.getMessage());
+    public int batchRemoveFromCart(Long userId, List<Long> cartItemIds) {
+        int deletedCount = cartStore.update(userId, cart -> {
+            int removed = 0;
+            for (Long cartItemId : cartItemIds) {
+                int index = cart.indexOfId(cartItemId);
+                if (index >= 0) {
+                    cart.remove(index);
+                    removed++;
+                } else {
+                    log.warn("删除购物车项失败: 购物车项不存在 {}", cartItemId);
+                }
             }
-        }
+            return removed;
+        });
 
         log.info("用户 {} 批量删除 {} 个购物车项", userId, deletedCount);
+        return deletedCount;
     }
 
     @Override
-    @Transactional
     public void clearCart(Long userId) {
-        cartItemRepository.deleteByUserId(userId);
+        cartStore.update(userId, cart -> {
+            cart.clear();
+            return null;
+        });
         log.info("用户 {} 清空购物车", userId);
     }
 
     @Override
     public List<CartItem> getCartItems(Long userId) {
-        return cartItemRepository.findByUserId(userId);
+        return cartStore.read(userId, UserCart::toCartItems);
     }
 
     @Override
     public Map<String, Object> getCartSummary(Long userId) {
-        List<CartItem> cartItems = getCartItems(userId);
-        Integer itemCount = getCartItemCount(userId);
-        BigDecimal totalAmount = getCartTotalAmount(userId);
-
+        // 列表和汇总在同一次加锁中取得，汇总一次遍历算出
         Map<String, Object> summary = new HashMap<>();
-        summary.put("cartItems", cartItems);
-        summary.put("itemCount", itemCount);           // 商品种类数
-        summary.put("totalQuantity", cartItems.stream()  // 商品总件数
-                .mapToInt(CartItem::getQuantity)
-                .sum());
-        summary.put("totalAmount", totalAmount);
+        cartStore.read(userId, cart -> {
+            CartSummary totals = cart.summary();
+            summary.put("cartItems", cart.toCartItems());
+            summary.put("itemCount", totals.itemCount());           // 商品种类数
+            summary.put("totalQuantity", totals.totalQuantity());   // 商品总件数
+            summary.put("totalAmount", totals.totalAmount());
+            return null;
+        });
 
         return summary;
     }
 
     @Override
     public Integer getCartItemCount(Long userId) {
-        Long count = cartItemRepository.countByUserId(userId);
-        return count != null ? count.intValue() : 0;
+        return cartStore.read(userId, cart -> cart.summary().itemCount());
     }
 
     @Override
     public BigDecimal getCartTotalAmount(Long userId) {
-        BigDecimal total = cartItemRepository.sumSubtotalByUserId(userId);
-        return total != null ? total : BigDecimal.ZERO;
+        return cartStore.read(userId, cart -> cart.summary().totalAmount());
     }
 
     @Override
     public boolean isInCart(Long userId, Long productId) {
-        return cartItemRepository.findByUserIdAndProductId(userId, productId).isPresent();
+        return cartStore.read(userId, cart -> cart.indexOfProduct(productId) >= 0);
     }
 
     @Override
-    @Transactional
-    public void mergeCart(Long userId, List<CartItem> tempCartItems) {
+    public int mergeCart(Long userId, List<CartItem> tempCartItems) {
         if (tempCartItems == null || tempCartItems.isEmpty()) {
-            return;
+            return 0;
+        }
+
+        if (!cartStore.read(userId, UserCart::isOwnerVerified) && !userRepository.existsById(userId)) {
+            throw new RuntimeException("用户不存在");
         }
 
+        // 一次查询加载所有临时购物车中的商品
+        Set<Long> productIds = new HashSet<>();
         for (CartItem tempItem : tempCartItems) {
-            try {
-                addToCart(userId, tempItem.getProductId(),
-                        tempItem.getQuantity(), tempItem.getProductSpec());
-            } catch (Exception e) {
-                log.warn("合并购物车项失败: {}", e.getMessage());
+            productIds.add(tempItem.getProductId());
+        }
+        Map<Long, Product> products = productCache.getAll(productIds);
+
+        // 在一次加锁中合并：已有的商品累加数量，超过库存时按库存截断
+        // 只修改内存购物车：下一次刷新时新行随一条批量 INSERT ... ON DUPLICATE KEY UPDATE 写入，已有行的数量随同一批 UPDATE 写入
+        int mergedCount = cartStore.update(userId, cart -> {
+            cart.markOwnerVerified();
+            int merged = 0;
+            for (CartItem tempItem : tempCartItems) {
+                Product product = products.get(tempItem.getProductId());
+                Integer quantity = tempItem.getQuantity();
+                if (product == null || product.getStatus() != 1 || product.getStock() <= 0
+                        || quantity == null || quantity <= 0) {
+                    log.warn("合并购物车项失败: 商品不存在、已下架或数量无效 {}", tempItem.getProductId());
+                    continue;
+                }
+                int index = cart.indexOfProduct(product.getId());
+                if (index >= 0) {
+                    cart.setQuantity(index, Math.min(cart.quantity(index) + quantity, product.getStock()));
+                    if (tempItem.getProductSpec() != null) {
+                        cart.setSpec(index, tempItem.getProductSpec());
+                    }
+                } else {
+                    cart.add(product.getId(), Math.min(quantity, product.getStock()), product.getPrice(),
+                            product.getTitle(), product.getMainImage(), tempItem.getProductSpec());
+                }
+                merged++;
             }
+            return merged;
+        });
+
+        log.info("用户 {} 合并购物车，合并了 {} 个商品", userId, mergedCount);
+        return mergedCount;
+    }
+
+    @Override
+    public Map<Long, Integer> getGuestCartItems(String guestToken) {
+        return guestCartCodec.decode(guestToken);
+    }
+
+    @Override
+    public String addToGuestCart(String guestToken, Long productId, Integer quantity) {
+        if (productId == null || quantity == null || quantity <= 0) {
+            throw new RuntimeException("购买数量必须大于0");
         }
+        Map<Long, Integer> items = guestCartCodec.decode(guestToken);
+        items.merge(productId, quantity, (a, b) -> Math.min(a + b, GuestCartCodec.MAX_QUANTITY));
+        return guestCartCodec.encode(items);
+    }
 
-        log.info("用户 {} 合并购物车，合并了 {} 个商品", userId, tempCartItems.size());
+    @Override
+    public String updateGuestCartQuantity(String guestToken, Long productId, Integer quantity) {
+        Map<Long, Integer> items = guestCartCodec.decode(guestToken);
+        if (quantity == null || quantity <= 0) {
+            items.remove(productId);
+        } else {
+            items.put(productId, quantity);
+        }
+        return guestCartCodec.encode(items);
+    }
+
+    @Override
+    public int mergeGuestCart(Long userId, String guestToken) {
+        List<CartItem> tempCartItems = new ArrayList<>();
+        guestCartCodec.decode(guestToken).forEach((productId, quantity) -> {
+            CartItem item = new CartItem();
+            item.setProductId(productId);
+            item.setQuantity(quantity);
+            tempCartItems.add(item);
+        });
+        return mergeCart(userId, tempCartItems);
+    }
+
+    // 结算事务提交后从内存购物车移除已下单的商品（数据库中的行已在事务内删除）
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCartCheckedOut(CartCheckedOutEvent event) {
+        cartStore.update(event.userId(), cart -> {
+            for (Long productId : event.productIds()) {
+                int index = cart.indexOfProduct(productId);
+                if (index >= 0) {
+                    cart.remove(index);
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public Map<Long, ProductSnapshot> loadProductSnapshots(List<CartItem> cartItems) {
+        if (cartItems.isEmpty()) {
+            return Map.of();
+        }
+        Set<Long> productIds = new HashSet<>();
+        for (CartItem cartItem : cartItems) {
+            productIds.add(cartItem.getProductId());
+        }
+        Map<Long, ProductSnapshot> products = new HashMap<>();
+        for (ProductSnapshot product : productRepository.findSnapshotsByIds(productIds)) {
+            products.put(product.id(), product);
+        }
+        return products;
     }
 
     @Override
     public Map<Long, Integer> validateCartStock(Long userId) {
         List<CartItem> cartItems = getCartItems(userId);
+        return validateCartStock(cartItems, loadProductSnapshots(cartItems));
+    }
+
+    @Override
+    public Map<Long, Integer> validateCartStock(List<CartItem> cartItems, Map<Long, ProductSnapshot> products) {
         Map<Long, Integer> validationResult = new HashMap<>();
 
         for (CartItem cartItem : cartItems) {
-            Product product = productRepository.findById(cartItem.getProductId()).orElse(null);
+            ProductSnapshot product = products.get(cartItem.getProductId());
 
             if (product == null) {
                 validationResult.put(cartItem.getProductId(), -1); // 商品不存在
-            } else if (product.getStatus() != 1) {
+            } else if (!product.isOnSale()) {
                 validationResult.put(cartItem.getProductId(), -2); // 商品已下架
-            } else if (cartItem.getQuantity() > product.getStock()) {
-                validationResult.put(cartItem.getProductId(), product.getStock()); // 库存不足
+            } else if (cartItem.getQuantity() > product.stock()) {
+                validationResult.put(cartItem.getProductId(), product.stock()); // 库存不足
             } else {
                 validationResult.put(cartItem.getProductId(), 0); // 库存充足
             }
@@ -252,13 +353,18 @@ public class CartServiceImpl implements CartService {
     @Override
     public List<OrderItem> convertToOrderItems(Long userId) {
         List<CartItem> cartItems = getCartItems(userId);
+        return convertToOrderItems(cartItems, loadProductSnapshots(cartItems));
+    }
+
+    @Override
+    public List<OrderItem> convertToOrderItems(List<CartItem> cartItems, Map<Long, ProductSnapshot> products) {
         List<OrderItem> orderItems = new ArrayList<>();
 
         for (CartItem cartItem : cartItems) {
-            Product product = productRepository.findById(cartItem.getProductId()).orElse(null);
+            ProductSnapshot product = products.get(cartItem.getProductId());
 
-            if (product != null && product.getStatus() == 1 &&
-                    cartItem.getQuantity() <= product.getStock()) {
+            if (product != null && product.isOnSale() &&
+                    cartItem.getQuantity() <= product.stock()) {
 
                 OrderItem orderItem = new OrderItem();
                 orderItem.setProductId(cartItem.getProductId());
@@ -275,4 +381,13 @@ public class CartServiceImpl implements CartService {
 
         return orderItems;
     }
+
+    // 当前用户购物车中的行下标，不存在时报错
+    private static int requireIndex(UserCart cart, Long cartItemId) {
+        int index = cart.indexOfId(cartItemId);
+        if (index < 0) {
+            throw new RuntimeException("购物车项不存在");
+        }
+        return index;
+    }
 }
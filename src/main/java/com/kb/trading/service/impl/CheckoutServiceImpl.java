@@ -0,0 +1,227 @@
+package com.kb.trading.service.impl;
+import com.kb.trading.cache.CartStore;
+import com.kb.trading.dto.CheckoutResult;
+import com.kb.trading.dto.ProductSnapshot;
+import com.kb.trading.entity.CartItem;
+import com.kb.trading.entity.Order;
+import com.kb.trading.entity.OrderItem;
+import com.kb.trading.entity.OrderStatus;
+import com.kb.trading.entity.User;
+import com.kb.trading.event.CartCheckedOutEvent;
+import com.kb.trading.event.OrderChangedEvent;
+import com.kb.trading.repository.CartItemRepository;
+import com.kb.trading.repository.OrderItemRepository;
+import com.kb.trading.repository.OrderRepository;
+import com.kb.trading.repository.UserRepository;
+import com.kb.trading.service.CartService;
+import com.kb.trading.service.CheckoutService;
+import com.kb.trading.service.OrderService;
+import com.kb.trading.service.StockService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 购物车结算
+ * 一个事务内固定条数的语句完成整个下单流程，与购物车行数无关：
+ * 一次查询商品快照 -> 一次JDBC批处理预占库存 -> 每个卖家插入一个订单 ->
+ * 一次批处理插入全部订单项 -> 一条语句删除已购买的购物车项。
+ * 任意一步失败整个事务回滚，已预占的库存一并恢复；提交后再从购物车内存存储移除对应商品。
+ * 读取购物车到移除已下单商品的整个过程持有该用户的购物车锁，同一用户并发结算时后到的请求
+ * 等待前一次结算完成，只能看到剩余的商品，同一批购物车行不会被重复下单。
+ * 结算耗时（含提交）超过 latency-budget 时记录告警并计入指标。
+ */
+@Service
+@Slf4j
+public class CheckoutServiceImpl implements CheckoutService {
+    private final CartService cartService;
+    private final CartStore cartStore;
+    private final StockService stockService;
+    private final OrderService orderService;
+    private final UserRepository userRepository;
+    private final OrderRepository orderRepository;
+    private final OrderItemRepository orderItemRepository;
+    private final CartItemRepository cartItemRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration latencyBudget;
+
+    // 结算指标
+    private final AtomicLong checkouts = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong ordersCreated = new AtomicLong();
+    private final AtomicLong linesCheckedOut = new AtomicLong();
+    private final AtomicLong overBudget = new AtomicLong();
+    private final AtomicLong lastMs = new AtomicLong();
+    private final AtomicLong maxMs = new AtomicLong();
+
+    public CheckoutServiceImpl(CartService cartService,
+                               CartStore cartStore,
+                               StockService stockService,
+                               OrderService orderService,
+                               UserRepository userRepository,
+                               OrderRepository orderRepository,
+                               OrderItemRepository orderItemRepository,
+                               CartItemRepository cartItemRepository,
+                               ApplicationEventPublisher eventPublisher,
+                               TransactionTemplate transactionTemplate,
+                               @Value("${trading.cart.checkout.latency-budget:300ms}") Duration latencyBudget) {
+        this.cartService = cartService;
+        this.cartStore = cartStore;
+        this.stockService = stockService;
+        this.orderService = orderService;
+        this.userRepository = userRepository;
+        this.orderRepository = orderRepository;
+        this.orderItemRepository = orderItemRepository;
+        this.cartItemRepository = cartItemRepository;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = transactionTemplate;
+        this.latencyBudget = latencyBudget;
+    }
+
+    @Override
+    public CheckoutResult checkout(Long userId, String address, String phone, String note) {
+        long start = System.nanoTime();
+        int[] lines = {0};
+        try {
+            // 持有购物车锁直到事务提交、已下单的商品从内存移除（CartCheckedOutEvent 在同一线程中处理）
+            CheckoutResult result = cartStore.read(userId, cart -> {
+                List<CartItem> cartItems = cart.toCartItems();
+                if (cartItems.isEmpty()) {
+                    throw new RuntimeException("购物车为空");
+                }
+                lines[0] = cartItems.size();
+                return transactionTemplate.execute(
+                        status -> placeOrders(userId, cartItems, address, phone, note));
+            });
+            if (result.isSuccess()) {
+                ordersCreated.addAndGet(result.orders().size());
+                linesCheckedOut.addAndGet(lines[0]);
+            } else {
+                rejected.incrementAndGet();
+            }
+            return result;
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            throw e;
+        } finally {
+            record(userId, lines[0], System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Map<String, Object> getCheckoutMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("checkouts", checkouts.get());
+        metrics.put("rejected", rejected.get());
+        metrics.put("failures", failures.get());
+        metrics.put("ordersCreated", ordersCreated.get());
+        metrics.put("linesCheckedOut", linesCheckedOut.get());
+        metrics.put("lastMs", lastMs.get());
+        metrics.put("maxMs", maxMs.get());
+        metrics.put("overBudget", overBudget.get());
+        metrics.put("latencyBudget", latencyBudget.toString());
+        return metrics;
+    }
+
+    // 事务内的下单流程，库存校验未通过时不做任何修改
+    private CheckoutResult placeOrders(Long userId, List<CartItem> cartItems,
+                                       String address, String phone, String note) {
+        User buyer = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("买家不存在"));
+
+        // 1. 一次查询商品快照并校验
+        Map<Long, ProductSnapshot> products = cartService.loadProductSnapshots(cartItems);
+        Map<Long, Integer> validationResult = cartService.validateCartStock(cartItems, products);
+        if (validationResult.values().stream().anyMatch(result -> result != 0)) {
+            return CheckoutResult.rejected(validationResult);
+        }
+
+        // 2. 按快照价格生成订单项，并按卖家分组（保持购物车中的顺序）
+        List<OrderItem> allItems = new ArrayList<>(cartItems.size());
+        Map<Long, List<OrderItem>> itemsBySeller = new LinkedHashMap<>();
+        for (CartItem cartItem : cartItems) {
+            ProductSnapshot product = products.get(cartItem.getProductId());
+            OrderItem item = new OrderItem();
+            item.setProductId(product.id());
+            item.setProductTitle(cartItem.getProductTitle());
+            item.setProductImage(cartItem.getProductImage());
+            item.setProductSpec(cartItem.getProductSpec());
+            item.setUnitPrice(product.price());
+            item.setQuantity(cartItem.getQuantity());
+            item.setSubtotal(product.price().multiply(BigDecimal.valueOf(cartItem.getQuantity())));
+            allItems.add(item);
+            itemsBySeller.computeIfAbsent(product.sellerId(), k -> new ArrayList<>()).add(item);
+        }
+
+        // 3. 一次批处理预占库存，任何一行失败都回滚整个事务
+        List<Boolean> reserved = stockService.reserveAll(allItems);
+        for (int i = 0; i < allItems.size(); i++) {
+            if (!reserved.get(i)) {
+                throw new RuntimeException("商品库存不足: " + allItems.get(i).getProductTitle());
+            }
+        }
+
+        // 4. 每个卖家一个订单
+        List<Order> orders = new ArrayList<>(itemsBySeller.size());
+        for (Map.Entry<Long, List<OrderItem>> entry : itemsBySeller.entrySet()) {
+            List<OrderItem> items = entry.getValue();
+            BigDecimal totalAmount = items.stream()
+                    .map(OrderItem::getSubtotal)
+                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+
+            Order order = new Order();
+            order.setOrderNo(orderService.generateOrderNo());
+            order.setBuyerId(userId);
+            order.setBuyerName(buyer.getNickname());
+            order.setSellerId(entry.getKey());
+            order.setSellerName(products.get(items.get(0).getProductId()).sellerName());
+            order.setTotalAmount(totalAmount);
+            order.setPayableAmount(totalAmount); // 暂时没有优惠
+            order.setBuyerAddress(address);
+            order.setBuyerPhone(phone);
+            order.setBuyerNote(note);
+            order.setStatus(OrderStatus.PENDING_PAYMENT);
+            order = orderRepository.save(order);
+            for (OrderItem item : items) {
+                item.setOrderId(order.getId());
+            }
+            orders.add(order);
+        }
+
+        // 5. 一次批处理插入全部订单项，一条语句删除已购买的购物车项
+        orderItemRepository.batchInsert(allItems);
+        List<Long> productIds = cartItems.stream().map(CartItem::getProductId).toList();
+        cartItemRepository.deleteByUserIdAndProductIds(userId, productIds);
+
+        for (Order order : orders) {
+            eventPublisher.publishEvent(OrderChangedEvent.created(order));
+        }
+        eventPublisher.publishEvent(new CartCheckedOutEvent(userId, productIds));
+
+        log.info("购物车结算成功: 买家={}, 商品行数={}, 订单数={}", userId, cartItems.size(), orders.size());
+        return new CheckoutResult(orders, validationResult);
+    }
+
+    private void record(Long userId, int lines, long elapsedNanos) {
+        long elapsedMs = elapsedNanos / 1_000_000;
+        checkouts.incrementAndGet();
+        lastMs.set(elapsedMs);
+        maxMs.accumulateAndGet(elapsedMs, Math::max);
+        if (elapsedMs > latencyBudget.toMillis()) {
+            overBudget.incrementAndGet();
+            log.warn("购物车结算超出延迟预算: 买家={}, 商品行数={}, 耗时={}ms, 预算={}ms",
+                    userId, lines, elapsedMs, latencyBudget.toMillis());
+        }
+    }
+}
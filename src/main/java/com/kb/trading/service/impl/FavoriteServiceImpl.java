@@ -1,12 +1,17 @@
 package com.kb.trading.service.impl;
 import com.kb.trading.entity.Favorite;
+import com.kb.trading.cache.HotProductRanking;
+import com.kb.trading.cache.ProductCache;
+import com.kb.trading.dto.HotProduct;
 import com.kb.trading.entity.Product;
+import com.kb.trading.event.ProductFavoritedEvent;
 import com.kb.trading.repository.FavoriteRepository;
 import com.kb.trading.repository.ProductRepository;
 import com.kb.trading.repository.UserRepository;
 import com.kb.trading.service.FavoriteService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -24,6 +29,9 @@ public class FavoriteServiceImpl implements FavoriteService{
     private final FavoriteRepository favoriteRepository;
     private final ProductRepository productRepository;
     private final UserRepository userRepository;
+    private final HotProductRanking hotProductRanking;
+    private final ProductCache productCache;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Override
     @Transactional
@@ -51,6 +59,7 @@ public class FavoriteServiceImpl implements FavoriteService{
         // 增加商品的收藏数
         product.setLikeCount(product.getLikeCount() + 1);
         productRepository.save(product);
+        eventPublisher.publishEvent(new ProductFavoritedEvent(productId, 1));
 
         log.info("用户 {} 收藏了商品 {}", userId, productId);
 
@@ -66,6 +75,7 @@ public class FavoriteServiceImpl implements FavoriteService{
 
         // 删除收藏
         favoriteRepository.delete(favorite);
+        eventPublisher.publishEvent(new ProductFavoritedEvent(productId, -1));
 
         // 减少商品的收藏数
         productRepository.findById(productId).ifPresent(product -> {
@@ -111,8 +121,16 @@ public class FavoriteServiceImpl implements FavoriteService{
 
     @Override
     public List<Map<String, Object>> getHotFavoriteProducts(int limit) {
+        // 排行已加载时直接取内存中的卡片，不查询数据库
+        if (hotProductRanking.isReady()) {
+            return hotProductRanking.top(HotProductRanking.Metric.FAVORITES, limit).stream()
+                    .map(FavoriteServiceImpl::toHotFavoriteMap)
+                    .collect(Collectors.toList());
+        }
+
         Pageable pageable = PageRequest.of(0, limit);
         List<Object[]> results = favoriteRepository.findHotFavoriteProducts(pageable);
+        Map<Long, Product> products = productCache.getAll(results.stream().map(result -> (Long) result[0]).toList());
 
         return results.stream().map(result -> {
             Long productId = (Long) result[0];
@@ -123,16 +141,27 @@ public class FavoriteServiceImpl implements FavoriteService{
             map.put("favoriteCount", count);
 
             // 获取商品信息
-            productRepository.findById(productId).ifPresent(product -> {
+            Product product = products.get(productId);
+            if (product != null) {
                 map.put("productTitle", product.getTitle());
                 map.put("productPrice", product.getPrice());
                 map.put("productImage", product.getMainImage());
-            });
+            }
 
             return map;
         }).collect(Collectors.toList());
     }
 
+    private static Map<String, Object> toHotFavoriteMap(HotProduct product) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("productId", product.id());
+        map.put("favoriteCount", product.score());
+        map.put("productTitle", product.title());
+        map.put("productPrice", product.price());
+        map.put("productImage", product.mainImage());
+        return map;
+    }
+
     @Override
     public Map<Long, Boolean> checkFavoriteStatus(Long userId, List<Long> productIds) {
         Map<Long, Boolean> statusMap = new HashMap<>();
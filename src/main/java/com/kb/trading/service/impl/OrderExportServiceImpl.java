@@ -0,0 +1,276 @@
+package com.kb.trading.service.impl;
+import com.kb.trading.archive.OrderArchive;
+import com.kb.trading.entity.Order;
+import com.kb.trading.entity.OrderItem;
+import com.kb.trading.repository.OrderItemRepository;
+import com.kb.trading.repository.OrderRepository;
+import com.kb.trading.service.OrderExportService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import tools.jackson.databind.json.JsonMapper;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 订单导出
+ * 订单通过 MySQL 驱动的流式结果集逐行读取（见 OrderRepository#streamByCreateTimeRange），每 BATCH_SIZE 个订单
+ * 一次性查询订单项、写出并清空持久化上下文，内存占用与时间范围大小无关。
+ * 流式读取期间所在连接不能执行其他查询，订单项在独立的只读事务中查询（同一连接池的另一个连接）。
+ * CSV 每个订单项一行（订单字段重复），NDJSON 每个订单一行；两种格式导出相同的字段，不含收货地址、电话等个人信息。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class OrderExportServiceImpl implements OrderExportService {
+    private static final int BATCH_SIZE = 500;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final String CSV_HEADER = "订单号,下单时间,状态,买家ID,买家,卖家ID,卖家,订单金额,优惠金额,应付金额,"
+            + "付款时间,完成时间,退款金额,商品ID,商品,规格,单价,数量,小计";
+
+    private final OrderRepository orderRepository;
+    private final OrderItemRepository orderItemRepository;
+    private final OrderArchive orderArchive;
+    private final JsonMapper jsonMapper;
+    private final PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // 导出指标
+    private final AtomicLong exportCount = new AtomicLong();
+    private final AtomicLong totalRows = new AtomicLong();
+    private final AtomicLong lastRows = new AtomicLong();
+    private final AtomicLong lastElapsedMs = new AtomicLong();
+    private final AtomicLong lastRowsPerSecond = new AtomicLong();
+
+    @Override
+    @Transactional(readOnly = true)
+    public long exportOrders(Date start, Date end, Format format, OutputStream output) throws IOException {
+        long begin = System.nanoTime();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), BUFFER_SIZE);
+        if (format == Format.CSV) {
+            // 带 BOM，Excel 打开中文不乱码
+            writer.write('\uFEFF');
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+
+        TransactionTemplate itemsTransaction = new TransactionTemplate(transactionManager);
+        itemsTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        itemsTransaction.setReadOnly(true);
+
+        AtomicLong written = new AtomicLong();
+        List<Order> batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            try (Stream<Order> orders = orderRepository.streamByCreateTimeRange(start, end)) {
+                Iterator<Order> iterator = orders.iterator();
+                while (iterator.hasNext()) {
+                    batch.add(iterator.next());
+                    if (batch.size() == BATCH_SIZE) {
+                        written.addAndGet(writeBatch(batch, itemsTransaction, format, writer));
+                    }
+                }
+            }
+            written.addAndGet(writeBatch(batch, itemsTransaction, format, writer));
+
+            // 已归档的订单逐块读取写出
+            orderArchive.forEachCreatedBetween(start, end, order -> {
+                writeOrder(order.order(), order.items(), format, writer);
+                written.incrementAndGet();
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        long count = written.get();
+
+        record(count, System.nanoTime() - begin, format);
+        return count;
+    }
+
+    @Override
+    public Map<String, Object> getExportMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("exports", exportCount.get());
+        metrics.put("totalRows", totalRows.get());
+        metrics.put("lastRows", lastRows.get());
+        metrics.put("lastElapsedMs", lastElapsedMs.get());
+        metrics.put("lastRowsPerSecond", lastRowsPerSecond.get());
+        return metrics;
+    }
+
+    // 一批订单一次查询订单项，写出后清空持久化上下文
+    private int writeBatch(List<Order> batch, TransactionTemplate itemsTransaction, Format format, Writer writer) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        List<Long> orderIds = batch.stream().map(Order::getId).toList();
+        Map<Long, List<OrderItem>> itemsByOrder = itemsTransaction.execute(status ->
+                orderItemRepository.findByOrderIds(orderIds).stream()
+                        .collect(Collectors.groupingBy(OrderItem::getOrderId)));
+        for (Order order : batch) {
+            writeOrder(order, itemsByOrder.getOrDefault(order.getId(), List.of()), format, writer);
+        }
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        int size = batch.size();
+        batch.clear();
+        entityManager.clear();
+        return size;
+    }
+
+    // 写出一个订单，IO 异常包装为 UncheckedIOException 由 exportOrders 统一处理
+    private void writeOrder(Order order, List<OrderItem> items, Format format, Writer writer) {
+        try {
+            if (format == Format.NDJSON) {
+                Map<String, Object> line = orderFields(order);
+                line.put("items", items.stream().map(OrderExportServiceImpl::itemFields).toList());
+                writer.write(jsonMapper.writeValueAsString(line));
+                writer.write('\n');
+                return;
+            }
+            if (items.isEmpty()) {
+                writeCsvRow(order, null, writer);
+            }
+            for (OrderItem item : items) {
+                writeCsvRow(order, item, writer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeCsvRow(Order order, OrderItem item, Writer writer) throws IOException {
+        StringBuilder row = new StringBuilder(256);
+        appendText(row, order.getOrderNo());
+        appendValue(row, format(order.getCreateTime()));
+        appendValue(row, order.getStatus().getDescription());
+        appendValue(row, order.getBuyerId());
+        appendText(row, order.getBuyerName());
+        appendValue(row, order.getSellerId());
+        appendText(row, order.getSellerName());
+        appendValue(row, plain(order.getTotalAmount()));
+        appendValue(row, plain(order.getDiscountAmount()));
+        appendValue(row, plain(order.getPayableAmount()));
+        appendValue(row, format(order.getPaymentTime()));
+        appendValue(row, format(order.getCompletedTime()));
+        appendValue(row, plain(order.getRefundAmount()));
+        if (item != null) {
+            appendValue(row, item.getProductId());
+            appendText(row, item.getProductTitle());
+            appendText(row, item.getProductSpec());
+            appendValue(row, plain(item.getUnitPrice()));
+            appendValue(row, item.getQuantity());
+            appendValue(row, plain(item.getSubtotal()));
+        } else {
+            row.append(",,,,,,");
+        }
+        // 去掉第一列前面多出的逗号
+        writer.append(row, 1, row.length()).append('\n');
+    }
+
+    // 订单字段，与 CSV 的订单列一致
+    private static Map<String, Object> orderFields(Order order) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("orderNo", order.getOrderNo());
+        fields.put("createTime", order.getCreateTime());
+        fields.put("status", order.getStatus());
+        fields.put("buyerId", order.getBuyerId());
+        fields.put("buyerName", order.getBuyerName());
+        fields.put("sellerId", order.getSellerId());
+        fields.put("sellerName", order.getSellerName());
+        fields.put("totalAmount", order.getTotalAmount());
+        fields.put("discountAmount", order.getDiscountAmount());
+        fields.put("payableAmount", order.getPayableAmount());
+        fields.put("paymentTime", order.getPaymentTime());
+        fields.put("completedTime", order.getCompletedTime());
+        fields.put("refundAmount", order.getRefundAmount());
+        return fields;
+    }
+
+    // 订单项字段，与 CSV 的商品列一致（不序列化懒加载的关联实体）
+    private static Map<String, Object> itemFields(OrderItem item) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("productId", item.getProductId());
+        fields.put("productTitle", item.getProductTitle());
+        fields.put("productSpec", item.getProductSpec());
+        fields.put("unitPrice", item.getUnitPrice());
+        fields.put("quantity", item.getQuantity());
+        fields.put("subtotal", item.getSubtotal());
+        return fields;
+    }
+
+    private static void appendValue(StringBuilder row, Object value) {
+        row.append(',');
+        if (value != null) {
+            row.append(value);
+        }
+    }
+
+    // 文本字段按 CSV 规则转义，并防止以公式字符开头的内容在表格软件中被当作公式执行
+    private static void appendText(StringBuilder row, String value) {
+        row.append(',');
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        char first = value.charAt(0);
+        if (first == '=' || first == '+' || first == '-' || first == '@') {
+            value = "'" + value;
+        }
+        if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0
+                || value.indexOf('\r') >= 0) {
+            row.append('"').append(value.replace("\"", "\"\"")).append('"');
+        } else {
+            row.append(value);
+        }
+    }
+
+    private static String format(Date date) {
+        return date != null ? DATE_FORMAT.format(date.toInstant()) : null;
+    }
+
+    private static String plain(BigDecimal value) {
+        return value != null ? value.toPlainString() : null;
+    }
+
+    private void record(long rows, long elapsedNanos, Format format) {
+        long elapsedMs = Math.max(1, elapsedNanos / 1_000_000);
+        long rowsPerSecond = rows * 1000 / elapsedMs;
+        exportCount.incrementAndGet();
+        totalRows.addAndGet(rows);
+        lastRows.set(rows);
+        lastElapsedMs.set(elapsedMs);
+        lastRowsPerSecond.set(rowsPerSecond);
+        log.info("订单导出完成: 格式={}, 订单数={}, 耗时={}ms, 每秒={}行", format, rows, elapsedMs, rowsPerSecond);
+    }
+}
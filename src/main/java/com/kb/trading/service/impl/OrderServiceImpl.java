@@ -1,21 +1,33 @@
 package com.kb.trading.service.impl;
+import com.kb.trading.archive.ArchivedOrder;
+import com.kb.trading.archive.OrderArchive;
+import com.kb.trading.cache.OrderStatsCache;
+import com.kb.trading.cache.ProductCache;
+import com.kb.trading.component.OrderNoGenerator;
+import com.kb.trading.component.OrderStateMachine;
+import com.kb.trading.dto.CursorPage;
+import com.kb.trading.dto.OrderCursor;
 import com.kb.trading.entity.*;
+import com.kb.trading.event.OrderChangedEvent;
+import com.kb.trading.event.OrdersArchivedEvent;
 import com.kb.trading.repository.OrderItemRepository;
 import com.kb.trading.repository.OrderRepository;
-import com.kb.trading.repository.ProductRepository;
 import com.kb.trading.repository.UserRepository;
+import com.kb.trading.search.OrderSearchIndex;
 import com.kb.trading.service.OrderService;
+import com.kb.trading.service.StockService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 @Service
 @RequiredArgsConstructor
@@ -23,8 +35,22 @@ import java.util.*;
 public class OrderServiceImpl implements OrderService{
     private final OrderRepository orderRepository;
     private final OrderItemRepository orderItemRepository;
-    private final ProductRepository productRepository;
+    private final ProductCache productCache;
     private final UserRepository userRepository;
+    private final StockService stockService;
+    private final OrderNoGenerator orderNoGenerator;
+    private final OrderStateMachine orderStateMachine;
+    private final ApplicationEventPublisher eventPublisher;
+    private final OrderStatsCache orderStatsCache;
+    private final OrderSearchIndex orderSearchIndex;
+    private final OrderArchive orderArchive;
+
+    // 条件更新未命中，但重新读取时条件又满足，说明订单被并发修改
+    private static final String CONCURRENT_MODIFICATION = "订单状态已变更，请刷新后重试";
+
+    private static final String EXPIRED_CANCEL_REASON = "超时未支付，系统自动取消";
+
+    private static final int MAX_PAGE_SIZE = 100;
 
     @Override
     @Transactional
@@ -38,23 +64,32 @@ public class OrderServiceImpl implements OrderService{
             throw new RuntimeException("订单商品不能为空");
         }
 
-        // 2. 计算订单总金额，并验证商品
+        // 2. 一次性加载所有商品，在内存中验证并计算订单总金额
+        Map<Long, Product> products = loadProducts(items);
+        Map<Long, Integer> requested = new HashMap<>();
         BigDecimal totalAmount = BigDecimal.ZERO;
         Long sellerId = null;
         String sellerName = null;
 
         for (OrderItem item : items) {
+            if (item.getQuantity() == null || item.getQuantity() <= 0) {
+                throw new RuntimeException("购买数量必须大于0");
+            }
+
             // 验证商品
-            Product product = productRepository.findById(item.getProductId())
-                    .orElseThrow(() -> new RuntimeException("商品不存在: " + item.getProductId()));
+            Product product = products.get(item.getProductId());
+            if (product == null) {
+                throw new RuntimeException("商品不存在: " + item.getProductId());
+            }
 
             // 验证商品状态
             if (product.getStatus() != 1) {
                 throw new RuntimeException("商品已下架或售出: " + product.getTitle());
             }
 
-            // 验证库存
-            if (item.getQuantity() > product.getStock()) {
+            // 验证库存（同一商品多行时按合计数量校验）
+            int quantity = requested.merge(product.getId(), item.getQuantity(), Integer::sum);
+            if (quantity > product.getStock()) {
                 throw new RuntimeException("商品库存不足: " + product.getTitle());
             }
 
@@ -72,7 +107,15 @@ public class OrderServiceImpl implements OrderService{
             sellerName = product.getSellerName();
         }
 
-        // 3. 创建订单
+        // 3. 原子预占库存（一次批处理；库存不足时抛异常，整个事务回滚，已预占的库存一并恢复）
+        List<Boolean> reserved = stockService.reserveAll(items);
+        for (int i = 0; i < items.size(); i++) {
+            if (!reserved.get(i)) {
+                throw new RuntimeException("商品库存不足: " + items.get(i).getProductTitle());
+            }
+        }
+
+        // 4. 创建订单
         Order order = new Order();
         order.setOrderNo(generateOrderNo());
         order.setBuyerId(buyerId);
@@ -86,22 +129,16 @@ public class OrderServiceImpl implements OrderService{
         order.setBuyerNote(note);
         order.setStatus(OrderStatus.PENDING_PAYMENT);
 
-        // 4. 保存订单
+        // 5. 保存订单
         Order savedOrder = orderRepository.save(order);
 
-        // 5. 保存订单项并扣减库存
+        // 6. 批量保存订单项
         for (OrderItem item : items) {
             item.setOrderId(savedOrder.getId());
-            orderItemRepository.save(item);
-
-            // 扣减商品库存
-            Product product = productRepository.findById(item.getProductId()).get();
-            product.setStock(product.getStock() - item.getQuantity());
-            if (product.getStock() <= 0) {
-                product.setStatus(2); // 标记为售罄
-            }
-            productRepository.save(product);
         }
+        orderItemRepository.batchInsert(items);
+
+        eventPublisher.publishEvent(OrderChangedEvent.created(savedOrder));
 
         log.info("订单创建成功: 订单号={}, 买家={}, 总金额={}",
                 order.getOrderNo(), buyer.getUsername(), totalAmount);
@@ -109,9 +146,20 @@ public class OrderServiceImpl implements OrderService{
         return savedOrder;
     }
 
+    // 按商品ID一次性加载订单涉及的所有商品
+    private Map<Long, Product> loadProducts(List<OrderItem> items) {
+        Set<Long> productIds = new HashSet<>();
+        for (OrderItem item : items) {
+            productIds.add(item.getProductId());
+        }
+        return productCache.getAll(productIds);
+    }
+
     @Override
     public Order getOrderById(Long orderId) {
+        // 订单表中没有时再查归档
         return orderRepository.findById(orderId)
+                .or(() -> orderArchive.findById(orderId).map(ArchivedOrder::order))
                 .orElseThrow(() -> new RuntimeException("订单不存在"));
     }
 
@@ -119,15 +167,24 @@ public class OrderServiceImpl implements OrderService{
     public Order getOrderByNo(String orderNo) {
         Order order = orderRepository.findByOrderNo(orderNo);
         if (order == null) {
-            throw new RuntimeException("订单不存在: " + orderNo);
+            order = orderArchive.findByOrderNo(orderNo).map(ArchivedOrder::order)
+                    .orElseThrow(() -> new RuntimeException("订单不存在: " + orderNo));
         }
         return order;
     }
 
     @Override
     public Map<String, Object> getOrderDetail(Long orderId) {
-        Order order = getOrderById(orderId);
-        List<OrderItem> orderItems = orderItemRepository.findByOrderId(orderId);
+        Order order = orderRepository.findById(orderId).orElse(null);
+        List<OrderItem> orderItems;
+        if (order != null) {
+            orderItems = orderItemRepository.findByOrderId(orderId);
+        } else {
+            ArchivedOrder archived = orderArchive.findById(orderId)
+                    .orElseThrow(() -> new RuntimeException("订单不存在"));
+            order = archived.order();
+            orderItems = archived.items();
+        }
 
         Map<String, Object> result = new HashMap<>();
         result.put("order", order);
@@ -138,254 +195,353 @@ public class OrderServiceImpl implements OrderService{
     }
 
     @Override
-    public List<Order> getOrdersByBuyer(Long buyerId) {
-        return orderRepository.findByBuyerId(buyerId);
+    public CursorPage<Order> getBuyerOrdersByCursor(Long buyerId, String cursor, int size, boolean withTotal) {
+        int limit = clampPageSize(size);
+        OrderCursor position = cursor == null || cursor.isEmpty() ? null : OrderCursor.decode(cursor);
+        List<Order> orders = position == null
+                ? orderRepository.findBuyerOrdersFirst(buyerId, Limit.of(limit + 1))
+                : orderRepository.findBuyerOrdersBefore(buyerId, position.createTime(), position.id(),
+                        Limit.of(limit + 1));
+
+        // 有归档订单时从归档取同一游标之后的最新记录合并
+        long archived = orderArchive.countByBuyer(buyerId);
+        if (archived > 0) {
+            orders = mergeNewest(orders, orderArchive.findByBuyer(buyerId,
+                    position != null ? position.createTime() : null,
+                    position != null ? position.id() : null, limit + 1), limit + 1);
+        }
+        return toCursorPage(orders, limit, withTotal ? orderRepository.countByBuyerId(buyerId) + archived : null);
     }
 
     @Override
-    public List<Order> getOrdersBySeller(Long sellerId) {
-        return orderRepository.findBySellerId(sellerId);
+    public CursorPage<Order> getSellerOrdersByCursor(Long sellerId, String cursor, int size, boolean withTotal) {
+        int limit = clampPageSize(size);
+        OrderCursor position = cursor == null || cursor.isEmpty() ? null : OrderCursor.decode(cursor);
+        List<Order> orders = position == null
+                ? orderRepository.findSellerOrdersFirst(sellerId, Limit.of(limit + 1))
+                : orderRepository.findSellerOrdersBefore(sellerId, position.createTime(), position.id(),
+                        Limit.of(limit + 1));
+
+        // 有归档订单时从归档取同一游标之后的最新记录合并
+        long archived = orderArchive.countBySeller(sellerId);
+        if (archived > 0) {
+            orders = mergeNewest(orders, orderArchive.findBySeller(sellerId,
+                    position != null ? position.createTime() : null,
+                    position != null ? position.id() : null, limit + 1), limit + 1);
+        }
+        return toCursorPage(orders, limit, withTotal ? orderRepository.countBySellerId(sellerId) + archived : null);
+    }
+
+    @Override
+    public Page<Order> searchOrders(String keyword, int page, int size) {
+        Pageable pageable = PageRequest.of(Math.max(page, 0), clampPageSize(size));
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return Page.empty(pageable);
+        }
+        if (!orderSearchIndex.isReady()) {
+            return orderRepository.searchOrders(keyword.trim(),
+                    PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), Sort.by("id").descending()));
+        }
+
+        OrderSearchIndex.Result result = orderSearchIndex.search(keyword, (int) pageable.getOffset(),
+                pageable.getPageSize());
+        // 按索引给出的顺序返回本页订单
+        Map<Long, Order> byId = new HashMap<>();
+        for (Order order : orderRepository.findAllById(result.orderIds())) {
+            byId.put(order.getId(), order);
+        }
+        List<Order> content = new ArrayList<>();
+        for (Long id : result.orderIds()) {
+            Order order = byId.get(id);
+            if (order != null) {
+                content.add(order);
+            }
+        }
+        return new PageImpl<>(content, pageable, result.total());
+    }
+
+    // 每页最多 MAX_PAGE_SIZE 条，避免列表接口返回无界结果
+    private static int clampPageSize(int size) {
+        return Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+    }
+
+    // 合并订单表和归档中的订单，按下单时间倒序取前 limit 条
+    private static List<Order> mergeNewest(List<Order> hot, List<Order> archived, int limit) {
+        List<Order> merged = new ArrayList<>(hot.size() + archived.size());
+        merged.addAll(hot);
+        merged.addAll(archived);
+        merged.sort(OrderArchive.NEWEST_FIRST);
+        return merged.size() > limit ? merged.subList(0, limit) : merged;
+    }
+
+    private static Page<Order> mergePage(Pageable pageable, Page<Order> hot, List<Order> archived,
+                                         long archivedTotal) {
+        int offset = (int) Math.min(Integer.MAX_VALUE, pageable.getOffset());
+        List<Order> merged = mergeNewest(hot.getContent(), archived,
+                (int) Math.min(Integer.MAX_VALUE, pageable.getOffset() + pageable.getPageSize()));
+        List<Order> content = merged.subList(Math.min(offset, merged.size()), merged.size());
+        return new PageImpl<>(content, pageable, hot.getTotalElements() + archivedTotal);
+    }
+
+    // 多查一条用于判断是否还有下一页
+    private static CursorPage<Order> toCursorPage(List<Order> orders, int limit, Long total) {
+        boolean hasMore = orders.size() > limit;
+        List<Order> content = hasMore ? orders.subList(0, limit) : orders;
+        String nextCursor = hasMore ? OrderCursor.of(content.get(content.size() - 1)).encode() : null;
+        return new CursorPage<>(content, nextCursor, hasMore, total);
     }
 
     @Override
     public Page<Order> getBuyerOrdersPage(Long buyerId, int page, int size) {
-        Pageable pageable = PageRequest.of(page, size, Sort.by("createTime").descending());
-        return orderRepository.findByBuyerId(buyerId, pageable);
+        Pageable pageable = PageRequest.of(Math.max(page, 0), clampPageSize(size), Sort.by("createTime").descending());
+        long archived = orderArchive.countByBuyer(buyerId);
+        if (archived == 0) {
+            return orderRepository.findByBuyerId(buyerId, pageable);
+        }
+        // 有归档订单时两边各取最新的 offset + size 条合并后截取本页
+        int window = (int) Math.min(Integer.MAX_VALUE, pageable.getOffset() + pageable.getPageSize());
+        Page<Order> hot = orderRepository.findByBuyerId(buyerId,
+                PageRequest.of(0, window, Sort.by("createTime").descending().and(Sort.by("id").descending())));
+        return mergePage(pageable, hot, orderArchive.findByBuyer(buyerId, null, null, window), archived);
     }
 
     @Override
     public Page<Order> getSellerOrdersPage(Long sellerId, int page, int size) {
-        Pageable pageable = PageRequest.of(page, size, Sort.by("createTime").descending());
-        return orderRepository.findBySellerId(sellerId, pageable);
+        Pageable pageable = PageRequest.of(Math.max(page, 0), clampPageSize(size), Sort.by("createTime").descending());
+        long archived = orderArchive.countBySeller(sellerId);
+        if (archived == 0) {
+            return orderRepository.findBySellerId(sellerId, pageable);
+        }
+        // 有归档订单时两边各取最新的 offset + size 条合并后截取本页
+        int window = (int) Math.min(Integer.MAX_VALUE, pageable.getOffset() + pageable.getPageSize());
+        Page<Order> hot = orderRepository.findBySellerId(sellerId,
+                PageRequest.of(0, window, Sort.by("createTime").descending().and(Sort.by("id").descending())));
+        return mergePage(pageable, hot, orderArchive.findBySeller(sellerId, null, null, window), archived);
     }
 
     @Override
     @Transactional
     public Order updateOrderStatus(Long orderId, OrderStatus newStatus,
                                    Long operatorId, String note) {
-        Order order = getOrderById(orderId);
-
-        // 验证操作权限
-        if (!order.getBuyerId().equals(operatorId) &&
-                !order.getSellerId().equals(operatorId)) {
-            throw new RuntimeException("无权操作此订单");
+        // 取消需要归还库存，走取消流程
+        if (newStatus == OrderStatus.CANCELLED) {
+            return cancelOrder(orderId, operatorId, note);
         }
 
-        // 状态转换验证（这里可以更严格）
-        order.setStatus(newStatus);
-
-        // 设置备注
-        if (operatorId.equals(order.getBuyerId())) {
-            order.setBuyerNote(note);
-        } else {
-            order.setSellerNote(note);
+        // 按状态机转换表校验，备注写入操作人对应的字段，状态变更时间在同一条语句中记录
+        OrderStatus previous = orderStateMachine.change(orderId, newStatus)
+                .whereParty(operatorId)
+                .partyNote(operatorId, note)
+                .apply();
+
+        if (previous == null) {
+            Order order = getOrderById(orderId);
+            if (!order.getBuyerId().equals(operatorId) &&
+                    !order.getSellerId().equals(operatorId)) {
+                throw new RuntimeException("无权操作此订单");
+            }
+            throw new RuntimeException("订单不能从" + order.getStatus().getDescription() +
+                    "变更为" + newStatus.getDescription());
         }
 
-        // 记录状态变更时间
-        Date now = new Date();
-        switch (newStatus) {
-            case PAID:
-                order.setPaymentTime(now);
-                break;
-            case SHIPPED:
-                order.setShippingTime(now);
-                break;
-            case DELIVERED:
-                order.setDeliveryTime(now);
-                break;
-            case COMPLETED:
-                order.setCompletedTime(now);
-                break;
-        }
-
-        return orderRepository.save(order);
+        return reloadChanged(orderId, previous);
     }
 
     @Override
     @Transactional
     public Order payOrder(Long orderId, Long buyerId, BigDecimal paidAmount) {
-        Order order = getOrderById(orderId);
-
-        // 验证买家
-        if (!order.getBuyerId().equals(buyerId)) {
-            throw new RuntimeException("只能支付自己的订单");
-        }
-
-        // 验证订单状态
-        if (order.getStatus() != OrderStatus.PENDING_PAYMENT) {
-            throw new RuntimeException("订单当前不能支付");
-        }
-
-        // 验证支付金额
-        if (paidAmount.compareTo(order.getPayableAmount()) < 0) {
+        if (paidAmount == null) {
             throw new RuntimeException("支付金额不足");
         }
 
-        // 更新状态为已支付
-        order.setStatus(OrderStatus.PAID);
-        order.setPaymentTime(new Date());
+        // 买家、状态、金额校验都作为更新条件，一条语句完成
+        OrderStatus previous = orderStateMachine.change(orderId, OrderStatus.PAID)
+                .from(OrderStatus.PENDING_PAYMENT)
+                .where("buyerId", buyerId)
+                .whereAtMost("payableAmount", paidAmount)
+                .apply();
+
+        if (previous == null) {
+            Order order = getOrderById(orderId);
+            if (!order.getBuyerId().equals(buyerId)) {
+                throw new RuntimeException("只能支付自己的订单");
+            }
+            if (order.getStatus() != OrderStatus.PENDING_PAYMENT) {
+                throw new RuntimeException("订单当前不能支付");
+            }
+            if (paidAmount.compareTo(order.getPayableAmount()) < 0) {
+                throw new RuntimeException("支付金额不足");
+            }
+            throw new RuntimeException(CONCURRENT_MODIFICATION);
+        }
 
+        Order order = reloadChanged(orderId, previous);
         log.info("订单支付成功: 订单号={}, 支付金额={}", order.getOrderNo(), paidAmount);
 
-        return orderRepository.save(order);
+        return order;
     }
 
     @Override
     @Transactional
     public Order shipOrder(Long orderId, Long sellerId,
                            String shippingCompany, String trackingNumber) {
-        Order order = getOrderById(orderId);
-
-        // 验证卖家
-        if (!order.getSellerId().equals(sellerId)) {
-            throw new RuntimeException("只能发货自己的订单");
-        }
-
-        // 验证订单状态
-        if (order.getStatus() != OrderStatus.PAID) {
-            throw new RuntimeException("只有已支付的订单才能发货");
+        OrderStatus previous = orderStateMachine.change(orderId, OrderStatus.SHIPPED)
+                .where("sellerId", sellerId)
+                .set("shippingCompany", shippingCompany)
+                .set("trackingNumber", trackingNumber)
+                .apply();
+
+        if (previous == null) {
+            Order order = getOrderById(orderId);
+            if (!order.getSellerId().equals(sellerId)) {
+                throw new RuntimeException("只能发货自己的订单");
+            }
+            if (order.getStatus() != OrderStatus.PAID) {
+                throw new RuntimeException("只有已支付的订单才能发货");
+            }
+            throw new RuntimeException(CONCURRENT_MODIFICATION);
         }
 
-        // 更新发货信息
-        order.setStatus(OrderStatus.SHIPPED);
-        order.setShippingCompany(shippingCompany);
-        order.setTrackingNumber(trackingNumber);
-        order.setShippingTime(new Date());
-
+        Order order = reloadChanged(orderId, previous);
         log.info("订单已发货: 订单号={}, 物流单号={}", order.getOrderNo(), trackingNumber);
 
-        return orderRepository.save(order);
+        return order;
     }
 
     @Override
     @Transactional
     public Order confirmDelivery(Long orderId, Long buyerId) {
-        Order order = getOrderById(orderId);
-
-        // 验证买家
-        if (!order.getBuyerId().equals(buyerId)) {
-            throw new RuntimeException("只能确认自己的订单");
-        }
-
-        // 验证订单状态
-        if (order.getStatus() != OrderStatus.SHIPPED) {
-            throw new RuntimeException("只有已发货的订单才能确认收货");
+        OrderStatus previous = orderStateMachine.change(orderId, OrderStatus.DELIVERED)
+                .where("buyerId", buyerId)
+                .apply();
+
+        if (previous == null) {
+            Order order = getOrderById(orderId);
+            if (!order.getBuyerId().equals(buyerId)) {
+                throw new RuntimeException("只能确认自己的订单");
+            }
+            if (order.getStatus() != OrderStatus.SHIPPED) {
+                throw new RuntimeException("只有已发货的订单才能确认收货");
+            }
+            throw new RuntimeException(CONCURRENT_MODIFICATION);
         }
 
-        // 更新状态
-        order.setStatus(OrderStatus.DELIVERED);
-        order.setDeliveryTime(new Date());
-
+        Order order = reloadChanged(orderId, previous);
         log.info("订单确认收货: 订单号={}", order.getOrderNo());
 
-        return orderRepository.save(order);
+        return order;
     }
 
     @Override
     @Transactional
     public Order cancelOrder(Long orderId, Long userId, String reason) {
-        Order order = getOrderById(orderId);
-
-        // 验证操作权限
-        if (!order.getBuyerId().equals(userId) &&
-                !order.getSellerId().equals(userId)) {
-            throw new RuntimeException("无权取消此订单");
-        }
-
-        // 只有待付款和已付款的订单可以取消
-        if (order.getStatus() != OrderStatus.PENDING_PAYMENT &&
-                order.getStatus() != OrderStatus.PAID) {
-            throw new RuntimeException("当前状态的订单不能取消");
+        // 只有待付款和已付款的订单可以取消（由状态机转换表约束）
+        OrderStatus previous = orderStateMachine.change(orderId, OrderStatus.CANCELLED)
+                .whereParty(userId)
+                .set("cancelReason", reason)
+                .apply();
+
+        if (previous == null) {
+            Order order = getOrderById(orderId);
+            if (!order.getBuyerId().equals(userId) &&
+                    !order.getSellerId().equals(userId)) {
+                throw new RuntimeException("无权取消此订单");
+            }
+            if (order.getStatus() != OrderStatus.PENDING_PAYMENT &&
+                    order.getStatus() != OrderStatus.PAID) {
+                throw new RuntimeException("当前状态的订单不能取消");
+            }
+            throw new RuntimeException(CONCURRENT_MODIFICATION);
         }
 
-        // 更新状态
-        order.setStatus(OrderStatus.CANCELLED);
-        order.setCancelReason(reason);
-
-        // 恢复商品库存
+        // 恢复商品库存（状态流转只会成功一次，库存不会被重复归还）
         List<OrderItem> items = orderItemRepository.findByOrderId(orderId);
-        for (OrderItem item : items) {
-            Product product = productRepository.findById(item.getProductId())
-                    .orElse(null);
-            if (product != null) {
-                product.setStock(product.getStock() + item.getQuantity());
-                if (product.getStatus() == 2) { // 如果是售罄状态
-                    product.setStatus(1); // 恢复为上架
-                }
-                productRepository.save(product);
-            }
-        }
+        stockService.releaseAll(items);
 
+        Order order = reloadChanged(orderId, previous);
         log.info("订单已取消: 订单号={}, 原因={}", order.getOrderNo(), reason);
 
-        return orderRepository.save(order);
+        return order;
     }
 
     @Override
     @Transactional
     public Order applyRefund(Long orderId, Long buyerId,
                              BigDecimal refundAmount, String reason) {
-        Order order = getOrderById(orderId);
-
-        // 验证买家
-        if (!order.getBuyerId().equals(buyerId)) {
-            throw new RuntimeException("只能申请自己订单的退款");
-        }
-
-        // 验证订单状态（只有已支付和已发货的订单可以申请退款）
-        if (order.getStatus() != OrderStatus.PAID &&
-                order.getStatus() != OrderStatus.SHIPPED) {
-            throw new RuntimeException("当前订单状态不能申请退款");
-        }
-
-        // 验证退款金额
-        if (refundAmount.compareTo(BigDecimal.ZERO) <= 0 ||
-                refundAmount.compareTo(order.getPayableAmount()) > 0) {
+        // 验证退款金额（上限在更新条件中校验）
+        if (refundAmount == null || refundAmount.compareTo(BigDecimal.ZERO) <= 0) {
             throw new RuntimeException("退款金额无效");
         }
 
-        // 更新状态
-        order.setStatus(OrderStatus.REFUNDING);
-        order.setRefundAmount(refundAmount);
-        order.setRefundReason(reason);
+        // 只有已支付和已发货的订单可以申请退款（由状态机转换表约束）
+        OrderStatus previous = orderStateMachine.change(orderId, OrderStatus.REFUNDING)
+                .where("buyerId", buyerId)
+                .whereAtLeast("payableAmount", refundAmount)
+                .set("refundAmount", refundAmount)
+                .set("refundReason", reason)
+                .apply();
+
+        if (previous == null) {
+            Order order = getOrderById(orderId);
+            if (!order.getBuyerId().equals(buyerId)) {
+                throw new RuntimeException("只能申请自己订单的退款");
+            }
+            if (order.getStatus() != OrderStatus.PAID &&
+                    order.getStatus() != OrderStatus.SHIPPED) {
+                throw new RuntimeException("当前订单状态不能申请退款");
+            }
+            if (refundAmount.compareTo(order.getPayableAmount()) > 0) {
+                throw new RuntimeException("退款金额无效");
+            }
+            throw new RuntimeException(CONCURRENT_MODIFICATION);
+        }
 
+        Order order = reloadChanged(orderId, previous);
         log.info("申请退款: 订单号={}, 退款金额={}, 原因={}",
                 order.getOrderNo(), refundAmount, reason);
 
-        return orderRepository.save(order);
+        return order;
     }
 
     @Override
     @Transactional
     public Order processRefund(Long orderId, Long sellerId,
                                boolean agree, String remark) {
-        Order order = getOrderById(orderId);
-
-        // 验证卖家
-        if (!order.getSellerId().equals(sellerId)) {
-            throw new RuntimeException("只能处理自己订单的退款");
+        OrderStateMachine.Change change;
+        if (agree) {
+            // 同意退款
+            change = orderStateMachine.change(orderId, OrderStatus.REFUNDED);
+        } else {
+            // 拒绝退款，恢复为已支付
+            change = orderStateMachine.change(orderId, OrderStatus.PAID)
+                    .set("refundAmount", null)
+                    .set("refundReason", null);
         }
-
-        // 验证订单状态
-        if (order.getStatus() != OrderStatus.REFUNDING) {
-            throw new RuntimeException("订单不在退款申请中");
+        OrderStatus previous = change
+                .from(OrderStatus.REFUNDING)
+                .where("sellerId", sellerId)
+                .set("sellerNote", remark)
+                .apply();
+
+        if (previous == null) {
+            Order order = getOrderById(orderId);
+            if (!order.getSellerId().equals(sellerId)) {
+                throw new RuntimeException("只能处理自己订单的退款");
+            }
+            if (order.getStatus() != OrderStatus.REFUNDING) {
+                throw new RuntimeException("订单不在退款申请中");
+            }
+            throw new RuntimeException(CONCURRENT_MODIFICATION);
         }
 
+        Order order = reloadChanged(orderId, previous);
         if (agree) {
-            // 同意退款
-            order.setStatus(OrderStatus.REFUNDED);
             log.info("退款已同意: 订单号={}, 退款金额={}", order.getOrderNo(), order.getRefundAmount());
         } else {
-            // 拒绝退款，恢复原状态
-            order.setStatus(OrderStatus.PAID); // 恢复为已支付
-            order.setRefundAmount(null);
-            order.setRefundReason(null);
             log.info("退款已拒绝: 订单号={}", order.getOrderNo());
         }
 
-        order.setSellerNote(remark);
-
-        return orderRepository.save(order);
+        return order;
     }
 
     @Override
@@ -399,50 +555,127 @@ public class OrderServiceImpl implements OrderService{
             throw new RuntimeException("无权删除此订单");
         }
 
+        if (!orderRepository.existsById(orderId)) {
+            throw new RuntimeException("已归档的订单不能删除");
+        }
+
         // 逻辑删除：这里我们简单地从数据库删除
         // 实际项目中可能需要软删除（标记删除）
         orderRepository.deleteById(orderId);
+        eventPublisher.publishEvent(OrderChangedEvent.deleted(order));
 
         log.info("订单已删除: 订单号={}, 操作人={}", order.getOrderNo(), userId);
     }
 
     @Override
     public Map<String, Object> getOrderStats(Long userId, boolean isSeller) {
+        // 各状态数量来自计数缓存（未命中时一条 GROUP BY 查询加载）
+        Map<OrderStatus, Long> counts = isSeller
+                ? orderStatsCache.getSellerCounts(userId)
+                : orderStatsCache.getBuyerCounts(userId);
+        long totalOrders = counts.values().stream().mapToLong(Long::longValue).sum();
+
         Map<String, Object> stats = new HashMap<>();
+        stats.put("totalOrders", totalOrders);
+        stats.put("pendingPayment", counts.get(OrderStatus.PENDING_PAYMENT));
 
         if (isSeller) {
             // 卖家统计
-            Long totalOrders = orderRepository.countBySellerId(userId);
-            Long pendingPayment = orderRepository.countBySellerIdAndStatus(userId, OrderStatus.PENDING_PAYMENT);
-            Long pendingShipment = orderRepository.countBySellerIdAndStatus(userId, OrderStatus.PAID);
-            Long shipped = orderRepository.countBySellerIdAndStatus(userId, OrderStatus.SHIPPED);
-
-            stats.put("totalOrders", totalOrders);
-            stats.put("pendingPayment", pendingPayment);
-            stats.put("pendingShipment", pendingShipment);
-            stats.put("shipped", shipped);
+            stats.put("pendingShipment", counts.get(OrderStatus.PAID));
+            stats.put("shipped", counts.get(OrderStatus.SHIPPED));
         } else {
             // 买家统计
-            Long totalOrders = orderRepository.countByBuyerId(userId);
-            Long pendingPayment = (long) orderRepository.findByBuyerIdAndStatus(userId, OrderStatus.PENDING_PAYMENT).size();
-            Long pendingReceipt = (long) orderRepository.findByBuyerIdAndStatus(userId, OrderStatus.SHIPPED).size();
-            Long completed = (long) orderRepository.findByBuyerIdAndStatus(userId, OrderStatus.COMPLETED).size();
-
-            stats.put("totalOrders", totalOrders);
-            stats.put("pendingPayment", pendingPayment);
-            stats.put("pendingReceipt", pendingReceipt);
-            stats.put("completed", completed);
+            stats.put("pendingReceipt", counts.get(OrderStatus.SHIPPED));
+            stats.put("completed", counts.get(OrderStatus.COMPLETED));
         }
 
+        // 全部状态的数量
+        Map<String, Long> statusCounts = new LinkedHashMap<>();
+        counts.forEach((status, count) -> statusCounts.put(status.name(), count));
+        stats.put("statusCounts", statusCounts);
+
         return stats;
     }
 
+    @Override
+    @Transactional
+    public int cancelExpiredOrders(List<Long> orderIds, Date createdBefore) {
+        if (orderIds.isEmpty()) {
+            return 0;
+        }
+        // 加锁确认仍为待付款且已超时，与买家的支付/取消操作互斥
+        List<Order> expired = orderRepository.lockExpiredByCreateTime(
+                orderIds, OrderStatus.PENDING_PAYMENT, createdBefore);
+        if (expired.isEmpty()) {
+            return 0;
+        }
+        List<Long> expiredIds = expired.stream().map(Order::getId).toList();
+
+        Date now = new Date();
+        orderRepository.batchCancel(expiredIds, OrderStatus.PENDING_PAYMENT,
+                OrderStatus.CANCELLED, EXPIRED_CANCEL_REASON, now);
+        stockService.releaseAll(orderItemRepository.findByOrderIds(expiredIds));
+
+        for (Order order : expired) {
+            order.setStatus(OrderStatus.CANCELLED);
+            order.setCancelReason(EXPIRED_CANCEL_REASON);
+            order.setUpdateTime(now);
+            eventPublisher.publishEvent(OrderChangedEvent.statusChanged(order, OrderStatus.PENDING_PAYMENT));
+        }
+
+        log.info("超时未支付订单已自动取消: {} 个", expired.size());
+        return expired.size();
+    }
+
+    @Override
+    @Transactional
+    public int completeDeliveredOrders(List<Long> orderIds, Date deliveredBefore) {
+        if (orderIds.isEmpty()) {
+            return 0;
+        }
+        List<Order> expired = orderRepository.lockExpiredByDeliveryTime(
+                orderIds, OrderStatus.DELIVERED, deliveredBefore);
+        if (expired.isEmpty()) {
+            return 0;
+        }
+        List<Long> expiredIds = expired.stream().map(Order::getId).toList();
+
+        Date now = new Date();
+        orderRepository.batchComplete(expiredIds, OrderStatus.DELIVERED, OrderStatus.COMPLETED, now);
+
+        for (Order order : expired) {
+            order.setStatus(OrderStatus.COMPLETED);
+            order.setCompletedTime(now);
+            order.setUpdateTime(now);
+            eventPublisher.publishEvent(OrderChangedEvent.statusChanged(order, OrderStatus.DELIVERED));
+        }
+
+        log.info("已送达订单已自动完成: {} 个", expired.size());
+        return expired.size();
+    }
+
+    @Override
+    @Transactional
+    public int purgeArchivedOrders(List<Long> orderIds, List<OrderStatus> statuses, Date updatedBefore) {
+        if (orderIds.isEmpty()) {
+            return 0;
+        }
+        int deleted = orderRepository.deleteArchived(orderIds, statuses, updatedBefore);
+        orderItemRepository.deleteOrphansByOrderIds(orderIds);
+        eventPublisher.publishEvent(new OrdersArchivedEvent(orderIds));
+        return deleted;
+    }
+
+    // 状态流转成功后重新读取订单并发布变更事件
+    private Order reloadChanged(Long orderId, OrderStatus previous) {
+        Order order = getOrderById(orderId);
+        eventPublisher.publishEvent(OrderChangedEvent.statusChanged(order, previous));
+        return order;
+    }
+
     @Override
     public String generateOrderNo() {
-        // 生成订单号：年月日时分秒 + 4位随机数
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
-        String timePart = LocalDateTime.now().format(formatter);
-        String randomPart = String.format("%04d", new Random().nextInt(10000));
-        return "KB" + timePart + randomPart;
+        // 生成订单号：KB + 年月日时分秒 + 节点号 + 秒内序号
+        return orderNoGenerator.nextOrderNo();
     }
 }
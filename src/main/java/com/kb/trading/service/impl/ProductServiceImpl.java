@@ -1,19 +1,49 @@
 package com.kb.trading.service.impl;
+import com.kb.trading.cache.HotProductRanking;
+import com.kb.trading.cache.ProductCache;
+import com.kb.trading.cache.ProductViewCounter;
+import com.kb.trading.dto.FacetedPage;
+import com.kb.trading.dto.HotProduct;
+import com.kb.trading.dto.NearbyProduct;
+import com.kb.trading.dto.ProductCard;
 import com.kb.trading.entity.Product;
+import com.kb.trading.event.ProductChangedEvent;
+import com.kb.trading.event.ProductSavedEvent;
 import com.kb.trading.repository.ProductRepository;
+import com.kb.trading.search.GeoHash;
+import com.kb.trading.search.ProductFacetIndex;
+import com.kb.trading.search.ProductGeoIndex;
+import com.kb.trading.search.ProductSearchIndex;
 import com.kb.trading.service.ProductService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 @Service
 @RequiredArgsConstructor
 public class ProductServiceImpl implements ProductService {
     private final ProductRepository productRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ProductViewCounter productViewCounter;
+    private final ProductSearchIndex productSearchIndex;
+    private final HotProductRanking hotProductRanking;
+    private final ProductCache productCache;
+    private final ProductFacetIndex productFacetIndex;
+    private final ProductGeoIndex productGeoIndex;
+
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final double MAX_NEARBY_RADIUS_KM = 50;
+
     @Override
     public Product publishProduct(Product product) {
         // 验证必要字段
@@ -26,13 +56,14 @@ public class ProductServiceImpl implements ProductService {
         if (product.getSellerId() == null) {
             throw new RuntimeException("卖家ID不能为空");
         }
+        checkCoordinates(product.getLatitude(), product.getLongitude());
 
         // 设置默认值
         product.setStatus(1); // 上架状态
         product.setViewCount(0);
         product.setLikeCount(0);
 
-        return productRepository.save(product);
+        return saveAndPublish(product);
     }
 
     @Override
@@ -46,6 +77,11 @@ public class ProductServiceImpl implements ProductService {
             throw new RuntimeException("无权修改此商品");
         }
 
+        // 记录购物车中缓存的字段，变化时通知购物车同步
+        BigDecimal oldPrice = existingProduct.getPrice();
+        String oldTitle = existingProduct.getTitle();
+        String oldImage = existingProduct.getMainImage();
+
         // 更新字段
         existingProduct.setTitle(product.getTitle());
         existingProduct.setDescription(product.getDescription());
@@ -53,14 +89,26 @@ public class ProductServiceImpl implements ProductService {
         existingProduct.setOriginalPrice(product.getOriginalPrice());
         existingProduct.setCategory(product.getCategory());
         existingProduct.setLocation(product.getLocation());
+        checkCoordinates(product.getLatitude(), product.getLongitude());
+        existingProduct.setLatitude(product.getLatitude());
+        existingProduct.setLongitude(product.getLongitude());
         existingProduct.setStock(product.getStock());
 
-        return productRepository.save(existingProduct);
+        Product savedProduct = saveAndPublish(existingProduct);
+
+        if (!Objects.equals(oldTitle, savedProduct.getTitle())
+                || !Objects.equals(oldImage, savedProduct.getMainImage())
+                || !samePrice(oldPrice, savedProduct.getPrice())) {
+            eventPublisher.publishEvent(new ProductChangedEvent(savedProduct.getId(), savedProduct.getPrice(),
+                    savedProduct.getTitle(), savedProduct.getMainImage()));
+        }
+
+        return savedProduct;
     }
 
     @Override
     public Product getProductById(Long id) {
-        Product product = productRepository.findById(id)
+        Product product = productCache.get(id)
                 .orElseThrow(() -> new RuntimeException("商品不存在"));
 
         // 增加浏览次数
@@ -70,40 +118,116 @@ public class ProductServiceImpl implements ProductService {
     }
 
     @Override
-    public List<Product> getProductsBySellerId(Long sellerId) {
-        return productRepository.findBySellerId(sellerId);
+    public List<ProductCard> getProductsBySellerId(Long sellerId) {
+        return productRepository.findCardsBySellerId(sellerId);
     }
 
     @Override
-    public Page<Product> getActiveProducts(int page, int size) {
+    public Page<ProductCard> getActiveProducts(int page, int size) {
         Pageable pageable = PageRequest.of(page, size, Sort.by("createTime").descending());
-        return productRepository.findByStatus(1, pageable);
+        return productRepository.findCardsByStatus(1, pageable);
     }
 
     @Override
-    public List<Product> searchProducts(String keyword) {
+    public Page<ProductCard> searchProducts(String keyword, int page, int size) {
+        Pageable pageable = PageRequest.of(Math.max(page, 0), Math.max(1, Math.min(size, MAX_PAGE_SIZE)));
         if (keyword == null || keyword.trim().isEmpty()) {
-            return productRepository.findByStatus(1);
+            return getActiveProducts(pageable.getPageNumber(), pageable.getPageSize());
+        }
+        if (!productSearchIndex.isReady()) {
+            return productRepository.searchCards(keyword.trim(), pageable);
+        }
+
+        ProductSearchIndex.Result result = productSearchIndex.search(keyword,
+                (int) Math.min(Integer.MAX_VALUE, pageable.getOffset()), pageable.getPageSize());
+        // 按相关度顺序返回本页商品；库存变化事件提交后才更新索引，刚售罄的商品在这里跳过
+        Map<Long, Product> byId = productCache.getAll(result.productIds());
+        List<ProductCard> content = new ArrayList<>();
+        for (Long id : result.productIds()) {
+            Product product = byId.get(id);
+            if (product != null && product.getStatus() == 1) {
+                content.add(ProductCard.of(product));
+            }
         }
-        return productRepository.searchProducts(keyword.trim());
+        return new PageImpl<>(content, pageable, result.total());
     }
 
     @Override
-    public List<Product> getProductsByCategory(String category) {
-        return productRepository.findByCategory(category);
+    public List<ProductCard> getProductsByCategory(String category) {
+        return productRepository.findCardsByCategory(category);
     }
 
     @Override
-    public List<Product> getProductsByLocation(String location) {
-        return productRepository.findByLocationContaining(location);
+    public List<ProductCard> getProductsByLocation(String location) {
+        return productRepository.findCardsByLocationContaining(location);
     }
 
     @Override
-    public List<Product> getProductsByPriceRange(BigDecimal minPrice, BigDecimal maxPrice) {
+    public List<ProductCard> getProductsByPriceRange(BigDecimal minPrice, BigDecimal maxPrice) {
         if (minPrice == null) minPrice = BigDecimal.ZERO;
         if (maxPrice == null) maxPrice = new BigDecimal("9999999");
 
-        return productRepository.findByPriceBetween(minPrice, maxPrice);
+        return productRepository.findCardsByPriceBetween(minPrice, maxPrice);
+    }
+
+    @Override
+    public FacetedPage<ProductCard> filterProducts(String category, String location, BigDecimal minPrice,
+                                               BigDecimal maxPrice, Integer status, String sort, int page, int size) {
+        if (!productFacetIndex.isReady()) {
+            throw new RuntimeException("商品筛选索引正在加载，请稍后重试");
+        }
+        ProductFacetIndex.Sort order = switch (sort == null ? "newest" : sort) {
+            case "newest" -> ProductFacetIndex.Sort.NEWEST;
+            case "price_asc" -> ProductFacetIndex.Sort.PRICE_ASC;
+            case "price_desc" -> ProductFacetIndex.Sort.PRICE_DESC;
+            default -> throw new RuntimeException("不支持的排序方式: " + sort);
+        };
+        int pageNumber = Math.max(page, 0);
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        ProductFacetIndex.Result result = productFacetIndex.query(new ProductFacetIndex.Query(category, location,
+                status != null ? status : 1, minPrice, maxPrice, order,
+                (int) Math.min(Integer.MAX_VALUE, (long) pageNumber * pageSize), pageSize));
+
+        // 按筛选结果的顺序返回本页商品
+        Map<Long, Product> products = productCache.getAll(result.productIds());
+        List<ProductCard> content = new ArrayList<>(result.productIds().size());
+        for (Long id : result.productIds()) {
+            Product product = products.get(id);
+            if (product != null) {
+                content.add(ProductCard.of(product));
+            }
+        }
+        Map<String, Map<String, Integer>> facets = new LinkedHashMap<>();
+        facets.put("category", result.categoryCounts());
+        facets.put("location", result.locationCounts());
+        return new FacetedPage<>(content, pageNumber, pageSize, result.total(), facets);
+    }
+
+    @Override
+    public Page<NearbyProduct> getNearbyProducts(double latitude, double longitude, double radiusKm,
+                                                 int page, int size) {
+        checkCoordinates(latitude, longitude);
+        if (!(radiusKm > 0 && radiusKm <= MAX_NEARBY_RADIUS_KM)) {
+            throw new RuntimeException("搜索半径必须大于0且不超过" + (int) MAX_NEARBY_RADIUS_KM + "公里");
+        }
+        if (!productGeoIndex.isReady()) {
+            throw new RuntimeException("附近商品索引正在加载，请稍后重试");
+        }
+        Pageable pageable = PageRequest.of(Math.max(page, 0), Math.max(1, Math.min(size, MAX_PAGE_SIZE)));
+        ProductGeoIndex.Result result = productGeoIndex.query(latitude, longitude, radiusKm * 1000,
+                (int) Math.min(Integer.MAX_VALUE, pageable.getOffset()), pageable.getPageSize());
+
+        // 按距离顺序返回本页商品
+        Map<Long, Product> products = productCache.getAll(
+                result.hits().stream().map(ProductGeoIndex.Hit::productId).toList());
+        List<NearbyProduct> content = new ArrayList<>(result.hits().size());
+        for (ProductGeoIndex.Hit hit : result.hits()) {
+            Product product = products.get(hit.productId());
+            if (product != null) {
+                content.add(new NearbyProduct(ProductCard.of(product), Math.round(hit.distanceMeters())));
+            }
+        }
+        return new PageImpl<>(content, pageable, result.total());
     }
 
     @Override
@@ -116,7 +240,7 @@ public class ProductServiceImpl implements ProductService {
         }
 
         product.setStatus(0); // 下架
-        return productRepository.save(product);
+        return saveAndPublish(product);
     }
 
     @Override
@@ -129,7 +253,7 @@ public class ProductServiceImpl implements ProductService {
         }
 
         product.setStatus(1); // 上架
-        return productRepository.save(product);
+        return saveAndPublish(product);
     }
 
     @Override
@@ -142,21 +266,34 @@ public class ProductServiceImpl implements ProductService {
         }
 
         product.setStatus(2); // 已售出
-        return productRepository.save(product);
+        return saveAndPublish(product);
     }
 
     @Override
     public void increaseViewCount(Long productId) {
-        productRepository.findById(productId).ifPresent(product -> {
-            product.setViewCount(product.getViewCount() + 1);
-            productRepository.save(product);
-        });
+        // 只在内存中累加，定时批量写入
+        productViewCounter.increment(productId);
     }
 
     @Override
-    public List<Product> getHotProducts(int limit) {
-        Pageable pageable = PageRequest.of(0, limit, Sort.by("viewCount").descending());
-        return productRepository.findByStatus(1, pageable).getContent();
+    public List<HotProduct> getHotProducts(String by, int limit) {
+        HotProductRanking.Metric metric = switch (by == null ? "views" : by) {
+            case "views" -> HotProductRanking.Metric.VIEWS;
+            case "sales" -> HotProductRanking.Metric.SALES;
+            default -> throw new RuntimeException("不支持的排行类型: " + by);
+        };
+        if (hotProductRanking.isReady() || metric != HotProductRanking.Metric.VIEWS) {
+            return hotProductRanking.top(metric, limit);
+        }
+
+        // 排行加载完成前按浏览量查询数据库
+        int size = Math.max(1, Math.min(limit, HotProductRanking.MAX_LIMIT));
+        Pageable pageable = PageRequest.of(0, size, Sort.by("viewCount").descending());
+        return productRepository.findByStatus(1, pageable).getContent().stream()
+                .map(product -> new HotProduct(product.getId(), product.getTitle(), product.getPrice(),
+                        product.getMainImage(), product.getLocation(),
+                        product.getViewCount() == null ? 0 : product.getViewCount()))
+                .toList();
     }
 
     @Override
@@ -169,6 +306,25 @@ public class ProductServiceImpl implements ProductService {
         }
 
         product.setStatus(3); // 标记为已删除（逻辑删除）
-        productRepository.save(product);
+        saveAndPublish(product);
+    }
+
+    // 经纬度可以都不填，填写时必须成对且在有效范围内
+    private void checkCoordinates(Double latitude, Double longitude) {
+        if ((latitude != null || longitude != null) && !GeoHash.isValid(latitude, longitude)) {
+            throw new RuntimeException("经纬度不合法");
+        }
+    }
+
+    // 保存商品并通知搜索索引等监听方
+    private Product saveAndPublish(Product product) {
+        Product savedProduct = productRepository.save(product);
+        eventPublisher.publishEvent(new ProductSavedEvent(savedProduct));
+        return savedProduct;
+    }
+
+    // 金额按数值比较（9.9 与 9.90 相同）
+    private static boolean samePrice(BigDecimal a, BigDecimal b) {
+        return a == null ? b == null : b != null && a.compareTo(b) == 0;
     }
 }
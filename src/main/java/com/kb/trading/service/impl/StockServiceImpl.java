@@ -0,0 +1,97 @@
+package com.kb.trading.service.impl;
+import com.kb.trading.entity.OrderItem;
+import com.kb.trading.event.ProductStockChangedEvent;
+import com.kb.trading.repository.ProductRepository;
+import com.kb.trading.service.StockService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 库存预占服务
+ * 扣减和校验在同一条 UPDATE 中完成（stock >= ? AND status = 1），
+ * 并发下单时由数据库行锁保证不会超卖，也不需要先查询再保存。
+ * 批量接口把所有订单项合并为一次JDBC批处理，下单/取消的往返次数与订单项数量无关。
+ * 库存变化后发布 ProductStockChangedEvent，商品缓存在事务提交后失效。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StockServiceImpl implements StockService {
+    private final ProductRepository productRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Override
+    @Transactional
+    public boolean reserve(Long productId, Integer quantity) {
+        if (quantity == null || quantity <= 0) {
+            throw new RuntimeException("购买数量必须大于0");
+        }
+        boolean reserved = productRepository.reserveStock(productId, quantity) == 1;
+        if (reserved) {
+            eventPublisher.publishEvent(new ProductStockChangedEvent(List.of(productId)));
+        } else {
+            log.info("库存预占失败: 商品={}, 数量={}", productId, quantity);
+        }
+        return reserved;
+    }
+
+    @Override
+    @Transactional
+    public List<Boolean> reserveAll(List<OrderItem> items) {
+        if (items.isEmpty()) {
+            return List.of();
+        }
+        for (OrderItem item : items) {
+            if (item.getQuantity() == null || item.getQuantity() <= 0) {
+                throw new RuntimeException("购买数量必须大于0");
+            }
+        }
+        int[] counts = productRepository.batchReserveStock(productIdsOf(items), quantitiesOf(items));
+        List<Boolean> results = new ArrayList<>(counts.length);
+        for (int i = 0; i < counts.length; i++) {
+            boolean reserved = counts[i] == 1;
+            if (!reserved) {
+                log.info("库存预占失败: 商品={}, 数量={}", items.get(i).getProductId(), items.get(i).getQuantity());
+            }
+            results.add(reserved);
+        }
+        eventPublisher.publishEvent(new ProductStockChangedEvent(productIdsOf(items)));
+        return results;
+    }
+
+    @Override
+    @Transactional
+    public void release(Long productId, Integer quantity) {
+        if (quantity == null || quantity <= 0) {
+            return;
+        }
+        productRepository.releaseStock(productId, quantity);
+        eventPublisher.publishEvent(new ProductStockChangedEvent(List.of(productId)));
+    }
+
+    @Override
+    @Transactional
+    public void releaseAll(List<OrderItem> items) {
+        List<OrderItem> releasable = items.stream()
+                .filter(item -> item.getQuantity() != null && item.getQuantity() > 0)
+                .toList();
+        if (releasable.isEmpty()) {
+            return;
+        }
+        productRepository.batchReleaseStock(productIdsOf(releasable), quantitiesOf(releasable));
+        eventPublisher.publishEvent(new ProductStockChangedEvent(productIdsOf(releasable)));
+    }
+
+    private static List<Long> productIdsOf(List<OrderItem> items) {
+        return items.stream().map(OrderItem::getProductId).toList();
+    }
+
+    private static List<Integer> quantitiesOf(List<OrderItem> items) {
+        return items.stream().map(OrderItem::getQuantity).toList();
+    }
+}
@@ -0,0 +1,138 @@
+package com.kb.trading.archive;
+
+import com.kb.trading.entity.Order;
+import com.kb.trading.entity.OrderItem;
+import com.kb.trading.entity.OrderStatus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderArchiveTest {
+    private static final long DAY = 24 * 3600 * 1000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void findsArchivedOrdersAfterReload() throws Exception {
+        OrderArchive archive = new OrderArchive(directory.toString());
+        archive.load();
+        long start = 1_700_000_000_000L;
+        List<ArchivedOrder> orders = new ArrayList<>();
+        for (long id = 1; id <= 1000; id++) {
+            // 跨越多个日期分区，买家 1~10 轮流
+            orders.add(archived(id, start + id * DAY / 100, id % 10 + 1));
+        }
+        archive.append(orders);
+
+        OrderArchive reloaded = new OrderArchive(directory.toString());
+        reloaded.load();
+        ArchivedOrder found = reloaded.findById(500L).orElseThrow();
+        assertEquals("KB500", found.order().getOrderNo());
+        assertEquals(new BigDecimal("19.90"), found.order().getPayableAmount());
+        assertEquals(OrderStatus.COMPLETED, found.order().getStatus());
+        assertEquals(2, found.items().size());
+        assertEquals(3, found.items().get(1).getQuantity());
+        assertEquals(777L, reloaded.findByOrderNo("KB777").orElseThrow().order().getId());
+        assertFalse(reloaded.findById(1001L).isPresent());
+        assertEquals(100, reloaded.countByBuyer(3L));
+        assertEquals(1000, reloaded.countBySeller(99L));
+    }
+
+    @Test
+    void findsIdsInOverlappingSegmentsAndReturnsCopies() throws Exception {
+        OrderArchive archive = new OrderArchive(directory.toString());
+        archive.load();
+        long start = 1_700_000_000_000L;
+        // 奇数和偶数ID分两次写入，两批段的ID范围互相重叠
+        for (long parity = 1; parity >= 0; parity--) {
+            List<ArchivedOrder> orders = new ArrayList<>();
+            for (long id = 2 - parity; id <= 1000; id += 2) {
+                orders.add(archived(id, start + id * DAY / 100, id % 10 + 1));
+            }
+            archive.append(orders);
+        }
+        for (long id = 1; id <= 1000; id++) {
+            assertEquals(id, archive.findById(id).orElseThrow().order().getId());
+        }
+        assertFalse(archive.findById(0L).isPresent());
+        assertEquals(Set.of(10L, 11L), archive.findArchivedIds(List.of(10L, 11L, 1001L, 5000L)));
+
+        // 修改返回的订单不影响缓存中的订单
+        archive.findById(10L).orElseThrow().order().setStatus(OrderStatus.CANCELLED);
+        archive.findByBuyer(1L, null, null, 10).get(0).setBuyerId(2L);
+        assertEquals(OrderStatus.COMPLETED, archive.findById(10L).orElseThrow().order().getStatus());
+        assertEquals(1L, archive.findByBuyer(1L, null, null, 10).get(0).getBuyerId());
+    }
+
+    @Test
+    void listsUserOrdersNewestFirstByKeyset() throws Exception {
+        OrderArchive archive = new OrderArchive(directory.toString());
+        archive.load();
+        long start = 1_700_000_000_000L;
+        List<ArchivedOrder> orders = new ArrayList<>();
+        for (long id = 1; id <= 600; id++) {
+            orders.add(archived(id, start + id * DAY / 50, id % 3 + 1));
+        }
+        archive.append(orders);
+
+        List<Long> seen = new ArrayList<>();
+        Date beforeTime = null;
+        Long beforeId = null;
+        List<Order> page;
+        do {
+            page = archive.findByBuyer(2L, beforeTime, beforeId, 30);
+            for (Order order : page) {
+                assertEquals(2L, order.getBuyerId());
+                assertTrue(seen.isEmpty() || order.getId() < seen.get(seen.size() - 1));
+                seen.add(order.getId());
+            }
+            if (!page.isEmpty()) {
+                beforeTime = page.get(page.size() - 1).getCreateTime();
+                beforeId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == 30);
+        assertEquals(200, seen.size());
+        assertEquals(598L, seen.get(0));
+    }
+
+    private static ArchivedOrder archived(long id, long createTime, long buyerId) {
+        Order order = new Order();
+        order.setId(id);
+        order.setCreateTime(new Date(createTime));
+        order.setUpdateTime(new Date(createTime + 1000));
+        order.setOrderNo("KB" + id);
+        order.setBuyerId(buyerId);
+        order.setBuyerName("买家" + buyerId);
+        order.setSellerId(99L);
+        order.setSellerName("卖家");
+        order.setTotalAmount(new BigDecimal("19.90"));
+        order.setPayableAmount(new BigDecimal("19.90"));
+        order.setStatus(OrderStatus.COMPLETED);
+        order.setCompletedTime(new Date(createTime + 1000));
+
+        List<OrderItem> items = new ArrayList<>();
+        for (int i = 1; i <= 2; i++) {
+            OrderItem item = new OrderItem();
+            item.setId(id * 10 + i);
+            item.setOrderId(id);
+            item.setProductId((long) i);
+            item.setProductTitle("商品" + i);
+            item.setUnitPrice(new BigDecimal("9.95"));
+            item.setQuantity(i == 1 ? 1 : 3);
+            item.setSubtotal(new BigDecimal("9.95"));
+            items.add(item);
+        }
+        return new ArchivedOrder(order, items);
+    }
+}
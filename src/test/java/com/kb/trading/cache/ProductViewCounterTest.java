@@ -0,0 +1,69 @@
+package com.kb.trading.cache;
+
+import com.kb.trading.repository.ProductRepository;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ProductViewCounterTest {
+
+    @Test
+    void keepsViewsRecordedWhileIdleProductsAreRetired() throws Exception {
+        AtomicLong written = new AtomicLong();
+        ProductRepository repository = (ProductRepository) Proxy.newProxyInstance(
+                ProductRepository.class.getClassLoader(), new Class<?>[]{ProductRepository.class},
+                (proxy, method, args) -> {
+                    if (!method.getName().equals("batchIncrementViewCount")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    @SuppressWarnings("unchecked")
+                    List<Long> deltas = (List<Long>) args[1];
+                    deltas.forEach(written::addAndGet);
+                    return new int[deltas.size()];
+                });
+        ProductViewCounter counter = new ProductViewCounter(repository,
+                new HotProductRanking(null, null, null, 100));
+
+        // 浏览稀疏、刷新频繁，空闲商品不断被移出，同时有并发浏览
+        int threads = 8;
+        int perThread = 100_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Future<?> flusher = executor.submit(() -> {
+            while (running.get()) {
+                counter.flush();
+            }
+        });
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long productId = t % 4;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    counter.increment(productId);
+                    if (i % 100 == 0) {
+                        Thread.yield();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        running.set(false);
+        flusher.get();
+        executor.shutdown();
+        counter.flush();
+
+        assertEquals((long) threads * perThread, written.get());
+        assertEquals(0L, counter.getMetrics().get("pendingViews"));
+    }
+}
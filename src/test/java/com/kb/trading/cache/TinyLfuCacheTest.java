@@ -0,0 +1,81 @@
+package com.kb.trading.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TinyLfuCacheTest {
+
+    @Test
+    void storesAndRemovesEntries() {
+        TinyLfuCache<String> cache = new TinyLfuCache<>(100);
+        cache.put(1, "a");
+        cache.put(1, "b");
+        assertEquals("b", cache.get(1));
+        assertEquals(1, cache.size());
+        assertEquals("b", cache.remove(1));
+        assertNull(cache.get(1));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void neverExceedsCapacity() {
+        TinyLfuCache<Long> cache = new TinyLfuCache<>(200);
+        for (long key = 0; key < 10_000; key++) {
+            cache.get(key);
+            cache.put(key, key);
+        }
+        assertTrue(cache.size() <= cache.capacity());
+        assertTrue(cache.evictions() > 0);
+    }
+
+    @Test
+    void scanDoesNotFlushFrequentEntries() {
+        TinyLfuCache<Long> cache = new TinyLfuCache<>(100);
+        // 热门商品反复访问
+        for (int round = 0; round < 5; round++) {
+            for (long key = 0; key < 50; key++) {
+                if (cache.get(key) == null) {
+                    cache.put(key, key);
+                }
+            }
+        }
+        // 扫描大量只访问一次的冷门商品，期间热门商品仍在被访问
+        for (long key = 1_000; key < 11_000; key++) {
+            if (cache.get(key) == null) {
+                cache.put(key, key);
+            }
+            long hot = key % 50;
+            if (cache.get(hot) == null) {
+                cache.put(hot, hot);
+            }
+        }
+
+        int retained = 0;
+        for (long key = 0; key < 50; key++) {
+            if (cache.get(key) != null) {
+                retained++;
+            }
+        }
+        assertEquals(50, retained);
+        assertTrue(cache.rejections() > 0);
+    }
+
+    @Test
+    void frequentNewcomerIsAdmitted() {
+        TinyLfuCache<Long> cache = new TinyLfuCache<>(100);
+        for (long key = 0; key < 100; key++) {
+            cache.put(key, key);
+        }
+        for (int i = 0; i < 10; i++) {
+            cache.get(5_000);
+        }
+        cache.put(5_000, 5_000L);
+        // 再挤入一个新条目，使 5000 离开窗口区参与准入比较
+        cache.put(6_000, 6_000L);
+        assertNotNull(cache.get(5_000));
+    }
+}
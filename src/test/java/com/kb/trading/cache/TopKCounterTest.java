@@ -0,0 +1,78 @@
+package com.kb.trading.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopKCounterTest {
+
+    @Test
+    void ranksByScoreThenNewerId() {
+        TopKCounter counter = new TopKCounter(10);
+        counter.seed(1, 5);
+        counter.seed(2, 9);
+        counter.seed(3, 5);
+        counter.add(1, 1);
+
+        assertEquals(List.of(new TopKCounter.Entry(2, 9), new TopKCounter.Entry(1, 6), new TopKCounter.Entry(3, 5)),
+                counter.top(10, id -> true));
+        assertEquals(List.of(new TopKCounter.Entry(1, 6)), counter.top(1, id -> id != 2));
+    }
+
+    @Test
+    void decrementsAndRemovesAtZero() {
+        TopKCounter counter = new TopKCounter(10);
+        counter.add(7, 2);
+        counter.add(7, -1);
+        assertEquals(1, counter.score(7));
+        counter.add(7, -1);
+        assertEquals(0, counter.size());
+
+        // 不在其中的商品忽略负增量
+        counter.add(8, -1);
+        assertEquals(0, counter.size());
+    }
+
+    @Test
+    void newcomerReplacesMinimumWhenFull() {
+        TopKCounter counter = new TopKCounter(3);
+        counter.seed(1, 100);
+        counter.seed(2, 50);
+        counter.seed(3, 10);
+
+        // 低于最低计数的精确值不会进入
+        counter.seed(4, 5);
+        assertEquals(0, counter.score(4));
+
+        // 增量进入时继承被顶替者的计数
+        counter.add(5, 1);
+        assertEquals(3, counter.size());
+        assertEquals(0, counter.score(3));
+        assertEquals(11, counter.score(5));
+        assertEquals(1, counter.evictions());
+    }
+
+    @Test
+    void keepsHeavyHittersUnderSkewedStream() {
+        TopKCounter counter = new TopKCounter(50);
+        // 10 个热门商品各 1000 次，其余 5000 个商品各 1 次，交错到达
+        for (int round = 0; round < 1000; round++) {
+            for (long hot = 1; hot <= 10; hot++) {
+                counter.add(hot, 1);
+            }
+            for (int j = 0; j < 5; j++) {
+                counter.add(1000 + round * 5L + j, 1);
+            }
+        }
+
+        List<TopKCounter.Entry> top = counter.top(10, id -> true);
+        assertEquals(10, top.size());
+        for (TopKCounter.Entry entry : top) {
+            assertTrue(entry.id() <= 10, "unexpected " + entry);
+            assertTrue(entry.score() >= 1000);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.kb.trading.cache;
+
+import com.kb.trading.dto.CartSummary;
+import com.kb.trading.entity.CartItem;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserCartTest {
+
+    @Test
+    void coalescesChangesBetweenFlushes() {
+        UserCart cart = new UserCart(7L, (owner, productId) -> {
+        });
+        CartItem stored = new CartItem();
+        stored.setId(50L);
+        stored.setProductId(1L);
+        stored.setQuantity(1);
+        stored.setUnitPrice(new BigDecimal("3.50"));
+        cart.load(stored);
+        assertFalse(cart.hasChanges());
+
+        int added = cart.add(2L, 2, new BigDecimal("9.99"), "商品2", null, null);
+        cart.setQuantity(added, 3);
+        cart.setQuantity(added, 4);
+        cart.remove(cart.indexOfProduct(1L));
+
+        UserCart.Changes changes = cart.drainChanges();
+        assertEquals(1, changes.inserts().size());
+        assertEquals(List.of(), changes.updates());
+        assertEquals(4, changes.inserts().get(0).getQuantity());
+        assertEquals(new BigDecimal("39.96"), changes.inserts().get(0).getSubtotal());
+        assertEquals(List.of(50L), changes.deletes());
+        assertFalse(cart.hasChanges());
+
+        // 写入失败后恢复，下次刷新重新写入
+        cart.restoreChanges(changes);
+        assertTrue(cart.hasChanges());
+        UserCart.Changes retried = cart.drainChanges();
+        assertEquals(changes.deletes(), retried.deletes());
+        assertEquals(changes.inserts(), retried.inserts());
+    }
+
+    @Test
+    void defersNewLinesAndAssignsDatabaseIds() {
+        List<Long> added = new ArrayList<>();
+        UserCart cart = new UserCart(7L, (owner, productId) -> added.add(productId));
+        int index = cart.add(3L, 2, new BigDecimal("5.00"), "商品3", null, "红色");
+        long tempId = cart.id(index);
+        assertTrue(tempId < 0);
+        assertEquals(List.of(3L), added);
+        assertTrue(cart.hasChanges());
+
+        UserCart.Changes changes = cart.drainChanges();
+        assertEquals(1, changes.inserts().size());
+        assertEquals(7L, changes.inserts().get(0).getUserId());
+        assertEquals(new BigDecimal("10.00"), changes.inserts().get(0).getSubtotal());
+
+        // 插入期间修改数量，换成数据库ID后按ID更新；客户端拿到的临时ID仍然有效
+        cart.setQuantity(index, 5);
+        cart.assignIds(changes.inserts(), new long[]{901L});
+        assertEquals(901L, cart.id(index));
+        assertEquals(index, cart.indexOfId(tempId));
+        UserCart.Changes next = cart.drainChanges();
+        assertEquals(List.of(), next.inserts());
+        assertEquals(901L, next.updates().get(0).getId());
+    }
+
+    @Test
+    void deletesLinesRemovedWhileInserting() {
+        UserCart cart = new UserCart(7L, (owner, productId) -> {
+        });
+        // 还没有取出插入的行删除后不需要写数据库
+        cart.remove(cart.add(1L, 1, BigDecimal.ONE, "商品1", null, null));
+        assertFalse(cart.hasChanges());
+
+        cart.add(2L, 1, BigDecimal.ONE, "商品2", null, null);
+        UserCart.Changes changes = cart.drainChanges();
+        cart.remove(cart.indexOfProduct(2L));
+        assertEquals(List.of(), cart.drainChanges().deletes());
+        assertTrue(cart.hasChanges());
+
+        cart.assignIds(changes.inserts(), new long[]{902L});
+        assertEquals(List.of(902L), cart.drainChanges().deletes());
+        assertFalse(cart.hasChanges());
+
+        // 插入失败时被删除的行也没有写入数据库
+        cart.add(3L, 1, BigDecimal.ONE, "商品3", null, null);
+        UserCart.Changes failed = cart.drainChanges();
+        cart.remove(cart.indexOfProduct(3L));
+        cart.restoreChanges(failed);
+        assertFalse(cart.hasChanges());
+    }
+
+    @Test
+    void keepsInsertionOrderAfterRemovals() {
+        UserCart cart = new UserCart(7L, (owner, productId) -> {
+        });
+        for (long productId = 1; productId <= 5; productId++) {
+            cart.add(productId, 1, BigDecimal.ONE, "商品" + productId, null, null);
+        }
+        cart.remove(cart.indexOfProduct(2L));
+        cart.remove(cart.indexOfProduct(4L));
+
+        List<Long> productIds = cart.toCartItems().stream().map(CartItem::getProductId).toList();
+        assertEquals(List.of(1L, 3L, 5L), productIds);
+        // 已落库的行删除时按ID删除
+        UserCart.Changes changes = cart.drainChanges();
+        cart.assignIds(changes.inserts(), new long[]{11L, 13L, 15L});
+        cart.clear();
+        assertTrue(cart.isEmpty());
+        assertEquals(3, cart.drainChanges().deletes().size());
+    }
+
+    @Test
+    void summaryIsRecomputedAfterMutations() {
+        UserCart cart = new UserCart(7L, (owner, productId) -> {
+        });
+        int first = cart.add(1L, 2, new BigDecimal("1.25"), "商品1", null, null);
+        cart.add(2L, 1, new BigDecimal("10.00"), "商品2", null, null);
+
+        CartSummary summary = cart.summary();
+        assertEquals(new CartSummary(2, 3, new BigDecimal("12.50")), summary);
+        assertTrue(summary == cart.summary());
+
+        cart.setQuantity(first, 4);
+        assertEquals(new CartSummary(2, 5, new BigDecimal("15.00")), cart.summary());
+        cart.remove(cart.indexOfProduct(2L));
+        assertEquals(new CartSummary(1, 4, new BigDecimal("5.00")), cart.summary());
+    }
+}
@@ -0,0 +1,67 @@
+package com.kb.trading.cache;
+
+import com.kb.trading.entity.Order;
+import com.kb.trading.entity.OrderStatus;
+import com.kb.trading.event.OrderChangedEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserVersionStampsTest {
+
+    @Test
+    void eTagIsStableUntilBumped() {
+        UserVersionStamps stamps = new UserVersionStamps(100);
+        String first = stamps.eTag(UserVersionStamps.Scope.CART, 1L, "list");
+        assertEquals(first, stamps.eTag(UserVersionStamps.Scope.CART, 1L, "list"));
+        assertNotEquals(first, stamps.eTag(UserVersionStamps.Scope.CART, 1L, "summary"));
+
+        stamps.bump(UserVersionStamps.Scope.CART, 1L);
+        assertNotEquals(first, stamps.eTag(UserVersionStamps.Scope.CART, 1L, "list"));
+    }
+
+    @Test
+    void scopesAndUsersAreIndependent() {
+        UserVersionStamps stamps = new UserVersionStamps(100);
+        String cart = stamps.eTag(UserVersionStamps.Scope.CART, 1L, "list");
+        String orders = stamps.eTag(UserVersionStamps.Scope.ORDERS, 1L, "list");
+        String otherUser = stamps.eTag(UserVersionStamps.Scope.CART, 2L, "list");
+
+        stamps.bump(UserVersionStamps.Scope.ORDERS, 1L);
+
+        assertEquals(cart, stamps.eTag(UserVersionStamps.Scope.CART, 1L, "list"));
+        assertEquals(otherUser, stamps.eTag(UserVersionStamps.Scope.CART, 2L, "list"));
+        assertNotEquals(orders, stamps.eTag(UserVersionStamps.Scope.ORDERS, 1L, "list"));
+    }
+
+    @Test
+    void orderEventsBumpBuyerAndSeller() {
+        UserVersionStamps stamps = new UserVersionStamps(100);
+        long buyer = stamps.current(UserVersionStamps.Scope.ORDERS, 10L);
+        long seller = stamps.current(UserVersionStamps.Scope.ORDERS, 20L);
+
+        Order order = new Order();
+        order.setBuyerId(10L);
+        order.setSellerId(20L);
+        order.setStatus(OrderStatus.PAID);
+        stamps.onOrderChanged(OrderChangedEvent.statusChanged(order, OrderStatus.PENDING_PAYMENT));
+
+        assertNotEquals(buyer, stamps.current(UserVersionStamps.Scope.ORDERS, 10L));
+        assertNotEquals(seller, stamps.current(UserVersionStamps.Scope.ORDERS, 20L));
+    }
+
+    @Test
+    void evictedUsersNeverReuseAnIssuedVersion() {
+        UserVersionStamps stamps = new UserVersionStamps(10);
+        Set<Long> issued = new HashSet<>();
+        for (long userId = 0; userId < 1000; userId++) {
+            assertTrue(issued.add(stamps.current(UserVersionStamps.Scope.CART, userId % 50)));
+            stamps.bump(UserVersionStamps.Scope.CART, userId % 50);
+        }
+    }
+}
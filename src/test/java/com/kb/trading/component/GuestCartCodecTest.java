@@ -0,0 +1,73 @@
+package com.kb.trading.component;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GuestCartCodecTest {
+
+    private final GuestCartCodec codec = new GuestCartCodec("test-secret");
+
+    @Test
+    void roundTripsItemsSortedByProduct() {
+        Map<Long, Integer> items = new HashMap<>();
+        items.put(1_000_003L, 2);
+        items.put(17L, 1);
+        items.put(1_000_000L, 300);
+
+        TreeMap<Long, Integer> decoded = codec.decode(codec.encode(items));
+
+        assertEquals(new TreeMap<>(items), decoded);
+        assertEquals(17L, decoded.firstKey());
+    }
+
+    @Test
+    void staysCompactForTypicalCarts() {
+        Map<Long, Integer> items = new HashMap<>();
+        for (long productId = 100_000; productId < 100_010; productId++) {
+            items.put(productId, 1);
+        }
+        String token = codec.encode(items);
+        assertTrue(token.length() < 60, token);
+        assertTrue(token.matches("[A-Za-z0-9_-]+"), token);
+    }
+
+    @Test
+    void emptyTokenIsEmptyCart() {
+        assertTrue(codec.decode(null).isEmpty());
+        assertTrue(codec.decode("").isEmpty());
+        assertTrue(codec.decode(codec.encode(Map.of())).isEmpty());
+    }
+
+    @Test
+    void rejectsTamperedOrForeignTokens() {
+        String token = codec.encode(Map.of(42L, 1));
+        byte[] bytes = Base64.getUrlDecoder().decode(token);
+        bytes[3] ^= 1;
+        String tampered = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        assertThrows(RuntimeException.class, () -> codec.decode(tampered));
+        assertThrows(RuntimeException.class, () -> new GuestCartCodec("other-secret").decode(token));
+        assertThrows(RuntimeException.class, () -> codec.decode("not a token"));
+        assertThrows(RuntimeException.class, () -> codec.decode(token.substring(0, token.length() - 2)));
+    }
+
+    @Test
+    void limitsLinesAndQuantities() {
+        Map<Long, Integer> tooMany = new HashMap<>();
+        for (long productId = 1; productId <= GuestCartCodec.MAX_LINES + 1; productId++) {
+            tooMany.put(productId, 1);
+        }
+        assertThrows(RuntimeException.class, () -> codec.encode(tooMany));
+
+        Map<Long, Integer> decoded = codec.decode(codec.encode(Map.of(5L, 1_000_000, 6L, 0)));
+        assertEquals(Map.of(5L, GuestCartCodec.MAX_QUANTITY), decoded);
+    }
+}
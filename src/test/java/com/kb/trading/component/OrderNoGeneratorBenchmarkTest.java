@@ -0,0 +1,90 @@
+package com.kb.trading.component;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 订单号生成压测：多线程下原来的“时间 + 4位随机数”和 OrderNoGenerator 的吞吐量与重复数，
+ * 默认不运行（-Pintegration-tests）。
+ */
+@Tag("benchmark")
+class OrderNoGeneratorBenchmarkTest {
+
+    private static final int THREADS = 8;
+    private static final int PER_THREAD = 200_000;
+
+    @Test
+    void outrunsRandomSuffixWithoutCollisions() throws Exception {
+        OrderNoGenerator generator = new OrderNoGenerator(1);
+        // 预热
+        run(OrderNoGeneratorBenchmarkTest::randomOrderNo, 20_000);
+        run(generator::nextOrderNo, 20_000);
+
+        Run random = run(OrderNoGeneratorBenchmarkTest::randomOrderNo, PER_THREAD);
+        Run sequence = run(generator::nextOrderNo, PER_THREAD);
+        System.out.printf("订单号生成 %d 线程 x %d: 随机后缀=%.0f个/秒 重复%d个, 节点序号=%.0f个/秒 重复%d个%n",
+                THREADS, PER_THREAD, random.perSecond(), random.duplicates(),
+                sequence.perSecond(), sequence.duplicates());
+        assertEquals(0, sequence.duplicates());
+        assertTrue(random.duplicates() > 0);
+        assertTrue(sequence.perSecond() > random.perSecond(),
+                sequence.perSecond() + " <= " + random.perSecond());
+    }
+
+    // 原 OrderServiceImpl#generateOrderNo：年月日时分秒 + 4位随机数
+    private static String randomOrderNo() {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+        String timePart = LocalDateTime.now().format(formatter);
+        String randomPart = String.format("%04d", new Random().nextInt(10000));
+        return "KB" + timePart + randomPart;
+    }
+
+    private static Run run(Supplier<String> orderNos, int perThread) throws Exception {
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        int[][] duplicates = new int[THREADS][1];
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int[] counter = duplicates[t];
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        if (!seen.add(orderNos.get())) {
+                            counter[0]++;
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            int total = 0;
+            for (int[] counter : duplicates) {
+                total += counter[0];
+            }
+            return new Run((double) THREADS * perThread / seconds, total);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private record Run(double perSecond, int duplicates) {
+    }
+}
@@ -0,0 +1,89 @@
+package com.kb.trading.component;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderNoGeneratorTest {
+
+    @Test
+    void keepsReadablePrefixAndNodeId() {
+        String orderNo = new OrderNoGenerator(7).nextOrderNo();
+        assertTrue(orderNo.matches("KB\\d{14}07\\d{5}"), orderNo);
+    }
+
+    @Test
+    void neverCollidesUnderConcurrency() throws Exception {
+        OrderNoGenerator generator = new OrderNoGenerator(1);
+        int threads = 16;
+        int perThread = 50_000;
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    seen.add(generator.nextOrderNo());
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(threads * perThread, seen.size());
+    }
+
+    @Test
+    void isMonotonicWithinNode() {
+        OrderNoGenerator generator = new OrderNoGenerator(0);
+        String previous = generator.nextOrderNo();
+        for (int i = 0; i < 300_000; i++) {
+            String next = generator.nextOrderNo();
+            assertTrue(next.compareTo(previous) > 0, previous + " -> " + next);
+            previous = next;
+        }
+    }
+
+    @Test
+    void rejectsOutOfRangeNodeId() {
+        assertThrows(IllegalArgumentException.class, () -> new OrderNoGenerator(100));
+        assertThrows(IllegalArgumentException.class, () -> new OrderNoGenerator(-2));
+    }
+
+    @Test
+    void requiresNodeIdWhenMultiNode() {
+        assertThrows(IllegalStateException.class, () -> new OrderNoGenerator(-1, true, null));
+        assertTrue(new OrderNoGenerator(-1, false, null).nextOrderNo().matches("KB\\d{14}00\\d{5}"));
+    }
+
+    @Test
+    void continuesAfterIssuedOrderNo() {
+        // 上次运行借用到了一小时后的秒数
+        String issued = "KB" + DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneId.systemDefault())
+                .format(Instant.now().plusSeconds(3600)) + "0312345";
+        OrderNoGenerator generator = new OrderNoGenerator(3);
+        generator.advancePast(issued);
+        String next = generator.nextOrderNo();
+        assertEquals(issued.substring(0, 18) + "12346", next);
+
+        // 更早的订单号不会让状态回退
+        generator.advancePast("KB20200101000000030000001");
+        assertTrue(generator.nextOrderNo().compareTo(next) > 0);
+    }
+}
@@ -0,0 +1,244 @@
+package com.kb.trading.component;
+
+import com.kb.trading.entity.Order;
+import com.kb.trading.entity.OrderStatus;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.model.naming.PhysicalNamingStrategySnakeCaseImpl;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static com.kb.trading.entity.OrderStatus.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 订单状态机：转换表、来源限定、时间字段选择，以及生成的条件更新语句。
+ * Hibernate 连接到一个只记录 SQL 和参数的 JDBC 连接，不需要数据库。
+ */
+class OrderStateMachineTest {
+
+    private static final RecordingJdbc jdbc = new RecordingJdbc();
+    private static SessionFactory sessionFactory;
+
+    private final OrderStateMachine stateMachine = new OrderStateMachine();
+    private EntityManager entityManager;
+
+    @BeforeAll
+    static void buildSessionFactory() {
+        Configuration configuration = new Configuration()
+                .addAnnotatedClass(Order.class)
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.MySQLDialect")
+                .setProperty("hibernate.boot.allow_jdbc_metadata_access", "false")
+                .setPhysicalNamingStrategy(new PhysicalNamingStrategySnakeCaseImpl());
+        configuration.getProperties().put("hibernate.connection.provider_class", jdbc);
+        sessionFactory = configuration.buildSessionFactory();
+    }
+
+    @AfterAll
+    static void closeSessionFactory() {
+        sessionFactory.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        jdbc.statements.clear();
+        entityManager = sessionFactory.createEntityManager();
+        ReflectionTestUtils.setField(stateMachine, "entityManager", entityManager);
+    }
+
+    @Test
+    void followsTransitionTable() {
+        assertTrue(stateMachine.canTransition(PENDING_PAYMENT, PAID));
+        assertTrue(stateMachine.canTransition(REFUNDING, PAID));
+        assertTrue(stateMachine.canTransition(SHIPPED, REFUNDING));
+        assertFalse(stateMachine.canTransition(SHIPPED, CANCELLED));
+        assertFalse(stateMachine.canTransition(COMPLETED, REFUNDING));
+        assertFalse(stateMachine.canTransition(PAID, PAID));
+
+        assertEquals(List.of(PENDING_PAYMENT, PAID), List.copyOf(stateMachine.sourcesOf(CANCELLED)));
+        assertEquals(Set.of(), stateMachine.sourcesOf(PENDING_PAYMENT));
+        assertThrows(IllegalArgumentException.class, () -> stateMachine.change(1L, PENDING_PAYMENT));
+        assertThrows(IllegalArgumentException.class, () -> stateMachine.change(1L, CANCELLED).from(SHIPPED));
+    }
+
+    @Test
+    void selectsTimestampPerSource() {
+        assertEquals("paymentTime", stateMachine.timestampFieldOf(PENDING_PAYMENT, PAID));
+        assertNull(stateMachine.timestampFieldOf(REFUNDING, PAID));
+        assertEquals("shippingTime", stateMachine.timestampFieldOf(PAID, SHIPPED));
+        assertNull(stateMachine.timestampFieldOf(PAID, CANCELLED));
+
+        assertEquals(Map.of("paymentTime", Set.of(PENDING_PAYMENT)),
+                stateMachine.change(1L, PAID).timestampSources());
+        assertEquals(Map.of(), stateMachine.change(1L, PAID).from(REFUNDING).timestampSources());
+        assertEquals(Map.of(), stateMachine.change(1L, CANCELLED).timestampSources());
+    }
+
+    @Test
+    void appliesGuardedTransitionInOneStatement() {
+        jdbc.updateCount = 1;
+        OrderStatus previous = inTransaction(() -> stateMachine.change(42L, PAID)
+                .from(PENDING_PAYMENT)
+                .where("buyerId", 7L)
+                .whereAtMost("payableAmount", new BigDecimal("99.00"))
+                .apply());
+
+        assertEquals(PENDING_PAYMENT, previous);
+        assertEquals(1, jdbc.statements.size());
+        Statement statement = jdbc.statements.get(0);
+        assertTrue(statement.sql.startsWith("update orders"), statement.sql);
+        // 唯一来源直接写入时间字段，不需要 CASE
+        assertTrue(statement.sql.contains("payment_time=?"), statement.sql);
+        assertFalse(statement.sql.contains("case"), statement.sql);
+        assertTrue(statement.sql.contains("buyer_id=?"), statement.sql);
+        assertTrue(statement.sql.contains("payable_amount<=?"), statement.sql);
+        assertTrue(statement.parameters.containsAll(List.of(42L, 7L, new BigDecimal("99.00"), "PENDING_PAYMENT")),
+                statement.parameters.toString());
+        assertPreviousStatusBeforeStatus(statement.sql);
+    }
+
+    @Test
+    void recordsTimestampOnlyForMatchingSource() {
+        jdbc.updateCount = 1;
+        jdbc.previousStatus = "REFUNDING";
+        OrderStatus previous = inTransaction(() -> stateMachine.change(42L, PAID).whereParty(7L).apply());
+
+        assertEquals(REFUNDING, previous);
+        assertEquals(2, jdbc.statements.size());
+        Statement update = jdbc.statements.get(0);
+        assertTrue(update.sql.contains("payment_time=case when"), update.sql);
+        assertTrue(update.sql.contains("status in (?,?)"), update.sql);
+        assertTrue(update.sql.contains("buyer_id=? or"), update.sql);
+        assertPreviousStatusBeforeStatus(update.sql);
+        // 来源不唯一时按主键读回原状态
+        assertTrue(jdbc.statements.get(1).sql.startsWith("select"), jdbc.statements.get(1).sql);
+    }
+
+    @Test
+    void returnsNullWithoutRetryingEachSource() {
+        jdbc.updateCount = 0;
+        assertNull(inTransaction(() -> stateMachine.change(42L, CANCELLED).whereParty(7L).apply()));
+        assertEquals(1, jdbc.statements.size());
+        assertTrue(jdbc.statements.get(0).sql.contains("status in (?,?)"), jdbc.statements.get(0).sql);
+    }
+
+    private static void assertPreviousStatusBeforeStatus(String sql) {
+        int previous = sql.indexOf("previous_status=status");
+        int status = sql.indexOf(",status=?");
+        assertTrue(previous >= 0 && status > previous, sql);
+    }
+
+    private <T> T inTransaction(Supplier<T> action) {
+        entityManager.getTransaction().begin();
+        try {
+            return action.get();
+        } finally {
+            entityManager.getTransaction().commit();
+        }
+    }
+
+    private record Statement(String sql, List<Object> parameters) {
+    }
+
+    /**
+     * 记录执行的语句和参数；更新返回 updateCount 行，查询返回一行 previousStatus
+     */
+    private static final class RecordingJdbc implements ConnectionProvider {
+        final List<Statement> statements = new ArrayList<>();
+        int updateCount;
+        String previousStatus;
+
+        @Override
+        public Connection getConnection() {
+            return proxy(Connection.class, (proxy, method, args) -> switch (method.getName()) {
+                case "prepareStatement" -> prepare((String) args[0]);
+                case "getAutoCommit", "isValid" -> true;
+                default -> defaultValue(method.getReturnType());
+            });
+        }
+
+        private PreparedStatement prepare(String sql) {
+            // 去掉表别名，便于断言
+            Statement statement = new Statement(sql.replace("o1_0.", "").replace(" o1_0 ", " "), new ArrayList<>());
+            statements.add(statement);
+            return proxy(PreparedStatement.class, (proxy, method, args) -> {
+                if (method.getName().startsWith("set") && args != null && args.length >= 2
+                        && args[0] instanceof Integer) {
+                    statement.parameters.add(args[1]);
+                    return null;
+                }
+                return switch (method.getName()) {
+                    case "executeUpdate" -> updateCount;
+                    case "executeQuery" -> resultSet();
+                    default -> defaultValue(method.getReturnType());
+                };
+            });
+        }
+
+        private ResultSet resultSet() {
+            boolean[] consumed = {false};
+            return proxy(ResultSet.class, (proxy, method, args) -> switch (method.getName()) {
+                case "next" -> !consumed[0] && (consumed[0] = true);
+                case "getString" -> previousStatus;
+                default -> defaultValue(method.getReturnType());
+            });
+        }
+
+        @Override
+        public void closeConnection(Connection connection) {
+        }
+
+        @Override
+        public boolean supportsAggressiveRelease() {
+            return false;
+        }
+
+        @Override
+        public boolean isUnwrappableAs(Class<?> unwrapType) {
+            return false;
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> unwrapType) {
+            throw new UnsupportedOperationException();
+        }
+
+        private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+        }
+
+        private static Object defaultValue(Class<?> type) {
+            if (type == boolean.class) {
+                return false;
+            }
+            if (type == int.class) {
+                return 0;
+            }
+            if (type == long.class) {
+                return 0L;
+            }
+            return null;
+        }
+    }
+}
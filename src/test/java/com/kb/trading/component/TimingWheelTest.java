@@ -0,0 +1,50 @@
+package com.kb.trading.component;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+    @Test
+    void firesEveryTaskOnceAndNeverEarly() {
+        long start = 1_000_000L;
+        TimingWheel<Integer> wheel = new TimingWheel<>(1000, 8, start);
+        Random random = new Random(42);
+        long[] deadlines = new long[5000];
+        for (int i = 0; i < deadlines.length; i++) {
+            // 覆盖多层：最长约 3 天
+            deadlines[i] = start + (long) (random.nextDouble() * 3 * 24 * 3600 * 1000L);
+            wheel.schedule(i, deadlines[i]);
+        }
+
+        int[] fired = new int[deadlines.length];
+        for (long now = start; now <= start + 3 * 24 * 3600 * 1000L + 2000; now += 7_000) {
+            for (TimingWheel.Entry<Integer> entry : wheel.advance(now)) {
+                assertTrue(entry.deadline() <= now, "任务提前触发");
+                // 最多延迟一个推进步长加一个 tick
+                assertTrue(now - entry.deadline() < 8_000, "任务触发过晚");
+                fired[entry.task()]++;
+            }
+        }
+
+        for (int count : fired) {
+            assertEquals(1, count);
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void overdueTasksFireOnNextAdvance() {
+        TimingWheel<String> wheel = new TimingWheel<>(1000, 64, 10_000);
+        wheel.schedule("overdue", 5_000);
+        List<String> fired = new ArrayList<>();
+        wheel.advance(10_000).forEach(entry -> fired.add(entry.task()));
+        assertEquals(List.of("overdue"), fired);
+    }
+}
@@ -0,0 +1,104 @@
+package com.kb.trading.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressedBitmapTest {
+
+    @Test
+    void matchesTreeSetAcrossSparseAndDenseChunks() {
+        Random random = new Random(7);
+        CompressedBitmap a = new CompressedBitmap();
+        CompressedBitmap b = new CompressedBitmap();
+        TreeSet<Integer> expectedA = new TreeSet<>();
+        TreeSet<Integer> expectedB = new TreeSet<>();
+        // 第一块稠密（位图），其余稀疏（数组）
+        for (int i = 0; i < 30_000; i++) {
+            int value = random.nextInt(65_536);
+            a.add(value);
+            expectedA.add(value);
+        }
+        for (int i = 0; i < 3_000; i++) {
+            int value = random.nextInt(1 << 20);
+            a.add(value);
+            expectedA.add(value);
+            int other = random.nextInt(1 << 20);
+            b.add(other);
+            expectedB.add(other);
+        }
+        for (int i = 0; i < 20_000; i++) {
+            int value = random.nextInt(65_536);
+            b.add(value);
+            expectedB.add(value);
+        }
+
+        assertEquals(expectedA.size(), a.cardinality());
+        assertEquals(expectedA.stream().toList(), toList(a));
+
+        TreeSet<Integer> intersection = new TreeSet<>(expectedA);
+        intersection.retainAll(expectedB);
+        assertEquals(intersection.stream().toList(), toList(CompressedBitmap.and(a, b)));
+        assertEquals(intersection.size(), CompressedBitmap.andCardinality(a, b));
+
+        TreeSet<Integer> union = new TreeSet<>(expectedA);
+        union.addAll(expectedB);
+        assertEquals(union.stream().toList(), toList(CompressedBitmap.or(a, b)));
+        TreeSet<Integer> difference = new TreeSet<>(expectedA);
+        difference.removeAll(expectedB);
+        assertEquals(difference.stream().toList(), toList(CompressedBitmap.andNot(a, b)));
+        assertEquals(difference.size(), CompressedBitmap.andNot(a, b).cardinality());
+        // 参数保持不变
+        assertEquals(expectedA.stream().toList(), toList(a));
+    }
+
+    @Test
+    void removesAndShrinksBackToArray() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int value = 0; value < 10_000; value++) {
+            bitmap.add(value);
+        }
+        for (int value = 0; value < 10_000; value += 2) {
+            bitmap.remove(value);
+        }
+        for (int value = 1; value < 9_000; value += 2) {
+            bitmap.remove(value);
+        }
+        assertEquals(500, bitmap.cardinality());
+        assertTrue(bitmap.contains(9_001));
+        assertFalse(bitmap.contains(8_999));
+
+        for (int value = 9_001; value < 10_000; value += 2) {
+            bitmap.remove(value);
+        }
+        assertTrue(bitmap.isEmpty());
+    }
+
+    @Test
+    void pagesInDescendingOrder() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int value = 0; value < 200_000; value += 3) {
+            bitmap.add(value);
+        }
+        int max = 199_998;
+        assertArrayEquals(new int[]{max, max - 3, max - 6}, bitmap.descending(0, 3));
+        // 跳过整块和块内的部分
+        int[] page = bitmap.descending(30_000, 2);
+        assertArrayEquals(new int[]{max - 90_000, max - 90_003}, page);
+        assertEquals(0, bitmap.descending(bitmap.cardinality(), 10).length);
+    }
+
+    private static List<Integer> toList(CompressedBitmap bitmap) {
+        List<Integer> values = new ArrayList<>();
+        bitmap.forEach(values::add);
+        return values;
+    }
+}
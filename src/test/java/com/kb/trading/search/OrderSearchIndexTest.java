@@ -0,0 +1,44 @@
+package com.kb.trading.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderSearchIndexTest {
+
+    @Test
+    void matchesChineseNamesAndOrderNoPrefix() {
+        OrderSearchIndex index = new OrderSearchIndex(null);
+        index.add(1L, "KB20260101120000000001", "张三丰", "李四商店");
+        index.add(2L, "KB20260101120000000002", "王小明", "张三丰旗舰店");
+        index.add(3L, "KB20260102080000000001", "赵六", "丰张三");
+
+        assertEquals(List.of(2L, 1L), index.search("张三丰", 0, 10).orderIds());
+        assertEquals(List.of(3L, 2L, 1L), index.search("张三", 0, 10).orderIds());
+        assertEquals(List.of(3L, 2L, 1L), index.search("丰", 0, 10).orderIds());
+        assertEquals(List.of(2L, 1L), index.search("kb202601011200", 0, 10).orderIds());
+        assertTrue(index.search("三丰张", 0, 10).orderIds().isEmpty());
+    }
+
+    @Test
+    void pagesNewestFirstAndForgetsRemovedOrders() {
+        OrderSearchIndex index = new OrderSearchIndex(null);
+        for (long id = 1; id <= 25; id++) {
+            index.add(id, "KB" + id, "买家" + id, "卖家");
+        }
+
+        OrderSearchIndex.Result second = index.search("卖家", 10, 10);
+        assertEquals(25, second.total());
+        assertEquals(15L, second.orderIds().get(0));
+        assertEquals(6L, second.orderIds().get(9));
+
+        index.remove(25L);
+        OrderSearchIndex.Result first = index.search("卖家", 0, 10);
+        assertEquals(24, first.total());
+        assertEquals(24L, first.orderIds().get(0));
+        assertTrue(index.search("买家25", 0, 10).orderIds().isEmpty());
+    }
+}
@@ -0,0 +1,56 @@
+package com.kb.trading.search;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 商品筛选索引压测：一百万件商品上的组合筛选延迟，默认不运行（-Pintegration-tests）。
+ */
+@Tag("benchmark")
+class ProductFacetIndexBenchmarkTest {
+
+    private static ProductFacetIndex.Query query(String category, String location, BigDecimal min, BigDecimal max,
+                                                 ProductFacetIndex.Sort sort, int offset, int limit) {
+        return new ProductFacetIndex.Query(category, location, 1, min, max, sort, offset, limit);
+    }
+
+    @Test
+    void queriesMillionListingsQuickly() {
+        ProductFacetIndex index = new ProductFacetIndex(null);
+        Random random = new Random(11);
+        String[] categories = {"电子产品", "服装", "家具", "图书", "运动", "母婴", "美妆", "其他"};
+        int products = 1_000_000;
+        for (int id = 1; id <= products; id++) {
+            index.put((long) id, categories[random.nextInt(categories.length)], "城市" + random.nextInt(300),
+                    random.nextInt(10) == 0 ? 2 : 1, BigDecimal.valueOf(random.nextInt(500_000), 2));
+        }
+
+        List<ProductFacetIndex.Query> queries = List.of(
+                query("电子产品", "城市7", null, null, ProductFacetIndex.Sort.NEWEST, 0, 20),
+                query("服装", null, new BigDecimal("100"), new BigDecimal("200"), ProductFacetIndex.Sort.PRICE_ASC, 0, 20),
+                query(null, "城市42", new BigDecimal("10"), new BigDecimal("4000"), ProductFacetIndex.Sort.PRICE_DESC, 40, 20),
+                query(null, null, null, null, ProductFacetIndex.Sort.NEWEST, 100, 20));
+        int rounds = 200;
+        long[] micros = new long[rounds * queries.size()];
+        int n = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (ProductFacetIndex.Query q : queries) {
+                long start = System.nanoTime();
+                ProductFacetIndex.Result result = index.query(q);
+                micros[n++] = (System.nanoTime() - start) / 1000;
+                assertTrue(result.total() > 0);
+            }
+        }
+        Arrays.sort(micros);
+        System.out.printf("商品筛选 %d 件商品: p50=%dus p90=%dus max=%dus%n", products,
+                micros[micros.length / 2], micros[micros.length * 9 / 10], micros[micros.length - 1]);
+        assertTrue(micros[micros.length * 9 / 10] < 20_000, "p90 " + micros[micros.length * 9 / 10] + "us");
+    }
+}
@@ -0,0 +1,121 @@
+package com.kb.trading.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductFacetIndexTest {
+
+    private static ProductFacetIndex.Query query(String category, String location, BigDecimal min, BigDecimal max,
+                                                 ProductFacetIndex.Sort sort, int offset, int limit) {
+        return new ProductFacetIndex.Query(category, location, 1, min, max, sort, offset, limit);
+    }
+
+    @Test
+    void combinesFiltersAndCountsFacets() {
+        ProductFacetIndex index = new ProductFacetIndex(null);
+        index.put(1L, "电子产品", "北京 朝阳", 1, new BigDecimal("1999"));
+        index.put(2L, "电子产品", "上海", 1, new BigDecimal("99.5"));
+        index.put(3L, "服装", "北京朝阳", 1, new BigDecimal("120"));
+        index.put(4L, "电子产品", "北京朝阳", 0, new BigDecimal("500"));
+        index.put(5L, "电子产品", "北京朝阳", 1, new BigDecimal("800"));
+
+        ProductFacetIndex.Result result = index.query(query("电子产品", "北京朝阳", null, null,
+                ProductFacetIndex.Sort.NEWEST, 0, 10));
+        assertEquals(List.of(5L, 1L), result.productIds());
+        assertEquals(2, result.total());
+        // 分类计数不受分类条件限制，所在地计数不受所在地条件限制
+        assertEquals(Map.of("电子产品", 2, "服装", 1), result.categoryCounts());
+        assertEquals(Map.of("北京朝阳", 2, "上海", 1), result.locationCounts());
+
+        ProductFacetIndex.Result priced = index.query(query(null, null, new BigDecimal("100"),
+                new BigDecimal("1000"), ProductFacetIndex.Sort.PRICE_ASC, 0, 10));
+        assertEquals(List.of(3L, 5L), priced.productIds());
+
+        ProductFacetIndex.Result inactive = index.query(new ProductFacetIndex.Query(null, null, 0, null, null,
+                ProductFacetIndex.Sort.NEWEST, 0, 10));
+        assertEquals(List.of(4L), inactive.productIds());
+
+        assertEquals(0, index.query(query("家具", null, null, null, ProductFacetIndex.Sort.NEWEST, 0, 10)).total());
+    }
+
+    @Test
+    void updatesMoveProductsBetweenFacets() {
+        ProductFacetIndex index = new ProductFacetIndex(null);
+        index.put(1L, "电子产品", "北京", 1, new BigDecimal("100"));
+        index.put(1L, "家具", "上海", 1, new BigDecimal("300"));
+
+        assertEquals(0, index.query(query("电子产品", null, null, null, ProductFacetIndex.Sort.NEWEST, 0, 10)).total());
+        assertEquals(List.of(1L), index.query(query("家具", "上海", new BigDecimal("300"), new BigDecimal("300"),
+                ProductFacetIndex.Sort.NEWEST, 0, 10)).productIds());
+
+        // 售出后不再出现在上架商品中，删除后完全移出
+        index.put(1L, "家具", "上海", 2, new BigDecimal("300"));
+        assertEquals(0, index.query(query(null, null, null, null, ProductFacetIndex.Sort.NEWEST, 0, 10)).total());
+        index.put(1L, "家具", "上海", 3, new BigDecimal("300"));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void sortsByPriceInBothStrategies() {
+        ProductFacetIndex index = new ProductFacetIndex(null);
+        Random random = new Random(3);
+        int products = 50_000;
+        long[] cents = new long[products + 1];
+        for (int id = 1; id <= products; id++) {
+            cents[id] = random.nextInt(100_000);
+            index.put((long) id, id % 2 == 0 ? "偶数" : "奇数", "城市" + id % 10, 1,
+                    BigDecimal.valueOf(cents[id], 2));
+        }
+
+        // 结果较少时在内存中排序，结果很多时沿价格列查找，两者应与逐个比较的顺序一致
+        for (String category : new String[]{null, "偶数"}) {
+            for (String location : new String[]{null, "城市4"}) {
+                List<Long> page = index.query(query(category, location, null, null,
+                        ProductFacetIndex.Sort.PRICE_DESC, 20, 30)).productIds();
+                assertEquals(30, page.size());
+                for (int i = 1; i < page.size(); i++) {
+                    long previous = cents[page.get(i - 1).intValue()];
+                    long current = cents[page.get(i).intValue()];
+                    assertTrue(previous >= current, "not sorted at " + i);
+                }
+            }
+        }
+    }
+
+    @Test
+    void filtersPriceRangesAcrossBands() {
+        ProductFacetIndex index = new ProductFacetIndex(null);
+        Random random = new Random(5);
+        int products = 20_000;
+        long[] cents = new long[products + 1];
+        for (int id = 1; id <= products; id++) {
+            // 价格跨多个数量级，覆盖整档和档内的区间
+            cents[id] = (long) Math.pow(10, random.nextDouble() * 7);
+            index.put((long) id, "分类", "城市", 1, BigDecimal.valueOf(cents[id], 2));
+        }
+
+        long[][] ranges = {{0, 99}, {100, 100}, {120, 149}, {101, 250_000}, {1_000, 1_000_000}, {37, 9_999_999}};
+        for (long[] range : ranges) {
+            long expected = 0;
+            for (int id = 1; id <= products; id++) {
+                if (cents[id] >= range[0] && cents[id] <= range[1]) {
+                    expected++;
+                }
+            }
+            ProductFacetIndex.Result result = index.query(query(null, null, BigDecimal.valueOf(range[0], 2),
+                    BigDecimal.valueOf(range[1], 2), ProductFacetIndex.Sort.PRICE_ASC, 0, 5));
+            assertEquals(expected, result.total(), "range " + Arrays.toString(range));
+            for (Long id : result.productIds()) {
+                assertTrue(cents[id.intValue()] >= range[0] && cents[id.intValue()] <= range[1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.kb.trading.search;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 附近商品索引压测：一百万件商品上按半径查询的延迟和查看的商品数，默认不运行（-Pintegration-tests）。
+ */
+@Tag("benchmark")
+class ProductGeoIndexBenchmarkTest {
+
+    // 北京天安门附近
+    private static final double LATITUDE = 39.9087;
+    private static final double LONGITUDE = 116.3975;
+
+    @Test
+    void queriesMillionListingsQuickly() {
+        ProductGeoIndex index = new ProductGeoIndex(null);
+        Random random = new Random(23);
+        int products = 1_000_000;
+        for (int id = 1; id <= products; id++) {
+            // 商品分布在约 100km × 100km 的城市范围内
+            index.put((long) id, 1, LATITUDE + random.nextDouble() - 0.5, LONGITUDE + random.nextDouble() - 0.5);
+        }
+
+        int rounds = 500;
+        long[] micros = new long[rounds];
+        int scanned = 0;
+        for (int round = 0; round < rounds; round++) {
+            double latitude = LATITUDE + random.nextDouble() * 0.6 - 0.3;
+            double longitude = LONGITUDE + random.nextDouble() * 0.6 - 0.3;
+            long start = System.nanoTime();
+            ProductGeoIndex.Result result = index.query(latitude, longitude, 3_000, 0, 20);
+            micros[round] = (System.nanoTime() - start) / 1000;
+            scanned += result.scanned();
+            assertEquals(20, result.hits().size());
+        }
+        Arrays.sort(micros);
+        System.out.printf("附近商品 %d 件商品, 半径3km: p50=%dus p90=%dus max=%dus, 平均查看%d件%n", products,
+                micros[rounds / 2], micros[rounds * 9 / 10], micros[rounds - 1], scanned / rounds);
+        assertTrue(scanned / rounds < products / 50);
+        assertTrue(micros[rounds * 9 / 10] < 20_000, "p90 " + micros[rounds * 9 / 10] + "us");
+    }
+}
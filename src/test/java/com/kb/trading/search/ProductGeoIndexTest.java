@@ -0,0 +1,89 @@
+package com.kb.trading.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductGeoIndexTest {
+
+    // 北京天安门附近
+    private static final double LATITUDE = 39.9087;
+    private static final double LONGITUDE = 116.3975;
+
+    @Test
+    void encodesStandardGeohash() {
+        assertEquals("u4pruy", GeoHash.toBase32(GeoHash.encode(57.64911, 10.40744)));
+        assertEquals("wx4g09", GeoHash.toBase32(GeoHash.encode(39.9087, 116.3975)));
+        assertEquals(1112, Math.round(GeoHash.distanceMeters(0, 0, 0, 0.01)));
+    }
+
+    @Test
+    void matchesBruteForceWithinRadius() {
+        ProductGeoIndex index = new ProductGeoIndex(null);
+        Random random = new Random(17);
+        int products = 20_000;
+        double[][] points = new double[products + 1][];
+        for (int id = 1; id <= products; id++) {
+            // 约 ±0.5 度范围内随机分布
+            points[id] = new double[]{LATITUDE + random.nextDouble() - 0.5, LONGITUDE + random.nextDouble() - 0.5};
+            index.put((long) id, 1, points[id][0], points[id][1]);
+        }
+
+        for (double radius : new double[]{300, 2_000, 10_000}) {
+            List<Long> expected = new ArrayList<>();
+            for (int id = 1; id <= products; id++) {
+                if (GeoHash.distanceMeters(LATITUDE, LONGITUDE, points[id][0], points[id][1]) <= radius) {
+                    expected.add((long) id);
+                }
+            }
+            ProductGeoIndex.Result result = index.query(LATITUDE, LONGITUDE, radius, 0, Integer.MAX_VALUE);
+            assertEquals(expected.size(), result.total(), "radius " + radius);
+            assertEquals(expected.stream().sorted().toList(),
+                    result.hits().stream().map(ProductGeoIndex.Hit::productId).sorted().toList());
+            for (int i = 1; i < result.hits().size(); i++) {
+                assertTrue(result.hits().get(i - 1).distanceMeters() <= result.hits().get(i).distanceMeters());
+            }
+            // 只查看覆盖搜索圆的格子里的商品
+            assertTrue(result.scanned() < products / 2, "scanned " + result.scanned());
+        }
+
+        List<ProductGeoIndex.Hit> all = index.query(LATITUDE, LONGITUDE, 10_000, 0, Integer.MAX_VALUE).hits();
+        assertEquals(all.subList(20, 30), index.query(LATITUDE, LONGITUDE, 10_000, 20, 10).hits());
+    }
+
+    @Test
+    void removesInactiveAndMovedProducts() {
+        ProductGeoIndex index = new ProductGeoIndex(null);
+        index.put(1L, 1, LATITUDE, LONGITUDE);
+        index.put(2L, 1, LATITUDE + 0.001, LONGITUDE);
+        index.put(3L, 0, LATITUDE, LONGITUDE);
+        index.put(4L, 1, null, null);
+        assertEquals(List.of(1L, 2L), ids(index.query(LATITUDE, LONGITUDE, 1_000, 0, 10)));
+
+        // 搬到上海后不再出现在北京附近
+        index.put(1L, 1, 31.2304, 121.4737);
+        assertEquals(List.of(2L), ids(index.query(LATITUDE, LONGITUDE, 1_000, 0, 10)));
+        assertEquals(List.of(1L), ids(index.query(31.2304, 121.4737, 1_000, 0, 10)));
+
+        index.put(2L, 2, LATITUDE + 0.001, LONGITUDE);
+        assertEquals(List.of(), ids(index.query(LATITUDE, LONGITUDE, 1_000, 0, 10)));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void wrapsAcrossAntimeridian() {
+        ProductGeoIndex index = new ProductGeoIndex(null);
+        index.put(1L, 1, -17.0, 179.999);
+        index.put(2L, 1, -17.0, -179.999);
+        assertEquals(2, index.query(-17.0, 179.9995, 1_000, 0, 10).total());
+    }
+
+    private static List<Long> ids(ProductGeoIndex.Result result) {
+        return result.hits().stream().map(ProductGeoIndex.Hit::productId).toList();
+    }
+}
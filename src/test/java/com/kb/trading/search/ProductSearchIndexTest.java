@@ -0,0 +1,141 @@
+package com.kb.trading.search;
+
+import com.kb.trading.event.ProductStockChangedEvent;
+import com.kb.trading.repository.ProductRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductSearchIndexTest {
+
+    @Test
+    void tokenizesCjkAsBigramsAndLatinAsWords() {
+        assertEquals(List.of("二手", "手手", "手机", "iphone", "13"), TextTokenizer.tokenize("二手手机 iPhone-13"));
+        assertEquals(List.of("书"), TextTokenizer.tokenize("书"));
+        assertEquals(List.of("手", "机", "手机"), TextTokenizer.tokenize("手机", true));
+    }
+
+    @Test
+    void requiresAllTermsAndRanksTitleMatchesFirst() {
+        ProductSearchIndex index = new ProductSearchIndex(null);
+        index.add(1L, "九成新自行车", "通勤用，送车锁", "运动户外", "北京");
+        index.add(2L, "儿童绘本", "适合三岁以上，附赠自行车贴纸", "图书", "上海");
+        index.add(3L, "山地自行车 Giant", "变速正常", "运动户外", "北京");
+        index.add(4L, "电饭煲", "九成新", "家用电器", "北京");
+
+        ProductSearchIndex.Result result = index.search("自行车", 0, 10);
+        assertEquals(3, result.total());
+        assertEquals(2L, result.productIds().get(2));
+
+        assertEquals(List.of(3L), index.search("giant 自行车", 0, 10).productIds());
+        assertEquals(Set.of(1L, 4L), new HashSet<>(index.search("九成新", 0, 10).productIds()));
+        assertTrue(index.search("冰箱", 0, 10).productIds().isEmpty());
+    }
+
+    @Test
+    void pagesThroughRankedResults() {
+        ProductSearchIndex index = new ProductSearchIndex(null);
+        for (long id = 1; id <= 25; id++) {
+            index.add(id, "闲置台灯 " + id, null, "家居", null);
+        }
+        ProductSearchIndex.Result first = index.search("台灯", 0, 10);
+        ProductSearchIndex.Result third = index.search("台灯", 20, 10);
+        assertEquals(25, first.total());
+        assertEquals(10, first.productIds().size());
+        assertEquals(5, third.productIds().size());
+        assertTrue(index.search("台灯", Integer.MAX_VALUE, 10).productIds().isEmpty());
+    }
+
+    @Test
+    void updatesAndRemovalsAreVisibleAndSurviveCompaction() {
+        ProductSearchIndex index = new ProductSearchIndex(null);
+        for (long id = 1; id <= 3000; id++) {
+            index.add(id, "旧标题" + id, null, null, null);
+        }
+        index.add(7L, "全新键盘", null, null, null);
+        assertEquals(List.of(7L), index.search("键盘", 0, 10).productIds());
+        assertEquals(2999, index.search("旧标题", 0, 10).total());
+
+        for (long id = 1; id <= 2000; id++) {
+            index.remove(id);
+        }
+        assertEquals(1000, index.size());
+        assertEquals(1000, index.search("旧标题", 0, 10).total());
+        assertTrue(index.search("键盘", 0, 10).productIds().isEmpty());
+
+        index.add(3000L, "机械键盘", null, null, null);
+        assertEquals(List.of(3000L), index.search("键盘", 0, 10).productIds());
+    }
+
+    @Test
+    void compactsWhenProductsAreReindexed() {
+        ProductSearchIndex index = new ProductSearchIndex(null);
+        for (int round = 0; round < 5; round++) {
+            for (long id = 1; id <= 1000; id++) {
+                index.add(id, "台灯" + round, null, null, null);
+            }
+        }
+        // 每轮重新索引都留下 1000 个已删除文档，只在 add 中检查也必须整理
+        int docCount = (Integer) ReflectionTestUtils.getField(index, "docCount");
+        assertTrue(docCount < 3000, "docCount=" + docCount);
+        assertEquals(1000, index.size());
+        assertEquals(1000, index.search("台灯4", 0, 10).total());
+        assertTrue(index.search("台灯0", 0, 10).productIds().isEmpty());
+    }
+
+    @Test
+    void reindexesOnlyWhenSaleStateChanges() {
+        Map<Long, Integer> statuses = Map.of(1L, 1, 2L, 1, 3L, 2);
+        List<String> queries = new ArrayList<>();
+        ProductSearchIndex index = new ProductSearchIndex(repository(statuses, queries));
+        index.add(1L, "台灯", null, null, null);
+        index.add(3L, "书桌", null, null, null);
+
+        // 1 仍在售、2 恢复上架、3 售罄：只读取 2 的搜索字段
+        index.onStockChanged(new ProductStockChangedEvent(List.of(1L, 2L, 3L)));
+        assertEquals(List.of("findStatusesByIds", "findSearchFieldsByIds [2]"), queries);
+        assertTrue(index.contains(1L));
+        assertTrue(index.contains(2L));
+        assertFalse(index.contains(3L));
+
+        queries.clear();
+        index.onStockChanged(new ProductStockChangedEvent(List.of(1L, 2L)));
+        assertEquals(List.of("findStatusesByIds"), queries);
+    }
+
+    // 只实现状态和搜索字段两个查询，记录调用
+    private static ProductRepository repository(Map<Long, Integer> statuses, List<String> queries) {
+        return (ProductRepository) Proxy.newProxyInstance(ProductRepository.class.getClassLoader(),
+                new Class<?>[]{ProductRepository.class}, (proxy, method, args) -> {
+                    Collection<?> ids = (Collection<?>) args[0];
+                    List<Object[]> rows = new ArrayList<>();
+                    switch (method.getName()) {
+                        case "findStatusesByIds" -> {
+                            queries.add(method.getName());
+                            for (Object id : ids) {
+                                rows.add(new Object[]{id, statuses.get(id)});
+                            }
+                        }
+                        case "findSearchFieldsByIds" -> {
+                            queries.add(method.getName() + " " + ids);
+                            for (Object id : ids) {
+                                rows.add(new Object[]{id, "台灯" + id, null, null, null, statuses.get(id)});
+                            }
+                        }
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    }
+                    return rows;
+                });
+    }
+}
@@ -0,0 +1,128 @@
+package com.kb.trading.service;
+
+import com.kb.trading.dto.CheckoutResult;
+import com.kb.trading.entity.Order;
+import com.kb.trading.entity.OrderItem;
+import com.kb.trading.entity.Product;
+import com.kb.trading.entity.User;
+import com.kb.trading.repository.OrderItemRepository;
+import com.kb.trading.repository.OrderRepository;
+import com.kb.trading.repository.ProductRepository;
+import com.kb.trading.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 购物车结算基准：1、10、100 行的购物车各结算若干轮，输出耗时分位数，
+ * 并校验每轮按卖家拆单、库存扣减和购物车清空都正确。
+ */
+@Tag("database")
+@Tag("benchmark")
+@SpringBootTest
+class CheckoutBenchmarkTest {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 20;
+    private static final int SELLERS = 3;
+
+    @Autowired
+    private CheckoutService checkoutService;
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    private User buyer;
+    private final List<Product> products = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        buyer = new User();
+        buyer.setUsername("checkout-bench-" + System.nanoTime());
+        buyer.setNickname("结算基准买家");
+        buyer = userRepository.save(buyer);
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (Product product : products) {
+            List<OrderItem> items = orderItemRepository.findByProductId(product.getId());
+            orderItemRepository.deleteAll(items);
+            orderRepository.deleteAllById(items.stream().map(OrderItem::getOrderId).distinct().toList());
+        }
+        productRepository.deleteAllById(products.stream().map(Product::getId).toList());
+        cartService.clearCart(buyer.getId());
+        userRepository.deleteById(buyer.getId());
+        products.clear();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 10, 100})
+    void checkoutLatency(int lines) {
+        int rounds = WARMUP_ROUNDS + MEASURED_ROUNDS;
+        for (int i = 0; i < lines; i++) {
+            Product product = new Product();
+            product.setTitle("结算基准商品" + i);
+            product.setPrice(new BigDecimal("12.50"));
+            product.setSellerId(buyer.getId() + 1 + i % SELLERS);
+            product.setSellerName("结算基准卖家" + i % SELLERS);
+            product.setStock(rounds);
+            product.setStatus(1);
+            products.add(productRepository.save(product));
+        }
+
+        long[] elapsedMicros = new long[MEASURED_ROUNDS];
+        for (int round = 0; round < rounds; round++) {
+            for (Product product : products) {
+                cartService.addToCart(buyer.getId(), product.getId(), 1, null);
+            }
+
+            long start = System.nanoTime();
+            CheckoutResult result = checkoutService.checkout(buyer.getId(), "测试地址", "13800000000", null);
+            long elapsed = (System.nanoTime() - start) / 1000;
+            if (round >= WARMUP_ROUNDS) {
+                elapsedMicros[round - WARMUP_ROUNDS] = elapsed;
+            }
+
+            assertTrue(result.isSuccess());
+            assertEquals(Math.min(lines, SELLERS), result.orders().size());
+            assertEquals(new BigDecimal("12.50").multiply(BigDecimal.valueOf(lines)),
+                    result.orders().stream().map(Order::getPayableAmount).reduce(BigDecimal.ZERO, BigDecimal::add));
+            assertEquals(0, cartService.getCartItemCount(buyer.getId()));
+        }
+
+        for (Product product : products) {
+            assertEquals(0, productRepository.findById(product.getId()).orElseThrow().getStock());
+        }
+
+        Arrays.sort(elapsedMicros);
+        System.out.printf("购物车结算 %d 行: p50=%.2fms p90=%.2fms max=%.2fms%n", lines,
+                elapsedMicros[MEASURED_ROUNDS / 2] / 1000.0,
+                elapsedMicros[MEASURED_ROUNDS * 9 / 10] / 1000.0,
+                elapsedMicros[MEASURED_ROUNDS - 1] / 1000.0);
+    }
+}
@@ -0,0 +1,151 @@
+package com.kb.trading.service;
+
+import com.kb.trading.cache.ProductCache;
+import com.kb.trading.entity.Product;
+import com.kb.trading.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 商品详情读取基准：同样的偏斜访问（少数商品占大部分浏览）分别直接查询数据库和经过商品缓存，
+ * 输出每秒读取次数；并校验并发冷读只查询一次、修改后缓存失效、不存在的ID走负缓存。
+ */
+@Tag("database")
+@Tag("benchmark")
+@SpringBootTest
+class ProductCacheBenchmarkTest {
+
+    private static final int PRODUCTS = 200;
+    private static final int THREADS = 8;
+    private static final int READS_PER_THREAD = 2_000;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    private final List<Product> products = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < PRODUCTS; i++) {
+            Product product = new Product();
+            product.setTitle("缓存基准商品" + i);
+            product.setDescription("缓存基准商品描述".repeat(50));
+            product.setPrice(new BigDecimal("99.00"));
+            product.setSellerId(1L);
+            product.setSellerName("缓存基准卖家");
+            product.setStatus(1);
+            products.add(productRepository.save(product));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        productRepository.deleteAllById(products.stream().map(Product::getId).toList());
+        products.forEach(product -> productCache.invalidate(product.getId()));
+        products.clear();
+    }
+
+    @Test
+    void detailReadThroughput() throws Exception {
+        double direct = readsPerSecond(id -> productRepository.findById(id).orElseThrow());
+        double cached = readsPerSecond(id -> productService.getProductById(id));
+        System.out.printf("商品详情读取: 直接查询=%.0f次/秒, 经过缓存=%.0f次/秒, 提升%.1f倍, 缓存指标=%s%n",
+                direct, cached, cached / direct, productCache.getMetrics());
+        assertTrue(cached > direct);
+    }
+
+    @Test
+    void concurrentColdReadsLoadOnce() throws Exception {
+        Long productId = products.get(0).getId();
+        productCache.invalidate(productId);
+        long loadsBefore = (Long) productCache.getMetrics().get("loads");
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Product>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return productCache.get(productId).orElseThrow();
+            }));
+        }
+        start.countDown();
+        for (Future<Product> future : futures) {
+            assertEquals(productId, future.get().getId());
+        }
+        executor.shutdown();
+
+        // 同时到达的冷读合并为一次加载（最慢的线程晚于加载完成才到达时直接命中）
+        assertEquals(loadsBefore + 1, (Long) productCache.getMetrics().get("loads"));
+    }
+
+    @Test
+    void updatesInvalidateAndMissingIdsAreCached() {
+        Product product = products.get(1);
+        assertEquals("缓存基准商品1", productService.getProductById(product.getId()).getTitle());
+
+        product.setTitle("缓存基准商品1-修改");
+        productService.updateProduct(product);
+        assertEquals("缓存基准商品1-修改", productService.getProductById(product.getId()).getTitle());
+
+        // 调用方修改返回值不影响缓存
+        productService.getProductById(product.getId()).setTitle("随意修改");
+        assertEquals("缓存基准商品1-修改", productService.getProductById(product.getId()).getTitle());
+
+        long missingId = Long.MAX_VALUE - 1;
+        assertThrows(RuntimeException.class, () -> productService.getProductById(missingId));
+        long negativeHits = (Long) productCache.getMetrics().get("negativeHits");
+        assertThrows(RuntimeException.class, () -> productService.getProductById(missingId));
+        assertEquals(negativeHits + 1, (Long) productCache.getMetrics().get("negativeHits"));
+    }
+
+    // 多线程按偏斜分布读取商品详情，返回每秒读取次数
+    private double readsPerSecond(LongConsumer read) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            long seed = t;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < READS_PER_THREAD; i++) {
+                    // 约八成的读取落在前一成的商品上
+                    int index = random.nextInt(10) < 8
+                            ? random.nextInt(PRODUCTS / 10)
+                            : random.nextInt(PRODUCTS);
+                    read.accept(products.get(index).getId());
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return THREADS * READS_PER_THREAD / seconds;
+    }
+}
@@ -0,0 +1,87 @@
+package com.kb.trading.service;
+
+import com.kb.trading.dto.ProductCard;
+import com.kb.trading.entity.Product;
+import com.kb.trading.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 商品列表载荷对比：同一卖家的商品分别按完整实体和商品卡片序列化，输出 JSON 字节数；
+ * 并校验卡片字段与实体一致。
+ */
+@Tag("database")
+@SpringBootTest
+class ProductCardPayloadTest {
+
+    private static final int PRODUCTS = 100;
+    private static final long SELLER_ID = 987_654L;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private JsonMapper jsonMapper;
+
+    private final List<Product> products = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < PRODUCTS; i++) {
+            Product product = new Product();
+            product.setTitle("卡片测试商品" + i);
+            product.setDescription("九成新，功能完好，同城面交，可小刀。".repeat(60));
+            product.setImageList(List.of("https://img.example.com/" + i + "/1.jpg",
+                    "https://img.example.com/" + i + "/2.jpg", "https://img.example.com/" + i + "/3.jpg"));
+            product.setMainImage("https://img.example.com/" + i + "/1.jpg");
+            product.setPrice(new BigDecimal("88.00"));
+            product.setCategory("卡片测试分类");
+            product.setLocation("北京朝阳");
+            product.setSellerId(SELLER_ID);
+            product.setSellerName("卡片测试卖家");
+            product.setStatus(1);
+            products.add(productRepository.save(product));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        productRepository.deleteAllById(products.stream().map(Product::getId).toList());
+        products.clear();
+    }
+
+    @Test
+    void cardsAreMuchSmallerThanEntities() {
+        List<ProductCard> cards = productService.getProductsBySellerId(SELLER_ID);
+        assertEquals(PRODUCTS, cards.size());
+
+        Product first = products.get(0);
+        ProductCard card = cards.stream().filter(c -> c.id().equals(first.getId())).findFirst().orElseThrow();
+        assertEquals(ProductCard.of(first), card);
+
+        int entityBytes = jsonMapper.writeValueAsBytes(productRepository.findAllById(
+                products.stream().map(Product::getId).toList())).length;
+        int cardBytes = jsonMapper.writeValueAsBytes(cards).length;
+        System.out.printf("商品列表载荷: 完整实体=%d字节, 商品卡片=%d字节, 缩小%.1f倍%n",
+                entityBytes, cardBytes, (double) entityBytes / cardBytes);
+        assertTrue(cardBytes * 5 < entityBytes);
+
+        assertTrue(productService.getProductsByCategory("卡片测试分类").size() >= PRODUCTS);
+        assertTrue(productService.getActiveProducts(0, 10).getContent().size() > 0);
+    }
+}
@@ -0,0 +1,167 @@
+package com.kb.trading.service;
+
+import com.kb.trading.entity.Order;
+import com.kb.trading.entity.OrderItem;
+import com.kb.trading.entity.Product;
+import com.kb.trading.entity.User;
+import com.kb.trading.repository.OrderItemRepository;
+import com.kb.trading.repository.OrderRepository;
+import com.kb.trading.repository.ProductRepository;
+import com.kb.trading.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("database")
+@SpringBootTest
+class StockServiceConcurrencyTest {
+
+    private static final int THREADS = 64;
+    private static final int ORDERS = 2000;
+    private static final int STOCK = 50;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    private User buyer;
+    private Product product;
+
+    @BeforeEach
+    void setUp() {
+        buyer = new User();
+        buyer.setUsername("stock-test-" + System.nanoTime());
+        buyer.setNickname("库存测试买家");
+        buyer = userRepository.save(buyer);
+
+        product = new Product();
+        product.setTitle("并发库存测试商品");
+        product.setPrice(new BigDecimal("9.90"));
+        product.setSellerId(buyer.getId() + 1);
+        product.setSellerName("库存测试卖家");
+        product.setStock(STOCK);
+        product.setStatus(1);
+        product = productRepository.save(product);
+    }
+
+    @AfterEach
+    void tearDown() {
+        List<OrderItem> items = orderItemRepository.findByProductId(product.getId());
+        orderItemRepository.deleteAll(items);
+        orderRepository.deleteAllById(items.stream().map(OrderItem::getOrderId).toList());
+        productRepository.deleteById(product.getId());
+        userRepository.deleteById(buyer.getId());
+    }
+
+    @Test
+    void concurrentOrdersNeverOversell() throws Exception {
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < ORDERS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                OrderItem item = new OrderItem();
+                item.setProductId(product.getId());
+                item.setQuantity(1);
+                try {
+                    Order order = orderService.createOrder(buyer.getId(), List.of(item),
+                            "测试地址", "13800000000", null);
+                    if (order.getId() != null) {
+                        succeeded.incrementAndGet();
+                    }
+                } catch (RuntimeException e) {
+                    rejected.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        Product reloaded = productRepository.findById(product.getId()).orElseThrow();
+        assertEquals(STOCK, succeeded.get());
+        assertEquals(ORDERS - STOCK, rejected.get());
+        assertEquals(0, reloaded.getStock());
+        assertEquals(2, reloaded.getStatus());
+        assertEquals(STOCK, orderItemRepository.findByProductId(product.getId()).size());
+    }
+
+    @Test
+    void reserveAndReleaseKeepStockExact() throws Exception {
+        AtomicInteger reserved = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < ORDERS; i++) {
+            futures.add(executor.submit(() -> {
+                if (stockService.reserve(product.getId(), 1)) {
+                    reserved.incrementAndGet();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(STOCK, reserved.get());
+        assertEquals(0, productRepository.findById(product.getId()).orElseThrow().getStock());
+
+        stockService.release(product.getId(), STOCK);
+        Product restored = productRepository.findById(product.getId()).orElseThrow();
+        assertEquals(STOCK, restored.getStock());
+        assertEquals(1, restored.getStatus());
+    }
+
+    @Test
+    void releaseKeepsSellerMarkedSoldProductsSold() {
+        assertTrue(stockService.reserve(product.getId(), 1));
+        Product sold = productRepository.findById(product.getId()).orElseThrow();
+        sold.setStatus(2);
+        productRepository.save(sold);
+
+        // 取消订单归还库存，卖家已标记售出的商品不应重新上架
+        stockService.release(product.getId(), 1);
+        Product reloaded = productRepository.findById(product.getId()).orElseThrow();
+        assertEquals(STOCK, reloaded.getStock());
+        assertEquals(2, reloaded.getStatus());
+    }
+}